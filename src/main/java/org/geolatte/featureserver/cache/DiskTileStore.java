@@ -0,0 +1,286 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The disk tier of a {@link TileCache}: tiles are stored as files under a directory, as z/x/y[-variant].mvt. The
+ * total size of the files is bounded; when a new tile does not fit, the least recently used tiles are removed.
+ * <p>
+ * The index of the stored tiles is kept in memory. It is rebuilt from the directory when the store is created, so
+ * tiles survive a restart; their age is derived from the modification time of the files.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class DiskTileStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(DiskTileStore.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    private final long timeToLive;
+    // access order, so the eldest entry is the least recently used one
+    private final LinkedHashMap<TileKey, Entry> index = new LinkedHashMap<TileKey, Entry>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * @param directory  the directory in which the tiles are stored. It is created if it does not exist.
+     * @param maxBytes   the maximum total size of the stored tiles
+     * @param timeToLive the time to live of the tiles in milliseconds. A value <= 0 means that tiles do not expire.
+     */
+    DiskTileStore(File directory, long maxBytes, long timeToLive) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLive;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warn("Unable to create tile cache directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * @param key the key of the tile
+     * @return the stored tile, or null if it is not stored or has expired
+     */
+    StoredTile get(TileKey key) {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(now())) {
+                removeEntry(key);
+                return null;
+            }
+        }
+        // Read outside the lock; if the tile is removed in the meantime, this is simply a miss.
+        try {
+            return new StoredTile(readFile(new File(directory, key.getPath())), entry.expiresAt);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a tile, removing the least recently used tiles if the maximum size is exceeded. Tiles that are larger
+     * than the maximum size are not stored.
+     *
+     * @param key  the key of the tile
+     * @param tile the encoded tile
+     */
+    void put(TileKey key, byte[] tile) {
+        if (tile.length > maxBytes) {
+            return;
+        }
+        File target = new File(directory, key.getPath());
+        File temp = null;
+        try {
+            // Written to a temporary file first, so a reader never sees a partially written tile.
+            temp = File.createTempFile("tile", TEMP_SUFFIX, directory);
+            writeFile(temp, tile);
+            synchronized (this) {
+                removeEntry(key);
+                File parent = target.getParentFile();
+                if ((!parent.isDirectory() && !parent.mkdirs()) || !temp.renameTo(target)) {
+                    throw new IOException("Unable to move tile to " + target);
+                }
+                temp = null;
+                index.put(key, new Entry(tile.length, expiresAt(now())));
+                totalBytes += tile.length;
+                Iterator<Map.Entry<TileKey, Entry>> eldest = index.entrySet().iterator();
+                while (totalBytes > maxBytes && eldest.hasNext()) {
+                    Map.Entry<TileKey, Entry> evicted = eldest.next();
+                    eldest.remove();
+                    totalBytes -= evicted.getValue().size;
+                    deleteFile(evicted.getKey());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store tile " + key + " in " + directory + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @param key the key of the tile to remove
+     * @return true if the tile was stored
+     */
+    synchronized boolean remove(TileKey key) {
+        return removeEntry(key);
+    }
+
+    /**
+     * @return a snapshot of the keys of the stored tiles
+     */
+    synchronized List<TileKey> keys() {
+        return new ArrayList<TileKey>(index.keySet());
+    }
+
+    /**
+     * @return the total size of the stored tiles in bytes
+     */
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the current time in milliseconds. Can be overridden in tests.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private boolean removeEntry(TileKey key) {
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        totalBytes -= entry.size;
+        deleteFile(key);
+        return true;
+    }
+
+    private void deleteFile(TileKey key) {
+        File file = new File(directory, key.getPath());
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete cached tile " + file);
+        }
+    }
+
+    private long expiresAt(long storedAt) {
+        return timeToLive > 0 ? storedAt + timeToLive : Long.MAX_VALUE;
+    }
+
+    /**
+     * Rebuilds the index from the tiles in the directory. Expired tiles and leftover temporary files are removed;
+     * the other tiles are indexed from old to new, so the oldest tiles are evicted first.
+     */
+    private void load() {
+        List<File> files = new ArrayList<File>();
+        List<TileKey> keys = new ArrayList<TileKey>();
+        File[] zDirectories = directory.listFiles();
+        if (zDirectories == null) {
+            return;
+        }
+        for (File zDirectory : zDirectories) {
+            if (zDirectory.isFile() && zDirectory.getName().endsWith(TEMP_SUFFIX)) {
+                zDirectory.delete();
+                continue;
+            }
+            File[] xDirectories = zDirectory.listFiles();
+            for (int i = 0; xDirectories != null && i < xDirectories.length; i++) {
+                File[] tileFiles = xDirectories[i].listFiles();
+                for (int j = 0; tileFiles != null && j < tileFiles.length; j++) {
+                    TileKey key = TileKey.fromPath(zDirectory.getName(), xDirectories[i].getName(),
+                                                   tileFiles[j].getName());
+                    if (key != null) {
+                        files.add(tileFiles[j]);
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+        final long[] modified = new long[files.size()];
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            modified[i] = files.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : modified[a] == modified[b] ? 0 : 1;
+            }
+        });
+        long now = now();
+        for (Integer i : order) {
+            Entry entry = new Entry(files.get(i).length(), expiresAt(modified[i]));
+            if (entry.isExpired(now) || totalBytes + entry.size > maxBytes) {
+                files.get(i).delete();
+            } else {
+                index.put(keys.get(i), entry);
+                totalBytes += entry.size;
+            }
+        }
+        LOGGER.info(String.format("Tile cache %s: %d tiles (%d bytes) loaded", directory, index.size(), totalBytes));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * A tile read from the store.
+     */
+    static final class StoredTile {
+
+        final byte[] data;
+        final long expiresAt;
+
+        StoredTile(byte[] data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long expiresAt;
+
+        Entry(long size, long expiresAt) {
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
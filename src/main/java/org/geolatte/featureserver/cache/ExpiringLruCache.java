@@ -0,0 +1,181 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded, threadsafe cache that evicts the least recently used entry when it is full. Entries can also be given a
+ * time to live, after which they are no longer returned.
+ * <p>
+ * The cache keeps track of the number of hits and misses, so its effectiveness can be monitored.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long defaultTimeToLive;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxEntries        the maximum number of entries in the cache
+     * @param defaultTimeToLive the time to live, in milliseconds, of entries that are put without an explicit time
+     *                          to live. A value <= 0 means that these entries do not expire.
+     */
+    public ExpiringLruCache(final int maxEntries, long defaultTimeToLive) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of entries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.defaultTimeToLive = defaultTimeToLive;
+        // access order, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value cached for the given key, or null if there is none or it has expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.isExpired(now())) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Caches a value with the default time to live.
+     *
+     * @param key   the key of the value
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        put(key, value, defaultTimeToLive);
+    }
+
+    /**
+     * Caches a value with the given time to live.
+     *
+     * @param key        the key of the value
+     * @param value      the value to cache
+     * @param timeToLive the time to live in milliseconds. A value <= 0 means that the entry does not expire.
+     */
+    public synchronized void put(K key, V value, long timeToLive) {
+        long expiresAt = timeToLive > 0 ? now() + timeToLive : Long.MAX_VALUE;
+        entries.put(key, new CacheEntry<V>(value, expiresAt));
+    }
+
+    /**
+     * @param key the key of the entry to remove
+     * @return the value that was cached for the key, or null
+     */
+    public synchronized V remove(K key) {
+        CacheEntry<V> entry = entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return a snapshot of the keys currently in the cache, least recently used first
+     */
+    public synchronized List<K> keys() {
+        return new ArrayList<K>(entries.keySet());
+    }
+
+    /**
+     * @return the number of entries in the cache, including expired entries that were not yet removed
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of entries in the cache
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the number of lookups that returned a value
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that did not return a value
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the current time in milliseconds. Can be overridden in tests.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the serialized responses of a table, gzipped, keyed by the normalized request parameters. Every cached
+ * response has a strong entity tag, so clients that already have it can be answered with 304 Not Modified without
+ * touching the database.
+ * <p>
+ * Cached responses are not invalidated when the data changes; they expire after their time to live, or can be purged
+ * explicitly.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResultCache {
+
+    private static final String INSTANCE_ID = Long.toString(new Random().nextLong() & Long.MAX_VALUE, 36);
+    private static final AtomicLong ETAG_COUNTER = new AtomicLong();
+
+    private final ExpiringLruCache<String, CachedResult> entries;
+    private final int maxEntryBytes;
+
+    /**
+     * @param maxEntries    the maximum number of cached responses
+     * @param maxEntryBytes the maximum size of a cached response, gzipped. Larger responses are not cached.
+     * @param timeToLive    the time to live of a response in milliseconds. A value <= 0 means that responses do not
+     *                      expire.
+     */
+    public ResultCache(int maxEntries, int maxEntryBytes, long timeToLive) {
+        this.entries = new ExpiringLruCache<String, CachedResult>(maxEntries, timeToLive);
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * Generates a new entity tag. Tags are unique, also across restarts and servers, so a tag identifies exactly
+     * one response body.
+     *
+     * @return a new entity tag value
+     */
+    public static String newEtag() {
+        return INSTANCE_ID + "-" + Long.toString(System.currentTimeMillis(), 36) + "-"
+                + Long.toString(ETAG_COUNTER.incrementAndGet(), 36);
+    }
+
+    /**
+     * @param key the normalized request parameters
+     * @return the cached response, or null if there is none or it has expired
+     */
+    public CachedResult get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches a response, unless it exceeds the maximum size.
+     *
+     * @param key    the normalized request parameters
+     * @param result the response
+     */
+    public void put(String key, CachedResult result) {
+        if (result.getGzipped().length <= maxEntryBytes) {
+            entries.put(key, result);
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     *
+     * @return the number of responses removed
+     */
+    public int purge() {
+        int purged = 0;
+        for (String key : entries.keys()) {
+            purged += entries.remove(key) == null ? 0 : 1;
+        }
+        return purged;
+    }
+
+    /**
+     * @return the maximum size of a cached response, gzipped
+     */
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @return the number of cached responses, including expired responses that were not yet removed
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A cached response.
+     */
+    public static final class CachedResult {
+
+        private final byte[] gzipped;
+        private final String etag;
+
+        /**
+         * @param gzipped the gzipped response body
+         * @param etag    the entity tag of the response
+         */
+        public CachedResult(byte[] gzipped, String etag) {
+            this.gzipped = gzipped;
+            this.etag = etag;
+        }
+
+        /**
+         * @return the gzipped response body
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        /**
+         * @return the entity tag of the response
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
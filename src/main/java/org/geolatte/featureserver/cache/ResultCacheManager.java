@@ -0,0 +1,90 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.config.TableConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives access to the result caches of the tables. A table's cache is created when it is first needed, with the
+ * ResultCache settings of the table (see {@link TableConfiguration}). Changes to these settings take effect after a
+ * restart.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResultCacheManager {
+
+    private final Map<String, ResultCache> caches = new HashMap<String, ResultCache>();
+
+    /**
+     * @return the single instance of the manager
+     */
+    public static ResultCacheManager getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Lazy and threadsafe implementation of singleton. Solution of Bill Pugh.
+     */
+    private static class SingletonHolder {
+        private static final ResultCacheManager INSTANCE = new ResultCacheManager();
+    }
+
+    private ResultCacheManager() {
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the result cache of the table, or null if its results are not cached
+     * @throws org.geolatte.featureserver.config.ConfigurationException (unchecked) if the configuration is invalid
+     */
+    public synchronized ResultCache getCache(String tableName) {
+        ResultCache cache = caches.get(tableName);
+        if (cache == null) {
+            TableConfiguration configuration = FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+            if (configuration.getResultCacheMaxEntries() == 0) {
+                return null;
+            }
+            cache = new ResultCache(configuration.getResultCacheMaxEntries(),
+                                    configuration.getResultCacheMaxEntrySize() * 1024,
+                                    configuration.getResultCacheTtl() * 1000L);
+            caches.put(tableName, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Removes the cached results of a table.
+     *
+     * @param tableName the name of the table
+     * @return the number of results removed
+     * @throws org.geolatte.featureserver.config.ConfigurationException (unchecked) if the configuration is invalid
+     */
+    public int purge(String tableName) {
+        ResultCache cache = getCache(tableName);
+        return cache == null ? 0 : cache.purge();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Caches the encoded tiles of a table in two tiers: a bounded in-memory LRU cache in front of a larger, bounded
+ * store on disk. Tiles found on disk are promoted to memory. Either tier can be disabled.
+ * <p>
+ * Cached tiles are not invalidated when the data changes; they expire after their time to live, or can be purged
+ * explicitly with {@link #purge(Envelope, TileEnvelopes)}.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TileCache {
+
+    /**
+     * Gives the area that determines the content of a tile.
+     */
+    public interface TileEnvelopes {
+
+        /**
+         * @param key a tile
+         * @return the area of which the features end up in the tile, so including its buffer
+         * @throws IllegalArgumentException if the tile is not part of the grid
+         */
+        Envelope getEnvelope(TileKey key);
+    }
+
+    private final ExpiringLruCache<TileKey, byte[]> memory;
+    private final DiskTileStore disk;
+
+    /**
+     * @param maxMemoryTiles the maximum number of tiles kept in memory. If 0, tiles are not kept in memory.
+     * @param directory      the directory of the disk tier
+     * @param maxDiskBytes   the maximum total size of the tiles on disk. If 0, tiles are not stored on disk.
+     * @param timeToLive     the time to live of a tile in milliseconds. A value <= 0 means that tiles do not expire.
+     */
+    public TileCache(int maxMemoryTiles, File directory, long maxDiskBytes, long timeToLive) {
+        this.memory = maxMemoryTiles > 0 ? new ExpiringLruCache<TileKey, byte[]>(maxMemoryTiles, timeToLive) : null;
+        this.disk = maxDiskBytes > 0 ? new DiskTileStore(directory, maxDiskBytes, timeToLive) : null;
+    }
+
+    /**
+     * @param key the key of the tile
+     * @return the cached tile, or null if it is not cached or has expired
+     */
+    public byte[] get(TileKey key) {
+        byte[] tile = memory == null ? null : memory.get(key);
+        if (tile != null || disk == null) {
+            return tile;
+        }
+        DiskTileStore.StoredTile stored = disk.get(key);
+        if (stored == null) {
+            return null;
+        }
+        if (memory != null) {
+            // Keep the expiry of the stored tile; a time to live of 0 would mean no expiry at all.
+            long remaining = stored.expiresAt - System.currentTimeMillis();
+            if (stored.expiresAt == Long.MAX_VALUE) {
+                memory.put(key, stored.data, 0);
+            } else if (remaining > 0) {
+                memory.put(key, stored.data, remaining);
+            }
+        }
+        return stored.data;
+    }
+
+    /**
+     * Caches a tile in both tiers.
+     *
+     * @param key  the key of the tile
+     * @param tile the encoded tile
+     */
+    public void put(TileKey key, byte[] tile) {
+        if (memory != null) {
+            memory.put(key, tile);
+        }
+        if (disk != null) {
+            disk.put(key, tile);
+        }
+    }
+
+    /**
+     * Removes the tiles that cover (part of) the given area from both tiers.
+     *
+     * @param area      the area, or null to remove all tiles
+     * @param envelopes gives the area each tile covers. Not used if area is null.
+     * @return the number of tiles removed
+     */
+    public int purge(Envelope area, TileEnvelopes envelopes) {
+        Set<TileKey> keys = new LinkedHashSet<TileKey>();
+        if (memory != null) {
+            keys.addAll(memory.keys());
+        }
+        if (disk != null) {
+            keys.addAll(disk.keys());
+        }
+        int purged = 0;
+        for (TileKey key : keys) {
+            if (area == null || covers(key, area, envelopes)) {
+                boolean removed = memory != null && memory.remove(key) != null;
+                removed = (disk != null && disk.remove(key)) || removed;
+                purged += removed ? 1 : 0;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * @return the number of tiles in memory
+     */
+    public int getMemoryTileCount() {
+        return memory == null ? 0 : memory.size();
+    }
+
+    /**
+     * @return the number of tiles on disk
+     */
+    public int getDiskTileCount() {
+        return disk == null ? 0 : disk.keys().size();
+    }
+
+    private boolean covers(TileKey key, Envelope area, TileEnvelopes envelopes) {
+        try {
+            return envelopes.getEnvelope(key).intersects(area);
+        } catch (IllegalArgumentException e) {
+            // The tile is no longer part of the grid, so it will never be requested again
+            return true;
+        }
+    }
+}
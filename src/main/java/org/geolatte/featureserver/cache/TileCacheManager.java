@@ -0,0 +1,112 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.config.TableConfiguration;
+import org.geolatte.featureserver.config.TileConfiguration;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives access to the tile caches of the tables. A table's cache is created when it is first needed, with the
+ * TileCache settings of the table (see {@link TableConfiguration}). Changes to these settings take effect after a
+ * restart.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TileCacheManager {
+
+    private final Map<String, TileCache> caches = new HashMap<String, TileCache>();
+
+    /**
+     * @return the single instance of the manager
+     */
+    public static TileCacheManager getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Lazy and threadsafe implementation of singleton. Solution of Bill Pugh.
+     */
+    private static class SingletonHolder {
+        private static final TileCacheManager INSTANCE = new TileCacheManager();
+    }
+
+    private TileCacheManager() {
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the tile cache of the table, or null if its tiles are not cached
+     * @throws org.geolatte.featureserver.config.ConfigurationException (unchecked) if the configuration is invalid
+     */
+    public synchronized TileCache getCache(String tableName) {
+        TileCache cache = caches.get(tableName);
+        if (cache == null) {
+            TableConfiguration configuration = FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+            if (!configuration.isTileCacheEnabled()) {
+                return null;
+            }
+            File directory = new File(FeatureServerConfiguration.getInstance().getTileConfiguration().getCacheDirectory(),
+                                      toDirectoryName(tableName));
+            cache = new TileCache(configuration.getTileCacheMemoryTiles(),
+                                  directory,
+                                  configuration.getTileCacheDiskSize() * 1024L * 1024L,
+                                  configuration.getTileCacheTtl() * 1000L);
+            caches.put(tableName, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Removes the cached tiles of a table that cover (part of) the given area.
+     *
+     * @param tableName the name of the table
+     * @param area      the area, or null to remove all tiles of the table
+     * @return the number of tiles removed
+     * @throws org.geolatte.featureserver.config.ConfigurationException (unchecked) if the configuration is invalid
+     */
+    public int purge(String tableName, Envelope area) {
+        TileCache cache = getCache(tableName);
+        if (cache == null) {
+            return 0;
+        }
+        final TileConfiguration tiles = FeatureServerConfiguration.getInstance().getTileConfiguration();
+        return cache.purge(area, new TileCache.TileEnvelopes() {
+            public Envelope getEnvelope(TileKey key) {
+                return tiles.getBufferedTileEnvelope(key.getZ(), key.getX(), key.getY());
+            }
+        });
+    }
+
+    /**
+     * Table names are used as is, apart from characters that are not safe in a file name.
+     */
+    private static String toDirectoryName(String tableName) {
+        return tableName.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies a cached tile of a table: its position in the tile grid and the variant of the request that produced
+ * it. The variant covers the request parameters that change the content of a tile, such as a cql filter or the
+ * selected columns. It is only kept as a hash, so that it can be part of a file name.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public final class TileKey {
+
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d+)(?:-([0-9a-f]{40}))?\\.mvt");
+
+    private final int z;
+    private final int x;
+    private final int y;
+    private final String variantHash;
+
+    /**
+     * @param z       the zoom level
+     * @param x       the column of the tile
+     * @param y       the row of the tile
+     * @param variant the request parameters that determine the content of the tile, or null if there are none
+     */
+    public TileKey(int z, int x, int y, String variant) {
+        this(z, x, y, variant == null || variant.length() == 0 ? "" : sha1(variant), true);
+    }
+
+    /**
+     * @param hashed distinguishes this constructor from the public one, variantHash is already hashed
+     */
+    private TileKey(int z, int x, int y, String variantHash, boolean hashed) {
+        this.z = z;
+        this.x = x;
+        this.y = y;
+        this.variantHash = variantHash;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return the path of the tile relative to the directory of a disk cache: z/x/y[-variant].mvt
+     */
+    String getPath() {
+        return z + "/" + x + "/" + y + (variantHash.length() == 0 ? "" : "-" + variantHash) + ".mvt";
+    }
+
+    /**
+     * The inverse of {@link #getPath()}.
+     *
+     * @return the key of the tile stored at the given path, or null if the path is not that of a tile
+     */
+    static TileKey fromPath(String zName, String xName, String fileName) {
+        Matcher matcher = FILE_NAME.matcher(fileName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            String hash = matcher.group(2);
+            return new TileKey(Integer.parseInt(zName), Integer.parseInt(xName), Integer.parseInt(matcher.group(1)),
+                               hash == null ? "" : hash, true);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) o;
+        return z == other.z && x == other.x && y == other.y && variantHash.equals(other.variantHash);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = z;
+        result = 31 * result + x;
+        result = 31 * result + y;
+        result = 31 * result + variantHash.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest) {
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.geolatte.common.transformer.ClosedTransformerChain;
 import org.geolatte.common.transformer.SimpleTransformerSink;
 import org.geolatte.common.transformer.SimpleTransformerSource;
 import org.geolatte.common.transformer.TransformerChainFactory;
+import org.geolatte.featureserver.dbase.CountMode;
 
 import java.util.*;
 
@@ -58,13 +59,39 @@ public class FeatureServerConfiguration {
 
     private static String STD_CONFIG_FILE_PROPERTY_NAME = "geolatte.fs.config";
 
+    private static final TableConfiguration DEFAULT_TABLE_CONFIGURATION = new TableConfiguration("*");
+
+    /**
+     * The default number of connections on which the database metadata of the tables is read while mapping.
+     */
+    public static final int DEFAULT_METADATA_THREADS = 4;
+
+    /**
+     * The default maximum number of table requests that wait to be admitted.
+     */
+    public static final int DEFAULT_ADMISSION_QUEUE_SIZE = 100;
+
+    /**
+     * The default number of seconds a table request waits to be admitted.
+     */
+    public static final int DEFAULT_ADMISSION_QUEUE_TIMEOUT = 10;
+
     private boolean error = false;
     private String errorMessage = null;
     private List<String> includeRules;
     private List<String> excludeRules;
     private Map<String, String> hibernateProperties = new HashMap<String, String>();
+    private List<TableConfiguration> tableConfigurations = new ArrayList<TableConfiguration>();
+    private TileConfiguration tileConfiguration = new TileConfiguration();
 
     private String dbaseSchema = null;
+    private MappingMode mappingMode = MappingMode.EAGER;
+    private int metadataThreads = DEFAULT_METADATA_THREADS;
+    private String mappingSnapshotFile = null;
+    private int mappingRefreshInterval = 0;
+    private int admissionMaxActive = 0;
+    private int admissionQueueSize = DEFAULT_ADMISSION_QUEUE_SIZE;
+    private int admissionQueueTimeout = DEFAULT_ADMISSION_QUEUE_TIMEOUT;
     private String propertyFileName;
 
     /**
@@ -167,6 +194,36 @@ public class FeatureServerConfiguration {
                 String propertyValue = el.getTextTrim();
                 hibernateProperties.put(propertyName, propertyValue);
             }
+            List tableSettings = document.selectNodes("//FeatureServerConfig/Mapping/TableSettings/Table");
+            List<TableConfiguration> newTableConfigurations = new ArrayList<TableConfiguration>();
+            for (int i = 0; i < tableSettings.size(); i++) {
+                newTableConfigurations.add(parseTableConfiguration((Element) tableSettings.get(i)));
+            }
+            tableConfigurations = newTableConfigurations;
+            Element tiles = (Element) document.selectSingleNode("//FeatureServerConfig/Tiles");
+            tileConfiguration = tiles == null ? new TileConfiguration() : parseTileConfiguration(tiles);
+            Node startup = document.selectSingleNode("//FeatureServerConfig/Mapping/Startup");
+            Node threads = document.selectSingleNode("//FeatureServerConfig/Mapping/MetadataThreads");
+            Node refreshInterval = document.selectSingleNode("//FeatureServerConfig/Mapping/RefreshInterval");
+            try {
+                mappingMode = startup == null ? MappingMode.EAGER : MappingMode.fromString(startup.getText());
+                metadataThreads = threads == null ? DEFAULT_METADATA_THREADS : Integer.parseInt(threads.getText().trim());
+                if (metadataThreads <= 0) {
+                    throw new IllegalArgumentException("MetadataThreads must be positive");
+                }
+                mappingRefreshInterval = refreshInterval == null ? 0 : Integer.parseInt(refreshInterval.getText().trim());
+                if (mappingRefreshInterval < 0) {
+                    throw new IllegalArgumentException("RefreshInterval can not be negative");
+                }
+            } catch (IllegalArgumentException e) {
+                // also covers NumberFormatException
+                errorMessage = e.getMessage();
+                throw new ConfigurationException("Mapping: " + e.getMessage(), e);
+            }
+            parseAdmission((Element) document.selectSingleNode("//FeatureServerConfig/Admission"));
+            Node snapshotFile = document.selectSingleNode("//FeatureServerConfig/Mapping/SnapshotFile");
+            mappingSnapshotFile = snapshotFile == null || snapshotFile.getText().trim().length() == 0
+                                  ? null : snapshotFile.getText().trim();
             Node schema = document.selectSingleNode("//FeatureServerConfig/Mapping/Tables/Schema");
             if (schema != null) {
                 dbaseSchema = schema.getText();
@@ -184,6 +241,182 @@ public class FeatureServerConfiguration {
         }
     }
 
+    /**
+     * Parses the Admission section.
+     *
+     * @param el the Admission element, or null if it is absent
+     * @throws ConfigurationException if the section contains an invalid value
+     */
+    private void parseAdmission(Element el) throws ConfigurationException {
+        admissionMaxActive = 0;
+        admissionQueueSize = DEFAULT_ADMISSION_QUEUE_SIZE;
+        admissionQueueTimeout = DEFAULT_ADMISSION_QUEUE_TIMEOUT;
+        if (el == null) {
+            return;
+        }
+        try {
+            String maxActive = el.elementTextTrim("MaxActive");
+            if (maxActive != null) {
+                admissionMaxActive = Integer.parseInt(maxActive);
+            }
+            String queueSize = el.elementTextTrim("QueueSize");
+            if (queueSize != null) {
+                admissionQueueSize = Integer.parseInt(queueSize);
+            }
+            String queueTimeout = el.elementTextTrim("QueueTimeout");
+            if (queueTimeout != null) {
+                admissionQueueTimeout = Integer.parseInt(queueTimeout);
+            }
+            if (admissionMaxActive < 0 || admissionQueueSize < 0 || admissionQueueTimeout < 0) {
+                throw new IllegalArgumentException("MaxActive, QueueSize and QueueTimeout can not be negative");
+            }
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException
+            errorMessage = e.getMessage();
+            throw new ConfigurationException("Admission: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the settings of a Table element in the TableSettings section.
+     *
+     * @param el the element to parse
+     * @return the corresponding table configuration
+     * @throws ConfigurationException if the element has no name or contains an invalid value
+     */
+    private TableConfiguration parseTableConfiguration(Element el)
+            throws ConfigurationException {
+        String name = el.attributeValue("name");
+        if (name == null || name.trim().length() == 0) {
+            throw new ConfigurationException("TableSettings: Table element without name attribute");
+        }
+        TableConfiguration tableConfiguration = new TableConfiguration(name.trim());
+        try {
+            String count = el.elementTextTrim("Count");
+            if (count != null) {
+                tableConfiguration.setCountMode(CountMode.fromString(count));
+            }
+            String countCacheTtl = el.elementTextTrim("CountCacheTtl");
+            if (countCacheTtl != null) {
+                tableConfiguration.setCountCacheTtl(Integer.parseInt(countCacheTtl));
+            }
+            Element tileCache = el.element("TileCache");
+            if (tileCache != null) {
+                String memoryTiles = tileCache.elementTextTrim("MemoryTiles");
+                if (memoryTiles != null) {
+                    tableConfiguration.setTileCacheMemoryTiles(Integer.parseInt(memoryTiles));
+                }
+                String diskSize = tileCache.elementTextTrim("DiskSize");
+                if (diskSize != null) {
+                    tableConfiguration.setTileCacheDiskSize(Integer.parseInt(diskSize));
+                }
+                String ttl = tileCache.elementTextTrim("Ttl");
+                if (ttl != null) {
+                    tableConfiguration.setTileCacheTtl(Integer.parseInt(ttl));
+                }
+            }
+            Element resultCache = el.element("ResultCache");
+            if (resultCache != null) {
+                String maxEntries = resultCache.elementTextTrim("MaxEntries");
+                if (maxEntries != null) {
+                    tableConfiguration.setResultCacheMaxEntries(Integer.parseInt(maxEntries));
+                }
+                String maxEntrySize = resultCache.elementTextTrim("MaxEntrySize");
+                if (maxEntrySize != null) {
+                    tableConfiguration.setResultCacheMaxEntrySize(Integer.parseInt(maxEntrySize));
+                }
+                String ttl = resultCache.elementTextTrim("Ttl");
+                if (ttl != null) {
+                    tableConfiguration.setResultCacheTtl(Integer.parseInt(ttl));
+                }
+            }
+            String resident = el.elementTextTrim("Resident");
+            if (resident != null) {
+                tableConfiguration.setResident(Boolean.parseBoolean(resident));
+            }
+            String residentRefreshInterval = el.elementTextTrim("ResidentRefreshInterval");
+            if (residentRefreshInterval != null) {
+                tableConfiguration.setResidentRefreshInterval(Integer.parseInt(residentRefreshInterval));
+            }
+            Element distinctValues = el.element("DistinctValues");
+            if (distinctValues != null) {
+                String ttl = distinctValues.elementTextTrim("Ttl");
+                if (ttl != null) {
+                    tableConfiguration.setDistinctValuesTtl(Integer.parseInt(ttl));
+                }
+                String maxValues = distinctValues.elementTextTrim("MaxValues");
+                if (maxValues != null) {
+                    tableConfiguration.setDistinctValuesMaxValues(Integer.parseInt(maxValues));
+                }
+                String precompute = distinctValues.elementTextTrim("Precompute");
+                if (precompute != null) {
+                    List<String> properties = new ArrayList<String>();
+                    for (String property : precompute.split(",")) {
+                        if (property.trim().length() > 0) {
+                            properties.add(property.trim());
+                        }
+                    }
+                    tableConfiguration.setDistinctValuesPrecompute(properties);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException
+            throw new ConfigurationException(String.format("TableSettings for %s: %s", name, e.getMessage()), e);
+        }
+        LOGGER.info(String.format("Table settings added for \"%s\"", name));
+        return tableConfiguration;
+    }
+
+    /**
+     * Parses the Tiles element.
+     *
+     * @param el the element to parse
+     * @return the corresponding tile configuration
+     * @throws ConfigurationException if the element contains an invalid value
+     */
+    private TileConfiguration parseTileConfiguration(Element el)
+            throws ConfigurationException {
+        TileConfiguration configuration = new TileConfiguration();
+        try {
+            String originX = el.elementTextTrim("OriginX");
+            if (originX != null) {
+                configuration.setOriginX(Double.parseDouble(originX));
+            }
+            String originY = el.elementTextTrim("OriginY");
+            if (originY != null) {
+                configuration.setOriginY(Double.parseDouble(originY));
+            }
+            String size = el.elementTextTrim("Size");
+            if (size != null) {
+                configuration.setSize(Double.parseDouble(size));
+            }
+            String maxZoom = el.elementTextTrim("MaxZoom");
+            if (maxZoom != null) {
+                configuration.setMaxZoom(Integer.parseInt(maxZoom));
+            }
+            String extent = el.elementTextTrim("Extent");
+            if (extent != null) {
+                configuration.setExtent(Integer.parseInt(extent));
+            }
+            String buffer = el.elementTextTrim("Buffer");
+            if (buffer != null) {
+                configuration.setBuffer(Integer.parseInt(buffer));
+            }
+            String maxAge = el.elementTextTrim("MaxAge");
+            if (maxAge != null) {
+                configuration.setMaxAge(Integer.parseInt(maxAge));
+            }
+            String cacheDirectory = el.elementTextTrim("CacheDirectory");
+            if (cacheDirectory != null) {
+                configuration.setCacheDirectory(cacheDirectory);
+            }
+        } catch (IllegalArgumentException e) {
+            // also covers NumberFormatException
+            throw new ConfigurationException("Tiles: " + e.getMessage(), e);
+        }
+        return configuration;
+    }
+
     /**
      * Returns the list of tables that should be included according to this mappingconfiguration. If the configuration
      * contains an error, an empty list is returned.
@@ -228,6 +461,86 @@ public class FeatureServerConfiguration {
     }
 
 
+    /**
+     * @return when the tables are mapped
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public MappingMode getMappingMode() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return mappingMode;
+    }
+
+    /**
+     * @return the number of connections on which the database metadata of the tables is read in parallel while
+     *         mapping
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public int getMetadataThreads() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return metadataThreads;
+    }
+
+    /**
+     * @return the number of seconds between two checks for tables that were added, dropped or changed, or 0 if the
+     *         mapping is only refreshed on request
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public int getMappingRefreshInterval() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return mappingRefreshInterval;
+    }
+
+    /**
+     * @return the path of the file in which the database metadata of the mapped tables is kept between restarts, or
+     *         null if it is read from the database at every start
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public String getMappingSnapshotFile() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return mappingSnapshotFile;
+    }
+
+    /**
+     * @return the maximum number of table requests that are active at the same time, or 0 if it is not limited
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public int getAdmissionMaxActive() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return admissionMaxActive;
+    }
+
+    /**
+     * @return the maximum number of table requests that wait to be admitted
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public int getAdmissionQueueSize() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return admissionQueueSize;
+    }
+
+    /**
+     * @return the number of seconds a table request waits to be admitted before it is refused
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public int getAdmissionQueueTimeout() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " +  getErrorMessage());
+        }
+        return admissionQueueTimeout;
+    }
+
     /**
      * @return all hibernate property-names in the configuration file
      * @throws ConfigurationException (unchecked) if this configuration object is invalid.
@@ -252,6 +565,37 @@ public class FeatureServerConfiguration {
         return hibernateProperties.get(propertyName);
     }
 
+    /**
+     * Returns the settings for the given table. These are the settings of the first Table element in the
+     * TableSettings section whose name matches the table, or the default settings if none matches.
+     *
+     * @param tableName the name of the table
+     * @return the settings for the table, never null
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public TableConfiguration getTableConfiguration(String tableName) {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " + getErrorMessage());
+        }
+        for (TableConfiguration tableConfiguration : tableConfigurations) {
+            if (tableConfiguration.appliesTo(tableName)) {
+                return tableConfiguration;
+            }
+        }
+        return DEFAULT_TABLE_CONFIGURATION;
+    }
+
+    /**
+     * @return the settings for the vector tiles, never null
+     * @throws ConfigurationException (unchecked) if this configuration object is invalid.
+     */
+    public TileConfiguration getTileConfiguration() {
+        if (isInvalid()) {
+            throw new ConfigurationException("Configuration invalid: " + getErrorMessage());
+        }
+        return tileConfiguration;
+    }
+
     /**
      * @return whether this configuration is currently invalid. A configuration is invalid if the underlying XML file
      *         does not parse, or if the configuration is in the middle of a reparse.
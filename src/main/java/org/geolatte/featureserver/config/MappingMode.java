@@ -0,0 +1,64 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.config;
+
+/**
+ * Determines when the tables are mapped, as set in the Mapping/Startup element of the configuration.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public enum MappingMode {
+
+    /**
+     * All tables are mapped before the first request is served.
+     */
+    EAGER,
+
+    /**
+     * The tables are mapped in batches in the background. Requests for tables that are not mapped yet are refused
+     * with 503 Service Unavailable.
+     */
+    BACKGROUND,
+
+    /**
+     * A table is mapped in the background when it is first accessed. Requests for it are refused with 503 Service
+     * Unavailable until it is mapped; tables that are first accessed together are mapped in one batch.
+     */
+    LAZY;
+
+    /**
+     * Parses a mapping mode, ignoring case.
+     *
+     * @param value the value to parse, one of "eager", "background" or "lazy"
+     * @return the corresponding mapping mode
+     * @throws IllegalArgumentException if the value is not a valid mapping mode
+     */
+    public static MappingMode fromString(String value) {
+        for (MappingMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value == null ? null : value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown mapping mode: " + value + " (expected eager, background or lazy)");
+    }
+}
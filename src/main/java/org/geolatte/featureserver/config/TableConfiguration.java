@@ -0,0 +1,305 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.config;
+
+import org.geolatte.featureserver.dbase.CountMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The settings for a table or a group of tables, as specified in a Table element in the TableSettings part of the
+ * configuration file. The name of the element may contain '*' as a wildcard, like the include and exclude rules.
+ * Settings that are not specified have a default value.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TableConfiguration {
+
+    /**
+     * The default time, in seconds, an exact count is cached.
+     */
+    public static final int DEFAULT_COUNT_CACHE_TTL = 60;
+
+    /**
+     * The default time, in seconds, a tile is cached.
+     */
+    public static final int DEFAULT_TILE_CACHE_TTL = 3600;
+
+    /**
+     * The default maximum size, in kilobytes, of a cached response.
+     */
+    public static final int DEFAULT_RESULT_CACHE_MAX_ENTRY_SIZE = 1024;
+
+    /**
+     * The default time, in seconds, a response is cached.
+     */
+    public static final int DEFAULT_RESULT_CACHE_TTL = 60;
+
+    /**
+     * The default time, in seconds, the distinct values of a property are cached.
+     */
+    public static final int DEFAULT_DISTINCT_VALUES_TTL = 60;
+
+    /**
+     * The default maximum number of distinct values of a property that are cached.
+     */
+    public static final int DEFAULT_DISTINCT_VALUES_MAX_VALUES = 10000;
+
+    private final String namePattern;
+    private final Pattern pattern;
+    private CountMode countMode = CountMode.EXACT;
+    private int countCacheTtl = DEFAULT_COUNT_CACHE_TTL;
+    private int tileCacheMemoryTiles = 0;
+    private int tileCacheDiskSize = 0;
+    private int tileCacheTtl = DEFAULT_TILE_CACHE_TTL;
+    private int resultCacheMaxEntries = 0;
+    private int resultCacheMaxEntrySize = DEFAULT_RESULT_CACHE_MAX_ENTRY_SIZE;
+    private int resultCacheTtl = DEFAULT_RESULT_CACHE_TTL;
+    private boolean resident = false;
+    private int residentRefreshInterval = 0;
+    private int distinctValuesTtl = DEFAULT_DISTINCT_VALUES_TTL;
+    private int distinctValuesMaxValues = DEFAULT_DISTINCT_VALUES_MAX_VALUES;
+    private List<String> distinctValuesPrecompute = Collections.emptyList();
+
+    /**
+     * Creates a configuration with default settings.
+     *
+     * @param namePattern the name of the table(s) this configuration applies to, '*' being a wildcard
+     */
+    TableConfiguration(String namePattern) {
+        this.namePattern = namePattern;
+        StringBuilder regex = new StringBuilder();
+        String[] parts = namePattern.split("\\*", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(parts[i]));
+        }
+        this.pattern = Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return true if this configuration applies to the given table
+     */
+    public boolean appliesTo(String tableName) {
+        return tableName != null && pattern.matcher(tableName).matches();
+    }
+
+    /**
+     * @return the name of the table(s) this configuration applies to, '*' being a wildcard
+     */
+    public String getNamePattern() {
+        return namePattern;
+    }
+
+    /**
+     * @return the default way the total number of features in a response is determined, see the count parameter
+     *         of the table service.
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    /**
+     * @return the time in seconds an exact count is cached. If 0, counts are not cached.
+     */
+    public int getCountCacheTtl() {
+        return countCacheTtl;
+    }
+
+    void setCountCacheTtl(int countCacheTtl) {
+        this.countCacheTtl = countCacheTtl;
+    }
+
+    /**
+     * @return the maximum number of vector tiles of the table that are cached in memory. If 0 (the default), tiles
+     *         are not cached in memory.
+     */
+    public int getTileCacheMemoryTiles() {
+        return tileCacheMemoryTiles;
+    }
+
+    void setTileCacheMemoryTiles(int tileCacheMemoryTiles) {
+        if (tileCacheMemoryTiles < 0) {
+            throw new IllegalArgumentException("MemoryTiles can not be negative");
+        }
+        this.tileCacheMemoryTiles = tileCacheMemoryTiles;
+    }
+
+    /**
+     * @return the maximum size, in megabytes, of the vector tiles of the table that are cached on disk. If 0 (the
+     *         default), tiles are not cached on disk.
+     */
+    public int getTileCacheDiskSize() {
+        return tileCacheDiskSize;
+    }
+
+    void setTileCacheDiskSize(int tileCacheDiskSize) {
+        if (tileCacheDiskSize < 0) {
+            throw new IllegalArgumentException("DiskSize can not be negative");
+        }
+        this.tileCacheDiskSize = tileCacheDiskSize;
+    }
+
+    /**
+     * @return the time in seconds a vector tile is cached. If 0, cached tiles do not expire.
+     */
+    public int getTileCacheTtl() {
+        return tileCacheTtl;
+    }
+
+    void setTileCacheTtl(int tileCacheTtl) {
+        if (tileCacheTtl < 0) {
+            throw new IllegalArgumentException("Ttl can not be negative");
+        }
+        this.tileCacheTtl = tileCacheTtl;
+    }
+
+    /**
+     * @return whether the vector tiles of the table are cached
+     */
+    public boolean isTileCacheEnabled() {
+        return tileCacheMemoryTiles > 0 || tileCacheDiskSize > 0;
+    }
+
+    /**
+     * @return the maximum number of JSON and CSV responses of the table that are cached. If 0 (the default),
+     *         responses are not cached.
+     */
+    public int getResultCacheMaxEntries() {
+        return resultCacheMaxEntries;
+    }
+
+    void setResultCacheMaxEntries(int resultCacheMaxEntries) {
+        if (resultCacheMaxEntries < 0) {
+            throw new IllegalArgumentException("MaxEntries can not be negative");
+        }
+        this.resultCacheMaxEntries = resultCacheMaxEntries;
+    }
+
+    /**
+     * @return the maximum size, in kilobytes, of a cached response after compression. Larger responses are not
+     *         cached.
+     */
+    public int getResultCacheMaxEntrySize() {
+        return resultCacheMaxEntrySize;
+    }
+
+    void setResultCacheMaxEntrySize(int resultCacheMaxEntrySize) {
+        if (resultCacheMaxEntrySize <= 0) {
+            throw new IllegalArgumentException("MaxEntrySize must be positive");
+        }
+        this.resultCacheMaxEntrySize = resultCacheMaxEntrySize;
+    }
+
+    /**
+     * @return the time in seconds a response is cached. If 0, cached responses do not expire.
+     */
+    public int getResultCacheTtl() {
+        return resultCacheTtl;
+    }
+
+    void setResultCacheTtl(int resultCacheTtl) {
+        if (resultCacheTtl < 0) {
+            throw new IllegalArgumentException("Ttl can not be negative");
+        }
+        this.resultCacheTtl = resultCacheTtl;
+    }
+
+    /**
+     * @return whether the table is loaded in memory at startup. Queries with a boundingbox and/or a simple cql
+     *         expression are then answered from memory instead of by the database.
+     */
+    public boolean isResident() {
+        return resident;
+    }
+
+    void setResident(boolean resident) {
+        this.resident = resident;
+    }
+
+    /**
+     * @return the time in seconds after which a resident table is reloaded from the database. If 0 (the default),
+     *         the table is only reloaded on request.
+     */
+    public int getResidentRefreshInterval() {
+        return residentRefreshInterval;
+    }
+
+    void setResidentRefreshInterval(int residentRefreshInterval) {
+        if (residentRefreshInterval < 0) {
+            throw new IllegalArgumentException("RefreshInterval can not be negative");
+        }
+        this.residentRefreshInterval = residentRefreshInterval;
+    }
+
+    /**
+     * @return the time in seconds the distinct values of a property are cached. If 0, they are not cached.
+     */
+    public int getDistinctValuesTtl() {
+        return distinctValuesTtl;
+    }
+
+    void setDistinctValuesTtl(int distinctValuesTtl) {
+        if (distinctValuesTtl < 0) {
+            throw new IllegalArgumentException("Ttl can not be negative");
+        }
+        this.distinctValuesTtl = distinctValuesTtl;
+    }
+
+    /**
+     * @return the maximum number of distinct values of a property that are cached. Properties with more values are
+     *         queried each time.
+     */
+    public int getDistinctValuesMaxValues() {
+        return distinctValuesMaxValues;
+    }
+
+    void setDistinctValuesMaxValues(int distinctValuesMaxValues) {
+        if (distinctValuesMaxValues <= 0) {
+            throw new IllegalArgumentException("MaxValues must be positive");
+        }
+        this.distinctValuesMaxValues = distinctValuesMaxValues;
+    }
+
+    /**
+     * @return the properties whose distinct values are computed in the background at startup and refreshed before
+     *         they expire, so requests for them never wait for the database. Empty by default.
+     */
+    public List<String> getDistinctValuesPrecompute() {
+        return distinctValuesPrecompute;
+    }
+
+    void setDistinctValuesPrecompute(List<String> distinctValuesPrecompute) {
+        this.distinctValuesPrecompute = Collections.unmodifiableList(new ArrayList<String>(distinctValuesPrecompute));
+    }
+}
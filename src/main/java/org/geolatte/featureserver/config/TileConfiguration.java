@@ -0,0 +1,223 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.config;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.io.File;
+
+/**
+ * The settings for the vector tiles, as specified in the Tiles part of the configuration file. Tiles are cut from a
+ * quadtree grid in the coordinate system of the tables: at zoom level 0, a single square tile of {@link #getSize()}
+ * units covers the area below and to the right of the origin, and each following level splits every tile in four.
+ * Tile rows are counted downwards from the origin, as in the common XYZ scheme.
+ * <p>
+ * The default grid covers Flanders and Brussels in Lambert 72, with tiles of 1 meter at zoom level 18.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TileConfiguration {
+
+    public static final double DEFAULT_ORIGIN_X = 9928;
+    public static final double DEFAULT_ORIGIN_Y = 329072;
+    public static final double DEFAULT_SIZE = 262144;
+    public static final int DEFAULT_MAX_ZOOM = 20;
+    public static final int DEFAULT_EXTENT = 4096;
+    public static final int DEFAULT_BUFFER = 64;
+    public static final int DEFAULT_MAX_AGE = 3600;
+
+    private double originX = DEFAULT_ORIGIN_X;
+    private double originY = DEFAULT_ORIGIN_Y;
+    private double size = DEFAULT_SIZE;
+    private int maxZoom = DEFAULT_MAX_ZOOM;
+    private int extent = DEFAULT_EXTENT;
+    private int buffer = DEFAULT_BUFFER;
+    private int maxAge = DEFAULT_MAX_AGE;
+    private String cacheDirectory = null;
+
+    /**
+     * Creates a configuration with default settings.
+     */
+    TileConfiguration() {
+    }
+
+    /**
+     * Returns the area covered by a tile.
+     *
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left of the grid
+     * @param y the row of the tile, counted from the top of the grid
+     * @return the envelope of the tile, in the coordinate system of the tables
+     * @throws IllegalArgumentException if the tile is not part of the grid
+     */
+    public Envelope getTileEnvelope(int z, int x, int y) {
+        if (z < 0 || z > maxZoom) {
+            throw new IllegalArgumentException("Zoom level must be between 0 and " + maxZoom);
+        }
+        long tiles = 1L << z;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            throw new IllegalArgumentException(String.format("Tile %d/%d/%d is outside of the grid", z, x, y));
+        }
+        double tileSize = size / tiles;
+        double minX = originX + x * tileSize;
+        double maxY = originY - y * tileSize;
+        return new Envelope(minX, minX + tileSize, maxY - tileSize, maxY);
+    }
+
+    /**
+     * Returns the area of which the features end up in a tile: the tile and its buffer.
+     *
+     * @param z the zoom level
+     * @param x the column of the tile, counted from the left of the grid
+     * @param y the row of the tile, counted from the top of the grid
+     * @return the envelope of the tile, expanded with its buffer
+     * @throws IllegalArgumentException if the tile is not part of the grid
+     */
+    public Envelope getBufferedTileEnvelope(int z, int x, int y) {
+        Envelope envelope = getTileEnvelope(z, x, y);
+        envelope.expandBy(envelope.getWidth() * buffer / extent);
+        return envelope;
+    }
+
+    /**
+     * Returns the size of a tile coordinate unit at a zoom level: the width of a tile divided by the extent. Detail
+     * below this size is lost when the geometries are encoded in a tile of that level.
+     *
+     * @param z the zoom level, may be above the maximum zoom level
+     * @return the size, in the units of the coordinate system
+     * @throws IllegalArgumentException if the zoom level is negative
+     */
+    public double getResolution(int z) {
+        if (z < 0) {
+            throw new IllegalArgumentException("The zoom level can not be negative");
+        }
+        return size / Math.pow(2, z) / extent;
+    }
+
+    /**
+     * @return the x coordinate of the top left corner of the grid
+     */
+    public double getOriginX() {
+        return originX;
+    }
+
+    void setOriginX(double originX) {
+        this.originX = originX;
+    }
+
+    /**
+     * @return the y coordinate of the top left corner of the grid
+     */
+    public double getOriginY() {
+        return originY;
+    }
+
+    void setOriginY(double originY) {
+        this.originY = originY;
+    }
+
+    /**
+     * @return the width and height of the tile at zoom level 0, in the units of the coordinate system
+     */
+    public double getSize() {
+        return size;
+    }
+
+    void setSize(double size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return the highest zoom level for which tiles are served
+     */
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    void setMaxZoom(int maxZoom) {
+        if (maxZoom < 0 || maxZoom > 30) {
+            throw new IllegalArgumentException("MaxZoom must be between 0 and 30");
+        }
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * @return the number of integer coordinate units along each side of a tile
+     */
+    public int getExtent() {
+        return extent;
+    }
+
+    void setExtent(int extent) {
+        if (extent <= 0) {
+            throw new IllegalArgumentException("Extent must be positive");
+        }
+        this.extent = extent;
+    }
+
+    /**
+     * @return the width, in tile coordinate units, of the border around a tile in which geometries are kept, so
+     *         lines and polygon outlines that cross tile boundaries are rendered without seams.
+     */
+    public int getBuffer() {
+        return buffer;
+    }
+
+    void setBuffer(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("Buffer can not be negative");
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the number of seconds clients and proxies may cache a tile
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    void setMaxAge(int maxAge) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("MaxAge can not be negative");
+        }
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return the directory under which the disk tier of the tile caches stores its tiles, a subdirectory per
+     *         table. Defaults to geolatte-featureserver-tiles in the temporary directory of the JVM.
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory != null ? cacheDirectory
+                : new File(System.getProperty("java.io.tmpdir"), "geolatte-featureserver-tiles").getPath();
+    }
+
+    void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.arrow;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+import org.geolatte.featureserver.dataformats.flatbuffers.FlatBufferBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes rows in the Apache Arrow IPC streaming format: a schema message, followed by record batches of at most
+ * {@link #getBatchSize()} rows each, followed by the end of stream marker. Rows are collected column by column and
+ * every full batch is written immediately, so memory use depends on the batch size only.
+ * <p>
+ * The column types are derived from the java types of the properties: integral numbers map to signed integers of the
+ * same width, other numbers to floating point, booleans to Bool, dates to millisecond timestamps and all other
+ * values to Utf8. Geometries are written as little endian WKB in a Binary column with the geoarrow.wkb extension
+ * type, so GeoArrow aware readers recognize them.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ArrowStreamWriter {
+
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+
+    // Message.fbs
+    private static final short METADATA_VERSION_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+    // Schema.fbs, Type union
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_FLOATING_POINT = 3;
+    private static final byte TYPE_BINARY = 4;
+    private static final byte TYPE_UTF8 = 5;
+    private static final byte TYPE_BOOL = 6;
+    private static final byte TYPE_TIMESTAMP = 10;
+    private static final short PRECISION_SINGLE = 1;
+    private static final short PRECISION_DOUBLE = 2;
+    private static final short TIME_UNIT_MILLISECOND = 1;
+
+    private static final int CONTINUATION = 0xFFFFFFFF;
+
+    private final OutputStream output;
+    private final List<String> names;
+    private final Column[] columns;
+    private final int batchSize;
+    private final String crs;
+    private int rows = 0;
+    private final byte[] scratch = new byte[8];
+
+    /**
+     * @param output    the stream to write to
+     * @param names     the names of the columns
+     * @param types     the java types of the columns, coindexed with the names
+     * @param srid      the EPSG code of the coordinate system of the geometry columns, or 0 if unknown
+     * @param batchSize the maximum number of rows in a record batch
+     */
+    public ArrowStreamWriter(OutputStream output, List<String> names, List<Class<?>> types, int srid, int batchSize) {
+        if (names.size() != types.size()) {
+            throw new IllegalArgumentException("A type is required for every column");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.output = output;
+        this.names = names;
+        this.batchSize = batchSize;
+        this.crs = srid > 0 ? "EPSG:" + srid : null;
+        this.columns = new Column[types.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = createColumn(types.get(i), batchSize);
+        }
+    }
+
+    /**
+     * @return the maximum number of rows in a record batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Writes the schema message. Must be called once, before the first row is added.
+     *
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeSchema() throws IOException {
+        FlatBufferBuilder builder = new FlatBufferBuilder(4096);
+        int[] fields = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            int name = builder.createString(names.get(i));
+            int type = column.buildType(builder);
+            int children = builder.createOffsetVector(new int[0], 0);
+            int metadata = 0;
+            if (column instanceof GeometryColumn) {
+                int[] keyValues = new int[]{
+                        buildKeyValue(builder, "ARROW:extension:name", "geoarrow.wkb"),
+                        buildKeyValue(builder, "ARROW:extension:metadata",
+                                      crs == null ? "{}" : "{\"crs\":\"" + crs + "\",\"crs_type\":\"authority_code\"}")
+                };
+                metadata = builder.createOffsetVector(keyValues, keyValues.length);
+            }
+            builder.startTable(7);
+            builder.addOffset(0, name);
+            builder.addBoolean(1, true);
+            builder.addByte(2, column.typeId);
+            builder.addOffset(3, type);
+            builder.addOffset(5, children);
+            if (metadata != 0) {
+                builder.addOffset(6, metadata);
+            }
+            fields[i] = builder.endTable();
+        }
+        int fieldsVector = builder.createOffsetVector(fields, fields.length);
+        builder.startTable(4);
+        // Little endian is the default
+        builder.addOffset(1, fieldsVector);
+        int schema = builder.endTable();
+        writeMessage(builder, HEADER_SCHEMA, schema, 0);
+    }
+
+    /**
+     * Adds a row. A record batch is written as soon as it is full.
+     *
+     * @param values the values of the row, coindexed with the columns. Null values are allowed.
+     * @throws IOException if writing to the stream fails
+     */
+    public void addRow(Object[] values) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].set(rows, values[i]);
+        }
+        rows++;
+        if (rows == batchSize) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Writes the rows that were not written yet and the end of stream marker. The stream is flushed, not closed.
+     *
+     * @throws IOException if writing to the stream fails
+     */
+    public void finish() throws IOException {
+        if (rows > 0) {
+            writeBatch();
+        }
+        writeInt(CONTINUATION);
+        writeInt(0);
+        output.flush();
+    }
+
+    private void writeBatch() throws IOException {
+        int bufferCount = 0;
+        for (Column column : columns) {
+            bufferCount += column.bufferCount();
+        }
+        long[] offsets = new long[bufferCount];
+        long[] lengths = new long[bufferCount];
+        long bodyLength = 0;
+        int buffer = 0;
+        for (Column column : columns) {
+            for (int i = 0; i < column.bufferCount(); i++) {
+                offsets[buffer] = bodyLength;
+                lengths[buffer] = column.bufferLength(i, rows);
+                bodyLength += align(lengths[buffer]);
+                buffer++;
+            }
+        }
+
+        FlatBufferBuilder builder = new FlatBufferBuilder(1024 + 32 * bufferCount);
+        // Vectors of structs are written back to front, last field first
+        builder.startVector(16, columns.length, 8);
+        for (int i = columns.length - 1; i >= 0; i--) {
+            builder.putLong(columns[i].nullCount);
+            builder.putLong(rows);
+        }
+        int nodes = builder.endVector(columns.length);
+        builder.startVector(16, bufferCount, 8);
+        for (int i = bufferCount - 1; i >= 0; i--) {
+            builder.putLong(lengths[i]);
+            builder.putLong(offsets[i]);
+        }
+        int buffers = builder.endVector(bufferCount);
+        builder.startTable(4);
+        builder.addLong(0, rows);
+        builder.addOffset(1, nodes);
+        builder.addOffset(2, buffers);
+        int recordBatch = builder.endTable();
+        writeMessage(builder, HEADER_RECORD_BATCH, recordBatch, bodyLength);
+
+        buffer = 0;
+        for (Column column : columns) {
+            for (int i = 0; i < column.bufferCount(); i++) {
+                column.writeBuffer(i, rows, output);
+                pad(align(lengths[buffer]) - lengths[buffer]);
+                buffer++;
+            }
+            column.reset();
+        }
+        rows = 0;
+        output.flush();
+    }
+
+    /**
+     * Writes an encapsulated message: the continuation marker, the length of the metadata, the metadata itself
+     * padded to a multiple of 8 bytes. The body must be written by the caller.
+     */
+    private void writeMessage(FlatBufferBuilder builder, byte headerType, int header, long bodyLength)
+            throws IOException {
+        builder.startTable(5);
+        builder.addShort(0, METADATA_VERSION_V5);
+        builder.addByte(1, headerType);
+        builder.addOffset(2, header);
+        builder.addLong(3, bodyLength);
+        builder.finish(builder.endTable(), false);
+        byte[] metadata = builder.toByteArray();
+        int paddedLength = (int) align(metadata.length + 8) - 8;
+        writeInt(CONTINUATION);
+        writeInt(paddedLength);
+        output.write(metadata);
+        pad(paddedLength - metadata.length);
+    }
+
+    private static int buildKeyValue(FlatBufferBuilder builder, String key, String value) {
+        int keyOffset = builder.createString(key);
+        int valueOffset = builder.createString(value);
+        builder.startTable(2);
+        builder.addOffset(0, keyOffset);
+        builder.addOffset(1, valueOffset);
+        return builder.endTable();
+    }
+
+    private static long align(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    private void pad(long count) throws IOException {
+        for (long i = 0; i < count; i++) {
+            output.write(0);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            scratch[i] = (byte) (value >>> (8 * i));
+        }
+        output.write(scratch, 0, 4);
+    }
+
+    private static Column createColumn(Class<?> type, int capacity) {
+        if (type != null && Geometry.class.isAssignableFrom(type)) {
+            return new GeometryColumn(capacity);
+        } else if (Boolean.class.equals(type) || boolean.class.equals(type)) {
+            return new BoolColumn(capacity);
+        } else if (Byte.class.equals(type) || byte.class.equals(type)) {
+            return new IntColumn(capacity, 1);
+        } else if (Short.class.equals(type) || short.class.equals(type)) {
+            return new IntColumn(capacity, 2);
+        } else if (Integer.class.equals(type) || int.class.equals(type)) {
+            return new IntColumn(capacity, 4);
+        } else if (Long.class.equals(type) || long.class.equals(type)) {
+            return new IntColumn(capacity, 8);
+        } else if (Float.class.equals(type) || float.class.equals(type)) {
+            return new FloatColumn(capacity, 4);
+        } else if (Double.class.equals(type) || double.class.equals(type) || BigDecimal.class.equals(type)) {
+            return new FloatColumn(capacity, 8);
+        } else if (type != null && Date.class.isAssignableFrom(type)) {
+            return new TimestampColumn(capacity);
+        }
+        return new StringColumn(capacity);
+    }
+
+    // -- Columns
+
+    /**
+     * The values of a column for the current batch, with a validity bitmap as first buffer.
+     */
+    private abstract static class Column {
+
+        final byte typeId;
+        final byte[] validity;
+        int nullCount = 0;
+
+        Column(byte typeId, int capacity) {
+            this.typeId = typeId;
+            this.validity = new byte[(capacity + 7) / 8];
+        }
+
+        final void set(int row, Object value) {
+            if (value == null) {
+                validity[row >> 3] &= ~(1 << (row & 7));
+                nullCount++;
+                setNull(row);
+            } else {
+                validity[row >> 3] |= 1 << (row & 7);
+                setValue(row, value);
+            }
+        }
+
+        abstract int buildType(FlatBufferBuilder builder);
+
+        abstract void setValue(int row, Object value);
+
+        void setNull(int row) {
+        }
+
+        int bufferCount() {
+            return 2;
+        }
+
+        long bufferLength(int buffer, int rows) {
+            // The validity bitmap may be left out if there are no nulls
+            return buffer == 0 ? (nullCount == 0 ? 0 : (rows + 7) / 8) : dataLength(buffer, rows);
+        }
+
+        abstract long dataLength(int buffer, int rows);
+
+        void writeBuffer(int buffer, int rows, OutputStream output) throws IOException {
+            if (buffer == 0) {
+                if (nullCount > 0) {
+                    output.write(validity, 0, (rows + 7) / 8);
+                }
+            } else {
+                writeData(buffer, rows, output);
+            }
+        }
+
+        abstract void writeData(int buffer, int rows, OutputStream output) throws IOException;
+
+        void reset() {
+            nullCount = 0;
+        }
+    }
+
+    /**
+     * Column of fixed width little endian values.
+     */
+    private abstract static class FixedWidthColumn extends Column {
+
+        final int width;
+        final byte[] values;
+
+        FixedWidthColumn(byte typeId, int capacity, int width) {
+            super(typeId, capacity);
+            this.width = width;
+            this.values = new byte[capacity * width];
+        }
+
+        void put(int row, long bits) {
+            int position = row * width;
+            for (int i = 0; i < width; i++) {
+                values[position + i] = (byte) (bits >>> (8 * i));
+            }
+        }
+
+        @Override
+        void setNull(int row) {
+            put(row, 0);
+        }
+
+        @Override
+        long dataLength(int buffer, int rows) {
+            return (long) rows * width;
+        }
+
+        @Override
+        void writeData(int buffer, int rows, OutputStream output) throws IOException {
+            output.write(values, 0, rows * width);
+        }
+    }
+
+    private static class IntColumn extends FixedWidthColumn {
+
+        IntColumn(int capacity, int width) {
+            super(TYPE_INT, capacity, width);
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(2);
+            builder.addInt(0, width * 8);
+            builder.addBoolean(1, true);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            put(row, ((Number) value).longValue());
+        }
+    }
+
+    private static class FloatColumn extends FixedWidthColumn {
+
+        FloatColumn(int capacity, int width) {
+            super(TYPE_FLOATING_POINT, capacity, width);
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(1);
+            builder.addShort(0, width == 4 ? PRECISION_SINGLE : PRECISION_DOUBLE);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            Number number = (Number) value;
+            put(row, width == 4 ? Float.floatToRawIntBits(number.floatValue())
+                    : Double.doubleToRawLongBits(number.doubleValue()));
+        }
+    }
+
+    private static class TimestampColumn extends FixedWidthColumn {
+
+        TimestampColumn(int capacity) {
+            super(TYPE_TIMESTAMP, capacity, 8);
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(2);
+            builder.addShort(0, TIME_UNIT_MILLISECOND);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            put(row, ((Date) value).getTime());
+        }
+    }
+
+    private static class BoolColumn extends Column {
+
+        final byte[] values;
+
+        BoolColumn(int capacity) {
+            super(TYPE_BOOL, capacity);
+            this.values = new byte[(capacity + 7) / 8];
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(0);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            if (((Boolean) value).booleanValue()) {
+                values[row >> 3] |= 1 << (row & 7);
+            } else {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void setNull(int row) {
+            values[row >> 3] &= ~(1 << (row & 7));
+        }
+
+        @Override
+        long dataLength(int buffer, int rows) {
+            return (rows + 7) / 8;
+        }
+
+        @Override
+        void writeData(int buffer, int rows, OutputStream output) throws IOException {
+            output.write(values, 0, (rows + 7) / 8);
+        }
+    }
+
+    /**
+     * Column of variable length values: validity bitmap, 32 bit offsets and the concatenated values.
+     */
+    private abstract static class VariableWidthColumn extends Column {
+
+        final int[] offsets;
+        byte[] data = new byte[64 * 1024];
+        private final byte[] offsetBytes;
+
+        VariableWidthColumn(byte typeId, int capacity) {
+            super(typeId, capacity);
+            this.offsets = new int[capacity + 1];
+            this.offsetBytes = new byte[4 * (capacity + 1)];
+        }
+
+        void put(int row, byte[] bytes) {
+            int start = offsets[row];
+            if (start + bytes.length > data.length) {
+                byte[] larger = new byte[Math.max(data.length * 2, start + bytes.length)];
+                System.arraycopy(data, 0, larger, 0, start);
+                data = larger;
+            }
+            System.arraycopy(bytes, 0, data, start, bytes.length);
+            offsets[row + 1] = start + bytes.length;
+        }
+
+        @Override
+        void setNull(int row) {
+            offsets[row + 1] = offsets[row];
+        }
+
+        @Override
+        int bufferCount() {
+            return 3;
+        }
+
+        @Override
+        long dataLength(int buffer, int rows) {
+            return buffer == 1 ? 4L * (rows + 1) : offsets[rows];
+        }
+
+        @Override
+        void writeData(int buffer, int rows, OutputStream output) throws IOException {
+            if (buffer == 1) {
+                for (int i = 0; i <= rows; i++) {
+                    int offset = offsets[i];
+                    offsetBytes[4 * i] = (byte) offset;
+                    offsetBytes[4 * i + 1] = (byte) (offset >> 8);
+                    offsetBytes[4 * i + 2] = (byte) (offset >> 16);
+                    offsetBytes[4 * i + 3] = (byte) (offset >> 24);
+                }
+                output.write(offsetBytes, 0, 4 * (rows + 1));
+            } else {
+                output.write(data, 0, offsets[rows]);
+            }
+        }
+    }
+
+    private static class StringColumn extends VariableWidthColumn {
+
+        StringColumn(int capacity) {
+            super(TYPE_UTF8, capacity);
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(0);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            try {
+                put(row, value.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class GeometryColumn extends VariableWidthColumn {
+
+        private final WKBWriter wkbWriter = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN);
+
+        GeometryColumn(int capacity) {
+            super(TYPE_BINARY, capacity);
+        }
+
+        @Override
+        int buildType(FlatBufferBuilder builder) {
+            builder.startTable(0);
+            return builder.endTable();
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            put(row, wkbWriter.write((Geometry) value));
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.flatbuffers;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Minimal builder for FlatBuffers messages, enough to write the binary formats served by the featureserver without
+ * depending on the FlatBuffers runtime. As with the official builder, a message is built back to front: the children
+ * of a table (strings, vectors and nested tables) are created before the table itself, and every create or end
+ * method returns an offset that is used to refer to the created object.
+ * <p>
+ * Tables are built between {@link #startTable(int)} and {@link #endTable()}, adding each field with its index in the
+ * schema. Fields that are not added get their default value when the message is read. Vtables are not shared between
+ * tables, which makes messages slightly larger than strictly necessary but keeps the builder simple.
+ * </p>
+ * <p>
+ * A builder can be reused for several messages by calling {@link #clear()}. It is not thread-safe.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FlatBufferBuilder {
+
+    private static final int SIZEOF_SHORT = 2;
+    private static final int SIZEOF_INT = 4;
+    private static final int SIZEOF_LONG = 8;
+
+    // Data is written from the end of the buffer towards its start; space is the start of the written data
+    private byte[] buffer;
+    private int space;
+    private int minAlign = 1;
+
+    // Positions of the fields of the table being built, 0 for fields that were not added
+    private int[] vtable = new int[16];
+    private int vtableInUse = -1;
+    private int objectStart;
+
+    /**
+     * @param initialSize the initial size of the buffer. It grows when necessary.
+     */
+    public FlatBufferBuilder(int initialSize) {
+        buffer = new byte[Math.max(initialSize, 64)];
+        space = buffer.length;
+    }
+
+    public FlatBufferBuilder() {
+        this(1024);
+    }
+
+    /**
+     * Discards the message being built, so the builder can be used for a new one.
+     */
+    public void clear() {
+        space = buffer.length;
+        minAlign = 1;
+        vtableInUse = -1;
+    }
+
+    /**
+     * @return the offset of the last written data, as seen from the end of the message
+     */
+    public int offset() {
+        return buffer.length - space;
+    }
+
+    // -- Low level writing. Values are written before the data already present, little endian.
+
+    /**
+     * Prepares to write an element of the given size after additionalBytes more bytes have been written: the buffer
+     * is grown if needed and padded so the element will be aligned on its size.
+     */
+    public void prep(int size, int additionalBytes) {
+        if (size > minAlign) {
+            minAlign = size;
+        }
+        int alignSize = (~(buffer.length - space + additionalBytes) + 1) & (size - 1);
+        while (space < alignSize + size + additionalBytes) {
+            grow();
+        }
+        for (int i = 0; i < alignSize; i++) {
+            buffer[--space] = 0;
+        }
+    }
+
+    public void putByte(byte value) {
+        buffer[--space] = value;
+    }
+
+    public void putShort(short value) {
+        space -= SIZEOF_SHORT;
+        buffer[space] = (byte) value;
+        buffer[space + 1] = (byte) (value >> 8);
+    }
+
+    public void putInt(int value) {
+        space -= SIZEOF_INT;
+        writeInt(space, value);
+    }
+
+    public void putLong(long value) {
+        space -= SIZEOF_LONG;
+        for (int i = 0; i < SIZEOF_LONG; i++) {
+            buffer[space + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    public void putDouble(double value) {
+        putLong(Double.doubleToRawLongBits(value));
+    }
+
+    public void addByte(byte value) {
+        prep(1, 0);
+        putByte(value);
+    }
+
+    public void addShort(short value) {
+        prep(SIZEOF_SHORT, 0);
+        putShort(value);
+    }
+
+    public void addInt(int value) {
+        prep(SIZEOF_INT, 0);
+        putInt(value);
+    }
+
+    public void addLong(long value) {
+        prep(SIZEOF_LONG, 0);
+        putLong(value);
+    }
+
+    /**
+     * Adds a reference to an object that was created earlier.
+     *
+     * @param offset the offset returned when the object was created
+     */
+    public void addOffset(int offset) {
+        prep(SIZEOF_INT, 0);
+        putInt(offset() - offset + SIZEOF_INT);
+    }
+
+    // -- Vectors and strings
+
+    /**
+     * Starts a vector. The elements must then be put in reverse order with the put methods, and the vector
+     * completed with {@link #endVector(int)}.
+     *
+     * @param elementSize the size in bytes of an element
+     * @param count       the number of elements
+     * @param alignment   the alignment of the elements, usually their size
+     */
+    public void startVector(int elementSize, int count, int alignment) {
+        prep(SIZEOF_INT, elementSize * count);
+        prep(alignment, elementSize * count);
+    }
+
+    /**
+     * @param count the number of elements in the vector
+     * @return the offset of the vector
+     */
+    public int endVector(int count) {
+        putInt(count);
+        return offset();
+    }
+
+    public int createString(String value) {
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        addByte((byte) 0);
+        return createByteVector(bytes, bytes.length);
+    }
+
+    public int createByteVector(byte[] values, int count) {
+        startVector(1, count, 1);
+        space -= count;
+        System.arraycopy(values, 0, buffer, space, count);
+        return endVector(count);
+    }
+
+    public int createIntVector(int[] values, int count) {
+        startVector(SIZEOF_INT, count, SIZEOF_INT);
+        for (int i = count - 1; i >= 0; i--) {
+            putInt(values[i]);
+        }
+        return endVector(count);
+    }
+
+    public int createDoubleVector(double[] values, int count) {
+        startVector(SIZEOF_LONG, count, SIZEOF_LONG);
+        for (int i = count - 1; i >= 0; i--) {
+            putDouble(values[i]);
+        }
+        return endVector(count);
+    }
+
+    /**
+     * @param offsets the offsets of the objects (strings, vectors or tables) in the vector
+     * @param count   the number of objects
+     * @return the offset of the vector
+     */
+    public int createOffsetVector(int[] offsets, int count) {
+        startVector(SIZEOF_INT, count, SIZEOF_INT);
+        for (int i = count - 1; i >= 0; i--) {
+            addOffset(offsets[i]);
+        }
+        return endVector(count);
+    }
+
+    // -- Tables
+
+    /**
+     * @param fieldCount the number of fields in the schema of the table
+     */
+    public void startTable(int fieldCount) {
+        if (vtableInUse >= 0) {
+            throw new IllegalStateException("Tables can not be nested, create the inner table first");
+        }
+        if (vtable.length < fieldCount) {
+            vtable = new int[fieldCount];
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            vtable[i] = 0;
+        }
+        vtableInUse = fieldCount;
+        objectStart = offset();
+    }
+
+    public void addByte(int field, byte value) {
+        addByte(value);
+        slot(field);
+    }
+
+    public void addBoolean(int field, boolean value) {
+        addByte(field, (byte) (value ? 1 : 0));
+    }
+
+    public void addShort(int field, short value) {
+        addShort(value);
+        slot(field);
+    }
+
+    public void addInt(int field, int value) {
+        addInt(value);
+        slot(field);
+    }
+
+    public void addLong(int field, long value) {
+        addLong(value);
+        slot(field);
+    }
+
+    public void addOffset(int field, int offset) {
+        addOffset(offset);
+        slot(field);
+    }
+
+    private void slot(int field) {
+        vtable[field] = offset();
+    }
+
+    /**
+     * @return the offset of the table
+     */
+    public int endTable() {
+        if (vtableInUse < 0) {
+            throw new IllegalStateException("No table was started");
+        }
+        // Placeholder for the offset to the vtable
+        addInt(0);
+        int tableOffset = offset();
+        int last = vtableInUse - 1;
+        while (last >= 0 && vtable[last] == 0) {
+            last--;
+        }
+        for (int i = last; i >= 0; i--) {
+            addShort((short) (vtable[i] != 0 ? tableOffset - vtable[i] : 0));
+        }
+        addShort((short) (tableOffset - objectStart));
+        addShort((short) ((last + 1 + 2) * SIZEOF_SHORT));
+        // The vtable precedes the table, the table refers to it with a signed offset
+        writeInt(buffer.length - tableOffset, offset() - tableOffset);
+        vtableInUse = -1;
+        return tableOffset;
+    }
+
+    // -- Finishing
+
+    /**
+     * Completes the message with a reference to its root table.
+     *
+     * @param rootTable  the offset of the root table
+     * @param sizePrefix whether the message is preceded by its size, as a 32 bit integer
+     */
+    public void finish(int rootTable, boolean sizePrefix) {
+        prep(minAlign, SIZEOF_INT + (sizePrefix ? SIZEOF_INT : 0));
+        addOffset(rootTable);
+        if (sizePrefix) {
+            addInt(offset());
+        }
+    }
+
+    /**
+     * @return the number of bytes of the finished message
+     */
+    public int size() {
+        return buffer.length - space;
+    }
+
+    /**
+     * @return a copy of the finished message
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[size()];
+        System.arraycopy(buffer, space, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Writes the finished message to the given array, which must have room for {@link #size()} bytes.
+     */
+    public void copyTo(byte[] target, int targetOffset) {
+        System.arraycopy(buffer, space, target, targetOffset, size());
+    }
+
+    private void writeInt(int position, int value) {
+        buffer[position] = (byte) value;
+        buffer[position + 1] = (byte) (value >> 8);
+        buffer[position + 2] = (byte) (value >> 16);
+        buffer[position + 3] = (byte) (value >> 24);
+    }
+
+    private void grow() {
+        int oldSize = buffer.length;
+        byte[] larger = new byte[oldSize * 2];
+        System.arraycopy(buffer, space, larger, larger.length - (oldSize - space), oldSize - space);
+        space += larger.length - oldSize;
+        buffer = larger;
+    }
+}
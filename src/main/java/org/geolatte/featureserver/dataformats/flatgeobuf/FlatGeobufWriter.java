@@ -0,0 +1,413 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.flatgeobuf;
+
+import com.vividsolutions.jts.geom.*;
+import org.geolatte.featureserver.dataformats.flatbuffers.FlatBufferBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Encodes the header and the features of a FlatGeobuf file (version 3). A file consists of the magic bytes, the
+ * header, an optional spatial index (see {@link PackedRTree}) and the features, each of them a size prefixed
+ * FlatBuffers message.
+ * <p>
+ * The columns of the file are derived from the java types of the properties. Strings, numbers, booleans and dates
+ * map to their FlatGeobuf counterpart, values of other types are written as their string representation. Only x and
+ * y coordinates are written.
+ * </p>
+ * <p>
+ * A writer is not thread-safe; it reuses its buffers for every feature.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FlatGeobufWriter {
+
+    public static final byte[] MAGIC_BYTES = new byte[]{0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00};
+
+    // GeometryType enum
+    private static final byte TYPE_UNKNOWN = 0;
+    private static final byte TYPE_POINT = 1;
+    private static final byte TYPE_LINESTRING = 2;
+    private static final byte TYPE_POLYGON = 3;
+    private static final byte TYPE_MULTIPOINT = 4;
+    private static final byte TYPE_MULTILINESTRING = 5;
+    private static final byte TYPE_MULTIPOLYGON = 6;
+    private static final byte TYPE_GEOMETRYCOLLECTION = 7;
+
+    // ColumnType enum
+    private static final byte COLUMN_BYTE = 0;
+    private static final byte COLUMN_BOOL = 2;
+    private static final byte COLUMN_SHORT = 3;
+    private static final byte COLUMN_INT = 5;
+    private static final byte COLUMN_LONG = 7;
+    private static final byte COLUMN_FLOAT = 9;
+    private static final byte COLUMN_DOUBLE = 10;
+    private static final byte COLUMN_STRING = 11;
+    private static final byte COLUMN_DATETIME = 13;
+
+    private final String name;
+    private final List<String> columnNames;
+    private final byte[] columnTypes;
+    private final byte geometryType;
+    private final int srid;
+
+    private final FlatBufferBuilder builder = new FlatBufferBuilder(16 * 1024);
+    /**
+     * ISO 8601 in UTC: the 'Z' pattern letter gives offsets like +0200, which are not ISO 8601 extended format.
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    private byte[] properties = new byte[1024];
+    private int propertiesSize;
+    private double[] xy = new double[1024];
+    private int[] ends = new int[16];
+
+    /**
+     * @param name         the name of the dataset, written in the header
+     * @param columnNames  the names of the columns
+     * @param columnTypes  the java types of the columns, coindexed with the names
+     * @param geometryType the java type of the geometries, used to determine the geometry type in the header
+     * @param srid         the EPSG code of the coordinate system, or 0 if unknown
+     */
+    public FlatGeobufWriter(String name, List<String> columnNames, List<Class<?>> columnTypes,
+                            Class<?> geometryType, int srid) {
+        if (columnNames.size() != columnTypes.size()) {
+            throw new IllegalArgumentException("A type is required for every column");
+        }
+        if (columnNames.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Too many columns");
+        }
+        this.name = name;
+        this.columnNames = columnNames;
+        this.columnTypes = new byte[columnTypes.size()];
+        for (int i = 0; i < this.columnTypes.length; i++) {
+            this.columnTypes[i] = toColumnType(columnTypes.get(i));
+        }
+        this.geometryType = toHeaderGeometryType(geometryType);
+        this.srid = srid;
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Writes the magic bytes and the header.
+     *
+     * @param output        the stream to write to
+     * @param featureCount  the number of features in the file, or 0 if it is not known in advance
+     * @param extent        the extent of all features, or null if it is not known in advance
+     * @param indexNodeSize the node size of the spatial index, or 0 if the file has no index
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeHeader(OutputStream output, long featureCount, Envelope extent, int indexNodeSize)
+            throws IOException {
+        FlatBufferBuilder header = new FlatBufferBuilder(4096);
+        int nameOffset = header.createString(name);
+        int envelopeOffset = 0;
+        if (extent != null && !extent.isNull()) {
+            envelopeOffset = header.createDoubleVector(new double[]{extent.getMinX(), extent.getMinY(),
+                    extent.getMaxX(), extent.getMaxY()}, 4);
+        }
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++) {
+            int columnName = header.createString(columnNames.get(i));
+            header.startTable(11);
+            header.addOffset(0, columnName);
+            header.addByte(1, columnTypes[i]);
+            columns[i] = header.endTable();
+        }
+        int columnsOffset = header.createOffsetVector(columns, columns.length);
+        int crsOffset = 0;
+        if (srid > 0) {
+            int org = header.createString("EPSG");
+            header.startTable(6);
+            header.addOffset(0, org);
+            header.addInt(1, srid);
+            crsOffset = header.endTable();
+        }
+        header.startTable(14);
+        header.addOffset(0, nameOffset);
+        if (envelopeOffset != 0) {
+            header.addOffset(1, envelopeOffset);
+        }
+        header.addByte(2, geometryType);
+        header.addOffset(7, columnsOffset);
+        header.addLong(8, featureCount);
+        // Always written, since the default of 16 means that an index is present
+        header.addShort(9, (short) indexNodeSize);
+        if (crsOffset != 0) {
+            header.addOffset(10, crsOffset);
+        }
+        header.finish(header.endTable(), true);
+        output.write(MAGIC_BYTES);
+        output.write(header.toByteArray());
+    }
+
+    /**
+     * Encodes a feature. The result remains valid until the next call of this method.
+     *
+     * @param geometry the geometry of the feature, may be null
+     * @param values   the values of the columns, coindexed with the column names. Null values are left out.
+     * @return the builder holding the size prefixed feature, see {@link FlatBufferBuilder#size()} and
+     *         {@link FlatBufferBuilder#copyTo(byte[], int)}
+     */
+    public FlatBufferBuilder encodeFeature(Geometry geometry, Object[] values) {
+        builder.clear();
+        propertiesSize = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                writeShort(i);
+                writeValue(columnTypes[i], values[i]);
+            }
+        }
+        int propertiesOffset = propertiesSize > 0 ? builder.createByteVector(properties, propertiesSize) : 0;
+        int geometryOffset = geometry != null && !geometry.isEmpty() ? buildGeometry(geometry) : 0;
+        builder.startTable(3);
+        if (geometryOffset != 0) {
+            builder.addOffset(0, geometryOffset);
+        }
+        if (propertiesOffset != 0) {
+            builder.addOffset(1, propertiesOffset);
+        }
+        builder.finish(builder.endTable(), true);
+        return builder;
+    }
+
+    private int buildGeometry(Geometry geometry) {
+        byte type = toGeometryType(geometry);
+        if (type == TYPE_MULTIPOLYGON || type == TYPE_GEOMETRYCOLLECTION) {
+            int[] parts = new int[geometry.getNumGeometries()];
+            int count = 0;
+            for (int i = 0; i < parts.length; i++) {
+                Geometry part = geometry.getGeometryN(i);
+                if (!part.isEmpty()) {
+                    parts[count++] = buildGeometry(part);
+                }
+            }
+            int partsOffset = builder.createOffsetVector(parts, count);
+            builder.startTable(8);
+            builder.addOffset(7, partsOffset);
+            builder.addByte(6, type);
+            return builder.endTable();
+        }
+        int coordinates = 0;
+        int endCount = 0;
+        if (type == TYPE_POLYGON) {
+            Polygon polygon = (Polygon) geometry;
+            coordinates = addCoordinates(polygon.getExteriorRing().getCoordinateSequence(), coordinates);
+            endCount = addEnd(coordinates, endCount);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                coordinates = addCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence(), coordinates);
+                endCount = addEnd(coordinates, endCount);
+            }
+        } else if (type == TYPE_MULTILINESTRING) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                coordinates = addCoordinates(((LineString) geometry.getGeometryN(i)).getCoordinateSequence(),
+                                             coordinates);
+                endCount = addEnd(coordinates, endCount);
+            }
+        } else if (type == TYPE_MULTIPOINT) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                coordinates = addCoordinates(((Point) geometry.getGeometryN(i)).getCoordinateSequence(), coordinates);
+            }
+        } else if (type == TYPE_LINESTRING) {
+            coordinates = addCoordinates(((LineString) geometry).getCoordinateSequence(), coordinates);
+        } else {
+            coordinates = addCoordinates(((Point) geometry).getCoordinateSequence(), coordinates);
+        }
+        int xyOffset = builder.createDoubleVector(xy, coordinates * 2);
+        // Ends are only needed when there is more than one part
+        int endsOffset = endCount > 1 ? builder.createIntVector(ends, endCount) : 0;
+        builder.startTable(8);
+        if (endsOffset != 0) {
+            builder.addOffset(0, endsOffset);
+        }
+        builder.addOffset(1, xyOffset);
+        builder.addByte(6, type);
+        return builder.endTable();
+    }
+
+    private int addCoordinates(CoordinateSequence sequence, int coordinates) {
+        int size = sequence.size();
+        if (xy.length < (coordinates + size) * 2) {
+            double[] larger = new double[Math.max(xy.length * 2, (coordinates + size) * 2)];
+            System.arraycopy(xy, 0, larger, 0, coordinates * 2);
+            xy = larger;
+        }
+        for (int i = 0; i < size; i++) {
+            xy[2 * coordinates] = sequence.getX(i);
+            xy[2 * coordinates + 1] = sequence.getY(i);
+            coordinates++;
+        }
+        return coordinates;
+    }
+
+    private int addEnd(int end, int endCount) {
+        if (ends.length == endCount) {
+            int[] larger = new int[ends.length * 2];
+            System.arraycopy(ends, 0, larger, 0, endCount);
+            ends = larger;
+        }
+        ends[endCount] = end;
+        return endCount + 1;
+    }
+
+    private void writeValue(byte type, Object value) {
+        switch (type) {
+            case COLUMN_BOOL:
+                writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+                break;
+            case COLUMN_BYTE:
+                writeByte(((Number) value).byteValue());
+                break;
+            case COLUMN_SHORT:
+                writeShort(((Number) value).shortValue());
+                break;
+            case COLUMN_INT:
+                writeInt(((Number) value).intValue());
+                break;
+            case COLUMN_LONG:
+                writeLong(((Number) value).longValue());
+                break;
+            case COLUMN_FLOAT:
+                writeInt(Float.floatToRawIntBits(((Number) value).floatValue()));
+                break;
+            case COLUMN_DOUBLE:
+                writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+                break;
+            case COLUMN_DATETIME:
+                writeString(dateFormat.format((Date) value));
+                break;
+            default:
+                writeString(value.toString());
+        }
+    }
+
+    private void writeString(String value) {
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        writeInt(bytes.length);
+        ensurePropertiesCapacity(bytes.length);
+        System.arraycopy(bytes, 0, properties, propertiesSize, bytes.length);
+        propertiesSize += bytes.length;
+    }
+
+    private void writeByte(int value) {
+        ensurePropertiesCapacity(1);
+        properties[propertiesSize++] = (byte) value;
+    }
+
+    private void writeShort(int value) {
+        writeByte(value);
+        writeByte(value >> 8);
+    }
+
+    private void writeInt(int value) {
+        ensurePropertiesCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            properties[propertiesSize++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void writeLong(long value) {
+        ensurePropertiesCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            properties[propertiesSize++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void ensurePropertiesCapacity(int extra) {
+        if (propertiesSize + extra > properties.length) {
+            byte[] larger = new byte[Math.max(properties.length * 2, propertiesSize + extra)];
+            System.arraycopy(properties, 0, larger, 0, propertiesSize);
+            properties = larger;
+        }
+    }
+
+    private static byte toColumnType(Class<?> type) {
+        if (Boolean.class.equals(type) || boolean.class.equals(type)) {
+            return COLUMN_BOOL;
+        } else if (Byte.class.equals(type) || byte.class.equals(type)) {
+            return COLUMN_BYTE;
+        } else if (Short.class.equals(type) || short.class.equals(type)) {
+            return COLUMN_SHORT;
+        } else if (Integer.class.equals(type) || int.class.equals(type)) {
+            return COLUMN_INT;
+        } else if (Long.class.equals(type) || long.class.equals(type)) {
+            return COLUMN_LONG;
+        } else if (Float.class.equals(type) || float.class.equals(type)) {
+            return COLUMN_FLOAT;
+        } else if (Double.class.equals(type) || double.class.equals(type) || BigDecimal.class.equals(type)) {
+            return COLUMN_DOUBLE;
+        } else if (type != null && Date.class.isAssignableFrom(type)) {
+            return COLUMN_DATETIME;
+        }
+        return COLUMN_STRING;
+    }
+
+    private static byte toHeaderGeometryType(Class<?> type) {
+        if (Point.class.equals(type)) {
+            return TYPE_POINT;
+        } else if (LineString.class.equals(type)) {
+            return TYPE_LINESTRING;
+        } else if (Polygon.class.equals(type)) {
+            return TYPE_POLYGON;
+        } else if (MultiPoint.class.equals(type)) {
+            return TYPE_MULTIPOINT;
+        } else if (MultiLineString.class.equals(type)) {
+            return TYPE_MULTILINESTRING;
+        } else if (MultiPolygon.class.equals(type)) {
+            return TYPE_MULTIPOLYGON;
+        }
+        // Mixed geometry types: every feature carries its own type
+        return TYPE_UNKNOWN;
+    }
+
+    private static byte toGeometryType(Geometry geometry) {
+        if (geometry instanceof Point) {
+            return TYPE_POINT;
+        } else if (geometry instanceof LineString) {
+            return TYPE_LINESTRING;
+        } else if (geometry instanceof Polygon) {
+            return TYPE_POLYGON;
+        } else if (geometry instanceof MultiPoint) {
+            return TYPE_MULTIPOINT;
+        } else if (geometry instanceof MultiLineString) {
+            return TYPE_MULTILINESTRING;
+        } else if (geometry instanceof MultiPolygon) {
+            return TYPE_MULTIPOLYGON;
+        }
+        return TYPE_GEOMETRYCOLLECTION;
+    }
+}
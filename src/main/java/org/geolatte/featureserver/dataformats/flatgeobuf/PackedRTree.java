@@ -0,0 +1,340 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.flatgeobuf;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The static packed Hilbert R-tree of a FlatGeobuf file. The features are sorted on the Hilbert value of the center
+ * of their bounding box, and the tree is built bottom up from the sorted boxes, every node grouping
+ * {@link #DEFAULT_NODE_SIZE} nodes of the level below. It is written as a flat array of nodes, root first, each node
+ * consisting of its bounding box and an offset: the byte offset of the feature for leaves, the index of the first
+ * child node for the others. Clients use it to read only the features in an area with HTTP range requests on a
+ * stored copy of the file.
+ * <p>
+ * Usage: {@link #add(Envelope, long)} the bounding box and size of every feature, {@link #sort()} them, write the
+ * features in the order given by {@link #getFeature(int)} and finally {@link #write(OutputStream)} the tree before
+ * the features.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class PackedRTree {
+
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    /**
+     * The size in bytes of a node: four doubles and an unsigned long.
+     */
+    public static final int NODE_ITEM_SIZE = 40;
+
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final int nodeSize;
+    private int count = 0;
+    // Per feature, in the order they were added: bounding box (4 values) and size in bytes
+    private double[] boxes = new double[4 * 1024];
+    private long[] sizes = new long[1024];
+    // Feature numbers in the order of the tree, once sorted
+    private int[] order;
+    private final Envelope extent = new Envelope();
+
+    /**
+     * @param nodeSize the maximum number of children of a node, at least 2
+     */
+    public PackedRTree(int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("The node size must be at least 2");
+        }
+        this.nodeSize = nodeSize;
+    }
+
+    /**
+     * Adds a feature to the tree.
+     *
+     * @param envelope the bounding box of the feature. Null or an empty envelope for features without geometry;
+     *                 these are never found by a spatial search.
+     * @param size     the size of the feature in the file, in bytes
+     * @return the number of the feature, starting from 0
+     */
+    public int add(Envelope envelope, long size) {
+        if (sizes.length == count) {
+            double[] largerBoxes = new double[boxes.length * 2];
+            System.arraycopy(boxes, 0, largerBoxes, 0, boxes.length);
+            boxes = largerBoxes;
+            long[] largerSizes = new long[sizes.length * 2];
+            System.arraycopy(sizes, 0, largerSizes, 0, sizes.length);
+            sizes = largerSizes;
+        }
+        if (envelope == null || envelope.isNull()) {
+            boxes[4 * count] = Double.POSITIVE_INFINITY;
+            boxes[4 * count + 1] = Double.POSITIVE_INFINITY;
+            boxes[4 * count + 2] = Double.NEGATIVE_INFINITY;
+            boxes[4 * count + 3] = Double.NEGATIVE_INFINITY;
+        } else {
+            boxes[4 * count] = envelope.getMinX();
+            boxes[4 * count + 1] = envelope.getMinY();
+            boxes[4 * count + 2] = envelope.getMaxX();
+            boxes[4 * count + 3] = envelope.getMaxY();
+            extent.expandToInclude(envelope);
+        }
+        sizes[count] = size;
+        order = null;
+        return count++;
+    }
+
+    /**
+     * @return the number of features
+     */
+    public int getFeatureCount() {
+        return count;
+    }
+
+    /**
+     * @return the extent of all features
+     */
+    public Envelope getExtent() {
+        return new Envelope(extent);
+    }
+
+    /**
+     * Sorts the features on the Hilbert value of the center of their bounding box.
+     */
+    public void sort() {
+        long[] keys = new long[count];
+        int withGeometry = 0;
+        double width = extent.getWidth();
+        double height = extent.getHeight();
+        for (int i = 0; i < count; i++) {
+            if (boxes[4 * i] > boxes[4 * i + 2]) {
+                continue;
+            }
+            int x = width == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((boxes[4 * i] + boxes[4 * i + 2]) / 2
+                    - extent.getMinX()) / width);
+            int y = height == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((boxes[4 * i + 1] + boxes[4 * i + 3]) / 2
+                    - extent.getMinY()) / height);
+            // Combined with the feature number, so the order can be read from the sorted keys
+            keys[withGeometry++] = (hilbert(x, y) & 0xFFFFFFFFL) << 31 | i;
+        }
+        Arrays.sort(keys, 0, withGeometry);
+        order = new int[count];
+        for (int i = 0; i < withGeometry; i++) {
+            order[i] = (int) (keys[i] & 0x7FFFFFFFL);
+        }
+        // Features without geometry go last
+        int position = withGeometry;
+        for (int i = 0; i < count; i++) {
+            if (boxes[4 * i] > boxes[4 * i + 2]) {
+                order[position++] = i;
+            }
+        }
+    }
+
+    /**
+     * @param position a position in the sorted order
+     * @return the number of the feature at that position
+     */
+    public int getFeature(int position) {
+        if (order == null) {
+            throw new IllegalStateException("The features are not sorted");
+        }
+        return order[position];
+    }
+
+    /**
+     * @return the size of the tree in bytes
+     */
+    public long size() {
+        return nodeCount() * NODE_ITEM_SIZE;
+    }
+
+    /**
+     * Writes the tree. The features must have been sorted.
+     *
+     * @param output the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public void write(OutputStream output) throws IOException {
+        if (order == null) {
+            throw new IllegalStateException("The features are not sorted");
+        }
+        if (count == 0) {
+            return;
+        }
+        long[] levelStarts = levelStarts();
+        int levels = levelStarts.length - 1;
+        int nodes = (int) nodeCount();
+        double[] nodeBoxes = new double[4 * nodes];
+        long[] offsets = new long[nodes];
+        // The leaves are at the end, in sorted order
+        int leafStart = (int) levelStarts[0];
+        long featureOffset = 0;
+        for (int i = 0; i < count; i++) {
+            int feature = order[i];
+            System.arraycopy(boxes, 4 * feature, nodeBoxes, 4 * (leafStart + i), 4);
+            offsets[leafStart + i] = featureOffset;
+            featureOffset += sizes[feature];
+        }
+        // Every level above groups the nodes of the level below it
+        for (int level = 0; level < levels - 1; level++) {
+            int position = (int) levelStarts[level];
+            int end = level == 0 ? leafStart + count : (int) levelStarts[level - 1];
+            int parent = (int) levelStarts[level + 1];
+            while (position < end) {
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                offsets[parent] = position;
+                for (int j = 0; j < nodeSize && position < end; j++, position++) {
+                    minX = Math.min(minX, nodeBoxes[4 * position]);
+                    minY = Math.min(minY, nodeBoxes[4 * position + 1]);
+                    maxX = Math.max(maxX, nodeBoxes[4 * position + 2]);
+                    maxY = Math.max(maxY, nodeBoxes[4 * position + 3]);
+                }
+                nodeBoxes[4 * parent] = minX;
+                nodeBoxes[4 * parent + 1] = minY;
+                nodeBoxes[4 * parent + 2] = maxX;
+                nodeBoxes[4 * parent + 3] = maxY;
+                parent++;
+            }
+        }
+        byte[] item = new byte[NODE_ITEM_SIZE];
+        for (int i = 0; i < nodes; i++) {
+            for (int j = 0; j < 4; j++) {
+                putLong(item, 8 * j, Double.doubleToRawLongBits(nodeBoxes[4 * i + j]));
+            }
+            putLong(item, 32, offsets[i]);
+            output.write(item);
+        }
+    }
+
+    private long nodeCount() {
+        if (count == 0) {
+            return 0;
+        }
+        long n = count;
+        long nodes = n;
+        do {
+            n = (n + nodeSize - 1) / nodeSize;
+            nodes += n;
+        } while (n != 1);
+        return nodes;
+    }
+
+    /**
+     * @return the index of the first node of every level, leaves first, followed by the total number of nodes
+     */
+    private long[] levelStarts() {
+        // Number of nodes per level, bottom up
+        long[] levelSizes = new long[64];
+        int levels = 0;
+        long n = count;
+        levelSizes[levels++] = n;
+        do {
+            n = (n + nodeSize - 1) / nodeSize;
+            levelSizes[levels++] = n;
+        } while (n != 1);
+        long[] starts = new long[levels + 1];
+        long end = nodeCount();
+        starts[levels] = end;
+        for (int i = 0; i < levels; i++) {
+            end -= levelSizes[i];
+            starts[i] = end;
+        }
+        return starts;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /**
+     * Computes the position of (x, y) on the Hilbert curve through a 65536 x 65536 grid. Branch free algorithm by
+     * rawrunprotected, as used by the FlatGeobuf reference implementations.
+     *
+     * @param x the x coordinate on the grid, 0 to 65535
+     * @param y the y coordinate on the grid, 0 to 65535
+     * @return the position on the curve, as an unsigned int
+     */
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int aa = a | (b >>> 1);
+        int bb = (a >>> 1) ^ a;
+        int cc = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int dd = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 2)) ^ (b & (b >>> 2));
+        bb = (a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2));
+        cc ^= (a & (c >>> 2)) ^ (b & (d >>> 2));
+        dd ^= (b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 4)) ^ (b & (b >>> 4));
+        bb = (a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4));
+        cc ^= (a & (c >>> 4)) ^ (b & (d >>> 4));
+        dd ^= (b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        cc ^= (a & (c >>> 8)) ^ (b & (d >>> 8));
+        dd ^= (b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8));
+
+        a = cc ^ (cc >>> 1);
+        b = dd ^ (dd >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.mvt;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Minimal writer for the protocol buffers wire format, limited to what is needed to encode vector tiles. Messages
+ * are written to a growable byte array; nested messages are written to a separate writer first and then added as a
+ * length-delimited field, since their length must precede them.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+final class ProtobufWriter {
+
+    static final int WIRETYPE_VARINT = 0;
+    static final int WIRETYPE_FIXED64 = 1;
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    private byte[] buffer = new byte[256];
+    private int size = 0;
+
+    /**
+     * Zigzag encodes a signed value, so that values of small magnitude have a short varint encoding.
+     */
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeVarintField(int field, long value) {
+        writeTag(field, WIRETYPE_VARINT);
+        writeVarint(value);
+    }
+
+    void writeDoubleField(int field, double value) {
+        writeTag(field, WIRETYPE_FIXED64);
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[size++] = (byte) (bits >>> (8 * i));
+        }
+    }
+
+    void writeStringField(int field, String value) {
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(bytes.length);
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the content of the given writer as a length-delimited field. This is used both for nested messages
+     * and for packed repeated fields.
+     */
+    void writeMessageField(int field, ProtobufWriter message) {
+        writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(message.size);
+        writeRaw(message.buffer, 0, message.size);
+    }
+
+    /**
+     * Appends the content of the given writer as is, eg. to add fields that were encoded earlier.
+     */
+    void writeRaw(ProtobufWriter other) {
+        writeRaw(other.buffer, 0, other.size);
+    }
+
+    private void writeRaw(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] toByteArray() {
+        byte[] result = new byte[size];
+        System.arraycopy(buffer, 0, result, 0, size);
+        return result;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, size + extra)];
+            System.arraycopy(buffer, 0, larger, 0, size);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.mvt;
+
+import com.vividsolutions.jts.geom.*;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes features into a single layer Mapbox vector tile (version 2.1 of the specification). Geometries are clipped
+ * to the tile and a small buffer around it, converted to integer tile coordinates and encoded as the command
+ * sequences of the specification. Consecutive vertices that end up on the same tile coordinate are dropped, as are
+ * lines and rings that collapse entirely, so the size of a tile depends on what can be displayed rather than on the
+ * detail of the source data.
+ * <p>
+ * Attribute keys and values are shared by all features of the tile. Integral numbers are encoded as sint values,
+ * other numbers as doubles, booleans as bools and all other values by their string representation. Null values are
+ * left out.
+ * </p>
+ * <p>
+ * An encoder is used for a single tile and is not thread-safe.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class VectorTileEncoder {
+
+    private static final Logger LOGGER = LogManager.getLogger(VectorTileEncoder.class);
+
+    // Field numbers and constants of vector_tile.proto
+    private static final int TILE_LAYERS = 3;
+    private static final int LAYER_NAME = 1;
+    private static final int LAYER_FEATURES = 2;
+    private static final int LAYER_KEYS = 3;
+    private static final int LAYER_VALUES = 4;
+    private static final int LAYER_EXTENT = 5;
+    private static final int LAYER_VERSION = 15;
+    private static final int FEATURE_ID = 1;
+    private static final int FEATURE_TAGS = 2;
+    private static final int FEATURE_TYPE = 3;
+    private static final int FEATURE_GEOMETRY = 4;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_DOUBLE = 3;
+    private static final int VALUE_SINT = 6;
+    private static final int VALUE_BOOL = 7;
+    private static final int TYPE_POINT = 1;
+    private static final int TYPE_LINESTRING = 2;
+    private static final int TYPE_POLYGON = 3;
+    private static final int COMMAND_MOVE_TO = 1;
+    private static final int COMMAND_LINE_TO = 2;
+    private static final int COMMAND_CLOSE_PATH = 7;
+    private static final int VERSION = 2;
+
+    // Tile coordinates are clamped to this range, so deltas between them always fit in an int
+    private static final int MAX_COORDINATE = 1 << 29;
+
+    private final String layerName;
+    private final Envelope tileEnvelope;
+    private final Envelope clipEnvelope;
+    private final Geometry clipGeometry;
+    private final int extent;
+    private final double scaleX;
+    private final double scaleY;
+
+    private final Map<String, Integer> keys = new LinkedHashMap<String, Integer>();
+    private final Map<Object, Integer> values = new LinkedHashMap<Object, Integer>();
+    private final ProtobufWriter features = new ProtobufWriter();
+    private final ProtobufWriter feature = new ProtobufWriter();
+    private final ProtobufWriter tags = new ProtobufWriter();
+    private final ProtobufWriter commands = new ProtobufWriter();
+    private int featureCount = 0;
+
+    // The position of the drawing cursor, to which the coordinates of the commands are relative
+    private int cursorX;
+    private int cursorY;
+
+    // Scratch space for the tile coordinates of the vertices of a single part
+    private int[] xs = new int[256];
+    private int[] ys = new int[256];
+
+    /**
+     * @param layerName    the name of the layer in the tile
+     * @param tileEnvelope the area covered by the tile, in the coordinate system of the geometries
+     * @param extent       the number of tile coordinate units along each side of the tile
+     * @param buffer       the width, in tile coordinate units, of the border around the tile in which geometries are
+     *                     kept
+     */
+    public VectorTileEncoder(String layerName, Envelope tileEnvelope, int extent, int buffer) {
+        if (extent <= 0 || buffer < 0) {
+            throw new IllegalArgumentException("The extent must be positive and the buffer can not be negative");
+        }
+        this.layerName = layerName;
+        this.tileEnvelope = tileEnvelope;
+        this.extent = extent;
+        this.scaleX = extent / tileEnvelope.getWidth();
+        this.scaleY = extent / tileEnvelope.getHeight();
+        this.clipEnvelope = new Envelope(tileEnvelope);
+        clipEnvelope.expandBy(buffer / scaleX, buffer / scaleY);
+        this.clipGeometry = new GeometryFactory().toGeometry(clipEnvelope);
+    }
+
+    /**
+     * @return the area, including the buffer, in which geometries are kept. Features outside of it are ignored.
+     */
+    public Envelope getClipEnvelope() {
+        return new Envelope(clipEnvelope);
+    }
+
+    /**
+     * @return the number of features added to the tile so far
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Adds a feature to the tile. Features whose geometry is null, empty, outside of the tile or too small to be
+     * visible are ignored.
+     *
+     * @param geometry   the geometry of the feature
+     * @param id         the id of the feature. It is only included if it is a non negative integral number.
+     * @param attributes the attributes of the feature, may be null
+     * @return true if the feature was added
+     */
+    public boolean addFeature(Geometry geometry, Object id, Map<String, ?> attributes) {
+        if (geometry == null || geometry.isEmpty()) {
+            return false;
+        }
+        int dimension = geometry.getDimension();
+        Geometry clipped = clip(geometry, dimension);
+        if (clipped == null || clipped.isEmpty()) {
+            return false;
+        }
+        commands.reset();
+        cursorX = 0;
+        cursorY = 0;
+        int type;
+        switch (dimension) {
+            case 0:
+                type = TYPE_POINT;
+                encodePoints(components(clipped, Point.class));
+                break;
+            case 1:
+                type = TYPE_LINESTRING;
+                for (Geometry line : components(clipped, LineString.class)) {
+                    encodeLine((LineString) line);
+                }
+                break;
+            default:
+                type = TYPE_POLYGON;
+                for (Geometry polygon : components(clipped, Polygon.class)) {
+                    encodePolygon((Polygon) polygon);
+                }
+        }
+        if (commands.size() == 0) {
+            return false;
+        }
+        feature.reset();
+        if (id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            long value = ((Number) id).longValue();
+            if (value >= 0) {
+                feature.writeVarintField(FEATURE_ID, value);
+            }
+        }
+        if (attributes != null) {
+            tags.reset();
+            for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+                Object value = toValue(attribute.getValue());
+                if (value != null) {
+                    tags.writeVarint(indexOf(keys, attribute.getKey()));
+                    tags.writeVarint(indexOf(values, value));
+                }
+            }
+            if (tags.size() > 0) {
+                feature.writeMessageField(FEATURE_TAGS, tags);
+            }
+        }
+        feature.writeVarintField(FEATURE_TYPE, type);
+        feature.writeMessageField(FEATURE_GEOMETRY, commands);
+        features.writeMessageField(LAYER_FEATURES, feature);
+        featureCount++;
+        return true;
+    }
+
+    /**
+     * @return the encoded tile. If no features were added, this is an empty array, which is a valid tile without
+     *         layers.
+     */
+    public byte[] encode() {
+        if (featureCount == 0) {
+            return new byte[0];
+        }
+        ProtobufWriter layer = new ProtobufWriter();
+        layer.writeVarintField(LAYER_VERSION, VERSION);
+        layer.writeStringField(LAYER_NAME, layerName);
+        layer.writeRaw(features);
+        for (String key : keys.keySet()) {
+            layer.writeStringField(LAYER_KEYS, key);
+        }
+        ProtobufWriter value = new ProtobufWriter();
+        for (Object v : values.keySet()) {
+            value.reset();
+            if (v instanceof String) {
+                value.writeStringField(VALUE_STRING, (String) v);
+            } else if (v instanceof Long) {
+                value.writeVarintField(VALUE_SINT, ProtobufWriter.zigZag(((Long) v).longValue()));
+            } else if (v instanceof Double) {
+                value.writeDoubleField(VALUE_DOUBLE, ((Double) v).doubleValue());
+            } else {
+                value.writeVarintField(VALUE_BOOL, ((Boolean) v).booleanValue() ? 1 : 0);
+            }
+            layer.writeMessageField(LAYER_VALUES, value);
+        }
+        layer.writeVarintField(LAYER_EXTENT, extent);
+        ProtobufWriter tile = new ProtobufWriter();
+        tile.writeMessageField(TILE_LAYERS, layer);
+        return tile.toByteArray();
+    }
+
+    /**
+     * @return the part of the geometry within the clip envelope, or null if there is none. Points are not clipped
+     *         here, but filtered while they are encoded.
+     */
+    private Geometry clip(Geometry geometry, int dimension) {
+        Envelope envelope = geometry.getEnvelopeInternal();
+        if (!clipEnvelope.intersects(envelope)) {
+            return null;
+        }
+        if (dimension == 0 || clipEnvelope.contains(envelope)) {
+            return geometry;
+        }
+        try {
+            return geometry.intersection(clipGeometry);
+        } catch (RuntimeException e) {
+            // Invalid geometries can make the overlay fail. Clients clip to the tile themselves, so the unclipped
+            // geometry is still rendered correctly.
+            LOGGER.debug("Could not clip geometry to tile: " + e.getMessage());
+            return geometry;
+        }
+    }
+
+    private static List<Geometry> components(Geometry geometry, Class<? extends Geometry> type) {
+        List<Geometry> result = new ArrayList<Geometry>();
+        addComponents(geometry, type, result);
+        return result;
+    }
+
+    private static void addComponents(Geometry geometry, Class<? extends Geometry> type, List<Geometry> result) {
+        if (geometry instanceof GeometryCollection) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                addComponents(geometry.getGeometryN(i), type, result);
+            }
+        } else if (type.isInstance(geometry) && !geometry.isEmpty()) {
+            result.add(geometry);
+        }
+    }
+
+    private void encodePoints(List<Geometry> points) {
+        ensureCapacity(points.size());
+        int count = 0;
+        for (Geometry point : points) {
+            Coordinate c = point.getCoordinate();
+            if (clipEnvelope.contains(c)) {
+                xs[count] = toTileX(c.x);
+                ys[count] = toTileY(c.y);
+                count++;
+            }
+        }
+        if (count > 0) {
+            commands.writeVarint(command(COMMAND_MOVE_TO, count));
+            for (int i = 0; i < count; i++) {
+                writeVertex(xs[i], ys[i]);
+            }
+        }
+    }
+
+    private void encodeLine(LineString line) {
+        int count = toTileCoordinates(line.getCoordinateSequence());
+        if (count < 2) {
+            return;
+        }
+        writePath(count);
+    }
+
+    private void encodePolygon(Polygon polygon) {
+        if (!encodeRing(polygon.getExteriorRing(), true)) {
+            // Without its exterior ring, the holes are meaningless
+            return;
+        }
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            encodeRing(polygon.getInteriorRingN(i), false);
+        }
+    }
+
+    /**
+     * Encodes a ring. The specification requires exterior rings to have a positive area in tile coordinates (where y
+     * points down) and interior rings a negative one, so rings are reversed where necessary.
+     *
+     * @return false if the ring collapsed and was left out
+     */
+    private boolean encodeRing(LineString ring, boolean exterior) {
+        int count = toTileCoordinates(ring.getCoordinateSequence());
+        // The closing vertex is implied by the ClosePath command
+        if (count > 1 && xs[0] == xs[count - 1] && ys[0] == ys[count - 1]) {
+            count--;
+        }
+        if (count < 3) {
+            return false;
+        }
+        long area = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            area += (long) xs[i] * ys[j] - (long) xs[j] * ys[i];
+        }
+        if (area == 0) {
+            return false;
+        }
+        if ((area > 0) != exterior) {
+            reverse(count);
+        }
+        writePath(count);
+        commands.writeVarint(command(COMMAND_CLOSE_PATH, 1));
+        return true;
+    }
+
+    private void writePath(int count) {
+        commands.writeVarint(command(COMMAND_MOVE_TO, 1));
+        writeVertex(xs[0], ys[0]);
+        commands.writeVarint(command(COMMAND_LINE_TO, count - 1));
+        for (int i = 1; i < count; i++) {
+            writeVertex(xs[i], ys[i]);
+        }
+    }
+
+    private void writeVertex(int x, int y) {
+        commands.writeVarint(ProtobufWriter.zigZag(x - cursorX));
+        commands.writeVarint(ProtobufWriter.zigZag(y - cursorY));
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    /**
+     * Converts the vertices of the given sequence to tile coordinates in the scratch arrays, leaving out vertices
+     * that fall on the same tile coordinate as the previous one.
+     *
+     * @return the number of vertices in the scratch arrays
+     */
+    private int toTileCoordinates(CoordinateSequence sequence) {
+        int size = sequence.size();
+        ensureCapacity(size);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int x = toTileX(sequence.getX(i));
+            int y = toTileY(sequence.getY(i));
+            if (count == 0 || x != xs[count - 1] || y != ys[count - 1]) {
+                xs[count] = x;
+                ys[count] = y;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int toTileX(double x) {
+        return clamp(Math.round((x - tileEnvelope.getMinX()) * scaleX));
+    }
+
+    private int toTileY(double y) {
+        return clamp(Math.round((tileEnvelope.getMaxY() - y) * scaleY));
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(-MAX_COORDINATE, Math.min(MAX_COORDINATE, value));
+    }
+
+    private void reverse(int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int x = xs[i];
+            xs[i] = xs[j];
+            xs[j] = x;
+            int y = ys[i];
+            ys[i] = ys[j];
+            ys[j] = y;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (xs.length < size) {
+            int length = Math.max(size, xs.length * 2);
+            xs = new int[length];
+            ys = new int[length];
+        }
+    }
+
+    private static <T> int indexOf(Map<T, Integer> table, T entry) {
+        Integer index = table.get(entry);
+        if (index == null) {
+            index = table.size();
+            table.put(entry, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the value as it is stored in the values table of the layer: a String, Long, Double or Boolean, or null
+     *         if the value is left out.
+     */
+    private static Object toValue(Object value) {
+        if (value == null || value instanceof Geometry) {
+            return null;
+        }
+        if (value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value.toString();
+    }
+}
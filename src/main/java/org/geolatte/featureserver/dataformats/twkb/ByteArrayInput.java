@@ -0,0 +1,127 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads the encodings written by {@link ByteArrayOutput} from a byte array.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+final class ByteArrayInput {
+
+    private final byte[] data;
+    private int position;
+
+    ByteArrayInput(byte[] data) {
+        this.data = data;
+        this.position = 0;
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readByte() {
+        checkAvailable(1);
+        return data[position++] & 0xFF;
+    }
+
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at position " + position);
+    }
+
+    long readSignedVarint() {
+        return unZigZag(readVarint());
+    }
+
+    int readInt() {
+        checkAvailable(4);
+        int result = 0;
+        for (int i = 0; i < 4; i++) {
+            result = (result << 8) | (data[position++] & 0xFF);
+        }
+        return result;
+    }
+
+    long readLong() {
+        checkAvailable(8);
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (data[position++] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a byte array preceded by its length.
+     */
+    byte[] readBytes() {
+        int length = readLength();
+        byte[] result = new byte[length];
+        System.arraycopy(data, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    /**
+     * Reads a UTF-8 string preceded by its length.
+     */
+    String readString() {
+        int length = readLength();
+        try {
+            String result = new String(data, position, length, "UTF-8");
+            position += length;
+            return result;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean hasRemaining() {
+        return position < data.length;
+    }
+
+    private int readLength() {
+        long length = readVarint();
+        if (length > data.length - position) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the remaining data");
+        }
+        return (int) length;
+    }
+
+    private void checkAvailable(int count) {
+        if (position + count > data.length) {
+            throw new IllegalArgumentException("Unexpected end of data at position " + position);
+        }
+    }
+}
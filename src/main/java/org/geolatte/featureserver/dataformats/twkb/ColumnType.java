@@ -0,0 +1,133 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.util.Date;
+
+/**
+ * The types of the columns of a feature stream, with the code that identifies them in the stream header and the
+ * java type of the values a {@link FeatureStreamReader} returns for them.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public enum ColumnType {
+
+    /**
+     * Zigzag encoded varint.
+     */
+    INT(1, Integer.class),
+    /**
+     * Zigzag encoded varint.
+     */
+    LONG(2, Long.class),
+    /**
+     * Four byte IEEE 754 number.
+     */
+    FLOAT(3, Float.class),
+    /**
+     * Eight byte IEEE 754 number.
+     */
+    DOUBLE(4, Double.class),
+    /**
+     * A single byte, 0 or 1.
+     */
+    BOOLEAN(5, Boolean.class),
+    /**
+     * Milliseconds since the epoch as a zigzag encoded varint.
+     */
+    TIMESTAMP(6, Date.class),
+    /**
+     * Length prefixed UTF-8. Values of types that have no column type of their own are written as their string
+     * representation.
+     */
+    STRING(7, String.class),
+    /**
+     * Length prefixed TWKB.
+     */
+    GEOMETRY(8, Geometry.class);
+
+    private final int code;
+    private final Class<?> javaType;
+
+    private ColumnType(int code, Class<?> javaType) {
+        this.code = code;
+        this.javaType = javaType;
+    }
+
+    /**
+     * @return the code identifying the type in a stream
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the type of the decoded values
+     */
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    /**
+     * @param type the java type of a property
+     * @return the column type the values of the property are written as
+     */
+    public static ColumnType forClass(Class<?> type) {
+        if (type == null) {
+            return STRING;
+        } else if (Geometry.class.isAssignableFrom(type)) {
+            return GEOMETRY;
+        } else if (type == Integer.class || type == Short.class || type == Byte.class
+                || type == int.class || type == short.class || type == byte.class) {
+            return INT;
+        } else if (type == Long.class || type == long.class) {
+            return LONG;
+        } else if (type == Float.class || type == float.class) {
+            return FLOAT;
+        } else if (type == Double.class || type == double.class) {
+            return DOUBLE;
+        } else if (type == Boolean.class || type == boolean.class) {
+            return BOOLEAN;
+        } else if (Date.class.isAssignableFrom(type)) {
+            return TIMESTAMP;
+        }
+        // BigDecimal and BigInteger included, since their values may not fit a fixed size number
+        return STRING;
+    }
+
+    /**
+     * @param code the code of a column type
+     * @return the column type with the given code
+     * @throws IllegalArgumentException if there is no type with the given code
+     */
+    public static ColumnType forCode(int code) {
+        for (ColumnType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column type: " + code);
+    }
+}
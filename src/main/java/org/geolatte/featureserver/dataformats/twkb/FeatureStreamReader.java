@@ -0,0 +1,188 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Client side decoder of the streams written by a {@link FeatureStreamWriter}. Features are read one at a time, so
+ * a client can process a response of any size while it is being received:
+ * <pre>
+ * FeatureStreamReader reader = new FeatureStreamReader(connection.getInputStream());
+ * Object[] values;
+ * while ((values = reader.read()) != null) {
+ *     ...
+ * }
+ * </pre>
+ * The values of a feature are in the order of {@link #getColumnNames()}; their types are given by
+ * {@link ColumnType#getJavaType()}. Geometries are JTS geometries with the srid of the stream.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureStreamReader {
+
+    private final DataInputStream in;
+    private final int srid;
+    private final List<String> columnNames = new ArrayList<String>();
+    private final List<ColumnType> columnTypes = new ArrayList<ColumnType>();
+    private final TwkbReader twkbReader;
+    private boolean finished = false;
+
+    /**
+     * Creates a reader and reads the header of the stream.
+     *
+     * @param in the stream to read from. It is not closed by this reader.
+     * @throws IOException if reading fails or the stream is not a feature stream
+     */
+    public FeatureStreamReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        for (byte b : FeatureStreamWriter.MAGIC_BYTES) {
+            if (this.in.readByte() != b) {
+                throw new IOException("Not a feature stream");
+            }
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != FeatureStreamWriter.VERSION) {
+            throw new IOException("Unsupported feature stream version: " + version);
+        }
+        srid = (int) ByteArrayInput.unZigZag(readVarint());
+        int columnCount = (int) readVarint();
+        for (int i = 0; i < columnCount; i++) {
+            byte[] name = new byte[(int) readVarint()];
+            this.in.readFully(name);
+            columnNames.add(new String(name, "UTF-8"));
+            try {
+                columnTypes.add(ColumnType.forCode(this.in.readUnsignedByte()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        twkbReader = new TwkbReader(new GeometryFactory(new PrecisionModel(), srid));
+    }
+
+    /**
+     * @return the srid of the geometries
+     */
+    public int getSrid() {
+        return srid;
+    }
+
+    /**
+     * @return the names of the columns
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(columnNames);
+    }
+
+    /**
+     * @return the types of the columns
+     */
+    public List<ColumnType> getColumnTypes() {
+        return Collections.unmodifiableList(columnTypes);
+    }
+
+    /**
+     * Reads the next feature.
+     *
+     * @return the values of the columns of the next feature, or null at the end of the stream
+     * @throws IOException if reading fails, the stream ends before its end marker or a feature is malformed
+     */
+    public Object[] read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int length = (int) readVarint();
+        if (length == 0) {
+            finished = true;
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        try {
+            return decode(new ByteArrayInput(data));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed feature: " + e.getMessage());
+        }
+    }
+
+    private Object[] decode(ByteArrayInput record) {
+        Object[] values = new Object[columnTypes.size()];
+        int bitmapSize = Math.max(1, (values.length + 7) / 8);
+        byte[] bitmap = new byte[bitmapSize];
+        for (int i = 0; i < bitmapSize; i++) {
+            bitmap[i] = (byte) record.readByte();
+        }
+        for (int i = 0; i < values.length; i++) {
+            if ((bitmap[i / 8] & (1 << (i % 8))) == 0) {
+                values[i] = decodeValue(columnTypes.get(i), record);
+            }
+        }
+        return values;
+    }
+
+    private Object decodeValue(ColumnType type, ByteArrayInput record) {
+        switch (type) {
+            case INT:
+                return (int) record.readSignedVarint();
+            case LONG:
+                return record.readSignedVarint();
+            case FLOAT:
+                return Float.intBitsToFloat(record.readInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(record.readLong());
+            case BOOLEAN:
+                return record.readByte() != 0;
+            case TIMESTAMP:
+                return new Date(record.readSignedVarint());
+            case GEOMETRY:
+                return twkbReader.read(record.readBytes());
+            default:
+                return record.readString();
+        }
+    }
+
+    private long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of feature stream");
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint in feature stream");
+    }
+}
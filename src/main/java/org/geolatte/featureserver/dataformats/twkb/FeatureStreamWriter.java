@@ -0,0 +1,174 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes features as a compact binary stream, meant for java clients that would otherwise spend most of their time
+ * parsing JSON. Geometries are encoded as TWKB, the other values in a fixed binary form. Use a
+ * {@link FeatureStreamReader} to decode the stream.
+ * <p>
+ * Layout of the stream:
+ * <ul>
+ * <li>the magic bytes "GLFS" and a version byte</li>
+ * <li>the srid of the geometries as a zigzag encoded varint</li>
+ * <li>the number of columns as a varint, followed by the length prefixed UTF-8 name and the type code of each
+ * column (see {@link ColumnType})</li>
+ * <li>the features, each preceded by its length as a varint. A feature starts with a bitmap in which a set bit marks
+ * a column with a null value, followed by the values of the other columns</li>
+ * <li>a length of 0, marking the end of the stream</li>
+ * </ul>
+ * Varints are unsigned LEB128, fixed size numbers are big endian.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureStreamWriter {
+
+    static final byte[] MAGIC_BYTES = new byte[]{'G', 'L', 'F', 'S'};
+    static final int VERSION = 1;
+
+    /**
+     * The default number of decimals of the coordinates: millimeters for a coordinate system in meters.
+     */
+    public static final int DEFAULT_PRECISION = 3;
+
+    private final OutputStream out;
+    private final List<String> columnNames;
+    private final List<ColumnType> columnTypes = new ArrayList<ColumnType>();
+    private final int srid;
+    private final TwkbWriter twkbWriter;
+    private final ByteArrayOutput record = new ByteArrayOutput();
+    private final ByteArrayOutput length = new ByteArrayOutput();
+
+    /**
+     * @param out         the stream to write to. It is not closed by this writer.
+     * @param columnNames the names of the columns
+     * @param columnTypes the java types of the columns, see {@link ColumnType#forClass(Class)}
+     * @param srid        the srid of the geometries
+     * @param precision   the number of decimals of the coordinates, see {@link TwkbWriter}
+     */
+    public FeatureStreamWriter(OutputStream out, List<String> columnNames, List<Class<?>> columnTypes, int srid,
+                               int precision) {
+        this.out = out;
+        this.columnNames = columnNames;
+        for (Class<?> type : columnTypes) {
+            this.columnTypes.add(ColumnType.forClass(type));
+        }
+        this.srid = srid;
+        this.twkbWriter = new TwkbWriter(precision);
+    }
+
+    /**
+     * Writes the header of the stream. Must be called once, before the first feature.
+     *
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeHeader() throws IOException {
+        record.reset();
+        for (byte b : MAGIC_BYTES) {
+            record.writeByte(b);
+        }
+        record.writeByte(VERSION);
+        record.writeSignedVarint(srid);
+        record.writeVarint(columnNames.size());
+        for (int i = 0; i < columnNames.size(); i++) {
+            record.writeString(columnNames.get(i));
+            record.writeByte(columnTypes.get(i).getCode());
+        }
+        record.writeTo(out);
+    }
+
+    /**
+     * Writes a feature.
+     *
+     * @param values the values of the columns, in the order of the column names
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeFeature(Object[] values) throws IOException {
+        record.reset();
+        // At least one byte, so that a feature never has length 0
+        int bitmapSize = Math.max(1, (values.length + 7) / 8);
+        for (int i = 0; i < bitmapSize; i++) {
+            int bits = 0;
+            for (int bit = 0; bit < 8 && i * 8 + bit < values.length; bit++) {
+                if (values[i * 8 + bit] == null) {
+                    bits |= 1 << bit;
+                }
+            }
+            record.writeByte(bits);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                writeValue(columnTypes.get(i), values[i]);
+            }
+        }
+        length.reset();
+        length.writeVarint(record.size());
+        length.writeTo(out);
+        record.writeTo(out);
+    }
+
+    /**
+     * Writes the end marker and flushes the stream.
+     *
+     * @throws IOException if writing to the stream fails
+     */
+    public void finish() throws IOException {
+        out.write(0);
+        out.flush();
+    }
+
+    private void writeValue(ColumnType type, Object value) {
+        switch (type) {
+            case INT:
+            case LONG:
+                record.writeSignedVarint(((Number) value).longValue());
+                break;
+            case FLOAT:
+                record.writeInt(Float.floatToIntBits(((Number) value).floatValue()));
+                break;
+            case DOUBLE:
+                record.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+                break;
+            case BOOLEAN:
+                record.writeByte(((Boolean) value) ? 1 : 0);
+                break;
+            case TIMESTAMP:
+                record.writeSignedVarint(((Date) value).getTime());
+                break;
+            case GEOMETRY:
+                record.writeBytes(twkbWriter.write((Geometry) value));
+                break;
+            default:
+                record.writeString(value.toString());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.*;
+
+import static org.geolatte.featureserver.dataformats.twkb.TwkbWriter.*;
+
+/**
+ * Decodes Tiny Well-known Binary (TWKB) geometries. Bounding boxes, sizes and id lists are skipped; geometries with
+ * extended dimensions (z or m) are not supported.
+ * <p>
+ * A reader keeps decoding state and is therefore not thread-safe.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TwkbReader {
+
+    private final GeometryFactory factory;
+    private ByteArrayInput input;
+    private double scale;
+    private long lastX;
+    private long lastY;
+
+    /**
+     * @param factory the factory used to create the geometries, which determines their srid
+     */
+    public TwkbReader(GeometryFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param data the TWKB encoding of a geometry
+     * @return the decoded geometry
+     * @throws IllegalArgumentException if the data is not valid TWKB or uses unsupported features
+     */
+    public Geometry read(byte[] data) {
+        input = new ByteArrayInput(data);
+        try {
+            return readGeometry();
+        } finally {
+            input = null;
+        }
+    }
+
+    private Geometry readGeometry() {
+        int typeAndPrecision = input.readByte();
+        int type = typeAndPrecision & 0x0F;
+        scale = Math.pow(10, ByteArrayInput.unZigZag(typeAndPrecision >> 4));
+        int metadata = input.readByte();
+        if ((metadata & EXTENDED_DIMENSIONS_FLAG) != 0) {
+            throw new IllegalArgumentException("TWKB geometries with z or m coordinates are not supported");
+        }
+        if ((metadata & SIZE_FLAG) != 0) {
+            input.readVarint();
+        }
+        if ((metadata & BBOX_FLAG) != 0) {
+            for (int i = 0; i < 4; i++) {
+                input.readVarint();
+            }
+        }
+        if ((metadata & EMPTY_FLAG) != 0) {
+            return createEmpty(type);
+        }
+        lastX = 0;
+        lastY = 0;
+        switch (type) {
+            case POINT:
+                return factory.createPoint(readCoordinate());
+            case LINESTRING:
+                return factory.createLineString(readCoordinates());
+            case POLYGON:
+                return readPolygon();
+            case MULTIPOINT: {
+                Point[] points = new Point[readCount(metadata)];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = factory.createPoint(readCoordinate());
+                }
+                return factory.createMultiPoint(points);
+            }
+            case MULTILINESTRING: {
+                LineString[] lines = new LineString[readCount(metadata)];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = factory.createLineString(readCoordinates());
+                }
+                return factory.createMultiLineString(lines);
+            }
+            case MULTIPOLYGON: {
+                Polygon[] polygons = new Polygon[readCount(metadata)];
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon();
+                }
+                return factory.createMultiPolygon(polygons);
+            }
+            case GEOMETRYCOLLECTION: {
+                Geometry[] geometries = new Geometry[readCount(metadata)];
+                for (int i = 0; i < geometries.length; i++) {
+                    geometries[i] = readGeometry();
+                }
+                return factory.createGeometryCollection(geometries);
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported TWKB geometry type: " + type);
+        }
+    }
+
+    private Geometry createEmpty(int type) {
+        switch (type) {
+            case POINT:
+                return factory.createPoint((Coordinate) null);
+            case LINESTRING:
+                return factory.createLineString((Coordinate[]) null);
+            case POLYGON:
+                return factory.createPolygon(null, null);
+            case MULTIPOINT:
+                return factory.createMultiPoint((Point[]) null);
+            case MULTILINESTRING:
+                return factory.createMultiLineString(null);
+            case MULTIPOLYGON:
+                return factory.createMultiPolygon(null);
+            case GEOMETRYCOLLECTION:
+                return factory.createGeometryCollection(null);
+            default:
+                throw new IllegalArgumentException("Unsupported TWKB geometry type: " + type);
+        }
+    }
+
+    /**
+     * Reads the number of parts of a multi geometry and skips the id list that may follow it.
+     */
+    private int readCount(int metadata) {
+        int count = (int) input.readVarint();
+        if ((metadata & IDLIST_FLAG) != 0) {
+            for (int i = 0; i < count; i++) {
+                input.readVarint();
+            }
+        }
+        return count;
+    }
+
+    private Polygon readPolygon() {
+        int ringCount = (int) input.readVarint();
+        if (ringCount == 0) {
+            return factory.createPolygon(null, null);
+        }
+        LinearRing shell = factory.createLinearRing(readCoordinates());
+        LinearRing[] holes = new LinearRing[ringCount - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(readCoordinates());
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    private Coordinate[] readCoordinates() {
+        Coordinate[] coordinates = new Coordinate[(int) input.readVarint()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = readCoordinate();
+        }
+        return coordinates;
+    }
+
+    private Coordinate readCoordinate() {
+        lastX += input.readSignedVarint();
+        lastY += input.readSignedVarint();
+        return new Coordinate(lastX / scale, lastY / scale);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.*;
+
+/**
+ * Encodes geometries as Tiny Well-known Binary (TWKB). Coordinates are rounded to a fixed number of decimals and
+ * written as zigzag encoded varint deltas to the previous coordinate, which makes the encoding several times smaller
+ * than WKB. Only the x and y coordinates are written; the optional bounding box, size and id list are omitted.
+ * <p>
+ * A writer reuses its buffer and is therefore not thread-safe.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TwkbWriter {
+
+    /**
+     * The smallest precision TWKB can express: coordinates rounded to hundreds of millions.
+     */
+    public static final int MIN_PRECISION = -8;
+
+    /**
+     * The largest precision TWKB can express: seven decimals.
+     */
+    public static final int MAX_PRECISION = 7;
+
+    static final int POINT = 1;
+    static final int LINESTRING = 2;
+    static final int POLYGON = 3;
+    static final int MULTIPOINT = 4;
+    static final int MULTILINESTRING = 5;
+    static final int MULTIPOLYGON = 6;
+    static final int GEOMETRYCOLLECTION = 7;
+
+    static final int BBOX_FLAG = 0x01;
+    static final int SIZE_FLAG = 0x02;
+    static final int IDLIST_FLAG = 0x04;
+    static final int EXTENDED_DIMENSIONS_FLAG = 0x08;
+    static final int EMPTY_FLAG = 0x10;
+
+    private final int precision;
+    private final double scale;
+    private final ByteArrayOutput buffer = new ByteArrayOutput();
+    private long lastX;
+    private long lastY;
+
+    /**
+     * @param precision the number of decimals to keep, between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}.
+     *                  Negative values round to tens, hundreds, ...
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public TwkbWriter(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("The TWKB precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.scale = Math.pow(10, precision);
+    }
+
+    /**
+     * @return the number of decimals that are kept
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @param geometry the geometry to encode
+     * @return the TWKB encoding of the geometry
+     */
+    public byte[] write(Geometry geometry) {
+        buffer.reset();
+        writeGeometry(geometry);
+        return buffer.toByteArray();
+    }
+
+    private void writeGeometry(Geometry geometry) {
+        int type = getType(geometry);
+        buffer.writeByte(((int) ByteArrayOutput.zigZag(precision) << 4) | type);
+        if (geometry.isEmpty()) {
+            buffer.writeByte(EMPTY_FLAG);
+            return;
+        }
+        buffer.writeByte(0);
+        lastX = 0;
+        lastY = 0;
+        switch (type) {
+            case POINT:
+                writeCoordinate(geometry.getCoordinate());
+                break;
+            case LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case MULTIPOINT:
+                // TWKB has no representation for empty points within a multipoint
+                int count = 0;
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    count += geometry.getGeometryN(i).isEmpty() ? 0 : 1;
+                }
+                buffer.writeVarint(count);
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    if (!geometry.getGeometryN(i).isEmpty()) {
+                        writeCoordinate(geometry.getGeometryN(i).getCoordinate());
+                    }
+                }
+                break;
+            case MULTILINESTRING:
+                buffer.writeVarint(geometry.getNumGeometries());
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    writeCoordinates(((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+                }
+                break;
+            case MULTIPOLYGON:
+                buffer.writeVarint(geometry.getNumGeometries());
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                break;
+            default:
+                // The parts of a collection are complete TWKB geometries, each with its own header
+                buffer.writeVarint(geometry.getNumGeometries());
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    writeGeometry(geometry.getGeometryN(i));
+                }
+        }
+    }
+
+    private void writePolygon(Polygon polygon) {
+        if (polygon.isEmpty()) {
+            buffer.writeVarint(0);
+            return;
+        }
+        buffer.writeVarint(polygon.getNumInteriorRing() + 1);
+        writeCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            writeCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+    }
+
+    private void writeCoordinates(CoordinateSequence coordinates) {
+        buffer.writeVarint(coordinates.size());
+        for (int i = 0; i < coordinates.size(); i++) {
+            writeCoordinate(coordinates.getX(i), coordinates.getY(i));
+        }
+    }
+
+    private void writeCoordinate(Coordinate coordinate) {
+        writeCoordinate(coordinate.x, coordinate.y);
+    }
+
+    private void writeCoordinate(double x, double y) {
+        long scaledX = Math.round(x * scale);
+        long scaledY = Math.round(y * scale);
+        buffer.writeSignedVarint(scaledX - lastX);
+        buffer.writeSignedVarint(scaledY - lastY);
+        lastX = scaledX;
+        lastY = scaledY;
+    }
+
+    private static int getType(Geometry geometry) {
+        if (geometry instanceof Point) {
+            return POINT;
+        } else if (geometry instanceof LineString) {
+            return LINESTRING;
+        } else if (geometry instanceof Polygon) {
+            return POLYGON;
+        } else if (geometry instanceof MultiPoint) {
+            return MULTIPOINT;
+        } else if (geometry instanceof MultiLineString) {
+            return MULTILINESTRING;
+        } else if (geometry instanceof MultiPolygon) {
+            return MULTIPOLYGON;
+        } else if (geometry instanceof GeometryCollection) {
+            return GEOMETRYCOLLECTION;
+        }
+        throw new IllegalArgumentException("Unsupported geometry type: " + geometry.getGeometryType());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Rounds the coordinates of geometries to a fixed number of decimals. Coordinates usually come out of the database
+ * with 15 or more significant digits, far more than the accuracy of the data; rounding them makes the serialized
+ * numbers considerably shorter. Values halfway between two results are rounded to the even one, like
+ * {@link Math#rint(double)}, so rounding does not shift the data on average. The rounding is done in place and does
+ * not allocate.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CoordinatePrecisionReducer extends GeometryOperation {
+
+    /**
+     * The maximum number of decimals, beyond which doubles can not be rounded meaningfully.
+     */
+    public static final int MAX_DECIMALS = 15;
+
+    private final RoundingFilter filter;
+
+    /**
+     * @param entityClass the class of the entities whose geometry is rounded
+     * @param decimals    the number of decimals to keep, between 0 and {@link #MAX_DECIMALS}
+     * @throws IllegalArgumentException if the entity class has no geometry or the number of decimals is invalid
+     */
+    public CoordinatePrecisionReducer(Class<?> entityClass, int decimals) {
+        super(entityClass);
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("The precision must be between 0 and " + MAX_DECIMALS + " decimals");
+        }
+        this.filter = new RoundingFilter(Math.pow(10, decimals));
+    }
+
+    @Override
+    protected Geometry transform(Geometry geometry) {
+        geometry.apply(filter);
+        return geometry;
+    }
+
+    private static class RoundingFilter implements CoordinateSequenceFilter {
+
+        private final double scale;
+
+        RoundingFilter(double scale) {
+            this.scale = scale;
+        }
+
+        public void filter(CoordinateSequence seq, int i) {
+            seq.setOrdinate(i, CoordinateSequence.X, round(seq.getOrdinate(i, CoordinateSequence.X)));
+            seq.setOrdinate(i, CoordinateSequence.Y, round(seq.getOrdinate(i, CoordinateSequence.Y)));
+        }
+
+        private double round(double value) {
+            return Math.rint(value * scale) / scale;
+        }
+
+        public boolean isDone() {
+            return false;
+        }
+
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    }
+}
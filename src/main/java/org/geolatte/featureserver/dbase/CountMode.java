@@ -0,0 +1,64 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+/**
+ * Determines how the total number of features matching a query (disregarding pagination) is obtained.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public enum CountMode {
+
+    /**
+     * The total is counted exactly with a COUNT(*) query. Counts are cached for a while, see
+     * {@link ResultCounter}.
+     */
+    EXACT,
+
+    /**
+     * The total is estimated from the planner statistics of the table. Only an unfiltered total can be estimated
+     * this way; for filtered queries an exact (cached) count is used.
+     */
+    ESTIMATED,
+
+    /**
+     * The total is not computed.
+     */
+    NONE;
+
+    /**
+     * Parses a count mode, ignoring case.
+     *
+     * @param value the value to parse, one of "exact", "estimated" or "none"
+     * @return the corresponding count mode
+     * @throws IllegalArgumentException if the value is not a valid count mode
+     */
+    public static CountMode fromString(String value) {
+        for (CountMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value == null ? null : value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown count mode: " + value + " (expected exact, estimated or none)");
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.cql.hibernate.CqlHibernate;
+import org.geolatte.featureserver.cache.ExpiringLruCache;
+import org.hibernate.criterion.DetachedCriteria;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.text.ParseException;
+
+/**
+ * Caches the result of parsing cql expressions to criteria, per entity class and cql expression, so the filters
+ * that are sent over and over are parsed only once. Expressions that can not be parsed are cached as well, so they
+ * fail without being parsed again.
+ * <p>
+ * The criteria returned by a reader are modified when it runs the query (the bbox and pagination are added to
+ * them), so they can not be shared. The parsed criteria are therefore kept in serialized form, and each request
+ * gets its own deserialized copy, which is cheaper than parsing the expression again (see CqlCriteriaBenchmark in
+ * the tests). Criteria that can not be serialized are not cached; they are parsed on every request.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CqlCriteriaCache {
+
+    /**
+     * The maximum number of cached expressions, for all tables together.
+     */
+    public static final int MAX_ENTRIES = 1000;
+
+    private static final Logger LOGGER = LogManager.getLogger(CqlCriteriaCache.class);
+
+    // Cached for expressions of which the criteria can not be serialized, so the failure is only logged once
+    private static final ParsedCql NOT_SERIALIZABLE = new ParsedCql(null, null, 0);
+
+    private final ExpiringLruCache<Key, ParsedCql> cache;
+
+    /**
+     * @return the single instance of the cache
+     */
+    public static CqlCriteriaCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Lazy and threadsafe implementation of singleton. Solution of Bill Pugh.
+     */
+    private static class SingletonHolder {
+        private static final CqlCriteriaCache INSTANCE = new CqlCriteriaCache(MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of cached expressions
+     */
+    CqlCriteriaCache(int maxEntries) {
+        cache = new ExpiringLruCache<Key, ParsedCql>(maxEntries, 0);
+    }
+
+    /**
+     * Returns the criteria that correspond with the given cql expression.
+     *
+     * @param cql         the cql expression
+     * @param entityClass the entityclass the expression applies to
+     * @return new criteria, that are not shared with other callers
+     * @throws ParseException if the expression is invalid
+     */
+    public DetachedCriteria toCriteria(String cql, Class entityClass) throws ParseException {
+        Key key = new Key(entityClass, cql);
+        ParsedCql parsed = cache.get(key);
+        if (parsed == null) {
+            parsed = parse(cql, entityClass);
+            cache.put(key, parsed);
+        }
+        if (parsed == NOT_SERIALIZABLE) {
+            return CqlHibernate.toCriteria(cql, entityClass);
+        }
+        return parsed.toCriteria();
+    }
+
+    private ParsedCql parse(String cql, Class entityClass) {
+        DetachedCriteria criteria;
+        try {
+            criteria = CqlHibernate.toCriteria(cql, entityClass);
+        } catch (ParseException e) {
+            return new ParsedCql(null, e.getMessage(), e.getErrorOffset());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(criteria);
+            out.close();
+            return new ParsedCql(bytes.toByteArray(), null, 0);
+        } catch (IOException e) {
+            LOGGER.warn("Criteria for cql expression " + cql + " can not be cached: " + e.getMessage());
+            return NOT_SERIALIZABLE;
+        }
+    }
+
+    /**
+     * @return the number of cached expressions
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the number of times a cached expression was used
+     */
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return the number of times an expression had to be parsed
+     */
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Removes all cached expressions, for instance because the tables were mapped again.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * A cql expression for an entity class. The class is compared by identity, since a table that is mapped again
+     * gets a new class with the same name.
+     */
+    private static final class Key {
+        private final Class entityClass;
+        private final String cql;
+
+        Key(Class entityClass, String cql) {
+            this.entityClass = entityClass;
+            this.cql = cql;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return entityClass == other.entityClass && cql.equals(other.cql);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(entityClass) + cql.hashCode();
+        }
+    }
+
+    /**
+     * The outcome of parsing an expression: the serialized criteria, or the parse error. Neither is set for
+     * {@link #NOT_SERIALIZABLE}.
+     */
+    private static final class ParsedCql {
+        private final byte[] criteria;
+        private final String errorMessage;
+        private final int errorOffset;
+
+        ParsedCql(byte[] criteria, String errorMessage, int errorOffset) {
+            this.criteria = criteria;
+            this.errorMessage = errorMessage;
+            this.errorOffset = errorOffset;
+        }
+
+        DetachedCriteria toCriteria() throws ParseException {
+            if (criteria == null) {
+                throw new ParseException(errorMessage, errorOffset);
+            }
+            try {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(criteria));
+                try {
+                    return (DetachedCriteria) in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Can not happen, the criteria were serialized by this class
+                throw new IllegalStateException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -23,24 +23,51 @@ package org.geolatte.featureserver.dbase;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.dom4j.Document;
+import org.geolatte.featureserver.cache.ExpiringLruCache;
+import org.geolatte.featureserver.cache.ResultCacheManager;
+import org.geolatte.featureserver.cache.TileCacheManager;
 import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.config.MappingMode;
+import org.geolatte.featureserver.config.TableConfiguration;
 import org.hibernate.*;
-import org.hibernate.cfg.Configuration;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.hibernatespatial.cfg.HSConfiguration;
-import org.hibernatespatial.pojo.AutoMapper;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Database facade class. Creates readers for the different tables and retrieves meta-information.
  * <p>
+ * The facade is created once, by {@link #start()} (called when the web application starts, see
+ * FeatureServerContextListener) or by the first call to {@link #getInstance()}, and destroyed by {@link #stop()}.
+ * Concurrent first calls wait for the same creation; see {@link ServiceLifecycle} for the guarantees.
+ * </p>
+ * <p>
+ * All methods of the facade can be called concurrently. The mapped tables and their session factory form a single
+ * immutable state that is replaced atomically when tables are mapped or dropped; readers keep the state they were
+ * created with until they are closed. Mapping and refreshing are serialized by a lock, which requests only wait for
+ * when they need a table that is mapped lazily.
+ * </p>
+ * <p>
  * <i>Creation-Date</i>: 9-apr-2010<br>
  * <i>Creation-Time</i>:  11:48:54<br>
  * </p>
@@ -51,13 +78,70 @@ import java.util.List;
  */
 public class DbaseFacade {
 
-    private static DbaseFacade instance;
-    private SessionFactory sessionFactory;
-    private List<String> mappedTables;
+    /**
+     * The maximum number of exact counts that are cached, for all tables together.
+     */
+    private static final int COUNT_CACHE_SIZE = 10000;
+
+    /**
+     * The maximum number of cached lists of distinct values, for all tables together.
+     */
+    private static final int DISTINCT_VALUE_CACHE_SIZE = 1000;
+
+    /**
+     * The number of tables that are mapped together when mapping in the background.
+     */
+    private static final int BACKGROUND_BATCH_SIZE = 50;
+
+    private static final ServiceLifecycle<DbaseFacade> LIFECYCLE =
+            new ServiceLifecycle<DbaseFacade>("Database facade", new ServiceLifecycle.Factory<DbaseFacade>() {
+                public DbaseFacade create() {
+                    try {
+                        return new DbaseFacade();
+                    } catch (SQLException e) {
+                        LOGGER.error(e);
+                        throw new DatabaseException(e);
+                    }
+                }
+
+                public void destroy(DbaseFacade facade) {
+                    facade.shutdown();
+                }
+            });
+
+    private final TableMapper tableMapper;
+    private final MappingMode mappingMode;
+    // The included tables of the database, mapped or not, in the order they are listed. Replaced on refresh.
+    private volatile List<String> includedTables;
+    private volatile Set<String> includedTableSet;
+    // The mapped tables of which the columns changed since they were mapped
+    private volatile List<String> changedTables = Collections.emptyList();
+    // The changed tables of which a mapped column was dropped or altered, and that can not be served until a restart
+    private volatile List<String> incompatibleTables = Collections.emptyList();
+    // The mapped tables and their session factory. Replaced as a whole when tables are mapped or dropped.
+    private volatile MappingState state = new MappingState(null, new HashMap<String, TableMetadata>());
+    private final Object mappingLock = new Object();
+    // In lazy mode, the tables that were requested but are not mapped yet. Guarded by itself.
+    private final Set<String> requestedTables = new LinkedHashSet<String>();
+    // Whether a task that maps the requested tables is scheduled or running. Guarded by requestedTables.
+    private boolean lazyMappingScheduled;
+    // Incremented whenever the mapped tables or their mapping change
+    private final AtomicLong mappingVersion = new AtomicLong();
+    private final ExpiringLruCache<String, Integer> countCache =
+            new ExpiringLruCache<String, Integer>(COUNT_CACHE_SIZE, 0);
+    // The tables that are loaded in memory, by table name
+    private final Map<String, ResidentTable> residentTables = new ConcurrentHashMap<String, ResidentTable>();
+    private final ExpiringLruCache<String, DistinctValues> distinctValueCache =
+            new ExpiringLruCache<String, DistinctValues>(DISTINCT_VALUE_CACHE_SIZE, 0);
+    // Runs the background mapping, the refresh of resident tables and the precomputation of distinct values
+    private ScheduledExecutorService scheduler;
+    // The periodic tasks of each table, cancelled when the table is dropped
+    private final Map<String, List<Future<?>>> tableTasks = new HashMap<String, List<Future<?>>>();
     private static final Logger LOGGER = LogManager.getLogger(DbaseFacade.class);    
 
     /**
-     * Private constructor of the database facade. Maps all tables currently present in the database!
+     * Private constructor of the database facade. Lists all tables currently present in the database, and maps them
+     * right away, in the background or on first access, depending on the Mapping/Startup setting.
      *
      * @throws java.sql.SQLException If retrieval of the database classes, or mapping of the tables was unsuccesfull.
      */
@@ -66,36 +150,391 @@ public class DbaseFacade {
         {
             throw new SQLException("Invalid FeatureServer configuration");
         }
-        String connectionString = FeatureServerConfiguration.getInstance().getHibernateProperty("hibernate.connection.url");
-        String user = FeatureServerConfiguration.getInstance().getHibernateProperty("hibernate.connection.username");
-        String password = FeatureServerConfiguration.getInstance().getHibernateProperty("hibernate.connection.password");
-        Connection dbConnection = DriverManager.getConnection(connectionString, user, password);
-        DatabaseMetaData databaseMetaData = dbConnection.getMetaData();
-        String schema = FeatureServerConfiguration.getInstance().getDbaseSchema();
-        ResultSet resultSet = databaseMetaData.getTables(null, schema, null, new String[]{"TABLE", "VIEW"});
-        ArrayList<String> names = new ArrayList<String>();
-        while (resultSet.next()) {
-            names.add(resultSet.getString("TABLE_NAME"));
-        }
-        Configuration newConfig = new Configuration();
-        for (String property: FeatureServerConfiguration.getInstance().getHibernateProperties())
-        {
-            newConfig.setProperty(property, FeatureServerConfiguration.getInstance().getHibernateProperty(property));
+        long start = System.currentTimeMillis();
+        tableMapper = new TableMapper();
+        mappingMode = FeatureServerConfiguration.getInstance().getMappingMode();
+        includedTables = Collections.unmodifiableList(tableMapper.listTables());
+        includedTableSet = new HashSet<String>(includedTables);
+        if (mappingMode == MappingMode.EAGER) {
+            mapTables(includedTables);
+        } else if (mappingMode == MappingMode.BACKGROUND) {
+            scheduleBackgroundMapping();
+        }
+        int refreshInterval = FeatureServerConfiguration.getInstance().getMappingRefreshInterval();
+        if (refreshInterval > 0) {
+            getScheduler().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        refreshMapping();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Refresh of the mapping failed", e);
+                    }
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        }
+        LOGGER.info(String.format("Database facade started in %d ms, %d of %d tables mapped (%s)",
+                                  System.currentTimeMillis() - start, state.getTables().size(),
+                                  includedTables.size(), mappingMode));
+    }
+
+    private void scheduleBackgroundMapping() {
+        for (int i = 0; i < includedTables.size(); i += BACKGROUND_BATCH_SIZE) {
+            final List<String> batch =
+                    includedTables.subList(i, Math.min(i + BACKGROUND_BATCH_SIZE, includedTables.size()));
+            getScheduler().execute(new Runnable() {
+                public void run() {
+                    try {
+                        mapTables(batch);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Mapping of tables " + batch + " failed", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Requests the mapping of a table in lazy mode. The table is mapped in the background, together with the other
+     * tables that are requested before the mapping starts, so a burst of first requests for different tables builds
+     * the session factory once instead of once per table.
+     *
+     * @param tableName the name of the table to map
+     */
+    private void requestMapping(String tableName) {
+        synchronized (requestedTables) {
+            if (!requestedTables.add(tableName) || lazyMappingScheduled) {
+                return;
+            }
+            lazyMappingScheduled = true;
+        }
+        getScheduler().execute(new Runnable() {
+            public void run() {
+                mapRequestedTables();
+            }
+        });
+    }
+
+    /**
+     * Maps the requested tables in batches, until no more tables are requested. Tables that are requested while a
+     * batch is being mapped are part of the next one.
+     */
+    private void mapRequestedTables() {
+        while (true) {
+            List<String> batch;
+            synchronized (requestedTables) {
+                if (requestedTables.isEmpty()) {
+                    lazyMappingScheduled = false;
+                    return;
+                }
+                batch = new ArrayList<String>(requestedTables);
+            }
+            try {
+                mapTables(batch);
+            } catch (RuntimeException e) {
+                // The tables are requested again on their next access
+                LOGGER.error("Mapping of tables " + batch + " failed", e);
+            } finally {
+                synchronized (requestedTables) {
+                    requestedTables.removeAll(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the given tables, if they are not mapped yet, and replaces the mapping state by one that includes them.
+     *
+     * @param tables the names of the tables to map
+     * @throws DatabaseException if the tables could not be mapped
+     */
+    private void mapTables(Collection<String> tables) throws DatabaseException {
+        Map<String, Class> mapped;
+        synchronized (mappingLock) {
+            try {
+                mapped = tableMapper.map(tables);
+            } catch (SQLException e) {
+                LOGGER.error(e);
+                throw new DatabaseException(e);
+            }
+            if (mapped.isEmpty()) {
+                return;
+            }
+            swapState(mapped);
+        }
+        loadResidentTables(mapped.keySet());
+        scheduleDistinctValuePrecomputation(mapped.keySet());
+    }
+
+    /**
+     * Replaces the mapping state by one for the included tables that are mapped: those of the current state that are
+     * still included, and the given newly mapped ones. The session factory of the current state is closed once the
+     * readers that use it are closed. The cached cql criteria are dropped, so they do not keep the entity classes of
+     * the previous state alive. Must be called while holding the mapping lock.
+     *
+     * @param mapped the classes of the newly mapped tables, by table name
+     */
+    private void swapState(Map<String, Class> mapped) {
+        MappingState previous = state;
+        Map<String, TableMetadata> metadata = new LinkedHashMap<String, TableMetadata>();
+        for (String tableName : includedTables) {
+            TableMetadata tableMetadata = previous.getTableMetadata(tableName);
+            if (tableMetadata == null && mapped.containsKey(tableName)) {
+                tableMetadata = new TableMetadata(tableName, mapped.get(tableName));
+            }
+            if (tableMetadata != null) {
+                metadata.put(tableName, tableMetadata);
+            }
         }
+        state = new MappingState(tableMapper.buildSessionFactory(), metadata);
+        mappingVersion.incrementAndGet();
+        CqlCriteriaCache.getInstance().clear();
+        previous.retire();
+    }
+
+    /**
+     * @return the current mapping state, acquired. It must be released when its session factory is no longer used.
+     */
+    private MappingState acquireState() {
+        while (true) {
+            MappingState current = state;
+            // Only fails if the state was replaced and closed in the meantime
+            if (current.acquire()) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Checks the database for included tables that were added, dropped or changed since they were last listed.
+     * Added tables are mapped (in lazy mode: on first access) and dropped tables are removed, in a new session factory
+     * that is swapped in atomically; readers that are open on the previous one finish on it. The cached responses,
+     * tiles and distinct values of dropped and changed tables are purged.
+     * <p>
+     * The AutoMapper can not map a table again, so tables of which the columns changed keep their original mapping
+     * until the featureserver is restarted. They are reported, and listed as changed in the status. If columns were
+     * only added, the table is still served with the columns it was mapped with. If a mapped column was dropped or
+     * altered, queries on the table would fail: it is refused with a {@link TableChangedException} instead.
+     * </p>
+     *
+     * @return the tables that were added, dropped or changed
+     * @throws DatabaseException if the tables could not be read or mapped
+     */
+    public MappingRefresh refreshMapping() throws DatabaseException {
+        List<String> added = new ArrayList<String>();
+        List<String> dropped = new ArrayList<String>();
+        List<String> changed;
+        List<String> incompatible;
+        List<String> newlyChanged = new ArrayList<String>();
+        List<String> newlyIncompatible = new ArrayList<String>();
+        Map<String, Class> mapped = Collections.emptyMap();
+        synchronized (mappingLock) {
+            Map<String, String> signatures = new HashMap<String, String>();
+            List<String> tables;
+            try {
+                tables = tableMapper.readTables(signatures);
+            } catch (SQLException e) {
+                LOGGER.error(e);
+                throw new DatabaseException(e);
+            }
+            Set<String> tableSet = new HashSet<String>(tables);
+            for (String tableName : tables) {
+                if (!includedTableSet.contains(tableName)) {
+                    added.add(tableName);
+                }
+            }
+            for (String tableName : includedTables) {
+                if (!tableSet.contains(tableName)) {
+                    dropped.add(tableName);
+                }
+            }
+            includedTables = Collections.unmodifiableList(new ArrayList<String>(tables));
+            includedTableSet = tableSet;
+            tableMapper.unmap(dropped);
+            if (!added.isEmpty() && mappingMode != MappingMode.LAZY) {
+                try {
+                    mapped = tableMapper.map(added);
+                } catch (SQLException e) {
+                    LOGGER.error(e);
+                    throw new DatabaseException(e);
+                }
+            }
+            tableMapper.saveSnapshot();
+            changed = tableMapper.findChangedTables(signatures);
+            for (String tableName : changed) {
+                if (!changedTables.contains(tableName)) {
+                    newlyChanged.add(tableName);
+                }
+            }
+            changedTables = Collections.unmodifiableList(changed);
+            incompatible = tableMapper.findIncompatibleTables(signatures);
+            for (String tableName : incompatible) {
+                if (!incompatibleTables.contains(tableName)) {
+                    newlyIncompatible.add(tableName);
+                }
+            }
+            incompatibleTables = Collections.unmodifiableList(incompatible);
+            if (!mapped.isEmpty() || !dropped.isEmpty()) {
+                swapState(mapped);
+            } else if (!added.isEmpty()) {
+                // Only the pending tables changed
+                mappingVersion.incrementAndGet();
+            }
+        }
+        for (String tableName : dropped) {
+            cancelTableTasks(tableName);
+            residentTables.remove(tableName);
+        }
+        List<String> stale = new ArrayList<String>(dropped);
+        stale.addAll(newlyChanged);
+        for (String tableName : newlyIncompatible) {
+            if (!stale.contains(tableName)) {
+                stale.add(tableName);
+            }
+        }
+        for (String tableName : stale) {
+            ResultCacheManager.getInstance().purge(tableName);
+            TileCacheManager.getInstance().purge(tableName, null);
+        }
+        if (!stale.isEmpty()) {
+            distinctValueCache.clear();
+        }
+        loadResidentTables(mapped.keySet());
+        scheduleDistinctValuePrecomputation(mapped.keySet());
+        if (!newlyChanged.isEmpty()) {
+            LOGGER.warn("The columns of " + newlyChanged + " changed, they keep their mapping until the next restart");
+        }
+        if (!newlyIncompatible.isEmpty()) {
+            LOGGER.warn("Mapped columns of " + newlyIncompatible + " were dropped or altered, they can not be served "
+                        + "until the next restart");
+        }
+        MappingRefresh result = new MappingRefresh(added, dropped, changed, incompatible);
+        if (!added.isEmpty() || !dropped.isEmpty()) {
+            LOGGER.info("Mapping refreshed: " + result);
+        }
+        return result;
+    }
 
-        mappedTables = FeatureServerConfiguration.getInstance().includedTables(names);
-        // We may only invoke this once, since currently the automapper crashes if a table was already mapped in the
-        // past. Since this call is present in the private constructor which is only called in the singleton method
-        // there is no problem.
-        Document tableMapping = AutoMapper.map(dbConnection, null, schema,mappedTables);
-        resultSet.close();
-        dbConnection.close();
-        newConfig.addXML(tableMapping.asXML());
-        
-        HSConfiguration configuration = new HSConfiguration();
-        this.sessionFactory = newConfig.buildSessionFactory();
-        LOGGER.info("Sessionfactory created: " + sessionFactory);
-        configuration.configure(newConfig);
+    /**
+     * @return the mapped tables of which the columns changed since they were mapped, and that keep their original
+     *         mapping until the featureserver is restarted. See {@link #refreshMapping()}.
+     */
+    public List<String> getChangedTables() {
+        return changedTables;
+    }
+
+    /**
+     * @return the changed tables of which a mapped column was dropped or altered. They are refused with a
+     *         {@link TableChangedException} until the featureserver is restarted. See {@link #refreshMapping()}.
+     */
+    public List<String> getIncompatibleTables() {
+        return incompatibleTables;
+    }
+
+    private void scheduleTableTask(String tableName, Runnable task, int initialDelay, int delay) {
+        Future<?> future = getScheduler().scheduleWithFixedDelay(task, initialDelay, delay, TimeUnit.SECONDS);
+        synchronized (tableTasks) {
+            List<Future<?>> tasks = tableTasks.get(tableName);
+            if (tasks == null) {
+                tasks = new ArrayList<Future<?>>();
+                tableTasks.put(tableName, tasks);
+            }
+            tasks.add(future);
+        }
+    }
+
+    private void cancelTableTasks(String tableName) {
+        List<Future<?>> tasks;
+        synchronized (tableTasks) {
+            tasks = tableTasks.remove(tableName);
+        }
+        if (tasks != null) {
+            for (Future<?> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Loads the given tables that are configured as resident in memory, and schedules their periodic refresh. A table
+     * that can not be loaded is served by the database.
+     */
+    private void loadResidentTables(Collection<String> tableNames) {
+        for (String tableName : tableNames) {
+            TableConfiguration tableConfiguration =
+                    FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+            if (!tableConfiguration.isResident()) {
+                continue;
+            }
+            final String name = tableName;
+            try {
+                refreshResidentTable(name);
+            } catch (DatabaseException e) {
+                LOGGER.error("Table " + name + " could not be loaded in memory, it is served by the database", e);
+                continue;
+            }
+            int interval = tableConfiguration.getResidentRefreshInterval();
+            if (interval > 0) {
+                scheduleTableTask(name, new Runnable() {
+                    public void run() {
+                        try {
+                            refreshResidentTable(name);
+                        } catch (RuntimeException e) {
+                            // Keep serving the previous snapshot, and retry at the next interval
+                            LOGGER.error("Refresh of resident table " + name + " failed", e);
+                        }
+                    }
+                }, interval, interval);
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "featureserver-background");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Reloads a resident table from the database. Queries keep being answered from the previous snapshot until the
+     * new one is loaded.
+     *
+     * @param tableName the name of the table
+     * @return the number of elements loaded, or -1 if the table does not exist or is not configured as resident
+     * @throws DatabaseException if the table could not be read
+     */
+    public int refreshResidentTable(String tableName) throws DatabaseException {
+        MappingState current = acquireState();
+        ResidentTable table;
+        long start = System.currentTimeMillis();
+        try {
+            TableMetadata metadata = current.getTableMetadata(tableName);
+            if (metadata == null
+                    || !FeatureServerConfiguration.getInstance().getTableConfiguration(tableName).isResident()) {
+                return -1;
+            }
+            table = ResidentTable.load(current.getSessionFactory(), metadata.getEntityClass());
+        } finally {
+            current.release();
+        }
+        residentTables.put(tableName, table);
+        LOGGER.info(String.format("Resident table %s loaded: %d features in %d ms", tableName, table.size(),
+                                  System.currentTimeMillis() - start));
+        return table.size();
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the in-memory copy of the table, or null if the table is not resident (or could not be loaded)
+     */
+    public ResidentTable getResidentTable(String tableName) {
+        return residentTables.get(tableName);
     }
 
     /**
@@ -113,11 +552,71 @@ public class DbaseFacade {
     }
 
     /**
-     * @return all tables mapped by this the current featureserver mapping
+     * @return all tables mapped by this the current featureserver mapping. Tables that are still being mapped are not
+     *         included, see {@link #getPendingTables()}.
      */
     public List<String> getAllMappedTables()
     {
-        return mappedTables == null ? new ArrayList<String>() : new ArrayList<String>(mappedTables);
+        return state.getTableNames();
+    }
+
+    /**
+     * @return the included tables that are not mapped yet, because they are mapped in the background or on first
+     *         access
+     */
+    public List<String> getPendingTables() {
+        MappingState current = state;
+        List<String> pending = new ArrayList<String>();
+        for (String tableName : includedTables) {
+            if (current.getTableMetadata(tableName) == null) {
+                pending.add(tableName);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return the way the tables are mapped at startup
+     */
+    public MappingMode getMappingMode() {
+        return mappingMode;
+    }
+
+    /**
+     * Returns the metadata of a table. In lazy mapping mode, a table that is not mapped yet is scheduled for mapping
+     * in the background by this call, see {@link #requestMapping(String)}.
+     *
+     * @param tableName the name of a table
+     * @return the metadata of the table, or null if no such table is included in the mapping
+     * @throws TableNotReadyException if the table exists, but is not mapped yet
+     * @throws TableChangedException if a mapped column of the table was dropped or altered since it was mapped
+     */
+    public TableMetadata getTableMetadata(String tableName) throws DatabaseException {
+        if (tableName == null) {
+            return null;
+        }
+        TableMetadata metadata = state.getTableMetadata(tableName);
+        if (metadata != null) {
+            if (incompatibleTables.contains(tableName)) {
+                throw new TableChangedException(tableName);
+            }
+            return metadata;
+        }
+        if (!includedTableSet.contains(tableName)) {
+            return null;
+        }
+        if (mappingMode == MappingMode.LAZY) {
+            requestMapping(tableName);
+        }
+        throw new TableNotReadyException(tableName);
+    }
+
+    /**
+     * @return the version of the mapping. It changes whenever the mapped tables or their properties change, so
+     *         information derived from the mapping can be cached until then.
+     */
+    public long getMappingVersion() {
+        return mappingVersion.get();
     }
 
     /**
@@ -138,55 +637,244 @@ public class DbaseFacade {
     public StandardFeatureReader getReader(String tableName, String bbox, String CQLString, Integer start, Integer limit,
                                            List<Order> orderings)
             throws DatabaseException {
-        Class tableClass = AutoMapper.getClass(null, FeatureServerConfiguration.getInstance().getDbaseSchema(), tableName);
-        if (tableClass == null) {
+        FeatureQuery query = new FeatureQuery();
+        query.setBbox(bbox);
+        query.setCql(CQLString);
+        query.setStart(start);
+        query.setLimit(limit);
+        query.setOrderings(orderings);
+        return getReader(tableName, query);
+    }
+
+    /**
+     * Returns a reader for the given table if that table exists, otherwise returns null.
+     *
+     * @param tableName the table for which a reader is desired.
+     * @param query the filter, ordering and pagination parameters for the reader.
+     * @return a reader for the given table, or null if no such table exists
+     * @throws DatabaseException If the a reader can not be constructed (eg: invalid cql query)
+     */
+    public StandardFeatureReader getReader(String tableName, FeatureQuery query)
+            throws DatabaseException {
+        TableMetadata metadata = getTableMetadata(tableName);
+        if (metadata == null) {
             return null;
         }
-        return new StandardFeatureReader(sessionFactory, CQLString, tableClass, bbox, start, limit, orderings);
+        ResidentTable residentTable = residentTables.get(tableName);
+        if (residentTable != null) {
+            StandardFeatureReader reader = residentTable.createReader(query);
+            if (reader != null) {
+                return reader;
+            }
+        }
+        TableConfiguration tableConfiguration = FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+        ResultCounter counter = new ResultCounter(countCache, tableConfiguration.getCountCacheTtl() * 1000L);
+        final MappingState current = acquireState();
+        boolean released = false;
+        try {
+            if (current.getTableMetadata(tableName) == null) {
+                // Dropped in the meantime
+                return null;
+            }
+            StandardFeatureReader reader =
+                    new StandardFeatureReader(current.getSessionFactory(), metadata.getEntityClass(), query, counter);
+            // The session factory stays open until the reader is closed, even if a new mapping is swapped in
+            reader.setCloseAction(new Runnable() {
+                public void run() {
+                    current.release();
+                }
+            });
+            released = true;
+            return reader;
+        } finally {
+            if (!released) {
+                current.release();
+            }
+        }
     }
 
-    public <T> List<T> getDistinctValues(Class<?> entityClass, String property, Class<T> propertyType){
+    /**
+     * Returns the distinct, non-null values of a property in ascending order. The complete list of values is cached
+     * for the time set in the DistinctValues settings of the table, unless it is larger than the configured maximum;
+     * requests with a prefix or limit are then answered from the cached list. Otherwise, the prefix and limit are
+     * applied in the query, so a limited request does not read all values of a large table.
+     *
+     * @param tableName the name of the table
+     * @param property  the name of the property, of a type for which distinct values can be retrieved
+     * @param prefix    if not null, only the values that start with this prefix are returned. Only applicable on
+     *                  string properties.
+     * @param limit     if not null, the maximum number of values to return
+     * @return the distinct values, or null if no such table exists
+     * @throws DatabaseException if the values could not be retrieved
+     */
+    public DistinctValues getDistinctValues(String tableName, String property, String prefix, Integer limit)
+            throws DatabaseException {
+        TableMetadata metadata = getTableMetadata(tableName);
+        if (metadata == null) {
+            return null;
+        }
+        Class tableClass = metadata.getEntityClass();
+        TableConfiguration tableConfiguration = FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+        long ttl = tableConfiguration.getDistinctValuesTtl() * 1000L;
+        if (ttl <= 0) {
+            return loadDistinctValues(tableClass, property, prefix, limit);
+        }
+        String key = tableName + "." + property;
+        DistinctValues all = distinctValueCache.get(key);
+        if (all != null) {
+            return all.restrict(prefix, limit);
+        }
+        if (prefix == null && limit == null) {
+            all = loadDistinctValues(tableClass, property, null, null);
+            if (all.getValues().size() <= tableConfiguration.getDistinctValuesMaxValues()) {
+                distinctValueCache.put(key, all, ttl);
+            }
+            return all;
+        }
+        String restrictedKey = key + "|" + prefix + "|" + limit;
+        DistinctValues restricted = distinctValueCache.get(restrictedKey);
+        if (restricted == null) {
+            restricted = loadDistinctValues(tableClass, property, prefix, limit);
+            distinctValueCache.put(restrictedKey, restricted, ttl);
+        }
+        return restricted;
+    }
+
+    private DistinctValues loadDistinctValues(Class<?> entityClass, String property, String prefix, Integer limit) {
+        MappingState current = acquireState();
+        SessionFactory sessionFactory = current.getSessionFactory();
         Transaction tx = null;
         try {
             Session session = sessionFactory.getCurrentSession();
             tx = session.beginTransaction();
             Criteria criteria = session.createCriteria(entityClass);
             criteria.add(Restrictions.isNotNull(property));
+            if (prefix != null) {
+                criteria.add(Restrictions.like(property, escapeLikePattern(prefix) + "%"));
+            }
             criteria.setProjection(Projections.distinct(Projections.property(property)));
-            List<T> result = (List<T>) criteria.list();
+            criteria.addOrder(Order.asc(property));
+            if (limit != null) {
+                // One more than requested, to know whether there are more
+                criteria.setMaxResults(limit + 1);
+            }
+            List<Object> result = (List<Object>) criteria.list();
             tx.commit();
-            return result;
-        }catch(HibernateException e){
+            boolean truncated = limit != null && result.size() > limit;
+            if (truncated) {
+                result = new ArrayList<Object>(result.subList(0, limit));
+            }
+            return new DistinctValues(result, truncated);
+        } catch (HibernateException e) {
             LOGGER.error(e);
             if (tx != null) {
                 tx.rollback();
             }
             throw new DatabaseException(e);
-        }finally{            
+        } finally {
             sessionFactory.getCurrentSession().close();
+            current.release();
         }
     }
 
+    private static String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Schedules the computation of the distinct values of the properties listed in the DistinctValues/Precompute
+     * settings. They are computed right away and then refreshed every time to live, while the previous values are
+     * kept, so they never expire as long as the database is reachable.
+     */
+    private void scheduleDistinctValuePrecomputation(Collection<String> tableNames) {
+        for (String tableName : tableNames) {
+            TableConfiguration tableConfiguration =
+                    FeatureServerConfiguration.getInstance().getTableConfiguration(tableName);
+            final int ttl = tableConfiguration.getDistinctValuesTtl();
+            final int maxValues = tableConfiguration.getDistinctValuesMaxValues();
+            final TableMetadata metadata = state.getTableMetadata(tableName);
+            if (tableConfiguration.getDistinctValuesPrecompute().isEmpty() || metadata == null) {
+                continue;
+            }
+            if (ttl <= 0) {
+                LOGGER.warn("Distinct values of " + tableName + " are not cached, they are not precomputed");
+                continue;
+            }
+            for (final String property : tableConfiguration.getDistinctValuesPrecompute()) {
+                final String key = tableName + "." + property;
+                scheduleTableTask(tableName, new Runnable() {
+                    public void run() {
+                        try {
+                            DistinctValues values = loadDistinctValues(metadata.getEntityClass(), property, null, null);
+                            if (values.getValues().size() <= maxValues) {
+                                // Twice the interval, so the values do not expire before the next refresh
+                                distinctValueCache.put(key, values, ttl * 2000L);
+                            } else {
+                                LOGGER.warn(String.format("%s has %d distinct values, more than the %d that are cached",
+                                                          key, values.getValues().size(), maxValues));
+                            }
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Precomputation of the distinct values of " + key + " failed", e);
+                        }
+                    }
+                }, 0, ttl);
+            }
+        }
+    }
+
+    /**
+     * Releases the resources of the facade: stops the background tasks and closes the session factory once the open
+     * readers are closed.
+     */
+    private void shutdown() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        synchronized (mappingLock) {
+            state.retire();
+        }
+        residentTables.clear();
+        LOGGER.info("Database facade stopped");
+    }
 
     /**
      * Retrieves an instance of the database, or throws a database exception (unchecked exception), if the
      * databasefacade can not be constructed due to an SQL error. This is typically the case when the settings
      * for the connection are not available from the configuration, if the necessary drivers are not present or if
-     * there is a problem with the scheme.
+     * there is a problem with the scheme. If the facade is not created yet, it is created by this call; if it is
+     * being created by another thread, this call waits for it.
      * @return An instance of the databasefacade
-     * @throws DatabaseException If anything went wrong that made it impossible to retrieve the facade.
+     * @throws DatabaseException If anything went wrong that made it impossible to retrieve the facade, or if it is
+     * stopped.
      */
      public static DbaseFacade getInstance()
              throws DatabaseException
      {
-        if (instance == null) {
-            try{
-                instance = new DbaseFacade();
-            } catch (SQLException e) {
-                LOGGER.error(e);
-                throw new DatabaseException(e);
-            }
-        }
-        return instance;
+        return LIFECYCLE.get();
+    }
+
+    /**
+     * Creates the facade, if it is not created yet.
+     *
+     * @throws DatabaseException if the facade could not be created
+     */
+    public static void start() throws DatabaseException {
+        LIFECYCLE.start();
+    }
+
+    /**
+     * Stops the facade. Afterwards, {@link #getInstance()} fails.
+     */
+    public static void stop() {
+        LIFECYCLE.stop();
+    }
+
+    /**
+     * @return the lifecycle state of the facade
+     */
+    public static ServiceLifecycle.State getLifecycleState() {
+        return LIFECYCLE.getState();
     }
 }
\ No newline at end of file
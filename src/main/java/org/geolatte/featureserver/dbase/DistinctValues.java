@@ -0,0 +1,85 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The distinct values of a property, in ascending order, as returned by
+ * {@link DbaseFacade#getDistinctValues(String, String, String, Integer)}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class DistinctValues {
+
+    private final List<?> values;
+    private final boolean truncated;
+
+    /**
+     * @param values    the values
+     * @param truncated whether there are more values than the ones given
+     */
+    public DistinctValues(List<?> values, boolean truncated) {
+        this.values = Collections.unmodifiableList(values);
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return the values, in ascending order
+     */
+    public List<?> getValues() {
+        return values;
+    }
+
+    /**
+     * @return true if the limit of the request cut off further values
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Restricts the values to the ones that start with the given prefix, and to the given number.
+     *
+     * @param prefix if not null, only the values whose text starts with this prefix are kept
+     * @param limit  if not null, the maximum number of values to keep
+     * @return the restricted values
+     */
+    public DistinctValues restrict(String prefix, Integer limit) {
+        List<Object> result = new ArrayList<Object>();
+        boolean cut = truncated;
+        for (Object value : values) {
+            if (prefix != null && !String.valueOf(value).startsWith(prefix)) {
+                continue;
+            }
+            if (limit != null && result.size() >= limit) {
+                cut = true;
+                break;
+            }
+            result.add(value);
+        }
+        return new DistinctValues(result, cut);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.criterion.Order;
+
+import java.util.List;
+
+/**
+ * Groups the parameters that determine which features a {@link StandardFeatureReader} returns. All parameters are
+ * optional; an empty query returns all features of a table.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureQuery {
+
+    private String bbox;
+    private String cql;
+    private Integer start;
+    private Integer limit;
+    private List<Order> orderings;
+    private KeysetCursor cursor;
+    private CountMode countMode;
+    private List<String> properties;
+    private Double simplificationTolerance;
+    private Integer coordinatePrecision;
+
+    /**
+     * @return the boundingbox filter, or null if there is none
+     */
+    public String getBbox() {
+        return bbox;
+    }
+
+    /**
+     * @param bbox a boundingbox filter for the geometry of the features. It is ignored if it is invalid, null or if
+     *             the features do not have a geometry property.
+     */
+    public void setBbox(String bbox) {
+        this.bbox = bbox;
+    }
+
+    /**
+     * @return the cql expression, or null if there is none
+     */
+    public String getCql() {
+        return cql;
+    }
+
+    /**
+     * @param cql a cql expression the features must match, in addition to the boundingbox filter
+     */
+    public void setCql(String cql) {
+        this.cql = cql;
+    }
+
+    /**
+     * @return the follownumber of the first item to return, or null
+     */
+    public Integer getStart() {
+        return start;
+    }
+
+    /**
+     * @param start the follownumber of the first item to return (pagination). Ignored if a cursor is set.
+     */
+    public void setStart(Integer start) {
+        this.start = start;
+    }
+
+    /**
+     * @return the maximum number of items to return, or null
+     */
+    public Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the maximum number of items to return
+     */
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the orderings to apply, or null
+     */
+    public List<Order> getOrderings() {
+        return orderings;
+    }
+
+    /**
+     * @param orderings the orderings to apply, in order. Ignored if a cursor is set, since the cursor determines
+     *                  the ordering itself.
+     */
+    public void setOrderings(List<Order> orderings) {
+        this.orderings = orderings;
+    }
+
+    /**
+     * @return the keyset cursor, or null if offset pagination is used
+     */
+    public KeysetCursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor a keyset cursor. If set, the features are returned in the order of the cursor, starting right
+     *               after the position it encodes.
+     */
+    public void setCursor(KeysetCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the way the total number of matching features is determined, or null for the default
+     *         ({@link CountMode#EXACT})
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * @param countMode the way the total number of matching features is determined
+     */
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    /**
+     * @return the properties to load, or null if all properties are loaded
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param properties the properties to load. Only these columns are selected from the database, the other
+     *                   properties of the returned features are left null. If null or empty, all properties are
+     *                   loaded. The names must be valid properties of the table.
+     */
+    public void setProperties(List<String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the tolerance with which geometries are simplified, or null if they are not simplified
+     */
+    public Double getSimplificationTolerance() {
+        return simplificationTolerance;
+    }
+
+    /**
+     * @param simplificationTolerance the distance tolerance, in the units of the coordinate system of the table,
+     *                                with which the geometries are simplified. If null or 0, geometries are
+     *                                returned as they are. See {@link GeometrySimplifier}.
+     */
+    public void setSimplificationTolerance(Double simplificationTolerance) {
+        this.simplificationTolerance = simplificationTolerance;
+    }
+
+    /**
+     * @return the number of decimals to which coordinates are rounded, or null if they are not rounded
+     */
+    public Integer getCoordinatePrecision() {
+        return coordinatePrecision;
+    }
+
+    /**
+     * @param coordinatePrecision the number of decimals to which the coordinates of the geometries are rounded. If
+     *                            null, coordinates are returned as they are. See {@link CoordinatePrecisionReducer}.
+     */
+    public void setCoordinatePrecision(Integer coordinatePrecision) {
+        this.coordinatePrecision = coordinatePrecision;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Geometry;
+import org.geolatte.common.reflection.EntityClassReader;
+
+import java.lang.reflect.Field;
+
+/**
+ * An operation that replaces the geometry of an entity by a modified version, eg. to reduce its size before it is
+ * sent to the client. Operations are applied by the {@link StandardFeatureReader} to each entity it returns, so
+ * the entities must not be managed by a session that will be flushed.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public abstract class GeometryOperation {
+
+    private final Field geometryField;
+
+    /**
+     * @param entityClass the class of the entities the operation is applied to
+     * @throws IllegalArgumentException if the entity class has no geometry
+     */
+    protected GeometryOperation(Class<?> entityClass) {
+        String geometryName = EntityClassReader.getClassReaderFor(entityClass).getGeometryName();
+        if (geometryName == null) {
+            throw new IllegalArgumentException(entityClass.getSimpleName() + " has no geometry");
+        }
+        this.geometryField = findField(entityClass, geometryName);
+    }
+
+    /**
+     * Replaces the geometry of the given entity by the result of {@link #transform(Geometry)}. Entities without a
+     * geometry are left alone.
+     *
+     * @param entity the entity to modify
+     */
+    public void apply(Object entity) {
+        try {
+            Geometry geometry = (Geometry) geometryField.get(entity);
+            if (geometry != null) {
+                geometryField.set(entity, transform(geometry));
+            }
+        } catch (IllegalAccessException e) {
+            // Can not happen, the field is made accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param geometry the geometry of an entity, never null
+     * @return the geometry to replace it with. May be the same instance if it is modified in place.
+     */
+    protected abstract Geometry transform(Geometry geometry);
+
+    private static Field findField(Class<?> entityClass, String name) {
+        for (Class<?> current = entityClass; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+        throw new IllegalArgumentException(entityClass.getSimpleName() + " has no field " + name);
+    }
+}
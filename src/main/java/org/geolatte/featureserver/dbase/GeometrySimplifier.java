@@ -0,0 +1,63 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+
+/**
+ * Replaces the geometry of entities by a simplified version, so that geometries with far more detail than can be
+ * displayed at a given scale are not sent to the client in full. The simplification preserves topology: polygons
+ * remain valid and rings do not collapse or cross.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class GeometrySimplifier extends GeometryOperation {
+
+    private final double tolerance;
+
+    /**
+     * @param entityClass the class of the entities to simplify
+     * @param tolerance   the distance tolerance, in the units of the coordinate system of the geometries
+     * @throws IllegalArgumentException if the entity class has no geometry or the tolerance is negative
+     */
+    public GeometrySimplifier(Class<?> entityClass, double tolerance) {
+        super(entityClass);
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("The simplification tolerance can not be negative");
+        }
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    protected Geometry transform(Geometry geometry) {
+        if (geometry instanceof Point || geometry instanceof MultiPoint) {
+            return geometry;
+        }
+        Geometry simplified = TopologyPreservingSimplifier.simplify(geometry, tolerance);
+        simplified.setSRID(geometry.getSRID());
+        return simplified;
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.geolatte.common.reflection.EntityClassReader;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.*;
+import org.hibernate.engine.TypedValue;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A position in an ordered result, used for keyset (seek) pagination. Instead of skipping the first n rows with an
+ * offset, the next page is selected with a predicate on the sort keys of the last row returned, which lets the
+ * database use an index and makes every page as cheap as the first one.
+ * <p>
+ * The sort keys always end with the id property, so that the ordering is total. A cursor is passed between client
+ * and server as an opaque token, see {@link #toToken()} and {@link #fromToken(String)}.
+ * </p>
+ * <p>
+ * Null values in a sort key are handled with the default PostgreSQL null ordering: nulls come last in ascending
+ * order and first in descending order. Properties that are known to be not null, see {@link #withNotNull(Collection)},
+ * need no null handling, which keeps the predicate usable as an index range condition.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class KeysetCursor {
+
+    private static final int TOKEN_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_SHORT = 4;
+    private static final byte TYPE_BYTE = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_FLOAT = 7;
+    private static final byte TYPE_BIG_DECIMAL = 8;
+    private static final byte TYPE_BIG_INTEGER = 9;
+    private static final byte TYPE_BOOLEAN = 10;
+    private static final byte TYPE_DATE = 11;
+    private static final byte TYPE_SQL_DATE = 12;
+    private static final byte TYPE_TIMESTAMP = 13;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final List<String> properties;
+    private final List<Boolean> ascending;
+    private final Object[] values;
+    // The sort properties that can not be null. Not part of the token, it is known from the table.
+    private final Set<String> notNull;
+
+    /**
+     * Creates a cursor positioned before the first row.
+     *
+     * @param properties the sort properties, the last one being the id property
+     * @param ascending  the sort direction of each of the properties
+     * @throws IllegalArgumentException if the lists are empty or have a different size
+     */
+    public KeysetCursor(List<String> properties, List<Boolean> ascending) {
+        this(properties, ascending, null, Collections.<String>emptySet());
+    }
+
+    private KeysetCursor(List<String> properties, List<Boolean> ascending, Object[] values, Set<String> notNull) {
+        if (properties == null || ascending == null || properties.isEmpty() || properties.size() != ascending.size()) {
+            throw new IllegalArgumentException("A cursor requires an equal, non-zero number of properties and directions");
+        }
+        this.properties = Collections.unmodifiableList(new ArrayList<String>(properties));
+        this.ascending = Collections.unmodifiableList(new ArrayList<Boolean>(ascending));
+        this.values = values;
+        this.notNull = notNull;
+    }
+
+    /**
+     * Returns this cursor, for a table in which the given properties can not be null.
+     *
+     * @param notNullProperties the properties that can not be null, eg. the id
+     * @return a cursor at the same position, that does not look for null values of these properties
+     */
+    public KeysetCursor withNotNull(Collection<String> notNullProperties) {
+        return new KeysetCursor(properties, ascending, values,
+                                Collections.unmodifiableSet(new HashSet<String>(notNullProperties)));
+    }
+
+    /**
+     * @return the sort properties of this cursor, the last one being the id property
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return true if this cursor is positioned before the first row
+     */
+    public boolean isFirstPage() {
+        return values == null;
+    }
+
+    /**
+     * @return the orderings that correspond with the sort keys of this cursor
+     */
+    public List<Order> getOrderings() {
+        List<Order> result = new ArrayList<Order>(properties.size());
+        for (int i = 0; i < properties.size(); i++) {
+            result.add(ascending.get(i) ? Order.asc(properties.get(i)) : Order.desc(properties.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Builds the predicate that selects the rows after the position of this cursor. If all sort keys have the same
+     * direction and the cursor has no null values, this is the row value comparison (a, b, id) > (va, vb, vid) (or
+     * &lt; when descending), which PostgreSQL uses as a range condition on an index on (a, b, id). In ascending order,
+     * rows with a null key come last and are added with an IS NULL branch, for the properties that can be null.
+     * <p>
+     * Otherwise, it is the expanded form a > va OR (a = va AND b > vb) OR (a = va AND b = vb AND id > vid), with the
+     * comparison reversed for descending keys.
+     * </p>
+     *
+     * @return the predicate, or null if this cursor is positioned before the first row
+     */
+    public Criterion toCriterion() {
+        if (isFirstPage()) {
+            return null;
+        }
+        if (isRowComparable()) {
+            return toRowComparison();
+        }
+        Disjunction result = Restrictions.disjunction();
+        for (int i = 0; i < properties.size(); i++) {
+            Criterion after = after(properties.get(i), ascending.get(i), values[i]);
+            if (after == null) {
+                continue;
+            }
+            Conjunction conjunction = Restrictions.conjunction();
+            for (int j = 0; j < i; j++) {
+                conjunction.add(values[j] == null ? Restrictions.isNull(properties.get(j))
+                        : Restrictions.eq(properties.get(j), values[j]));
+            }
+            conjunction.add(after);
+            result.add(conjunction);
+        }
+        return result;
+    }
+
+    private boolean isRowComparable() {
+        for (int i = 0; i < properties.size(); i++) {
+            if (values[i] == null || !ascending.get(i).equals(ascending.get(0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Criterion toRowComparison() {
+        boolean asc = ascending.get(0);
+        Criterion comparison = new RowComparison(properties, values, asc ? ">" : "<");
+        if (!asc) {
+            // nulls come first in descending order, so they never come after a non-null position
+            return comparison;
+        }
+        // nulls come last: a row with a null key comes after the position if the keys before it are equal
+        Disjunction result = null;
+        for (int i = 0; i < properties.size(); i++) {
+            if (notNull.contains(properties.get(i))) {
+                continue;
+            }
+            if (result == null) {
+                result = Restrictions.disjunction();
+                result.add(comparison);
+            }
+            Conjunction conjunction = Restrictions.conjunction();
+            for (int j = 0; j < i; j++) {
+                conjunction.add(Restrictions.eq(properties.get(j), values[j]));
+            }
+            conjunction.add(Restrictions.isNull(properties.get(i)));
+            result.add(conjunction);
+        }
+        return result == null ? comparison : result;
+    }
+
+    private Criterion after(String property, boolean asc, Object value) {
+        if (asc) {
+            // nulls come last: nothing comes after a null, everything non-null comes before it.
+            if (value == null) {
+                return null;
+            }
+            return notNull.contains(property) ? Restrictions.gt(property, value)
+                    : Restrictions.or(Restrictions.gt(property, value), Restrictions.isNull(property));
+        } else {
+            // nulls come first: everything non-null comes after a null.
+            return value == null ? Restrictions.isNotNull(property) : Restrictions.lt(property, value);
+        }
+    }
+
+    /**
+     * Returns the cursor positioned right after the given entity.
+     *
+     * @param entity the last entity of a page
+     * @return a cursor with the same sort keys as this one, positioned after the given entity
+     */
+    public KeysetCursor after(Object entity) {
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(entity.getClass());
+        Object[] newValues = new Object[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            String property = properties.get(i);
+            newValues[i] = property.equals(reader.getIdName()) ? reader.getId(entity)
+                    : reader.getPropertyValue(entity, property);
+        }
+        return new KeysetCursor(properties, ascending, newValues, notNull);
+    }
+
+    /**
+     * @return the opaque token that represents this cursor
+     */
+    public String toToken() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(TOKEN_VERSION);
+            out.writeShort(properties.size());
+            for (int i = 0; i < properties.size(); i++) {
+                out.writeUTF(properties.get(i));
+                out.writeBoolean(ascending.get(i));
+                writeValue(out, values == null ? null : values[i]);
+            }
+            out.close();
+            return toHex(bytes.toByteArray());
+        } catch (IOException e) {
+            // Can not happen on a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a token created by {@link #toToken()}.
+     *
+     * @param token the token to decode
+     * @return the cursor represented by the token
+     * @throws IllegalArgumentException if the token is not a valid cursor token
+     */
+    public static KeysetCursor fromToken(String token) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(fromHex(token)));
+            if (in.readByte() != TOKEN_VERSION) {
+                throw new IllegalArgumentException("Unsupported cursor token version");
+            }
+            int size = in.readShort();
+            List<String> properties = new ArrayList<String>(size);
+            List<Boolean> ascending = new ArrayList<Boolean>(size);
+            Object[] values = new Object[size];
+            for (int i = 0; i < size; i++) {
+                properties.add(in.readUTF());
+                ascending.add(in.readBoolean());
+                values[i] = readValue(in);
+            }
+            return new KeysetCursor(properties, ascending, values, Collections.<String>emptySet());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cursor token: " + token, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TYPE_BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TYPE_BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.writeByte(TYPE_TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(TYPE_SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            throw new IllegalArgumentException("Can not use a value of type " + value.getClass().getName() + " as sort key");
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case TYPE_BIG_INTEGER:
+                return new BigInteger(in.readUTF());
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case TYPE_SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            default:
+                throw new IOException("Unknown value type in cursor token: " + type);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    private static byte[] fromHex(String hex) throws IOException {
+        if (hex == null || hex.length() % 2 != 0) {
+            throw new IOException("Malformed cursor token");
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Malformed cursor token");
+            }
+            result[i] = (byte) ((high << 4) | low);
+        }
+        return result;
+    }
+
+    /**
+     * The row value comparison (a, b, ...) op (?, ?, ...) of the columns of the given properties with the given values.
+     */
+    private static class RowComparison implements Criterion {
+
+        private final List<String> properties;
+        private final Object[] values;
+        private final String operator;
+
+        RowComparison(List<String> properties, Object[] values, String operator) {
+            this.properties = properties;
+            this.values = values;
+            this.operator = operator;
+        }
+
+        public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+            StringBuilder columns = new StringBuilder("(");
+            StringBuilder parameters = new StringBuilder("(");
+            for (int i = 0; i < properties.size(); i++) {
+                if (i > 0) {
+                    columns.append(", ");
+                    parameters.append(", ");
+                }
+                columns.append(criteriaQuery.getColumnsUsingProjection(criteria, properties.get(i))[0]);
+                parameters.append('?');
+            }
+            return columns.append(") ").append(operator).append(' ').append(parameters).append(')').toString();
+        }
+
+        public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+            TypedValue[] result = new TypedValue[properties.size()];
+            for (int i = 0; i < properties.size(); i++) {
+                result[i] = criteriaQuery.getTypedValue(criteria, properties.get(i), values[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return properties + " " + operator + " " + Arrays.asList(values);
+        }
+    }
+}
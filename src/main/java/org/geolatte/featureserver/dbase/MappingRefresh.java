@@ -0,0 +1,98 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of {@link DbaseFacade#refreshMapping()}: the tables that were added to and dropped from the mapping,
+ * the mapped tables of which the columns changed, and those of them that can no longer be served.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public final class MappingRefresh {
+
+    private final List<String> added;
+    private final List<String> dropped;
+    private final List<String> changed;
+    private final List<String> incompatible;
+
+    /**
+     * @param added        the included tables that were created since the previous refresh
+     * @param dropped      the included tables that no longer exist
+     * @param changed      the mapped tables of which the columns changed since they were mapped
+     * @param incompatible the changed tables of which a mapped column was dropped or altered
+     */
+    public MappingRefresh(List<String> added, List<String> dropped, List<String> changed, List<String> incompatible) {
+        this.added = Collections.unmodifiableList(new ArrayList<String>(added));
+        this.dropped = Collections.unmodifiableList(new ArrayList<String>(dropped));
+        this.changed = Collections.unmodifiableList(new ArrayList<String>(changed));
+        this.incompatible = Collections.unmodifiableList(new ArrayList<String>(incompatible));
+    }
+
+    /**
+     * @return the included tables that were created since the previous refresh. Depending on the mapping mode, they
+     *         are mapped right away or on first access.
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the included tables that no longer exist. They are removed from the mapping.
+     */
+    public List<String> getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the mapped tables of which the columns changed since they were mapped. The AutoMapper can not map a
+     *         table again, so they keep being served with their original mapping until the featureserver is
+     *         restarted.
+     */
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the changed tables of which a mapped column was dropped or altered. Queries on them would fail, so
+     *         they are refused with 503 Service Unavailable until the featureserver is restarted.
+     */
+    public List<String> getIncompatible() {
+        return incompatible;
+    }
+
+    /**
+     * @return whether nothing changed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && dropped.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added + ", dropped " + dropped + ", changed " + changed + ", incompatible " + incompatible;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the table list and the recorded database metadata of a schema in a local file, so they do not have to be
+ * read again at the next start. The file is only used as long as the fingerprint of the schema did not change.
+ * <p>
+ * The fingerprint is computed from the names, types, sizes, nullability and positions of all columns of the schema,
+ * and from their primary keys, which takes two metadata queries. Changes to unique indexes alone do not change it.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class MappingSnapshotStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(MappingSnapshotStore.class);
+
+    /**
+     * Changed whenever the content of the snapshot changes, so older files are not used.
+     */
+    private static final String FORMAT_VERSION = "2";
+
+    private final File file;
+
+    /**
+     * @param file the file to keep the snapshot in
+     */
+    MappingSnapshotStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Computes the fingerprint of a schema.
+     *
+     * @param metaData the metadata of the database
+     * @param url      the url of the database
+     * @param schema   the schema, or null for all schemas
+     * @return the fingerprint
+     * @throws SQLException if the columns or primary keys of the schema could not be read
+     */
+    static String fingerprint(DatabaseMetaData metaData, String url, String schema) throws SQLException {
+        return fingerprint(url, schema, MetadataSnapshot.readColumnSignatures(
+                metaData.getColumns(null, schema, null, null), metaData.getPrimaryKeys(null, schema, null)));
+    }
+
+    /**
+     * Computes the fingerprint of a schema from the column signatures of its tables.
+     *
+     * @param url        the url of the database
+     * @param schema     the schema, or null for all schemas
+     * @param signatures the column signatures of all tables of the schema, by table name, see
+     *                   {@link MetadataSnapshot#readColumnSignatures(java.sql.ResultSet, java.sql.ResultSet)}
+     * @return the fingerprint
+     */
+    static String fingerprint(String url, String schema, Map<String, String> signatures) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((FORMAT_VERSION + "|" + url + "|" + schema).getBytes("UTF-8"));
+            for (Map.Entry<String, String> entry : new TreeMap<String, String>(signatures).entrySet()) {
+                digest.update(("\n" + entry.getKey() + "\n").getBytes("UTF-8"));
+                digest.update(entry.getValue().getBytes("UTF-8"));
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b & 0xff));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the snapshot from the file.
+     *
+     * @param fingerprint the current fingerprint of the schema
+     * @return the snapshot, or null if there is no file, it can not be read or it was made for another fingerprint
+     */
+    Snapshot load(String fingerprint) {
+        if (!file.isFile()) {
+            LOGGER.info("No mapping snapshot in " + file);
+            return null;
+        }
+        ObjectInputStream input = null;
+        try {
+            input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            Snapshot snapshot = (Snapshot) input.readObject();
+            if (!fingerprint.equals(snapshot.getFingerprint())) {
+                LOGGER.info("The schema changed since the mapping snapshot in " + file + " was made, it is not used");
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOGGER.warn("Mapping snapshot " + file + " can not be read, it is not used", e);
+            return null;
+        } catch (ClassNotFoundException e) {
+            LOGGER.warn("Mapping snapshot " + file + " can not be read, it is not used", e);
+            return null;
+        } catch (ClassCastException e) {
+            LOGGER.warn("Mapping snapshot " + file + " can not be read, it is not used", e);
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Writes a snapshot to the file. It is first written to a temporary file next to it, which then replaces the
+     * file, so other servers starting from the same file never read a partial snapshot.
+     *
+     * @param snapshot the snapshot to write
+     * @return whether the snapshot was written. If not, the reason is logged.
+     */
+    boolean save(Snapshot snapshot) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        ObjectOutputStream output = null;
+        File temporary = null;
+        try {
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Directory " + directory + " can not be created");
+            }
+            temporary = File.createTempFile("." + file.getName() + ".", ".tmp", directory);
+            output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            output.writeObject(snapshot);
+            output.close();
+            output = null;
+            // On some platforms, renaming onto an existing file fails
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                throw new IOException("Can not replace " + file);
+            }
+            temporary = null;
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Mapping snapshot can not be written to " + file, e);
+            return false;
+        } finally {
+            close(output);
+            if (temporary != null && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.warn(e);
+            }
+        }
+    }
+
+    /**
+     * The content of the file: the tables and views of the schema, and the recorded metadata of the tables that were
+     * mapped.
+     */
+    static class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String fingerprint;
+        private final List<String> tables;
+        private final MetadataSnapshot metadata;
+
+        /**
+         * @param fingerprint the fingerprint of the schema
+         * @param tables      the names of all tables and views of the schema, included or not
+         * @param metadata    the recorded metadata
+         */
+        Snapshot(String fingerprint, List<String> tables, MetadataSnapshot metadata) {
+            this.fingerprint = fingerprint;
+            this.tables = new ArrayList<String>(tables);
+            this.metadata = metadata;
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+
+        List<String> getTables() {
+            return Collections.unmodifiableList(tables);
+        }
+
+        MetadataSnapshot getMetadata() {
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The tables that are mapped at some point in time, together with the session factory that serves them. A state is
+ * never modified; when tables are mapped or dropped, the facade replaces it by a new one.
+ * <p>
+ * Everyone that uses the session factory acquires the state first and releases it when done. Once a state is
+ * replaced, it is retired, and its session factory is closed as soon as the last user releases it. Readers that
+ * were created before a new mapping is swapped in thus finish on the session factory they started on.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+final class MappingState {
+
+    private static final Logger LOGGER = LogManager.getLogger(MappingState.class);
+
+    private final SessionFactory sessionFactory;
+    private final Map<String, TableMetadata> tables;
+    // The number of users of the session factory, or -1 once it is closed
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile boolean retired = false;
+
+    /**
+     * @param sessionFactory the session factory for the mapped tables, or null if no tables are mapped
+     * @param tables         the metadata of the mapped tables, by table name, in the order they are listed
+     */
+    MappingState(SessionFactory sessionFactory, Map<String, TableMetadata> tables) {
+        this.sessionFactory = sessionFactory;
+        this.tables = Collections.unmodifiableMap(new LinkedHashMap<String, TableMetadata>(tables));
+    }
+
+    SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    TableMetadata getTableMetadata(String tableName) {
+        return tables.get(tableName);
+    }
+
+    List<String> getTableNames() {
+        return new ArrayList<String>(tables.keySet());
+    }
+
+    Map<String, TableMetadata> getTables() {
+        return tables;
+    }
+
+    /**
+     * Registers a user of the session factory. Every successful call must be followed by a call to
+     * {@link #release()}.
+     *
+     * @return false if the session factory is already closed, in which case the current state must be used
+     */
+    boolean acquire() {
+        while (true) {
+            int current = users.get();
+            if (current < 0) {
+                return false;
+            }
+            if (users.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unregisters a user of the session factory, and closes it if the state is retired and this was the last user.
+     */
+    void release() {
+        users.decrementAndGet();
+        closeIfUnused();
+    }
+
+    /**
+     * Marks this state as replaced. Its session factory is closed once it is no longer used.
+     */
+    void retire() {
+        retired = true;
+        closeIfUnused();
+    }
+
+    /**
+     * @return the number of users of the session factory, or -1 if it is closed
+     */
+    int getUsers() {
+        return users.get();
+    }
+
+    private void closeIfUnused() {
+        if (retired && users.compareAndSet(0, -1) && sessionFactory != null) {
+            try {
+                sessionFactory.close();
+                LOGGER.info("Sessionfactory closed: " + sessionFactory);
+            } catch (HibernateException e) {
+                LOGGER.error("Exception thrown while closing the sessionfactory", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A recording of the database metadata the AutoMapper reads for a set of tables: their columns, primary keys and
+ * unique indexes. Reading this metadata one table at a time is what makes mapping a large schema slow, so it is
+ * recorded up front, in parallel on several connections, and then replayed to the AutoMapper through
+ * {@link #wrap(Connection)}. Metadata that was not recorded is read from the wrapped connection as usual.
+ * <p>
+ * Snapshots are serializable, so they can be kept between restarts (see {@link MappingSnapshotStore}).
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class MetadataSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LogManager.getLogger(MetadataSnapshot.class);
+
+    // Starts the line of the primary key columns in a column signature
+    private static final String PRIMARY_KEY = "PRIMARY KEY:";
+
+    /**
+     * Opens connections to the database to record the metadata on.
+     */
+    interface ConnectionSource {
+        Connection openConnection() throws SQLException;
+    }
+
+    // The recorded results, by call, see key()
+    private final Map<String, RecordedResult> results = Collections.synchronizedMap(new HashMap<String, RecordedResult>());
+    // The tables of which the metadata is recorded
+    private final Set<String> tables = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Records the metadata of the given tables, divided over the given number of connections.
+     *
+     * @param source  the source of the connections
+     * @param schema  the schema of the tables
+     * @param tables  the names of the tables
+     * @param threads the number of connections to read on in parallel
+     * @return the recorded metadata
+     * @throws SQLException if the metadata could not be read
+     */
+    static MetadataSnapshot record(final ConnectionSource source, final String schema, List<String> tables,
+                                   int threads) throws SQLException {
+        final MetadataSnapshot snapshot = new MetadataSnapshot();
+        int parts = Math.max(1, Math.min(threads, tables.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < parts; i++) {
+                final List<String> part = new ArrayList<String>();
+                for (int j = i; j < tables.size(); j += parts) {
+                    part.add(tables.get(j));
+                }
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws SQLException {
+                        Connection connection = source.openConnection();
+                        try {
+                            DatabaseMetaData metaData = connection.getMetaData();
+                            for (String table : part) {
+                                snapshot.recordTable(metaData, schema, table);
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reading the database metadata");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info(String.format("Database metadata of %d tables read on %d connections", tables.size(), parts));
+        return snapshot;
+    }
+
+    private void recordTable(DatabaseMetaData metaData, String schema, String table) throws SQLException {
+        results.put(key("getColumns", null, schema, table, null),
+                    RecordedResult.read(metaData.getColumns(null, schema, table, null)));
+        results.put(key("getPrimaryKeys", null, schema, table),
+                    RecordedResult.read(metaData.getPrimaryKeys(null, schema, table)));
+        results.put(key("getIndexInfo", null, schema, table, true, false),
+                    RecordedResult.read(metaData.getIndexInfo(null, schema, table, true, false)));
+        tables.add(table);
+    }
+
+    /**
+     * @return the number of recorded results
+     */
+    int size() {
+        return results.size();
+    }
+
+    /**
+     * @param table the name of a table
+     * @return whether the metadata of the table is recorded
+     */
+    boolean contains(String table) {
+        return tables.contains(table);
+    }
+
+    /**
+     * @return the tables of which the metadata is recorded
+     */
+    List<String> getTables() {
+        synchronized (tables) {
+            return new ArrayList<String>(tables);
+        }
+    }
+
+    /**
+     * Removes the recorded metadata of a table, so it is read from the database again the next time it is needed.
+     *
+     * @param schema the schema of the table
+     * @param table  the name of the table
+     */
+    void remove(String schema, String table) {
+        results.remove(key("getColumns", null, schema, table, null));
+        results.remove(key("getPrimaryKeys", null, schema, table));
+        results.remove(key("getIndexInfo", null, schema, table, true, false));
+        tables.remove(table);
+    }
+
+    /**
+     * @param schema the schema of the table
+     * @param table  the name of a table
+     * @return the column signature of the table as recorded (see {@link #readColumnSignatures(ResultSet, ResultSet)}),
+     *         or null if its metadata is not recorded
+     * @throws SQLException if the recorded metadata can not be read
+     */
+    String getColumnSignature(String schema, String table) throws SQLException {
+        RecordedResult columns = results.get(key("getColumns", null, schema, table, null));
+        RecordedResult primaryKeys = results.get(key("getPrimaryKeys", null, schema, table));
+        if (columns == null || primaryKeys == null) {
+            return null;
+        }
+        // The table name is a pattern, so the result may contain other tables
+        return readColumnSignatures(columns.replay(), primaryKeys.replay()).get(table);
+    }
+
+    /**
+     * Reads the results of {@link DatabaseMetaData#getColumns(String, String, String, String)} and
+     * {@link DatabaseMetaData#getPrimaryKeys(String, String, String)} into a signature per table: the names, types,
+     * sizes, nullability and positions of its columns, and the columns of its primary key. The signature of a table
+     * changes whenever one of its columns is added, dropped or altered, or its primary key changes.
+     *
+     * @param columns     the columns. The result set is closed.
+     * @param primaryKeys the primary key columns. The result set is closed.
+     * @return the signatures, by table name, sorted by table name
+     * @throws SQLException if the columns can not be read
+     */
+    static Map<String, String> readColumnSignatures(ResultSet columns, ResultSet primaryKeys) throws SQLException {
+        Map<String, Map<Integer, String>> keys = new HashMap<String, Map<Integer, String>>();
+        try {
+            while (primaryKeys.next()) {
+                String table = primaryKeys.getString("TABLE_NAME");
+                Map<Integer, String> tableKeys = keys.get(table);
+                if (tableKeys == null) {
+                    tableKeys = new TreeMap<Integer, String>();
+                    keys.put(table, tableKeys);
+                }
+                tableKeys.put(primaryKeys.getInt("KEY_SEQ"), primaryKeys.getString("COLUMN_NAME"));
+            }
+        } finally {
+            primaryKeys.close();
+        }
+        Map<String, List<String>> lines = new TreeMap<String, List<String>>();
+        try {
+            while (columns.next()) {
+                String table = columns.getString("TABLE_NAME");
+                List<String> tableLines = lines.get(table);
+                if (tableLines == null) {
+                    tableLines = new ArrayList<String>();
+                    lines.put(table, tableLines);
+                }
+                tableLines.add(columns.getString("COLUMN_NAME") + ":" + columns.getString("TYPE_NAME") + ":"
+                               + columns.getInt("COLUMN_SIZE") + ":" + columns.getInt("NULLABLE") + ":"
+                               + columns.getInt("ORDINAL_POSITION"));
+            }
+        } finally {
+            columns.close();
+        }
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, List<String>> entry : lines.entrySet()) {
+            // The order in which the columns are returned is not specified
+            Collections.sort(entry.getValue());
+            StringBuilder signature = new StringBuilder();
+            for (String line : entry.getValue()) {
+                signature.append(line).append('\n');
+            }
+            Map<Integer, String> tableKeys = keys.get(entry.getKey());
+            if (tableKeys != null) {
+                signature.append(PRIMARY_KEY);
+                for (Iterator<String> key = tableKeys.values().iterator(); key.hasNext();) {
+                    signature.append(key.next()).append(key.hasNext() ? "," : "\n");
+                }
+            }
+            result.put(entry.getKey(), signature.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the columns of a table as they were mapped are all still there, with the same type, and whether
+     * the primary key is the same. Queries built from the mapping keep working when columns are added, moved, resized
+     * or made nullable, but not when a mapped column is dropped, renamed or changes type, or when the id changes.
+     *
+     * @param signature       the current column signature of the table, see {@link #readColumnSignatures(ResultSet)}
+     * @param mappedSignature the column signature of the table when it was mapped
+     * @return whether every mapped column is still present with the same type, and the primary key is the same
+     */
+    static boolean containsColumns(String signature, String mappedSignature) {
+        return getColumnTypes(signature).containsAll(getColumnTypes(mappedSignature));
+    }
+
+    /**
+     * @return the "name:type" of the columns in a signature, and the primary key line
+     */
+    private static Set<String> getColumnTypes(String signature) {
+        Set<String> result = new HashSet<String>();
+        for (String line : signature.split("\n")) {
+            if (line.length() == 0) {
+                continue;
+            }
+            if (line.startsWith(PRIMARY_KEY)) {
+                result.add(line);
+                continue;
+            }
+            // The name may contain colons itself, so the size, nullability and position are cut off from the end
+            int end = line.length();
+            for (int i = 0; i < 3 && end > 0; i++) {
+                end = line.lastIndexOf(':', end - 1);
+            }
+            result.add(end > 0 ? line.substring(0, end) : line);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the recorded metadata of another snapshot to this one.
+     *
+     * @param other the snapshot to add
+     */
+    void addAll(MetadataSnapshot other) {
+        synchronized (other.results) {
+            results.putAll(other.results);
+        }
+        synchronized (other.tables) {
+            tables.addAll(other.tables);
+        }
+    }
+
+    /**
+     * Wraps a connection so the metadata it returns answers the recorded calls from this snapshot.
+     *
+     * @param connection the connection to wrap. Closing the wrapper closes it.
+     * @return the wrapped connection
+     */
+    Connection wrap(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(MetadataSnapshot.class.getClassLoader(),
+                                                   new Class[]{Connection.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getMetaData".equals(method.getName()) && (args == null || args.length == 0)) {
+                    return wrap(connection.getMetaData());
+                }
+                return delegate(connection, method, args);
+            }
+        });
+    }
+
+    private DatabaseMetaData wrap(final DatabaseMetaData metaData) {
+        return (DatabaseMetaData) Proxy.newProxyInstance(MetadataSnapshot.class.getClassLoader(),
+                                                         new Class[]{DatabaseMetaData.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                RecordedResult recorded = results.get(key(method.getName(), args == null ? new Object[0] : args));
+                if (recorded != null) {
+                    return recorded.replay();
+                }
+                return delegate(metaData, method, args);
+            }
+        });
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the key of a metadata call. A null column pattern is the same as "%".
+     */
+    static String key(String method, Object... args) {
+        List<Object> normalized = new ArrayList<Object>(Arrays.asList(args));
+        if ("getColumns".equals(method) && normalized.size() == 4 && "%".equals(normalized.get(3))) {
+            normalized.set(3, null);
+        }
+        return method + normalized;
+    }
+
+    /**
+     * The columns and rows of a result set.
+     */
+    static class RecordedResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] labels;
+        private final List<Object[]> rows;
+
+        RecordedResult(String[] labels, List<Object[]> rows) {
+            this.labels = labels;
+            this.rows = rows;
+        }
+
+        /**
+         * Reads and closes the given result set.
+         */
+        static RecordedResult read(ResultSet resultSet) throws SQLException {
+            try {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] labels = new String[metaData.getColumnCount()];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = metaData.getColumnLabel(i + 1);
+                }
+                List<Object[]> rows = new ArrayList<Object[]>();
+                while (resultSet.next()) {
+                    Object[] row = new Object[labels.length];
+                    for (int i = 0; i < labels.length; i++) {
+                        Object value = resultSet.getObject(i + 1);
+                        // Drivers may return their own types, which need not be serializable
+                        row[i] = value == null || value instanceof Number || value instanceof Boolean
+                                 ? value : String.valueOf(value);
+                    }
+                    rows.add(row);
+                }
+                return new RecordedResult(labels, rows);
+            } finally {
+                resultSet.close();
+            }
+        }
+
+        String[] getLabels() {
+            return labels;
+        }
+
+        List<Object[]> getRows() {
+            return rows;
+        }
+
+        /**
+         * @return a new result set over the recorded rows. It supports forward iteration and the getters by column
+         *         index and label.
+         */
+        ResultSet replay() {
+            return (ResultSet) Proxy.newProxyInstance(MetadataSnapshot.class.getClassLoader(),
+                                                      new Class[]{ResultSet.class}, new ReplayHandler(this));
+        }
+
+        int findColumn(String label) throws SQLException {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i].equalsIgnoreCase(label)) {
+                    return i + 1;
+                }
+            }
+            throw new SQLException("No column " + label + " in the recorded metadata");
+        }
+    }
+
+    private static class ReplayHandler implements InvocationHandler {
+
+        private final RecordedResult result;
+        private int row = -1;
+        private boolean wasNull = false;
+        private boolean closed = false;
+
+        ReplayHandler(RecordedResult result) {
+            this.result = result;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                row++;
+                return row < result.getRows().size();
+            } else if ("close".equals(name)) {
+                closed = true;
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed;
+            } else if ("wasNull".equals(name)) {
+                return wasNull;
+            } else if ("findColumn".equals(name)) {
+                return result.findColumn((String) args[0]);
+            } else if ("getMetaData".equals(name)) {
+                return metaData();
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "Recorded result set";
+            } else if (name.startsWith("get") && args != null && args.length == 1) {
+                int column = args[0] instanceof String ? result.findColumn((String) args[0]) : (Integer) args[0];
+                if (row < 0 || row >= result.getRows().size()) {
+                    throw new SQLException("The result set is not positioned on a row");
+                }
+                Object value = result.getRows().get(row)[column - 1];
+                wasNull = value == null;
+                return convert(value, method.getReturnType());
+            }
+            throw new SQLException("Not supported on recorded metadata: " + name);
+        }
+
+        private ResultSetMetaData metaData() {
+            return (ResultSetMetaData) Proxy.newProxyInstance(MetadataSnapshot.class.getClassLoader(),
+                                                              new Class[]{ResultSetMetaData.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getColumnCount".equals(method.getName())) {
+                        return result.getLabels().length;
+                    } else if ("getColumnName".equals(method.getName()) || "getColumnLabel".equals(method.getName())) {
+                        return result.getLabels()[(Integer) args[0] - 1];
+                    }
+                    throw new SQLException("Not supported on recorded metadata: " + method.getName());
+                }
+            });
+        }
+
+        private static Object convert(Object value, Class<?> type) throws SQLException {
+            if (type == Object.class) {
+                return value;
+            } else if (type == String.class) {
+                return value == null ? null : String.valueOf(value);
+            } else if (type == boolean.class) {
+                if (value instanceof Boolean) {
+                    return value;
+                }
+                return value != null && !"0".equals(String.valueOf(value))
+                        && !"false".equalsIgnoreCase(String.valueOf(value));
+            }
+            Number number;
+            if (value == null) {
+                number = 0;
+            } else if (value instanceof Number) {
+                number = (Number) value;
+            } else if (value instanceof Boolean) {
+                number = (Boolean) value ? 1 : 0;
+            } else {
+                try {
+                    number = Double.valueOf(String.valueOf(value));
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Not a number: " + value);
+                }
+            }
+            if (type == int.class) {
+                return number.intValue();
+            } else if (type == short.class) {
+                return number.shortValue();
+            } else if (type == long.class) {
+                return number.longValue();
+            } else if (type == byte.class) {
+                return number.byteValue();
+            } else if (type == double.class) {
+                return number.doubleValue();
+            } else if (type == float.class) {
+                return number.floatValue();
+            }
+            throw new SQLException("Not supported on recorded metadata: conversion to " + type.getName());
+        }
+    }
+}
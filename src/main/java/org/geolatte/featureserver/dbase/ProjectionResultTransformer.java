@@ -0,0 +1,110 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.HibernateException;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.transform.ResultTransformer;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the rows of a projection on some of the properties of an entity class into instances of that class, in which
+ * only the projected properties are set.
+ * <p>
+ * The projected properties are aliased p0, p1, ... rather than with their own name: Hibernate resolves a property
+ * name that is also a projection alias to the alias (HHH-817), so a restriction on a projected property would
+ * otherwise be rendered with the column alias in the where clause, which PostgreSQL rejects.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class ProjectionResultTransformer implements ResultTransformer {
+
+    private static final String ALIAS_PREFIX = "p";
+
+    private final Class<?> entityClass;
+    private final Map<String, Field> fields = new HashMap<String, Field>();
+    private final ProjectionList projection = Projections.projectionList();
+
+    /**
+     * @param entityClass the class of the entities to create
+     * @param properties  the properties to project on
+     * @throws IllegalArgumentException if the entity class has no field for one of the properties
+     */
+    ProjectionResultTransformer(Class<?> entityClass, Collection<String> properties) {
+        this.entityClass = entityClass;
+        int index = 0;
+        for (String property : properties) {
+            String alias = ALIAS_PREFIX + index++;
+            projection.add(Projections.property(property), alias);
+            fields.put(alias, findField(entityClass, property));
+        }
+    }
+
+    /**
+     * @return the projection on the properties, with the aliases this transformer expects
+     */
+    ProjectionList getProjection() {
+        return projection;
+    }
+
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        try {
+            Object result = entityClass.newInstance();
+            for (int i = 0; i < aliases.length; i++) {
+                Field field = fields.get(aliases[i]);
+                if (field != null) {
+                    field.set(result, tuple[i]);
+                }
+            }
+            return result;
+        } catch (InstantiationException e) {
+            throw new HibernateException("Could not instantiate " + entityClass.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new HibernateException("Could not instantiate " + entityClass.getName(), e);
+        }
+    }
+
+    public List transformList(List collection) {
+        return collection;
+    }
+
+    private static Field findField(Class<?> entityClass, String name) {
+        for (Class<?> current = entityClass; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+        throw new IllegalArgumentException(entityClass.getSimpleName() + " has no field " + name);
+    }
+}
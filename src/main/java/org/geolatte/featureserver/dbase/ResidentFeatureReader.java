@@ -0,0 +1,122 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A reader that returns elements of a {@link ResidentTable} instead of reading them from the database. The elements
+ * of the table are shared between readers, so they are copied before their geometry is simplified or rounded, and
+ * when only part of the properties is requested.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class ResidentFeatureReader extends StandardFeatureReader {
+
+    private final List<Object> elements;
+    // The properties to copy, or null if all are returned
+    private final List<Field> projection;
+    private final Collection<Field> allFields;
+
+    /**
+     * @param table      the table the elements belong to
+     * @param query      the query the elements match
+     * @param elements   the elements to return, already filtered, sorted and paginated
+     * @param projection the fields of the requested properties, or null if all properties are requested
+     * @param totalCount the number of matching elements disregarding pagination, or -1 if it is not requested
+     */
+    ResidentFeatureReader(ResidentTable table, FeatureQuery query, List<Object> elements, List<Field> projection,
+                          int totalCount) {
+        super(table.getEntityClass(), query);
+        this.elements = elements;
+        this.projection = projection;
+        this.allFields = table.getFields().values();
+        setTotalCount(totalCount, false);
+    }
+
+    @Override
+    protected Iterable<Object> output() {
+        return new Iterable<Object>() {
+            public Iterator<Object> iterator() {
+                final Iterator<Object> it = elements.iterator();
+                return new Iterator<Object>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public Object next() {
+                        return prepare(it.next());
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Nothing to release, the elements are in memory.
+     */
+    @Override
+    public void close() {
+    }
+
+    private Object prepare(Object element) {
+        if (projection != null) {
+            element = copy(element, projection);
+        } else if (hasGeometryOperations()) {
+            element = copy(element, allFields);
+        }
+        applyGeometryOperations(element);
+        return element;
+    }
+
+    /**
+     * Copies the given fields to a new instance of the entity class. Geometries are cloned, since the geometry
+     * operations modify them in place.
+     */
+    private Object copy(Object element, Collection<Field> fields) {
+        try {
+            Object copy = getEntityClass().newInstance();
+            for (Field field : fields) {
+                Object value = field.get(element);
+                if (value instanceof Geometry) {
+                    value = ((Geometry) value).clone();
+                }
+                field.set(copy, value);
+            }
+            return copy;
+        } catch (InstantiationException e) {
+            throw new DatabaseException(e);
+        } catch (IllegalAccessException e) {
+            throw new DatabaseException(e);
+        }
+    }
+}
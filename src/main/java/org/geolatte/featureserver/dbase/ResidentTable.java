@@ -0,0 +1,302 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.geolatte.common.geo.EnvelopeConverter;
+import org.geolatte.common.geo.TypeConversionException;
+import org.geolatte.common.reflection.EntityClassReader;
+import org.hibernate.*;
+import org.hibernate.criterion.Order;
+import org.hibernate.metadata.ClassMetadata;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory copy of a table, with an STRtree on the geometries. Queries with a boundingbox, a simple cql
+ * expression (see {@link SimpleCqlFilter}), orderings and offset pagination are answered from memory, with the same
+ * result as the database would give. Queries of which the result depends on the collation of the database, such as
+ * orderings on string properties, are left to the database. A resident table is an immutable snapshot: refreshing it
+ * means loading a new one, so readers never see a table that is half reloaded.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResidentTable {
+
+    private final Class entityClass;
+    // The elements, in the order of the primary key
+    private final List<Object> elements;
+    private final Map<String, Field> fields;
+    private final Field geometryField;
+    // The positions in elements of the elements with a geometry, by the envelope of their geometry
+    private final STRtree index;
+    private final long loadedAt;
+
+    ResidentTable(Class entityClass, List<Object> elements) {
+        this.entityClass = entityClass;
+        this.elements = Collections.unmodifiableList(new ArrayList<Object>(elements));
+        this.fields = getFields(entityClass);
+        String geometryName = EntityClassReader.getClassReaderFor(entityClass).getGeometryName();
+        this.geometryField = geometryName == null ? null : fields.get(geometryName);
+        this.index = new STRtree();
+        if (geometryField != null) {
+            for (int i = 0; i < this.elements.size(); i++) {
+                Geometry geometry = (Geometry) getValue(geometryField, this.elements.get(i));
+                if (geometry != null && !geometry.isEmpty()) {
+                    index.insert(geometry.getEnvelopeInternal(), i);
+                }
+            }
+        }
+        index.build();
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Loads all elements of the given entity class in memory.
+     *
+     * @param factory     the sessionfactory to use
+     * @param entityClass the entityclass of the table
+     * @return the loaded table
+     * @throws DatabaseException if the table could not be read
+     */
+    static ResidentTable load(SessionFactory factory, Class entityClass) throws DatabaseException {
+        Transaction tx = null;
+        try {
+            Session session = factory.getCurrentSession();
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setCacheMode(CacheMode.IGNORE);
+            tx = session.beginTransaction();
+            Criteria criteria = session.createCriteria(entityClass);
+            ClassMetadata metadata = factory.getClassMetadata(entityClass);
+            if (metadata != null && metadata.getIdentifierPropertyName() != null) {
+                criteria.addOrder(Order.asc(metadata.getIdentifierPropertyName()));
+            }
+            List<Object> elements = (List<Object>) criteria.list();
+            tx.rollback();
+            return new ResidentTable(entityClass, elements);
+        } catch (HibernateException e) {
+            if (tx != null) {
+                tx.rollback();
+            }
+            throw new DatabaseException(e);
+        } finally {
+            factory.getCurrentSession().close();
+        }
+    }
+
+    /**
+     * Creates a reader that answers the given query from memory.
+     *
+     * @param query the filter, ordering and pagination parameters
+     * @return the reader, or null if the query can not be answered from memory and has to be executed by the
+     *         database. This is the case for keyset pagination, cql expressions outside the subset supported by
+     *         {@link SimpleCqlFilter}, orderings on string properties and unknown properties (so the database
+     *         reports the error).
+     */
+    StandardFeatureReader createReader(FeatureQuery query) {
+        if (query.getCursor() != null) {
+            return null;
+        }
+        SimpleCqlFilter filter = null;
+        if (query.getCql() != null) {
+            filter = SimpleCqlFilter.parse(query.getCql(), fields);
+            if (filter == null) {
+                return null;
+            }
+        }
+        Comparator<Object> comparator = null;
+        if (query.getOrderings() != null && !query.getOrderings().isEmpty()) {
+            comparator = getComparator(query.getOrderings());
+            if (comparator == null) {
+                return null;
+            }
+        }
+        List<Field> projection = null;
+        if (query.getProperties() != null && !query.getProperties().isEmpty()) {
+            projection = new ArrayList<Field>();
+            for (String property : query.getProperties()) {
+                Field field = fields.get(property);
+                if (field == null) {
+                    return null;
+                }
+                projection.add(field);
+            }
+        }
+
+        List<Object> matches = select(query.getBbox(), filter);
+        if (comparator != null) {
+            // The sort is stable, so ties remain in the order of the primary key
+            Collections.sort(matches, comparator);
+        }
+        int total = matches.size();
+        int from = query.getStart() == null ? 0 : Math.min(Math.max(query.getStart(), 0), total);
+        int to = query.getLimit() == null ? total : Math.min(from + Math.max(query.getLimit(), 0), total);
+        CountMode countMode = query.getCountMode() == null ? CountMode.EXACT : query.getCountMode();
+        return new ResidentFeatureReader(this, query, matches.subList(from, to), projection,
+                                         countMode == CountMode.NONE ? -1 : total);
+    }
+
+    /**
+     * @return the elements that intersect the given boundingbox and match the filter, in the order of the primary key
+     */
+    private List<Object> select(String bbox, SimpleCqlFilter filter) {
+        List<Object> candidates = elements;
+        Envelope envelope = toEnvelope(bbox);
+        if (envelope != null) {
+            List<Integer> positions = (List<Integer>) index.query(envelope);
+            Collections.sort(positions);
+            candidates = new ArrayList<Object>(positions.size());
+            for (Integer position : positions) {
+                candidates.add(elements.get(position));
+            }
+        }
+        if (filter == null) {
+            return new ArrayList<Object>(candidates);
+        }
+        List<Object> matches = new ArrayList<Object>();
+        for (Object element : candidates) {
+            if (filter.matches(element)) {
+                matches.add(element);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Parses the boundingbox like the database reader does: it is ignored if it is invalid or if the table has no
+     * geometry.
+     */
+    private Envelope toEnvelope(String bbox) {
+        if (bbox == null || geometryField == null) {
+            return null;
+        }
+        try {
+            return new EnvelopeConverter().convert(bbox);
+        } catch (TypeConversionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds a comparator for the given orderings, sorting null values last in ascending order and first in
+     * descending order like PostgreSQL does. The orderings are recognized by their text form, "property asc" or
+     * "property desc". Strings are not sorted in memory: the database sorts them after its collation, which does not
+     * match the ordering of their characters.
+     *
+     * @return the comparator, or null if an ordering is on an unknown, a string or a not comparable property
+     */
+    private Comparator<Object> getComparator(List<Order> orderings) {
+        final List<Field> sortFields = new ArrayList<Field>();
+        final List<Boolean> ascending = new ArrayList<Boolean>();
+        for (Order order : orderings) {
+            String[] parts = order.toString().trim().split("\\s+");
+            if (parts.length != 2) {
+                return null;
+            }
+            Field field = fields.get(parts[0]);
+            if (field == null || !Comparable.class.isAssignableFrom(field.getType())
+                    || CharSequence.class.isAssignableFrom(field.getType()) || field.getType() == Character.class) {
+                return null;
+            }
+            sortFields.add(field);
+            ascending.add("asc".equalsIgnoreCase(parts[1]));
+        }
+        return new Comparator<Object>() {
+            public int compare(Object o1, Object o2) {
+                for (int i = 0; i < sortFields.size(); i++) {
+                    Comparable v1 = (Comparable) getValue(sortFields.get(i), o1);
+                    Comparable v2 = (Comparable) getValue(sortFields.get(i), o2);
+                    int c;
+                    if (v1 == null || v2 == null) {
+                        c = v1 == v2 ? 0 : (v1 == null ? 1 : -1);
+                    } else {
+                        c = v1.compareTo(v2);
+                    }
+                    if (c != 0) {
+                        return ascending.get(i) ? c : -c;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * @return the entityclass of the table
+     */
+    public Class getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the number of elements in the table
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, at which the table was loaded
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return the fields of the entity class by property name
+     */
+    Map<String, Field> getFields() {
+        return fields;
+    }
+
+    static Object getValue(Field field, Object element) {
+        try {
+            return field.get(element);
+        } catch (IllegalAccessException e) {
+            // Can not happen, the fields are made accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Field> getFields(Class entityClass) {
+        Map<String, Field> result = new HashMap<String, Field>();
+        for (Class c = entityClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !result.containsKey(field.getName())) {
+                    field.setAccessible(true);
+                    result.put(field.getName(), field);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
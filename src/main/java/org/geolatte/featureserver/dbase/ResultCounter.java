@@ -0,0 +1,319 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.geo.EnvelopeConverter;
+import org.geolatte.common.geo.TypeConversionException;
+import org.geolatte.featureserver.cache.ExpiringLruCache;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Computes the total number of features that match a query, according to a {@link CountMode}.
+ * <p>
+ * Exact counts are cached per table, bbox and cql expression, so repeated requests for other pages of the same
+ * result do not run the COUNT(*) again. The bbox and cql are normalized before they are used as a key, so trivial
+ * differences in the request do not cause a cache miss.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResultCounter {
+
+    /**
+     * A counter that always counts, without caching.
+     */
+    public static final ResultCounter UNCACHED = new ResultCounter(null, 0);
+
+    // The names are quoted, so mixed case names are not folded to lower case and no name is parsed as sql
+    private static final String ESTIMATE_QUERY =
+            "select reltuples from pg_class where oid = cast(quote_ident(:tbl) as regclass)";
+    private static final String ESTIMATE_QUERY_IN_SCHEMA = "select reltuples from pg_class"
+            + " where oid = cast(quote_ident(:schema) || '.' || quote_ident(:tbl) as regclass)";
+
+    private static final Logger LOGGER = LogManager.getLogger(ResultCounter.class);
+
+    private final ExpiringLruCache<String, Integer> cache;
+    private final long timeToLive;
+
+    /**
+     * @param cache      the cache for exact counts, shared between counters. May be null, in which case nothing is
+     *                   cached.
+     * @param timeToLive the time in milliseconds a count may be cached. If <= 0, counts are not cached.
+     */
+    public ResultCounter(ExpiringLruCache<String, Integer> cache, long timeToLive) {
+        this.cache = cache;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Counts the elements that match the given criteria. The projection of the criteria is changed in the process,
+     * so it must be reset before the criteria are used to retrieve the elements themselves.
+     *
+     * @param session     the session in which to run the count
+     * @param criteria    the criteria that correspond with the filters of the query
+     * @param entityClass the entityclass that is queried
+     * @param query       the query the criteria were created from
+     * @param mode        the count mode to use
+     * @return the count, or null if the mode is {@link CountMode#NONE}
+     */
+    public Count count(Session session, Criteria criteria, Class entityClass, FeatureQuery query, CountMode mode) {
+        switch (mode) {
+            case NONE:
+                return null;
+            case ESTIMATED:
+                if (query.getBbox() == null && query.getCql() == null) {
+                    Integer estimate = estimate(session, entityClass);
+                    if (estimate != null) {
+                        return new Count(estimate, true);
+                    }
+                }
+                // Filtered results can not be estimated from the table statistics, count them instead. So are tables
+                // of which the statistics can not be read.
+            default:
+                return new Count(exactCount(criteria, entityClass, query), false);
+        }
+    }
+
+    private int exactCount(Criteria criteria, Class entityClass, FeatureQuery query) {
+        boolean useCache = cache != null && timeToLive > 0;
+        String key = useCache ? cacheKey(entityClass, query) : null;
+        if (useCache) {
+            Integer cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        criteria.setProjection(Projections.rowCount());
+        Number count = (Number) criteria.uniqueResult();
+        if (useCache) {
+            cache.put(key, count.intValue(), timeToLive);
+        }
+        return count.intValue();
+    }
+
+    /**
+     * Reads the estimated number of rows of the table of the given class from the statistics of PostgreSQL. The
+     * query runs under a savepoint, so if it fails, the transaction can still be used for the exact count.
+     *
+     * @return the estimate, or null if there is none
+     */
+    private Integer estimate(Session session, Class entityClass) {
+        SessionFactory factory = session.getSessionFactory();
+        ClassMetadata metadata = factory.getClassMetadata(entityClass);
+        if (!(metadata instanceof AbstractEntityPersister)) {
+            return null;
+        }
+        String tableName = ((AbstractEntityPersister) metadata).getTableName();
+        String[] name = splitTableName(tableName);
+        Savepoint savepoint;
+        try {
+            savepoint = setSavepoint(session);
+        } catch (HibernateException e) {
+            LOGGER.warn("No row estimate for " + tableName + ", counting instead: " + e.getMessage());
+            return null;
+        }
+        Number estimate;
+        try {
+            if (name[0] == null) {
+                estimate = (Number) session.createSQLQuery(ESTIMATE_QUERY)
+                        .setString("tbl", name[1])
+                        .uniqueResult();
+            } else {
+                estimate = (Number) session.createSQLQuery(ESTIMATE_QUERY_IN_SCHEMA)
+                        .setString("schema", name[0])
+                        .setString("tbl", name[1])
+                        .uniqueResult();
+            }
+        } catch (HibernateException e) {
+            LOGGER.warn("No row estimate for " + tableName + ", counting instead: " + e.getMessage());
+            try {
+                rollback(session, savepoint);
+            } catch (HibernateException rollbackFailure) {
+                // The exact count fails as well then, and reports the problem
+                LOGGER.warn("Rollback to savepoint failed: " + rollbackFailure.getMessage());
+            }
+            return null;
+        }
+        try {
+            release(session, savepoint);
+        } catch (HibernateException e) {
+            // The savepoint is released with the transaction anyway
+            LOGGER.debug("Release of savepoint failed: " + e.getMessage());
+        }
+        // reltuples is negative or zero for tables that were never analyzed
+        if (estimate == null || estimate.floatValue() <= 0) {
+            return null;
+        }
+        return Math.round(estimate.floatValue());
+    }
+
+    private static Savepoint setSavepoint(Session session) {
+        final Savepoint[] savepoint = new Savepoint[1];
+        session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                savepoint[0] = connection.setSavepoint();
+            }
+        });
+        return savepoint[0];
+    }
+
+    private static void rollback(Session session, final Savepoint savepoint) {
+        session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                connection.rollback(savepoint);
+            }
+        });
+    }
+
+    private static void release(Session session, final Savepoint savepoint) {
+        session.doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                connection.releaseSavepoint(savepoint);
+            }
+        });
+    }
+
+    /**
+     * Splits a table name as Hibernate renders it, optionally qualified with its schema and optionally quoted, in
+     * its unquoted parts.
+     *
+     * @param tableName the table name, eg. <code>public.roads</code> or <code>"Public"."Roads"</code>
+     * @return the schema, or null if the name is not qualified, and the table
+     */
+    static String[] splitTableName(String tableName) {
+        int separator = -1;
+        boolean quoted = false;
+        for (int i = 0; i < tableName.length(); i++) {
+            char c = tableName.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '.' && !quoted) {
+                separator = i;
+            }
+        }
+        if (separator < 0) {
+            return new String[]{null, unquote(tableName)};
+        }
+        return new String[]{unquote(tableName.substring(0, separator)), unquote(tableName.substring(separator + 1))};
+    }
+
+    private static String unquote(String identifier) {
+        if (identifier.length() >= 2 && identifier.startsWith("\"") && identifier.endsWith("\"")) {
+            return identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"");
+        }
+        return identifier;
+    }
+
+    private String cacheKey(Class entityClass, FeatureQuery query) {
+        return entityClass.getName() + '\n' + normalizeBbox(query.getBbox()) + '\n' + normalizeCql(query.getCql());
+    }
+
+    /**
+     * Brings a bbox in a canonical form, so that equivalent boundingboxes give the same string.
+     *
+     * @return the normalized bbox, or an empty string if the bbox is null or invalid (and therefore ignored)
+     */
+    public static String normalizeBbox(String bbox) {
+        if (bbox == null) {
+            return "";
+        }
+        try {
+            Envelope envelope = new EnvelopeConverter().convert(bbox);
+            return envelope.getMinX() + "," + envelope.getMinY() + "," + envelope.getMaxX() + "," + envelope.getMaxY();
+        } catch (TypeConversionException e) {
+            // An invalid bbox is ignored by the reader
+            return "";
+        }
+    }
+
+    /**
+     * Trims the expression and collapses all whitespace outside of quoted literals to a single space.
+     */
+    public static String normalizeCql(String cql) {
+        if (cql == null) {
+            return "";
+        }
+        String trimmed = cql.trim();
+        StringBuilder result = new StringBuilder(trimmed.length());
+        boolean inLiteral = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (!inLiteral && Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                result.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * The result of a count.
+     */
+    public static class Count {
+
+        private final int value;
+        private final boolean estimated;
+
+        Count(int value, boolean estimated) {
+            this.value = value;
+            this.estimated = estimated;
+        }
+
+        /**
+         * @return the number of elements
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if the value is an estimate
+         */
+        public boolean isEstimated() {
+            return estimated;
+        }
+    }
+}
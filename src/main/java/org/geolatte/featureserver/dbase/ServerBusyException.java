@@ -0,0 +1,65 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.mchange.v2.resourcepool.TimeoutException;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when a request can not be served because the featureserver is saturated: it was not admitted, or did not
+ * get a database connection, in time. The request can be retried later.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ServerBusyException extends DatabaseException {
+
+    /**
+     * @param message the reason why the request was refused
+     */
+    public ServerBusyException(String message) {
+        super(message);
+    }
+
+    /**
+     * Checks whether an exception was caused by the connection pool: with a c3p0.checkoutTimeout, c3p0 gives up on a
+     * checkout when no connection becomes available in time.
+     *
+     * @param e an exception thrown while accessing the database
+     * @return whether the exception, or one of its causes, is a checkout timeout of the connection pool
+     */
+    public static boolean isCheckoutTimeout(Throwable e) {
+        Throwable cause = e;
+        for (int depth = 0; cause != null && depth < 10; depth++) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
+            Throwable next = cause.getCause();
+            if (next == null && cause instanceof SQLException) {
+                next = ((SQLException) cause).getNextException();
+            }
+            cause = next;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manages the lifecycle of a service that is expensive to create: it is created once, on the first call to
+ * {@link #get()} (or {@link #start()}), and destroyed by {@link #stop()}.
+ * <p>
+ * Concurrency guarantees:
+ * <ul>
+ * <li>The service is created at most once at a time, by the first thread that needs it. Threads that need it while it
+ * is being created wait for that creation, and receive the same instance. No lock is held by the other threads: the
+ * creation is claimed with a compare-and-set.</li>
+ * <li>The service is safely published: a thread that receives it sees it fully constructed.</li>
+ * <li>Once created, {@link #get()} returns it without blocking.</li>
+ * <li>If the creation fails, every thread that waited for it receives the failure, and the next call tries again.</li>
+ * <li>After {@link #stop()}, the service is destroyed exactly once, and {@link #get()} fails. A service that is still
+ * being created while it is stopped is destroyed as soon as it is created.</li>
+ * </ul>
+ * </p>
+ *
+ * @param <T> the type of the service
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public final class ServiceLifecycle<T> {
+
+    /**
+     * The states of the service.
+     */
+    public enum State {
+        /**
+         * Not created yet.
+         */
+        NEW,
+        /**
+         * Being created.
+         */
+        STARTING,
+        /**
+         * Created and available.
+         */
+        READY,
+        /**
+         * The last creation failed. The next request tries again.
+         */
+        FAILED,
+        /**
+         * Stopped, it can not be used anymore.
+         */
+        STOPPED
+    }
+
+    /**
+     * Creates and destroys the service.
+     *
+     * @param <T> the type of the service
+     */
+    public interface Factory<T> {
+
+        /**
+         * @return a new service
+         * @throws Exception if the service could not be created
+         */
+        T create() throws Exception;
+
+        /**
+         * Releases the resources of a service.
+         *
+         * @param service the service to destroy
+         */
+        void destroy(T service);
+    }
+
+    private final String name;
+    private final Factory<T> factory;
+    // The creation in progress or done, or null if there is none
+    private final AtomicReference<FutureTask<T>> creation = new AtomicReference<FutureTask<T>>();
+    // The service once it is created, until it is stopped
+    private final AtomicReference<T> service = new AtomicReference<T>();
+    private volatile boolean stopped = false;
+
+    /**
+     * @param name    the name of the service, used in error messages
+     * @param factory creates and destroys the service
+     */
+    public ServiceLifecycle(String name, Factory<T> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the service, creating it if it does not exist yet.
+     *
+     * @return the service
+     * @throws DatabaseException if the service could not be created, or is stopped. A RuntimeException thrown by
+     *                           the factory is thrown as is.
+     */
+    public T get() throws DatabaseException {
+        T current = service.get();
+        if (current != null) {
+            return current;
+        }
+        while (true) {
+            if (stopped) {
+                throw new DatabaseException(name + " is stopped");
+            }
+            FutureTask<T> task = creation.get();
+            if (task != null && isFailed(task)) {
+                // The previous creation failed, try again
+                creation.compareAndSet(task, null);
+                continue;
+            }
+            if (task == null) {
+                FutureTask<T> newTask = new FutureTask<T>(new Callable<T>() {
+                    public T call() throws Exception {
+                        return create();
+                    }
+                });
+                if (!creation.compareAndSet(null, newTask)) {
+                    // Another thread claimed the creation first
+                    continue;
+                }
+                task = newTask;
+                task.run();
+            }
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new DatabaseException(name + " could not be created", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException("Interrupted while waiting for " + name);
+            }
+        }
+    }
+
+    private T create() throws Exception {
+        T created = factory.create();
+        service.set(created);
+        if (stopped) {
+            // Stopped while it was created: stop() may not have seen it
+            T toDestroy = service.getAndSet(null);
+            if (toDestroy != null) {
+                factory.destroy(toDestroy);
+            }
+            throw new DatabaseException(name + " is stopped");
+        }
+        return created;
+    }
+
+    /**
+     * Creates the service if it does not exist yet.
+     *
+     * @return the service
+     * @throws DatabaseException if the service could not be created, or is stopped
+     */
+    public T start() throws DatabaseException {
+        return get();
+    }
+
+    /**
+     * Stops the service, destroying it if it was created. It can not be used afterwards.
+     */
+    public void stop() {
+        stopped = true;
+        T current = service.getAndSet(null);
+        if (current != null) {
+            factory.destroy(current);
+        }
+    }
+
+    /**
+     * @return the current state of the service
+     */
+    public State getState() {
+        if (stopped) {
+            return State.STOPPED;
+        }
+        if (service.get() != null) {
+            return State.READY;
+        }
+        FutureTask<T> task = creation.get();
+        if (task == null) {
+            return State.NEW;
+        }
+        if (!task.isDone()) {
+            return State.STARTING;
+        }
+        // Created but not yet published, or stopped in the meantime
+        return isFailed(task) ? State.FAILED : (stopped ? State.STOPPED : State.STARTING);
+    }
+
+    private static boolean isFailed(FutureTask<?> task) {
+        if (!task.isDone()) {
+            return false;
+        }
+        try {
+            task.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            // Can not happen, the task is done
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the service is created and available
+     */
+    public boolean isReady() {
+        return getState() == State.READY;
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates a simple subset of CQL on entities in memory, with the same outcome as the database would give:
+ * <ul>
+ * <li>comparisons (=, &lt;&gt;, &lt;, &gt;, &lt;=, &gt;=) of a property with a literal. Strings only support
+ * (in)equality, since their ordering depends on the collation of the database;</li>
+ * <li>[NOT] LIKE, with % and _ as wildcards, on string properties;</li>
+ * <li>IS [NOT] NULL, [NOT] BETWEEN on numeric properties and [NOT] IN with a list of literals;</li>
+ * <li>combinations with AND, OR, NOT and parentheses.</li>
+ * </ul>
+ * Null values follow the three-valued logic of SQL, so a comparison with a null value is neither true nor false.
+ * Expressions outside this subset, such as spatial predicates or date comparisons, are not supported; for those
+ * {@link #parse(String, Map)} returns null and the query has to be executed by the database.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+final class SimpleCqlFilter {
+
+    private final Node root;
+
+    private SimpleCqlFilter(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param cql    the cql expression
+     * @param fields the fields of the entity class, by property name
+     * @return the filter, or null if the expression is not in the supported subset (or is invalid)
+     */
+    static SimpleCqlFilter parse(String cql, Map<String, Field> fields) {
+        try {
+            Parser parser = new Parser(tokenize(cql), fields);
+            Node root = parser.parseOr();
+            parser.expectEnd();
+            return new SimpleCqlFilter(root);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param entity an entity of the class the filter was parsed for
+     * @return true if the entity matches the expression
+     */
+    boolean matches(Object entity) {
+        return Boolean.TRUE.equals(root.evaluate(entity));
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Evaluation
+    // ---------------------------------------------------------------------------------------------------------------
+
+    /**
+     * A node of the expression tree. Evaluates to TRUE, FALSE or null (unknown).
+     */
+    private abstract static class Node {
+        abstract Boolean evaluate(Object entity);
+    }
+
+    private static class And extends Node {
+        private final Node left;
+        private final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        Boolean evaluate(Object entity) {
+            Boolean l = left.evaluate(entity);
+            if (Boolean.FALSE.equals(l)) {
+                return Boolean.FALSE;
+            }
+            Boolean r = right.evaluate(entity);
+            if (Boolean.FALSE.equals(r)) {
+                return Boolean.FALSE;
+            }
+            return l == null || r == null ? null : Boolean.TRUE;
+        }
+    }
+
+    private static class Or extends Node {
+        private final Node left;
+        private final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        Boolean evaluate(Object entity) {
+            Boolean l = left.evaluate(entity);
+            if (Boolean.TRUE.equals(l)) {
+                return Boolean.TRUE;
+            }
+            Boolean r = right.evaluate(entity);
+            if (Boolean.TRUE.equals(r)) {
+                return Boolean.TRUE;
+            }
+            return l == null || r == null ? null : Boolean.FALSE;
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        Boolean evaluate(Object entity) {
+            Boolean value = operand.evaluate(entity);
+            return value == null ? null : !value;
+        }
+    }
+
+    /**
+     * A predicate on the value of a single property.
+     */
+    private abstract static class Predicate extends Node {
+        private final Field field;
+
+        Predicate(Field field) {
+            this.field = field;
+        }
+
+        Boolean evaluate(Object entity) {
+            try {
+                return test(field.get(entity));
+            } catch (IllegalAccessException e) {
+                // Can not happen, the fields are made accessible
+                throw new IllegalStateException(e);
+            }
+        }
+
+        abstract Boolean test(Object value);
+    }
+
+    private static class IsNull extends Predicate {
+        IsNull(Field field) {
+            super(field);
+        }
+
+        Boolean test(Object value) {
+            return value == null;
+        }
+    }
+
+    private static class Comparison extends Predicate {
+        private final String operator;
+        private final Object literal;
+
+        Comparison(Field field, String operator, Object literal) {
+            super(field);
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        Boolean test(Object value) {
+            if (value == null) {
+                return null;
+            }
+            int c = compare(value, literal);
+            if ("=".equals(operator)) {
+                return c == 0;
+            } else if ("<>".equals(operator)) {
+                return c != 0;
+            } else if ("<".equals(operator)) {
+                return c < 0;
+            } else if ("<=".equals(operator)) {
+                return c <= 0;
+            } else if (">".equals(operator)) {
+                return c > 0;
+            }
+            return c >= 0;
+        }
+    }
+
+    private static class In extends Predicate {
+        private final List<Object> literals;
+
+        In(Field field, List<Object> literals) {
+            super(field);
+            this.literals = literals;
+        }
+
+        Boolean test(Object value) {
+            if (value == null) {
+                return null;
+            }
+            for (Object literal : literals) {
+                if (compare(value, literal) == 0) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    }
+
+    private static class Like extends Predicate {
+        private final Pattern pattern;
+
+        Like(Field field, String likePattern) {
+            super(field);
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : likePattern.toCharArray()) {
+                if (c == '%' || c == '_') {
+                    regex.append(Pattern.quote(literal.toString())).append(c == '%' ? ".*" : ".");
+                    literal.setLength(0);
+                } else {
+                    literal.append(c);
+                }
+            }
+            regex.append(Pattern.quote(literal.toString()));
+            this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        Boolean test(Object value) {
+            return value == null ? null : pattern.matcher((String) value).matches();
+        }
+    }
+
+    /**
+     * Compares a property value with a literal of a matching type, see {@link Parser#literalFor(Field, Token)}.
+     */
+    private static int compare(Object value, Object literal) {
+        if (literal instanceof BigDecimal) {
+            return toBigDecimal(value).compareTo((BigDecimal) literal);
+        } else if (literal instanceof Boolean) {
+            return value.equals(literal) ? 0 : 1;
+        }
+        return ((String) value).compareTo((String) literal);
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            return new BigDecimal(((Number) value).doubleValue());
+        }
+        return BigDecimal.valueOf(((Number) value).longValue());
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // Parsing
+    // ---------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Thrown when an expression is outside the supported subset or invalid.
+     */
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null);
+        }
+    }
+
+    private enum TokenType { IDENTIFIER, NUMBER, STRING, SYMBOL, END }
+
+    private static class Token {
+        private final TokenType type;
+        private final String text;
+
+        Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.IDENTIFIER && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isSymbol(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+    }
+
+    private static List<Token> tokenize(String cql) {
+        List<Token> tokens = new ArrayList<Token>();
+        int i = 0;
+        while (i < cql.length()) {
+            char c = cql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < cql.length() && (Character.isLetterOrDigit(cql.charAt(i)) || cql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.IDENTIFIER, cql.substring(start, i)));
+            } else if (c == '"') {
+                int end = cql.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new Unsupported();
+                }
+                // A quoted identifier is never a keyword
+                tokens.add(new Token(TokenType.IDENTIFIER, cql.substring(i, end + 1)));
+                i = end + 1;
+            } else if (Character.isDigit(c) || (c == '-' && i + 1 < cql.length() && Character.isDigit(cql.charAt(i + 1)))) {
+                int start = i++;
+                while (i < cql.length() && (Character.isDigit(cql.charAt(i)) || cql.charAt(i) == '.'
+                        || cql.charAt(i) == 'e' || cql.charAt(i) == 'E'
+                        || ((cql.charAt(i) == '-' || cql.charAt(i) == '+')
+                            && (cql.charAt(i - 1) == 'e' || cql.charAt(i - 1) == 'E')))) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, cql.substring(start, i)));
+            } else if (c == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= cql.length()) {
+                        throw new Unsupported();
+                    }
+                    if (cql.charAt(i) == '\'') {
+                        if (i + 1 < cql.length() && cql.charAt(i + 1) == '\'') {
+                            value.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    value.append(cql.charAt(i++));
+                }
+                tokens.add(new Token(TokenType.STRING, value.toString()));
+            } else if (c == '<' || c == '>' || c == '!') {
+                String symbol = String.valueOf(c);
+                if (i + 1 < cql.length() && (cql.charAt(i + 1) == '=' || (c == '<' && cql.charAt(i + 1) == '>'))) {
+                    symbol += cql.charAt(i + 1);
+                }
+                if ("!".equals(symbol)) {
+                    throw new Unsupported();
+                }
+                tokens.add(new Token(TokenType.SYMBOL, "!=".equals(symbol) ? "<>" : symbol));
+                i += symbol.length();
+            } else if (c == '=' || c == '(' || c == ')' || c == ',') {
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c)));
+                i++;
+            } else {
+                throw new Unsupported();
+            }
+        }
+        tokens.add(new Token(TokenType.END, ""));
+        return tokens;
+    }
+
+    private static class Parser {
+
+        private final List<Token> tokens;
+        private final Map<String, Field> fields;
+        private int position = 0;
+
+        Parser(List<Token> tokens, Map<String, Field> fields) {
+            this.tokens = tokens;
+            this.fields = fields;
+        }
+
+        Node parseOr() {
+            Node node = parseAnd();
+            while (peek().isKeyword("OR")) {
+                position++;
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        Node parseAnd() {
+            Node node = parseNot();
+            while (peek().isKeyword("AND")) {
+                position++;
+                node = new And(node, parseNot());
+            }
+            return node;
+        }
+
+        Node parseNot() {
+            if (peek().isKeyword("NOT")) {
+                position++;
+                return new Not(parseNot());
+            }
+            if (peek().isSymbol("(")) {
+                position++;
+                Node node = parseOr();
+                expectSymbol(")");
+                return node;
+            }
+            return parsePredicate();
+        }
+
+        Node parsePredicate() {
+            Field field = property(next());
+            Token token = next();
+            boolean negated = false;
+            if (token.isKeyword("IS")) {
+                negated = peek().isKeyword("NOT");
+                if (negated) {
+                    position++;
+                }
+                expectKeyword("NULL");
+                return negate(new IsNull(field), negated);
+            }
+            if (token.isKeyword("NOT")) {
+                negated = true;
+                token = next();
+            }
+            if (token.isKeyword("LIKE")) {
+                Token pattern = next();
+                if (pattern.type != TokenType.STRING || field.getType() != String.class) {
+                    throw new Unsupported();
+                }
+                return negate(new Like(field, pattern.text), negated);
+            }
+            if (token.isKeyword("BETWEEN")) {
+                Object lower = literalFor(field, next());
+                expectKeyword("AND");
+                Object upper = literalFor(field, next());
+                if (!(lower instanceof BigDecimal)) {
+                    throw new Unsupported();
+                }
+                return negate(new And(new Comparison(field, ">=", lower), new Comparison(field, "<=", upper)),
+                              negated);
+            }
+            if (token.isKeyword("IN")) {
+                expectSymbol("(");
+                List<Object> literals = new ArrayList<Object>();
+                do {
+                    literals.add(literalFor(field, next()));
+                } while (nextIfSymbol(","));
+                expectSymbol(")");
+                return negate(new In(field, literals), negated);
+            }
+            if (negated || token.type != TokenType.SYMBOL || token.isSymbol("(") || token.isSymbol(")")
+                    || token.isSymbol(",")) {
+                throw new Unsupported();
+            }
+            Object literal = literalFor(field, next());
+            if (literal instanceof String && !"=".equals(token.text) && !"<>".equals(token.text)) {
+                throw new Unsupported();
+            }
+            if (literal instanceof Boolean && !"=".equals(token.text) && !"<>".equals(token.text)) {
+                throw new Unsupported();
+            }
+            return new Comparison(field, token.text, literal);
+        }
+
+        /**
+         * @return the literal as a value that can be compared with the values of the given field: BigDecimal for
+         *         numeric fields, String for string fields and Boolean for boolean fields
+         */
+        Object literalFor(Field field, Token token) {
+            Class<?> type = field.getType();
+            if (Number.class.isAssignableFrom(type) && token.type == TokenType.NUMBER) {
+                try {
+                    return new BigDecimal(token.text);
+                } catch (NumberFormatException e) {
+                    throw new Unsupported();
+                }
+            } else if (type == String.class && token.type == TokenType.STRING) {
+                return token.text;
+            } else if (type == Boolean.class && (token.isKeyword("TRUE") || token.isKeyword("FALSE"))) {
+                return Boolean.valueOf(token.text.toLowerCase());
+            }
+            throw new Unsupported();
+        }
+
+        Field property(Token token) {
+            if (token.type != TokenType.IDENTIFIER) {
+                throw new Unsupported();
+            }
+            String name = token.text.startsWith("\"") ? token.text.substring(1, token.text.length() - 1) : token.text;
+            Field field = fields.get(name);
+            if (field == null) {
+                throw new Unsupported();
+            }
+            return field;
+        }
+
+        void expectEnd() {
+            if (peek().type != TokenType.END) {
+                throw new Unsupported();
+            }
+        }
+
+        private Node negate(Node node, boolean negated) {
+            return negated ? new Not(node) : node;
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private Token next() {
+            Token token = tokens.get(position);
+            if (token.type != TokenType.END) {
+                position++;
+            }
+            return token;
+        }
+
+        private boolean nextIfSymbol(String symbol) {
+            if (peek().isSymbol(symbol)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!next().isSymbol(symbol)) {
+                throw new Unsupported();
+            }
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!next().isKeyword(keyword)) {
+                throw new Unsupported();
+            }
+        }
+    }
+}
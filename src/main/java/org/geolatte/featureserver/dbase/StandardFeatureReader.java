@@ -24,21 +24,26 @@ package org.geolatte.featureserver.dbase;
 import com.vividsolutions.jts.geom.Envelope;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.geolatte.common.cql.hibernate.CqlHibernate;
 import org.geolatte.common.geo.EnvelopeConverter;
 import org.geolatte.common.geo.TypeConversionException;
 import org.geolatte.common.reflection.EntityClassReader;
 import org.geolatte.common.transformer.TransformerSource;
 import org.hibernate.*;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
-import org.hibernate.criterion.Projections;
+import org.hibernate.jdbc.Work;
 import org.hibernatespatial.criterion.SpatialRestrictions;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class is responsible for the actual retrieval of all objects
@@ -61,11 +66,29 @@ public class StandardFeatureReader extends TransformerSource<Object> {
     private ScrollableResults results = null;
     private Class entityClass = null;
     private Transaction trans = null;
+    // Whether the connection was made read-only by this reader, and must be reset when it is closed
+    private boolean readOnlyConnection = false;
     private ReaderIterator readerIterator = new ReaderIterator();
     private static final Logger LOGGER = LogManager.getLogger(StandardFeatureReader.class);
 
-    // The total number of elements matching the query, disregarding pagination
+    // The total number of elements matching the query, disregarding pagination. -1 if it was not computed.
     private int totalCount;
+    private boolean totalCountEstimated;
+
+    // Whether only part of the properties is selected, in which case the elements are not managed by the session
+    private boolean projected = false;
+
+    // Operations applied to the geometry of each element before it is returned
+    private List<GeometryOperation> geometryOperations;
+
+    // Keyset pagination state: the cursor this reader started from, the page size and the last element read
+    private KeysetCursor cursor;
+    private Integer limit;
+    private int readCount = 0;
+    private Object lastRead = null;
+
+    // Run once when the reader is closed, see setCloseAction
+    private Runnable closeAction;
 
     /**
      * Base constructor of a reader that will read all objects in the table. If a CQL expression is provided, only those
@@ -91,22 +114,55 @@ public class StandardFeatureReader extends TransformerSource<Object> {
     public StandardFeatureReader(SessionFactory factory, String cqlString, Class entityClass, String bboxString,
                                  Integer start, Integer limit, List<Order> orderings)
             throws DatabaseException {
+        this(factory, entityClass, toQuery(cqlString, bboxString, start, limit, orderings), ResultCounter.UNCACHED);
+    }
+
+    /**
+     * Constructor of a reader that reads the objects of the given entityClass that match the given query. The
+     * criteria of the query are combined with AND: all of them must be valid in order for a feature to be read by
+     * this reader.
+     *
+     * @param factory     The sessionfactory to use.
+     * @param entityClass The entityclass of the objects to retrieve. Required.
+     * @param query       The filter, ordering and pagination parameters. Required, but all of its parameters are
+     *                    optional.
+     * @param counter     The counter that determines the total number of matching elements, according to the count
+     *                    mode of the query.
+     * @throws DatabaseException if a problem occurs that would prevent retrieval of items (eg: if the cql string is invalid),
+     *                           a {@link ServerBusyException} if no database connection became available in time
+     */
+    public StandardFeatureReader(SessionFactory factory, Class entityClass, FeatureQuery query, ResultCounter counter)
+            throws DatabaseException {
         this.sessionFactory = factory;
         this.entityClass = entityClass;
-        DetachedCriteria detCrit = cqlToCriteria(cqlString, entityClass);
+        this.cursor = query.getCursor();
+        this.limit = query.getLimit();
+        this.geometryOperations = createGeometryOperations(entityClass, query);
+        DetachedCriteria detCrit = cqlToCriteria(query.getCql(), entityClass);
         try {
             beginTransaction(factory);
             Criteria criteria = toExecutableCriteria(factory, entityClass, detCrit);
-            addBBoxConstraint(entityClass, bboxString, criteria);
-            getResultCount(criteria);
+            addBBoxConstraint(entityClass, query.getBbox(), criteria);
+            getResultCount(counter, criteria, query);
             resetToScroll(criteria);
-            setStart(start, criteria);
+            if (cursor != null) {
+                // The cursor takes the place of the offset and determines the ordering
+                addCursorConstraint(cursor, criteria);
+                setOrderings(cursor.getOrderings(), criteria);
+            } else {
+                setStart(query.getStart(), criteria);
+                setOrderings(query.getOrderings(), criteria);
+            }
             setLimit(limit, criteria);
-            setOrderings(orderings, criteria);
+            setProjection(query.getProperties(), criteria);
             scroll(criteria);
         } catch (HibernateException he) {
+            resetReadOnly();
             rollBackTransaction();
             closeSession();
+            if (ServerBusyException.isCheckoutTimeout(he)) {
+                throw new ServerBusyException("No database connection became available within the checkout timeout");
+            }
             throw new DatabaseException(he);
         }
     }
@@ -127,6 +183,76 @@ public class StandardFeatureReader extends TransformerSource<Object> {
         this(factory, null, entityClass, bboxString, null, null, null);
     }
 
+    /**
+     * Constructor for readers that do not read from the database, such as {@link ResidentFeatureReader}. Only the
+     * geometry operations and pagination state are derived from the query; the subclass provides the elements by
+     * overriding {@link #output()} and sets the total with {@link #setTotalCount(int, boolean)}.
+     *
+     * @param entityClass The entityclass of the objects to return. Required.
+     * @param query       The query the returned elements match
+     */
+    protected StandardFeatureReader(Class entityClass, FeatureQuery query) {
+        this.entityClass = entityClass;
+        this.cursor = query.getCursor();
+        this.limit = query.getLimit();
+        this.geometryOperations = createGeometryOperations(entityClass, query);
+        this.totalCount = -1;
+    }
+
+    private static FeatureQuery toQuery(String cqlString, String bboxString, Integer start, Integer limit,
+                                        List<Order> orderings) {
+        FeatureQuery query = new FeatureQuery();
+        query.setCql(cqlString);
+        query.setBbox(bboxString);
+        query.setStart(start);
+        query.setLimit(limit);
+        query.setOrderings(orderings);
+        return query;
+    }
+
+    /**
+     * Restricts the selected columns to the given properties. The rows are turned into instances of the entity
+     * class in which only those properties are set. With keyset pagination, the sort keys of the cursor are always
+     * selected, since they are needed to build the next cursor. See {@link ProjectionResultTransformer} for why the
+     * projected properties are not aliased with their own name.
+     */
+    private void setProjection(List<String> properties, Criteria criteria) {
+        if (properties == null || properties.isEmpty()) {
+            return;
+        }
+        Set<String> selected = new LinkedHashSet<String>(properties);
+        if (cursor != null) {
+            selected.addAll(cursor.getProperties());
+        }
+        ProjectionResultTransformer transformer = new ProjectionResultTransformer(entityClass, selected);
+        criteria.setProjection(transformer.getProjection());
+        criteria.setResultTransformer(transformer);
+        projected = true;
+    }
+
+    private List<GeometryOperation> createGeometryOperations(Class entityClass, FeatureQuery query) {
+        List<GeometryOperation> operations = new ArrayList<GeometryOperation>();
+        if (EntityClassReader.getClassReaderFor(entityClass).getGeometryName() == null) {
+            return operations;
+        }
+        Double tolerance = query.getSimplificationTolerance();
+        if (tolerance != null && tolerance != 0) {
+            operations.add(new GeometrySimplifier(entityClass, tolerance));
+        }
+        // Rounding is done last, so it applies to the coordinates that are actually returned
+        if (query.getCoordinatePrecision() != null) {
+            operations.add(new CoordinatePrecisionReducer(entityClass, query.getCoordinatePrecision()));
+        }
+        return operations;
+    }
+
+    private void addCursorConstraint(KeysetCursor cursor, Criteria criteria) {
+        Criterion criterion = cursor.toCriterion();
+        if (criterion != null) {
+            criteria.add(criterion);
+        }
+    }
+
     private void setOrderings(List<Order> orderings, Criteria criteria) {
         if (orderings != null) {
             for (Order o : orderings) {
@@ -135,8 +261,59 @@ public class StandardFeatureReader extends TransformerSource<Object> {
         }
     }
 
+    /**
+     * Starts a read-only transaction. Nothing is ever written through a reader, so the session never needs to be
+     * flushed (which would dirty-check every loaded entity) and the second-level cache is bypassed.
+     * <p>
+     * The connection is marked read-only as well, so the database can skip the bookkeeping for writes. This is done
+     * on the connection rather than with a native statement, since Hibernate invalidates the second-level cache
+     * after every native update.
+     * </p>
+     */
     private void beginTransaction(SessionFactory factory) {
-        trans = factory.getCurrentSession().beginTransaction();
+        Session session = factory.getCurrentSession();
+        session.setFlushMode(FlushMode.MANUAL);
+        session.setCacheMode(CacheMode.IGNORE);
+        trans = session.beginTransaction();
+        setReadOnly(session);
+    }
+
+    private void setReadOnly(Session session) {
+        try {
+            session.doWork(new Work() {
+                public void execute(Connection connection) throws SQLException {
+                    if (!connection.isReadOnly()) {
+                        connection.setReadOnly(true);
+                        readOnlyConnection = true;
+                    }
+                }
+            });
+        } catch (HibernateException e) {
+            // The reader works without it
+            LOGGER.warn("Could not mark the connection read-only: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resets the connection that was marked read-only, before it is returned to the pool.
+     */
+    private void resetReadOnly() {
+        if (!readOnlyConnection) {
+            return;
+        }
+        try {
+            sessionFactory.getCurrentSession().doWork(new Work() {
+                public void execute(Connection connection) throws SQLException {
+                    // The flag can not be changed in the middle of a transaction
+                    connection.rollback();
+                    connection.setReadOnly(false);
+                }
+            });
+        } catch (HibernateException e) {
+            LOGGER.error("Exception thrown while resetting the read-only connection", e);
+        } finally {
+            readOnlyConnection = false;
+        }
     }
 
     private Criteria toExecutableCriteria(SessionFactory factory, Class entityClass, DetachedCriteria detCrit) {
@@ -150,7 +327,7 @@ public class StandardFeatureReader extends TransformerSource<Object> {
     private DetachedCriteria cqlToCriteria(String cqlString, Class entityClass) {
         if (cqlString == null) return null;
         try {
-            return CqlHibernate.toCriteria(cqlString, entityClass);
+            return CqlCriteriaCache.getInstance().toCriteria(cqlString, entityClass);
         } catch (ParseException e) {
             throw new DatabaseException(e);
         }
@@ -175,10 +352,16 @@ public class StandardFeatureReader extends TransformerSource<Object> {
         }
     }
 
-    private void getResultCount(Criteria crit) {
-        crit.setProjection(Projections.rowCount());
-        Number count = (Number) crit.uniqueResult();
-        totalCount = count.intValue();
+    private void getResultCount(ResultCounter counter, Criteria crit, FeatureQuery query) {
+        CountMode mode = query.getCountMode() == null ? CountMode.EXACT : query.getCountMode();
+        ResultCounter.Count count = counter.count(sessionFactory.getCurrentSession(), crit, entityClass, query, mode);
+        if (count == null) {
+            totalCount = -1;
+            totalCountEstimated = false;
+        } else {
+            totalCount = count.getValue();
+            totalCountEstimated = count.isEstimated();
+        }
     }
 
     private void setStart(Integer start, Criteria crit) {
@@ -195,18 +378,86 @@ public class StandardFeatureReader extends TransformerSource<Object> {
 
     private void scroll(Criteria crit) {
         crit.setFetchSize(1024);
+        crit.setFlushMode(FlushMode.MANUAL);
+        crit.setCacheMode(CacheMode.IGNORE);
         results = crit.scroll(ScrollMode.FORWARD_ONLY);
     }
 
 
 
     /**
-     * @return The total number of elements, disregarding pagination parameters
+     * @param totalCount the total number of elements, disregarding pagination parameters, or -1 if it is not known
+     * @param estimated  whether the total is an estimate
+     */
+    protected void setTotalCount(int totalCount, boolean estimated) {
+        this.totalCount = totalCount;
+        this.totalCountEstimated = estimated;
+    }
+
+    /**
+     * @return true if the geometries are modified before they are returned, in which case elements that are shared
+     *         with other readers must be copied first
+     */
+    protected boolean hasGeometryOperations() {
+        return !geometryOperations.isEmpty();
+    }
+
+    /**
+     * Applies the simplification and rounding requested in the query to the geometry of the given element. The
+     * geometry is modified in place.
+     *
+     * @param element an element of the entity class
+     */
+    protected void applyGeometryOperations(Object element) {
+        for (GeometryOperation operation : geometryOperations) {
+            operation.apply(element);
+        }
+    }
+
+    /**
+     * @return The total number of elements, disregarding pagination parameters, or -1 if the total was not computed
+     * (see {@link CountMode#NONE}).
      */
     public int getTotalCount() {
         return totalCount;
     }
 
+    /**
+     * @return true if the total number of elements was computed
+     */
+    public boolean isTotalCountKnown() {
+        return totalCount >= 0;
+    }
+
+    /**
+     * @return true if the total number of elements is an estimate rather than an exact count
+     */
+    public boolean isTotalCountEstimated() {
+        return totalCountEstimated;
+    }
+
+    /**
+     * @return true if this reader uses keyset pagination, in which case {@link #getNextCursor()} gives the position
+     *         of the next page.
+     */
+    public boolean isKeysetPaged() {
+        return cursor != null;
+    }
+
+    /**
+     * Returns the cursor for the page after the one returned by this reader. Only meaningful once all elements have
+     * been read.
+     *
+     * @return the cursor positioned after the last element read, or null if this reader does not use keyset
+     *         pagination or if there are no further elements.
+     */
+    public KeysetCursor getNextCursor() {
+        if (cursor == null || lastRead == null || limit == null || readCount < limit) {
+            return null;
+        }
+        return cursor.after(lastRead);
+    }
+
     /**
      * Implementation of the TransformerSource api
      *
@@ -226,8 +477,25 @@ public class StandardFeatureReader extends TransformerSource<Object> {
      * Closes this feature reader, releasing its resources
      */
     public void close() {
+        resetReadOnly();
         rollBackTransaction();
         closeSession();
+        Runnable action;
+        synchronized (this) {
+            action = closeAction;
+            closeAction = null;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * @param closeAction an action to run when the reader is closed, for instance to release the session factory.
+     *                    It is run only once, even if the reader is closed more than once.
+     */
+    synchronized void setCloseAction(Runnable closeAction) {
+        this.closeAction = closeAction;
     }
 
     private void closeSession() {
@@ -259,6 +527,7 @@ public class StandardFeatureReader extends TransformerSource<Object> {
     private class ReaderIterator implements Iterator<Object> {
 
         Object nextCached = null;
+        boolean evicted = false;
 
         /**
          * Returns <tt>true</tt> if the iteration has more elements. (In other
@@ -273,10 +542,14 @@ public class StandardFeatureReader extends TransformerSource<Object> {
             }
 
             if (nextCached == null) {
+                evictLastRead();
                 results.next();
                 Object[] currentRow = results.get();
                 if (currentRow != null) {
                     nextCached = currentRow[0];
+                    if (nextCached != null) {
+                        applyGeometryOperations(nextCached);
+                    }
                 }
             }
             if (nextCached == null) {
@@ -285,6 +558,17 @@ public class StandardFeatureReader extends TransformerSource<Object> {
             return true;
         }
 
+        /**
+         * Removes the previously returned element from the session, so the session does not keep a reference to
+         * every element that was scrolled. The element itself remains usable.
+         */
+        private void evictLastRead() {
+            if (lastRead != null && !evicted && !projected) {
+                sessionFactory.getCurrentSession().evict(lastRead);
+                evicted = true;
+            }
+        }
+
         /**
          * Returns the next element in the iteration.
          *
@@ -296,6 +580,9 @@ public class StandardFeatureReader extends TransformerSource<Object> {
             if (hasNext()) {
                 Object result = nextCached;
                 nextCached = null;
+                lastRead = result;
+                evicted = false;
+                readCount++;
                 return result;
             } else {
                 throw new NoSuchElementException("No more elements in iterable");
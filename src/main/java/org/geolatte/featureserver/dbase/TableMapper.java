@@ -0,0 +1,355 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernatespatial.cfg.HSConfiguration;
+import org.hibernatespatial.pojo.AutoMapper;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps tables of the configured schema to classes with the AutoMapper, in one or more batches, and builds session
+ * factories for all tables mapped so far. The metadata of each batch is read in parallel first (see
+ * {@link MetadataSnapshot}), since the AutoMapper itself reads it one table after the other.
+ * <p>
+ * The AutoMapper can not map a table twice, so tables that are already mapped are skipped. A table that is dropped
+ * can be left out of the session factories with {@link #unmap(Collection)}; if it is created again, its original
+ * mapping is used again.
+ * </p>
+ * <p>
+ * If a snapshot file is configured, the table list and the recorded metadata are kept in it (see
+ * {@link MappingSnapshotStore}), and reused at the next start if the schema did not change. The AutoMapper then
+ * still generates the classes and the mapping, but reads no metadata from the database.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class TableMapper implements MetadataSnapshot.ConnectionSource {
+
+    private static final Logger LOGGER = LogManager.getLogger(TableMapper.class);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String schema;
+    private final int threads;
+    // The hibernate mapping of every batch mapped so far
+    private final List<Document> mappings = new ArrayList<Document>();
+    // The column signatures of the tables at the time they were mapped, by table name
+    private final Map<String, String> mappedSignatures = new HashMap<String, String>();
+    // The tables that are mapped, but left out of the session factories
+    private final Set<String> unmappedTables = new HashSet<String>();
+    // The metadata of all tables mapped so far, or read from the snapshot file
+    private MetadataSnapshot metadata = new MetadataSnapshot();
+    // The file the table list and metadata are kept in, or null
+    private final MappingSnapshotStore store;
+    // The fingerprint of the schema and all its tables, as kept in the snapshot file
+    private String fingerprint;
+    private List<String> allTables;
+
+    TableMapper() {
+        FeatureServerConfiguration configuration = FeatureServerConfiguration.getInstance();
+        url = configuration.getHibernateProperty("hibernate.connection.url");
+        user = configuration.getHibernateProperty("hibernate.connection.username");
+        password = configuration.getHibernateProperty("hibernate.connection.password");
+        schema = configuration.getDbaseSchema();
+        threads = configuration.getMetadataThreads();
+        String snapshotFile = configuration.getMappingSnapshotFile();
+        store = snapshotFile == null ? null : new MappingSnapshotStore(new File(snapshotFile));
+    }
+
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    /**
+     * Lists the tables at startup. If the snapshot file was made for the current schema, the list is read from it.
+     *
+     * @return the tables and views of the schema that are included by the configuration
+     * @throws SQLException if the tables could not be listed
+     */
+    synchronized List<String> listTables() throws SQLException {
+        Connection connection = openConnection();
+        try {
+            DatabaseMetaData databaseMetaData = connection.getMetaData();
+            if (store != null) {
+                fingerprint = MappingSnapshotStore.fingerprint(databaseMetaData, url, schema);
+                MappingSnapshotStore.Snapshot snapshot = store.load(fingerprint);
+                if (snapshot != null) {
+                    metadata = snapshot.getMetadata();
+                    allTables = snapshot.getTables();
+                    LOGGER.info("Table list and metadata read from the mapping snapshot");
+                    return FeatureServerConfiguration.getInstance().includedTables(allTables);
+                }
+            }
+            allTables = readTables(databaseMetaData);
+            return FeatureServerConfiguration.getInstance().includedTables(allTables);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Reads the current tables and their column signatures from the database, bypassing the snapshot file. The
+     * recorded metadata of the tables that changed or were dropped is removed, so it is read again when they are
+     * mapped and not reused from the snapshot file at the next start.
+     *
+     * @param signatures receives the column signatures of all tables of the schema, by table name, see
+     *                   {@link MetadataSnapshot#readColumnSignatures(ResultSet, ResultSet)}
+     * @return the tables and views of the schema that are included by the configuration
+     * @throws SQLException if the tables could not be read
+     */
+    synchronized List<String> readTables(Map<String, String> signatures) throws SQLException {
+        Connection connection = openConnection();
+        try {
+            DatabaseMetaData databaseMetaData = connection.getMetaData();
+            List<String> names = readTables(databaseMetaData);
+            signatures.putAll(MetadataSnapshot.readColumnSignatures(databaseMetaData.getColumns(null, schema, null, null),
+                                                                    databaseMetaData.getPrimaryKeys(null, schema, null)));
+            for (String table : metadata.getTables()) {
+                String recorded = metadata.getColumnSignature(schema, table);
+                if (recorded != null && !recorded.equals(signatures.get(table))) {
+                    metadata.remove(schema, table);
+                }
+            }
+            allTables = names;
+            if (store != null) {
+                fingerprint = MappingSnapshotStore.fingerprint(url, schema, signatures);
+            }
+            return FeatureServerConfiguration.getInstance().includedTables(names);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private List<String> readTables(DatabaseMetaData databaseMetaData) throws SQLException {
+        ResultSet resultSet = databaseMetaData.getTables(null, schema, null, new String[]{"TABLE", "VIEW"});
+        List<String> names = new ArrayList<String>();
+        try {
+            while (resultSet.next()) {
+                names.add(resultSet.getString("TABLE_NAME"));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return names;
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the class the table is mapped to, or null if it is not mapped
+     */
+    Class getMappedClass(String tableName) {
+        return AutoMapper.getClass(null, schema, tableName);
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the column signature the table had when it was mapped, or null if it is not known
+     */
+    synchronized String getMappedSignature(String tableName) {
+        return mappedSignatures.get(tableName);
+    }
+
+    /**
+     * Maps the given tables. The new mapping is only used by the session factories built afterwards.
+     *
+     * @param tables the names of the tables to map. Tables that are already mapped are skipped, unless they were
+     *               unmapped.
+     * @return the classes of the tables that were mapped by this call, by table name
+     * @throws SQLException if the metadata of the tables could not be read
+     */
+    synchronized Map<String, Class> map(Collection<String> tables) throws SQLException {
+        Map<String, Class> result = new LinkedHashMap<String, Class>();
+        List<String> unmapped = new ArrayList<String>();
+        for (String table : tables) {
+            Class mappedClass = getMappedClass(table);
+            if (mappedClass == null && !unmapped.contains(table)) {
+                unmapped.add(table);
+            } else if (mappedClass != null && unmappedTables.remove(table)) {
+                // Created again after it was dropped: its mapping is still in one of the batches
+                result.put(table, mappedClass);
+            }
+        }
+        if (unmapped.isEmpty()) {
+            return result;
+        }
+        long start = System.currentTimeMillis();
+        List<String> unrecorded = new ArrayList<String>();
+        for (String table : unmapped) {
+            if (!metadata.contains(table)) {
+                unrecorded.add(table);
+            }
+        }
+        if (!unrecorded.isEmpty()) {
+            metadata.addAll(MetadataSnapshot.record(this, schema, unrecorded, threads));
+            saveSnapshot();
+        }
+        Connection connection = metadata.wrap(openConnection());
+        Document mapping;
+        try {
+            mapping = AutoMapper.map(connection, null, schema, unmapped);
+        } finally {
+            connection.close();
+        }
+        Set<String> classNames = new HashSet<String>();
+        for (String table : unmapped) {
+            Class mappedClass = getMappedClass(table);
+            if (mappedClass != null) {
+                result.put(table, mappedClass);
+                classNames.add(mappedClass.getName());
+                mappedSignatures.put(table, metadata.getColumnSignature(schema, table));
+            }
+        }
+        retainClasses(mapping, classNames);
+        mappings.add(mapping);
+        LOGGER.info(String.format("%d tables mapped in %d ms", result.size(), System.currentTimeMillis() - start));
+        return result;
+    }
+
+    /**
+     * Leaves tables out of the session factories built afterwards, for instance because they were dropped.
+     *
+     * @param tables the names of the tables
+     */
+    synchronized void unmap(Collection<String> tables) {
+        for (String table : tables) {
+            if (getMappedClass(table) != null) {
+                unmappedTables.add(table);
+            }
+        }
+    }
+
+    /**
+     * Compares the mapped tables with their current column signatures.
+     *
+     * @param signatures the current column signatures of all tables of the schema, by table name
+     * @return the tables that are mapped and still exist, but of which the columns changed since they were mapped
+     */
+    synchronized List<String> findChangedTables(Map<String, String> signatures) {
+        List<String> changed = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : mappedSignatures.entrySet()) {
+            String current = signatures.get(entry.getKey());
+            if (current != null && !current.equals(entry.getValue()) && !unmappedTables.contains(entry.getKey())) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the changed tables of which the mapping no longer matches the table, see
+     * {@link MetadataSnapshot#containsColumns(String, String)}. Queries on them fail until they are mapped again.
+     *
+     * @param signatures the current column signatures of all tables of the schema, by table name
+     * @return the tables that are mapped and still exist, but of which a mapped column was dropped or altered
+     */
+    synchronized List<String> findIncompatibleTables(Map<String, String> signatures) {
+        List<String> incompatible = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : mappedSignatures.entrySet()) {
+            String current = signatures.get(entry.getKey());
+            if (current != null && entry.getValue() != null && !unmappedTables.contains(entry.getKey())
+                    && !MetadataSnapshot.containsColumns(current, entry.getValue())) {
+                incompatible.add(entry.getKey());
+            }
+        }
+        return incompatible;
+    }
+
+    /**
+     * Writes the table list and the recorded metadata to the snapshot file, if one is configured.
+     */
+    synchronized void saveSnapshot() {
+        if (store != null && fingerprint != null && allTables != null) {
+            store.save(new MappingSnapshotStore.Snapshot(fingerprint, allTables, metadata));
+        }
+    }
+
+    /**
+     * Removes the classes that were mapped by an earlier batch from a mapping document, in case the AutoMapper
+     * includes them again.
+     */
+    private static void retainClasses(Document mapping, Set<String> classNames) {
+        for (Object node : new ArrayList<Object>(mapping.getRootElement().elements("class"))) {
+            Element element = (Element) node;
+            if (!classNames.contains(getClassName(element))) {
+                mapping.getRootElement().remove(element);
+            }
+        }
+    }
+
+    private static String getClassName(Element element) {
+        String name = element.attributeValue("name");
+        return name == null ? element.attributeValue("entity-name") : name;
+    }
+
+    /**
+     * @return a new session factory for all tables mapped so far, except the unmapped ones
+     */
+    synchronized SessionFactory buildSessionFactory() {
+        FeatureServerConfiguration configuration = FeatureServerConfiguration.getInstance();
+        Configuration newConfig = new Configuration();
+        for (String property : configuration.getHibernateProperties()) {
+            newConfig.setProperty(property, configuration.getHibernateProperty(property));
+        }
+        Set<String> excluded = new HashSet<String>();
+        for (String table : unmappedTables) {
+            excluded.add(getMappedClass(table).getName());
+        }
+        for (Document mapping : mappings) {
+            if (!excluded.isEmpty()) {
+                mapping = (Document) mapping.clone();
+                for (Object node : new ArrayList<Object>(mapping.getRootElement().elements("class"))) {
+                    if (excluded.contains(getClassName((Element) node))) {
+                        mapping.getRootElement().remove((Element) node);
+                    }
+                }
+            }
+            newConfig.addXML(mapping.asXML());
+        }
+        SessionFactory sessionFactory = newConfig.buildSessionFactory();
+        LOGGER.info("Sessionfactory created: " + sessionFactory);
+        new HSConfiguration().configure(newConfig);
+        return sessionFactory;
+    }
+}
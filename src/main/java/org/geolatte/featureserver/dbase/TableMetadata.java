@@ -0,0 +1,178 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.geolatte.common.reflection.EntityClassReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The columns of a mapped table and what they may be used for. It is computed once, when the table is mapped, so
+ * requests can be validated without reflection on the entity class. Instances are immutable.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public final class TableMetadata {
+
+    private final String tableName;
+    private final Class<?> entityClass;
+    private final String idName;
+    private final String geometryName;
+    // The types by column name, in the order id, geometry, other properties
+    private final Map<String, Class<?>> types;
+    private final List<String> columns;
+    private final Set<String> sortable;
+    private final Set<String> distinctAllowed;
+    private final Set<String> notNull;
+
+    /**
+     * Reads the metadata of a mapped table from its entity class.
+     *
+     * @param tableName   the name of the table
+     * @param entityClass the entityclass the table is mapped to
+     */
+    public TableMetadata(String tableName, Class<?> entityClass) {
+        this.tableName = tableName;
+        this.entityClass = entityClass;
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(entityClass);
+        this.idName = reader.getIdName();
+        this.geometryName = reader.getGeometryName();
+        Map<String, Class<?>> columnTypes = new LinkedHashMap<String, Class<?>>();
+        if (idName != null) {
+            columnTypes.put(idName, reader.getPropertyType(idName));
+        }
+        if (geometryName != null) {
+            columnTypes.put(geometryName, reader.getPropertyType(geometryName));
+        }
+        for (String property : reader.getProperties()) {
+            columnTypes.put(property, reader.getPropertyType(property));
+        }
+        this.types = Collections.unmodifiableMap(columnTypes);
+        this.columns = Collections.unmodifiableList(new ArrayList<String>(columnTypes.keySet()));
+        Set<String> sortableColumns = new HashSet<String>();
+        Set<String> distinctColumns = new HashSet<String>();
+        Set<String> notNullColumns = new HashSet<String>();
+        for (Map.Entry<String, Class<?>> entry : columnTypes.entrySet()) {
+            if (entry.getKey().equals(idName) || entry.getValue().isPrimitive()) {
+                notNullColumns.add(entry.getKey());
+            }
+            if (!entry.getKey().equals(geometryName)) {
+                sortableColumns.add(entry.getKey());
+            }
+            if (canDoDistinct(entry.getValue())) {
+                distinctColumns.add(entry.getKey());
+            }
+        }
+        this.sortable = Collections.unmodifiableSet(sortableColumns);
+        this.distinctAllowed = Collections.unmodifiableSet(distinctColumns);
+        this.notNull = Collections.unmodifiableSet(notNullColumns);
+    }
+
+    private static boolean canDoDistinct(Class<?> propertyType) {
+        return String.class.isAssignableFrom(propertyType) ||
+                Integer.class.isAssignableFrom(propertyType) ||
+                Byte.class.isAssignableFrom(propertyType) ||
+                Boolean.class.isAssignableFrom(propertyType);
+    }
+
+    /**
+     * @return the name of the table
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the entityclass the table is mapped to
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the name of the id column, or null if the table has no id
+     */
+    public String getIdName() {
+        return idName;
+    }
+
+    /**
+     * @return the name of the geometry column, or null if the table has no geometry
+     */
+    public String getGeometryName() {
+        return geometryName;
+    }
+
+    /**
+     * @return the names of all columns: the id, the geometry and then the other properties
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param column a column name
+     * @return true if the table has a column with this name (the id and geometry included)
+     */
+    public boolean hasColumn(String column) {
+        return types.containsKey(column);
+    }
+
+    /**
+     * @param column a column name
+     * @return the type of the column, or null if the table has no such column
+     */
+    public Class<?> getType(String column) {
+        return types.get(column);
+    }
+
+    /**
+     * @param column a column name
+     * @return true if the results may be sorted on the column, which is the case for all columns but the geometry
+     */
+    public boolean isSortable(String column) {
+        return sortable.contains(column);
+    }
+
+    /**
+     * @param column a column name
+     * @return true if the distinct values of the column may be retrieved, which is the case for string, integer,
+     *         byte and boolean columns
+     */
+    public boolean isDistinctAllowed(String column) {
+        return distinctAllowed.contains(column);
+    }
+
+    /**
+     * @return the columns that can not be null: the id and the columns of a primitive type
+     */
+    public Set<String> getNotNullColumns() {
+        return notNull;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+/**
+ * Thrown when a table exists, but is not mapped yet because the tables are still being mapped in the background.
+ * The request can be retried later.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TableNotReadyException extends DatabaseException {
+
+    private final String tableName;
+
+    /**
+     * @param tableName the name of the table that is not mapped yet
+     */
+    public TableNotReadyException(String tableName) {
+        this(tableName, "Table " + tableName + " is not available yet, it is still being mapped");
+    }
+
+    /**
+     * @param tableName the name of the table that can not be served
+     * @param message   the reason
+     */
+    protected TableNotReadyException(String tableName, String message) {
+        super(message);
+        this.tableName = tableName;
+    }
+
+    /**
+     * @return the name of the table that is not mapped yet
+     */
+    public String getTableName() {
+        return tableName;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
+
+/**
+ * Rest interface for the maintenance of the featureserver, such as purging cached tiles and responses after the
+ * data of a table has changed, or reloading resident tables. These operations should not be public: restrict access to /rest/admin with a security constraint in
+ * the deployment descriptor.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+@Path("/rest")
+public interface AdminService {
+
+    /**
+     * Removes the cached vector tiles of a table, from memory and from disk.
+     *
+     * @param tableName the name of the table
+     * @param bbox      if set, only the tiles that cover (part of) this boundingbox, buffer included, are removed.
+     *                  Format: minX,minY,maxX,maxY in the coordinate system of the table.
+     * @return the number of tiles removed, as {"purged": n}
+     */
+    @DELETE
+    @Produces("application/json")
+    @Path("/admin/cache/tiles/{name}")
+    public Response purgeTileCache(@PathParam("name") String tableName,
+                                   @QueryParam("bbox") String bbox);
+
+    /**
+     * Removes all cached vector tiles of all tables.
+     *
+     * @return the number of tiles removed, as {"purged": n}
+     */
+    @DELETE
+    @Produces("application/json")
+    @Path("/admin/cache/tiles")
+    public Response purgeAllTileCaches();
+
+    /**
+     * Removes the cached JSON and CSV responses of a table.
+     *
+     * @param tableName the name of the table
+     * @return the number of responses removed, as {"purged": n}
+     */
+    @DELETE
+    @Produces("application/json")
+    @Path("/admin/cache/results/{name}")
+    public Response purgeResultCache(@PathParam("name") String tableName);
+
+    /**
+     * Removes the cached JSON and CSV responses of all tables.
+     *
+     * @return the number of responses removed, as {"purged": n}
+     */
+    @DELETE
+    @Produces("application/json")
+    @Path("/admin/cache/results")
+    public Response purgeAllResultCaches();
+
+    /**
+     * Reloads a resident table (see the Resident table setting) from the database. Until the new copy is loaded,
+     * queries are answered from the previous one.
+     *
+     * @param tableName the name of the table
+     * @return the number of features loaded, as {"loaded": n}
+     */
+    @POST
+    @Produces("application/json")
+    @Path("/admin/resident/{name}/refresh")
+    public Response refreshResidentTable(@PathParam("name") String tableName);
+
+    /**
+     * Checks the database for included tables that were added, dropped or changed, and updates the mapping without a
+     * restart: added tables are mapped and dropped tables removed. Tables of which the columns changed keep their
+     * original mapping until the next restart. Changed tables of which a mapped column was dropped or altered are
+     * listed as incompatible as well: they are refused with 503 Service Unavailable until the next restart.
+     *
+     * @return the tables that were added, dropped or changed, as {"added": [...], "dropped": [...], "changed": [...],
+     *         "incompatible": [...]}
+     */
+    @POST
+    @Produces("application/json")
+    @Path("/admin/mapping/refresh")
+    public Response refreshMapping();
+
+    /**
+     * Gives the statistics of the cache of parsed cql expressions.
+     *
+     * @return the number of cached expressions, hits and misses, as {"size": n, "hits": h, "misses": m}
+     */
+    @GET
+    @Produces("application/json")
+    @Path("/admin/cache/cql")
+    public Response getCqlCacheStatistics();
+}
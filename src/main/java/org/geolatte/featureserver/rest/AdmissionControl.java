@@ -0,0 +1,338 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.featureserver.config.ConfigurationException;
+import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.dbase.ServerBusyException;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for the requests that use the database: they are executed on a bounded pool of threads, so at
+ * most a configured number of them are active at the same time, independently of the number of threads of the
+ * servlet container. A request that does not get a thread within the queue timeout, or that finds the queue full,
+ * is answered with 503 Service Unavailable instead of piling up on the connection pool.
+ * <p>
+ * Requests are suspended with the {@link org.jboss.resteasy.annotations.Suspend} annotation of RESTEasy: the
+ * container thread returns as soon as the request is submitted, and the response is set on the
+ * {@link AsynchronousResponse} by the thread that executes the request. Hibernate binds a session to the thread that
+ * opened it, so that thread also writes the response: a {@link StreamingOutput} entity is written when the response
+ * is set. An entity that is never written, because setting the response failed, is closed if it is
+ * {@link Closeable}, which releases the reader of a {@link FeatureStreamingOutput}.
+ * </p>
+ * <p>
+ * Suspended requests need a dispatcher servlet that supports asynchronous requests, see web.xml. With the plain
+ * HttpServletDispatcher, RESTEasy refuses them.
+ * </p>
+ * <p>
+ * The limits are configured in the Admission section of the configuration. Without a limit, every request is
+ * admitted and executed on a thread of its own.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class AdmissionControl {
+
+    /**
+     * The number of milliseconds a request is suspended before RESTEasy gives up on its response. It must exceed the
+     * queue timeout plus the time needed to prepare a response.
+     */
+    public static final long SUSPEND_TIMEOUT = 5 * 60 * 1000L;
+
+    /**
+     * The number of seconds after which a request that was refused because the server is busy can be retried.
+     */
+    private static final int SERVER_BUSY_RETRY_AFTER = 2;
+
+    private static final Logger LOGGER = LogManager.getLogger(AdmissionControl.class);
+
+    private final ThreadPoolExecutor executor;
+    // null if requests do not wait for a thread
+    private final ScheduledExecutorService timeouts;
+    private final long queueTimeout;
+
+    /**
+     * @return the single instance of the admission control
+     */
+    public static AdmissionControl getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Lazy and threadsafe implementation of singleton. Solution of Bill Pugh.
+     */
+    private static class SingletonHolder {
+        private static final AdmissionControl INSTANCE = create();
+    }
+
+    private static AdmissionControl create() {
+        FeatureServerConfiguration configuration = FeatureServerConfiguration.getInstance();
+        try {
+            return new AdmissionControl(configuration.getAdmissionMaxActive(), configuration.getAdmissionQueueSize(),
+                                        configuration.getAdmissionQueueTimeout() * 1000L);
+        } catch (ConfigurationException e) {
+            // The requests report the invalid configuration themselves
+            LOGGER.error("Invalid Featureserver configuration, requests are admitted without limit", e);
+            return new AdmissionControl(0, 0, 0);
+        }
+    }
+
+    /**
+     * @param maxActive    the maximum number of active requests, or 0 to admit every request
+     * @param queueSize    the maximum number of requests that wait to become active
+     * @param queueTimeout the number of milliseconds a request waits to become active
+     */
+    AdmissionControl(int maxActive, int queueSize, long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+        if (maxActive == 0) {
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                              new SynchronousQueue<Runnable>(), new RequestThreadFactory());
+            timeouts = null;
+            return;
+        }
+        BlockingQueue<Runnable> queue = queueSize == 0
+                ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueSize);
+        executor = new ThreadPoolExecutor(maxActive, maxActive, 0, TimeUnit.SECONDS, queue,
+                                          new RequestThreadFactory());
+        timeouts = queueSize == 0 ? null : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "featureserver-admission-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LOGGER.info(String.format("At most %d table requests are active (queue size %d, queue timeout %d ms)",
+                                  maxActive, queueSize, queueTimeout));
+    }
+
+    /**
+     * Submits a request for execution once it is admitted. The response of the request is set on the given
+     * asynchronous response by the thread that executes it; if that response has a {@link StreamingOutput} entity,
+     * the request stays active until that entity is written. If the request is not admitted, 503 Service Unavailable
+     * is set right away, or once the queue timeout has passed.
+     *
+     * @param request  builds the response of the request. Exceptions it throws are answered with 500 Internal Server
+     *                 Error, so it should turn the exceptions it expects into a response itself.
+     * @param response the suspended response of the request
+     */
+    public void submit(Callable<Response> request, AsynchronousResponse response) {
+        final AdmittedRequest admitted = new AdmittedRequest(request, response);
+        try {
+            executor.execute(admitted);
+        } catch (RejectedExecutionException e) {
+            respond(response, serverBusyResponse(
+                    new ServerBusyException("Too many requests are waiting, try again later")));
+            return;
+        }
+        if (timeouts != null) {
+            admitted.timeout = timeouts.schedule(new Runnable() {
+                public void run() {
+                    // Only a request that is still waiting can be removed from the queue
+                    if (executor.remove(admitted)) {
+                        admitted.refuse(new ServerBusyException(String.format(
+                                "The request was not admitted within %d ms, try again later", queueTimeout)));
+                    }
+                }
+            }, queueTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sets a response that needs no admission, such as an error or a cached response, on the suspended response of
+     * a request. Like the responses of admitted requests, a {@link Closeable} entity that is never written is closed.
+     *
+     * @param asynchronousResponse the suspended response of the request
+     * @param response             the response to set
+     */
+    public static void respond(AsynchronousResponse asynchronousResponse, Response response) {
+        UnwrittenOutput unwritten = null;
+        if (response.getEntity() instanceof StreamingOutput && response.getEntity() instanceof Closeable) {
+            unwritten = new UnwrittenOutput((StreamingOutput) response.getEntity());
+            response = Response.fromResponse(response).entity(unwritten).build();
+        }
+        try {
+            asynchronousResponse.setResponse(response);
+        } finally {
+            if (unwritten != null) {
+                unwritten.closeIfUnwritten();
+            }
+        }
+    }
+
+    /**
+     * @param e the reason the request was refused
+     * @return the 503 Service Unavailable response of a request that was refused because the server is busy
+     */
+    public static Response serverBusyResponse(ServerBusyException e) {
+        LOGGER.warn("Request refused: " + e.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(SERVER_BUSY_RETRY_AFTER))
+                .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+    }
+
+    /**
+     * @return the number of requests that are active, including those writing their response
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of requests that wait to become active
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting requests. Requests that are still waiting are refused, active requests are finished.
+     */
+    public void shutdown() {
+        if (timeouts != null) {
+            timeouts.shutdownNow();
+        }
+        executor.shutdown();
+        List<Runnable> waiting = new ArrayList<Runnable>();
+        executor.getQueue().drainTo(waiting);
+        for (Runnable request : waiting) {
+            ((AdmittedRequest) request).refuse(new ServerBusyException("The featureserver is stopping"));
+        }
+    }
+
+    /**
+     * A request that was submitted, and whose response is set only once.
+     */
+    private static class AdmittedRequest implements Runnable {
+
+        private final Callable<Response> request;
+        private final AsynchronousResponse response;
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        AdmittedRequest(Callable<Response> request, AsynchronousResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        public void run() {
+            ScheduledFuture<?> pending = timeout;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            if (!answered.compareAndSet(false, true)) {
+                return;
+            }
+            Response result;
+            try {
+                result = request.call();
+            } catch (ServerBusyException e) {
+                result = serverBusyResponse(e);
+            } catch (Exception e) {
+                LOGGER.error("The request failed", e);
+                result = Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+            }
+            try {
+                respond(response, result);
+            } catch (RuntimeException e) {
+                // The client went away, or the response could not be written
+                LOGGER.warn("The response could not be set: " + e.getMessage());
+            }
+        }
+
+        void refuse(ServerBusyException e) {
+            if (answered.compareAndSet(false, true)) {
+                try {
+                    respond(response, serverBusyResponse(e));
+                } catch (RuntimeException re) {
+                    LOGGER.warn("The response could not be set: " + re.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The entity of a response, that remembers whether it was written so it can be closed if it was not.
+     */
+    private static class UnwrittenOutput implements StreamingOutput {
+
+        private final StreamingOutput delegate;
+        private final AtomicBoolean written = new AtomicBoolean();
+
+        UnwrittenOutput(StreamingOutput delegate) {
+            this.delegate = delegate;
+        }
+
+        public void write(OutputStream output) throws IOException, WebApplicationException {
+            written.set(true);
+            delegate.write(output);
+        }
+
+        void closeIfUnwritten() {
+            if (written.get()) {
+                return;
+            }
+            LOGGER.warn("A prepared response was not written, its resources are released");
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                LOGGER.warn("The unwritten response could not be closed", e);
+            }
+        }
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "featureserver-request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
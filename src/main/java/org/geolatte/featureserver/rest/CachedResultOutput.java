@@ -0,0 +1,69 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes a response from the result cache. Cached responses are stored gzipped; for clients that accept gzip they are
+ * sent as they are, for other clients they are decompressed here.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CachedResultOutput implements StreamingOutput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] gzipped;
+    private final boolean compressed;
+
+    /**
+     * @param gzipped    the gzipped response body
+     * @param compressed true if the body is sent gzipped, false if it must be decompressed
+     */
+    public CachedResultOutput(byte[] gzipped, boolean compressed) {
+        this.gzipped = gzipped;
+        this.compressed = compressed;
+    }
+
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        if (compressed) {
+            output.write(gzipped);
+            output.flush();
+            return;
+        }
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped), BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+        }
+        output.flush();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.geolatte.featureserver.cache.ResultCache;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a response and at the same time collects it, gzipped, for a {@link ResultCache}. The response is cached
+ * once it is completely written, unless it turned out to be larger than the maximum size of a cached response, in
+ * which case collecting stops as soon as that size is exceeded.
+ * <p>
+ * If the response itself is gzipped, it is compressed only once: the compressed bytes are sent and collected as they
+ * are. Otherwise the response is sent as written and only the collected copy is compressed.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CachingStreamingOutput implements StreamingOutput, Closeable {
+
+    private final StreamingOutput delegate;
+    private final ResultCache cache;
+    private final String key;
+    private final String etag;
+    private final boolean compressed;
+
+    /**
+     * @param delegate   the output that writes the response
+     * @param cache      the cache to store the response in
+     * @param key        the key of the response in the cache
+     * @param etag       the entity tag sent with the response
+     * @param compressed true if the response is sent gzipped
+     */
+    public CachingStreamingOutput(StreamingOutput delegate, ResultCache cache, String key, String etag,
+                                  boolean compressed) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.key = key;
+        this.etag = etag;
+        this.compressed = compressed;
+    }
+
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        byte[] gzipped;
+        if (compressed) {
+            TeeOutputStream tee = new TeeOutputStream(output, cache.getMaxEntryBytes(), false);
+            GzipStreamingOutput.writeGzipped(delegate, tee);
+            gzipped = tee.finish();
+        } else {
+            TeeOutputStream tee = new TeeOutputStream(output, cache.getMaxEntryBytes(), true);
+            delegate.write(tee);
+            gzipped = tee.finish();
+        }
+        if (gzipped != null) {
+            cache.put(key, new ResultCache.CachedResult(gzipped, etag));
+        }
+    }
+
+    /**
+     * Releases the resources of the delegate, if it holds any, without writing the response.
+     */
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    /**
+     * Writes to the response and to a copy, gzipped or as is, until the copy gets too large.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream response;
+        private final int maxCopySize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        // Writes to the copy: a gzip stream on it, or the copy itself
+        private OutputStream gzip;
+
+        TeeOutputStream(OutputStream response, int maxCopySize, boolean compressCopy) throws IOException {
+            this.response = response;
+            this.maxCopySize = maxCopySize;
+            this.gzip = compressCopy ? new GZIPOutputStream(copy) : copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            response.write(b);
+            if (gzip != null) {
+                gzip.write(b);
+                checkCopySize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            response.write(b, off, len);
+            if (gzip != null) {
+                gzip.write(b, off, len);
+                checkCopySize();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            response.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The response stream is closed by the container
+            response.flush();
+        }
+
+        /**
+         * @return the gzipped copy, or null if it was too large
+         */
+        byte[] finish() throws IOException {
+            if (gzip == null) {
+                return null;
+            }
+            if (gzip instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) gzip).finish();
+            }
+            byte[] result = copy.size() <= maxCopySize ? copy.toByteArray() : null;
+            gzip = null;
+            copy = null;
+            return result;
+        }
+
+        private void checkCopySize() {
+            // The compressed size lags behind a little, but that is no problem for a size limit
+            if (copy.size() > maxCopySize) {
+                gzip = null;
+                copy = null;
+            }
+        }
+    }
+}
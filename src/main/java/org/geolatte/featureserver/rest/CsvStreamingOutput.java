@@ -0,0 +1,84 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.geolatte.common.dataformats.csv.CsvSerializationTransformation;
+import org.geolatte.common.transformer.DefaultTransformer;
+import org.geolatte.common.transformer.OpenTransformerChain;
+import org.geolatte.common.transformer.TransformerChainFactory;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the features of a {@link StandardFeatureReader} as CSV directly to the response stream. Rows are written
+ * as they come out of the transformer chain and the writer is flushed every {@link #FLUSH_INTERVAL} rows, so large
+ * downloads start immediately and never need to be held in memory.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CsvStreamingOutput extends FeatureStreamingOutput {
+
+    /**
+     * The number of rows after which the written data is pushed to the client.
+     */
+    public static final int FLUSH_INTERVAL = 1000;
+
+    private final char separator;
+    private final List<String> visibleColumns;
+
+    /**
+     * @param featureReader  the reader providing the features to write. It is closed after writing.
+     * @param separator      the separator character between the values of a row
+     * @param visibleColumns the columns to write, in order. If null, all columns are written.
+     */
+    public CsvStreamingOutput(StandardFeatureReader featureReader, char separator, List<String> visibleColumns) {
+        super(featureReader);
+        this.separator = separator;
+        this.visibleColumns = visibleColumns;
+    }
+
+    @Override
+    protected void writeFeatures(OutputStream output) throws IOException {
+        CsvSerializationTransformation<Object> csv =
+                new CsvSerializationTransformation<Object>(featureReader.getEntityClass(), separator, visibleColumns);
+        OpenTransformerChain<String> myChain = TransformerChainFactory.<Object, String>newChain().add(featureReader)
+                .last(new DefaultTransformer<Object, String>(csv));
+
+        Writer writer = newWriter(output);
+        writer.write(csv.getHeader());
+        writer.write('\n');
+        int rows = 0;
+        for (String item : myChain) {
+            writer.write(item);
+            writer.write('\n');
+            if (++rows % FLUSH_INTERVAL == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+}
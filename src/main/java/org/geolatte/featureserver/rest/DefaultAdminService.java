@@ -0,0 +1,183 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.geo.EnvelopeConverter;
+import org.geolatte.common.geo.TypeConversionException;
+import org.geolatte.featureserver.cache.ResultCacheManager;
+import org.geolatte.featureserver.cache.TileCacheManager;
+import org.geolatte.featureserver.config.ConfigurationException;
+import org.geolatte.featureserver.dbase.CqlCriteriaCache;
+import org.geolatte.featureserver.dbase.DatabaseException;
+import org.geolatte.featureserver.dbase.DbaseFacade;
+import org.geolatte.featureserver.dbase.MappingRefresh;
+
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+/**
+ * Base implementation of the AdminService interface.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+// It is used by reflection.
+public class DefaultAdminService implements AdminService {
+
+    private static final Logger LOGGER = LogManager.getLogger(DefaultAdminService.class);
+
+    public Response purgeTileCache(String tableName, String bbox) {
+        try {
+            if (!DbaseFacade.getInstance().getAllMappedTables().contains(tableName)) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("{\"error\": \"Table " + tableName + " does not exist\"}").build();
+            }
+            Envelope area = null;
+            if (bbox != null) {
+                try {
+                    area = new EnvelopeConverter().convert(bbox);
+                } catch (TypeConversionException e) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity("{\"error\": \"Invalid request: invalid bbox " + bbox + "\"}").build();
+                }
+            }
+            int purged = TileCacheManager.getInstance().purge(tableName, area);
+            LOGGER.info(String.format("%d cached tiles of %s purged", purged, tableName));
+            return purgedResponse(purged);
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response purgeAllTileCaches() {
+        try {
+            int purged = 0;
+            for (String tableName : DbaseFacade.getInstance().getAllMappedTables()) {
+                purged += TileCacheManager.getInstance().purge(tableName, null);
+            }
+            LOGGER.info(String.format("%d cached tiles purged", purged));
+            return purgedResponse(purged);
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response purgeResultCache(String tableName) {
+        try {
+            if (!DbaseFacade.getInstance().getAllMappedTables().contains(tableName)) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("{\"error\": \"Table " + tableName + " does not exist\"}").build();
+            }
+            int purged = ResultCacheManager.getInstance().purge(tableName);
+            LOGGER.info(String.format("%d cached results of %s purged", purged, tableName));
+            return purgedResponse(purged);
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response purgeAllResultCaches() {
+        try {
+            int purged = 0;
+            for (String tableName : DbaseFacade.getInstance().getAllMappedTables()) {
+                purged += ResultCacheManager.getInstance().purge(tableName);
+            }
+            LOGGER.info(String.format("%d cached results purged", purged));
+            return purgedResponse(purged);
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response refreshResidentTable(String tableName) {
+        try {
+            int loaded = DbaseFacade.getInstance().refreshResidentTable(tableName);
+            if (loaded < 0) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("{\"error\": \"Table " + tableName + " does not exist or is not resident\"}").build();
+            }
+            return Response.ok("{\"loaded\": " + loaded + "}").build();
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response refreshMapping() {
+        try {
+            MappingRefresh refresh = DbaseFacade.getInstance().refreshMapping();
+            return Response.ok("{\"added\": " + toJsonArray(refresh.getAdded())
+                               + ", \"dropped\": " + toJsonArray(refresh.getDropped())
+                               + ", \"changed\": " + toJsonArray(refresh.getChanged())
+                               + ", \"incompatible\": " + toJsonArray(refresh.getIncompatible()) + "}").build();
+        } catch (ConfigurationException e) {
+            return configurationError(e);
+        } catch (DatabaseException e) {
+            return databaseError(e);
+        }
+    }
+
+    public Response getCqlCacheStatistics() {
+        CqlCriteriaCache cache = CqlCriteriaCache.getInstance();
+        return Response.ok("{\"size\": " + cache.size() + ", \"hits\": " + cache.getHits()
+                           + ", \"misses\": " + cache.getMisses() + "}").build();
+    }
+
+    private String toJsonArray(List<String> tableNames) {
+        StringBuilder result = new StringBuilder("[");
+        for (String tableName : tableNames) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append('"').append(tableName.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return result.append(']').toString();
+    }
+
+    private Response purgedResponse(int purged) {
+        return Response.ok("{\"purged\": " + purged + "}").build();
+    }
+
+    private Response configurationError(ConfigurationException e) {
+        LOGGER.warn("Invalid Featureserver configuration: " + e.getMessage());
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity("{\"error\": \"Invalid Featureserver configuration: " + e.getMessage() + "\"}").build();
+    }
+
+    private Response databaseError(DatabaseException e) {
+        LOGGER.warn("Database access problem: " + e.getMessage());
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity("{\"error\": \"Database access problem: " + e.getMessage() + "\"}").build();
+    }
+}
@@ -23,24 +23,40 @@ package org.geolatte.featureserver.rest;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.geolatte.common.Feature;
-import org.geolatte.common.dataformats.csv.CsvSerializationTransformation;
 import org.geolatte.common.dataformats.json.jackson.JsonSerializationTransformation;
 import org.geolatte.common.dataformats.json.jackson.SimpleDateFormatSerializer;
-import org.geolatte.common.reflection.EntityClassReader;
-import org.geolatte.common.reflection.ObjectToFeatureTransformation;
 import org.geolatte.common.transformer.*;
+import org.geolatte.featureserver.cache.ResultCache;
+import org.geolatte.featureserver.cache.ResultCacheManager;
 import org.geolatte.featureserver.config.ConfigurationException;
 import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.dataformats.twkb.TwkbWriter;
+import org.geolatte.featureserver.dbase.CoordinatePrecisionReducer;
+import org.geolatte.featureserver.dbase.CountMode;
 import org.geolatte.featureserver.dbase.DatabaseException;
 import org.geolatte.featureserver.dbase.DbaseFacade;
+import org.geolatte.featureserver.dbase.DistinctValues;
+import org.geolatte.featureserver.dbase.FeatureQuery;
+import org.geolatte.featureserver.dbase.KeysetCursor;
+import org.geolatte.featureserver.dbase.ResultCounter;
+import org.geolatte.featureserver.dbase.ServerBusyException;
+import org.geolatte.featureserver.dbase.ServiceLifecycle;
 import org.geolatte.featureserver.dbase.StandardFeatureReader;
+import org.geolatte.featureserver.dbase.TableChangedException;
+import org.geolatte.featureserver.dbase.TableMetadata;
+import org.geolatte.featureserver.dbase.TableNotReadyException;
 import org.hibernate.criterion.Order;
-import org.hibernatespatial.pojo.AutoMapper;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
-import java.lang.reflect.Field;
+import javax.ws.rs.core.StreamingOutput;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Base implementation of a simple tableserver. This class implements the TableService interface.
@@ -57,120 +73,315 @@ import java.util.*;
 // It is used by reflection.
 public class DefaultTableService implements TableService {
 
+    /**
+     * The number of seconds after which a request for a table that is still being mapped can be retried.
+     */
+    private static final int TABLE_NOT_READY_RETRY_AFTER = 5;
+
+    // The catalog of /rest/tables, shared by all instances of the service
+    private static final Object TABLE_CATALOG_LOCK = new Object();
+    private static volatile TableCatalog tableCatalog;
+
     private final JsonSerializationTransformation jts = new JsonSerializationTransformation();
     private static final Logger LOGGER = LogManager.getLogger(DefaultTableService.class);
     private enum OutputFormat {
-        JSON,
-        CSV
-    }
-
-    static {
-        // Initialize the facade, if not you might run into problems if you try to get a reader from the AutoMapper
-        // before you do.
-        DbaseFacade.getInstance();
+        JSON("js"),
+        CSV("csv"),
+        FGB("fgb"),
+        ARROW("arrows"),
+        GEOJSON_SEQ("geojsons"),
+        NDJSON("ndjson"),
+        TWKB("twkb");
+
+        private final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
     }
 
     public DefaultTableService() {
         jts.addClassSerializer(Date.class, new SimpleDateFormatSerializer());
     }
 
-    public String getAllTables() {
+    public Response getAllTables(Request request) {
         try {
-            List<Map<String, Object>> tables = new ArrayList<Map<String, Object>>();
-            for (String table : DbaseFacade.getInstance().getAllMappedTables()) {
-                Map<String, Object> current = new HashMap<String, Object>();
-                current.put("name", table);
-                EntityClassReader reader;
-                reader = EntityClassReader.getClassReaderFor(
-                        AutoMapper.getClass(null, FeatureServerConfiguration.getInstance().getDbaseSchema(), table));
-                List<Map<String, String>> properties = new ArrayList<Map<String, String>>();
-                current.put("properties", properties);
-                if (reader.getIdName() != null) {
-                    Map<String, String> propertyMap = new HashMap<String, String>();
-                    propertyMap.put("name", reader.getIdName());
-                    propertyMap.put("type", reader.getPropertyType(reader.getIdName()).getSimpleName());
-                    properties.add(propertyMap);
-                }
-                if (reader.getGeometryName() != null) {
-                    Map<String, String> propertyMap = new HashMap<String, String>();
-                    propertyMap.put("name", reader.getGeometryName());
-                    propertyMap.put("type", reader.getPropertyType(reader.getGeometryName()).getSimpleName());
-                    properties.add(propertyMap);
-                }
-                for (String property : reader.getProperties()) {
-                    String propertyType = reader.getPropertyType(property).getSimpleName();
-                    Map<String, String> propertyMap = new HashMap<String, String>();
-                    propertyMap.put("name", property);
-                    propertyMap.put("type", propertyType);
-                    properties.add(propertyMap);
+            TableCatalog current = getTableCatalog();
+            Response.ResponseBuilder builder = request == null ? null : request.evaluatePreconditions(current.getEtag());
+            if (builder == null) {
+                builder = Response.ok(current.getJson(), MediaType.APPLICATION_JSON_TYPE);
+            }
+            return builder.tag(current.getEtag()).build();
+        } catch (TransformationException e) {
+            LOGGER.error("Error serializing the table catalog", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Error serializing the table catalog\"}").build();
+        } catch (ConfigurationException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Invalid Featureserver configuration: " + e.getMessage() + "\"}").build();
+        } catch (DatabaseException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Database access problem: " + e.getMessage() + "\"}").build();
+        }
+    }
+
+    /**
+     * Returns the catalog of the current mapping, building it if the mapping changed since it was last built.
+     */
+    private TableCatalog getTableCatalog() throws TransformationException {
+        long mappingVersion = DbaseFacade.getInstance().getMappingVersion();
+        TableCatalog current = tableCatalog;
+        if (current == null || current.getMappingVersion() != mappingVersion) {
+            synchronized (TABLE_CATALOG_LOCK) {
+                current = tableCatalog;
+                if (current == null || current.getMappingVersion() != mappingVersion) {
+                    current = new TableCatalog(mappingVersion, buildTableCatalog());
+                    tableCatalog = current;
                 }
-                tables.add(current);
             }
-            Map<String, Object> result = new HashMap<String, Object>();
-            result.put("items", tables);
-            result.put("total", tables.size());
+        }
+        return current;
+    }
+
+    private String buildTableCatalog() throws TransformationException {
+        List<Map<String, Object>> tables = new ArrayList<Map<String, Object>>();
+        for (String table : DbaseFacade.getInstance().getAllMappedTables()) {
+            TableMetadata metadata;
             try {
-                return jts.transform(result);
-            } catch (TransformationException e) {
-                //we should throw an exception here
-                return null;
+                metadata = DbaseFacade.getInstance().getTableMetadata(table);
+            } catch (TableChangedException e) {
+                // Listed as incompatible in the status
+                continue;
             }
-        } catch (ConfigurationException e) {
-            return "{\"error\": \"Invalid Featureserver configuration: " + e.getMessage() + "\"}";
+            Map<String, Object> current = new HashMap<String, Object>();
+            current.put("name", table);
+            List<Map<String, String>> properties = new ArrayList<Map<String, String>>();
+            current.put("properties", properties);
+            for (String column : metadata.getColumns()) {
+                Map<String, String> propertyMap = new HashMap<String, String>();
+                propertyMap.put("name", column);
+                propertyMap.put("type", metadata.getType(column).getSimpleName());
+                properties.add(propertyMap);
+            }
+            tables.add(current);
+        }
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("items", tables);
+        result.put("total", tables.size());
+        result.put("pending", DbaseFacade.getInstance().getPendingTables());
+        return jts.transform(result);
+    }
+
+    public Response getStatus() {
+        ServiceLifecycle.State lifecycleState = DbaseFacade.getLifecycleState();
+        if (lifecycleState == ServiceLifecycle.State.STARTING || lifecycleState == ServiceLifecycle.State.STOPPED) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", String.valueOf(TABLE_NOT_READY_RETRY_AFTER))
+                    .entity("{\"state\": \"" + lifecycleState.name().toLowerCase() + "\"}").build();
+        }
+        DbaseFacade facade;
+        try {
+            facade = DbaseFacade.getInstance();
         } catch (DatabaseException e) {
-            return "{\"error\": \"Database access problem: " + e.getMessage() + "\"}";
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("{\"state\": \"failed\", \"error\": \"" + e.getMessage() + "\"}").build();
+        }
+        List<String> pending = facade.getPendingTables();
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("state", "ready");
+        result.put("mapping", facade.getMappingMode().name().toLowerCase());
+        result.put("complete", pending.isEmpty());
+        result.put("ready", facade.getAllMappedTables());
+        result.put("pending", pending);
+        result.put("changed", facade.getChangedTables());
+        result.put("incompatible", facade.getIncompatibleTables());
+        result.put("activeRequests", AdmissionControl.getInstance().getActiveCount());
+        result.put("queuedRequests", AdmissionControl.getInstance().getQueuedCount());
+        try {
+            return Response.ok(jts.transform(result), MediaType.APPLICATION_JSON_TYPE).build();
+        } catch (TransformationException e) {
+            LOGGER.error("Error serializing the status", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Error serializing the status\"}").build();
         }
+    }
 
+    public void getTableCSV(String tableName,
+                            String bbox,
+                            String cql,
+                            Integer start,
+                            Integer limit,
+                            String sortColumns,
+                            String sortDirections,
+                            String visibleColumns,
+                            String separator,
+                            String asdownload,
+                            Request request,
+                            HttpHeaders headers,
+                            HttpServletResponse response,
+                            AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.CSV,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 separator,
+                 asdownload,
+                 null,
+                 // The CSV output has no total
+                 CountMode.NONE.name(),
+                 null,
+                 null,
+                 null,
+                 false,
+                 request,
+                 new ResponseEncoding(headers, response),
+                 asynchronousResponse);
     }
 
-    public Response getTableCSV(String tableName,
-                                String bbox,
-                                String cql,
-                                Integer start,
-                                Integer limit,
-                                String sortColumns,
-                                String sortDirections,
-                                String visibleColumns,
-                                String separator,
-                                String asdownload) {
-
-        return getTable(OutputFormat.CSV,
-                        tableName,
-                        bbox,
-                        cql,
-                        start, limit,
-                        sortColumns, sortDirections, visibleColumns,
-                        separator,
-                        asdownload);
-    }
-
-    public Response getTableJSON(String tableName,
-                                 String bbox,
-                                 String cql,
-                                 Integer start,
-                                 Integer limit,
-                                 String sortColumns,
-                                 String sortDirections,
-                                 String visibleColumns,
-                                 String asdownload) {
-
-        return getTable(OutputFormat.JSON,
-                        tableName,
-                        bbox,
-                        cql,
-                        start, limit,
-                        sortColumns, sortDirections, visibleColumns,
-                        null,
-                        asdownload);
+    public void getTableJSON(String tableName,
+                             String bbox,
+                             String cql,
+                             Integer start,
+                             Integer limit,
+                             String sortColumns,
+                             String sortDirections,
+                             String visibleColumns,
+                             String asdownload,
+                             String cursor,
+                             String count,
+                             Double tolerance,
+                             Integer zoom,
+                             Integer precision,
+                             Request request,
+                             HttpHeaders headers,
+                             HttpServletResponse response,
+                             AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.JSON,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 cursor,
+                 count,
+                 tolerance,
+                 zoom,
+                 precision,
+                 false,
+                 request,
+                 new ResponseEncoding(headers, response),
+                 asynchronousResponse);
     }
 
-    /**
-     * Gets the requested table in the requested format, docs see
-     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String)} and
-     * {@link #getTableJSON(String, String, String, Integer, Integer, String, String, String, String)}.
-     */
-    private Response getTable(OutputFormat format,
-                              String tableName,
+    public void getTableGeoJSONSeq(String tableName,
+                                   String bbox,
+                                   String cql,
+                                   Integer start,
+                                   Integer limit,
+                                   String sortColumns,
+                                   String sortDirections,
+                                   String visibleColumns,
+                                   String asdownload,
+                                   Double tolerance,
+                                   Integer zoom,
+                                   Integer precision,
+                                   AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.GEOJSON_SEQ,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 null,
+                 // A sequence has no place for the total
+                 CountMode.NONE.name(),
+                 tolerance,
+                 zoom,
+                 precision,
+                 false,
+                 null,
+                 ResponseEncoding.CONTAINER,
+                 asynchronousResponse);
+    }
+
+    public void getTableNDJSON(String tableName,
+                               String bbox,
+                               String cql,
+                               Integer start,
+                               Integer limit,
+                               String sortColumns,
+                               String sortDirections,
+                               String visibleColumns,
+                               String asdownload,
+                               Double tolerance,
+                               Integer zoom,
+                               Integer precision,
+                               AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.NDJSON,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 null,
+                 // A sequence has no place for the total
+                 CountMode.NONE.name(),
+                 tolerance,
+                 zoom,
+                 precision,
+                 false,
+                 null,
+                 ResponseEncoding.CONTAINER,
+                 asynchronousResponse);
+    }
+
+    public void getTableFGB(String tableName,
+                            String bbox,
+                            String cql,
+                            Integer start,
+                            Integer limit,
+                            String sortColumns,
+                            String sortDirections,
+                            String visibleColumns,
+                            String asdownload,
+                            String index,
+                            AsynchronousResponse asynchronousResponse) {
+
+        boolean spatialIndex = "true".equalsIgnoreCase(index);
+        getTable(OutputFormat.FGB,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 // The features of an indexed file are ordered along the index
+                 spatialIndex ? null : sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 null,
+                 // The header can hold the number of features, but only if it is known before writing starts
+                 CountMode.NONE.name(),
+                 null,
+                 null,
+                 null,
+                 spatialIndex,
+                 null,
+                 ResponseEncoding.CONTAINER,
+                 asynchronousResponse);
+    }
+
+    public void getTableArrow(String tableName,
                               String bbox,
                               String cql,
                               Integer start,
@@ -178,40 +389,254 @@ public class DefaultTableService implements TableService {
                               String sortColumns,
                               String sortDirections,
                               String visibleColumns,
-                              String separator,
-                              String asdownload) {
+                              String asdownload,
+                              AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.ARROW,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 null,
+                 CountMode.NONE.name(),
+                 null,
+                 null,
+                 null,
+                 false,
+                 null,
+                 ResponseEncoding.CONTAINER,
+                 asynchronousResponse);
+    }
+
+    public void getTableTWKB(String tableName,
+                             String bbox,
+                             String cql,
+                             Integer start,
+                             Integer limit,
+                             String sortColumns,
+                             String sortDirections,
+                             String visibleColumns,
+                             String asdownload,
+                             Double tolerance,
+                             Integer zoom,
+                             Integer precision,
+                             AsynchronousResponse asynchronousResponse) {
+
+        getTable(OutputFormat.TWKB,
+                 tableName,
+                 bbox,
+                 cql,
+                 start, limit,
+                 sortColumns, sortDirections, visibleColumns,
+                 null,
+                 asdownload,
+                 null,
+                 CountMode.NONE.name(),
+                 tolerance,
+                 zoom,
+                 precision,
+                 false,
+                 null,
+                 ResponseEncoding.CONTAINER,
+                 asynchronousResponse);
+    }
+
+    /**
+     * Gets the requested table in the requested format, docs see
+     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)},
+     * {@link #getTableJSON(String, String, String, Integer, Integer, String, String, String, String, String, String, Double, Integer, Integer, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)},
+     * {@link #getTableGeoJSONSeq(String, String, String, Integer, Integer, String, String, String, String, Double, Integer, Integer, AsynchronousResponse)},
+     * {@link #getTableNDJSON(String, String, String, Integer, Integer, String, String, String, String, Double, Integer, Integer, AsynchronousResponse)},
+     * {@link #getTableFGB(String, String, String, Integer, Integer, String, String, String, String, String, AsynchronousResponse)},
+     * {@link #getTableArrow(String, String, String, Integer, Integer, String, String, String, String, AsynchronousResponse)} and
+     * {@link #getTableTWKB(String, String, String, Integer, Integer, String, String, String, String, Double, Integer, Integer, AsynchronousResponse)}.
+     */
+    private void getTable(final OutputFormat format,
+                          final String tableName,
+                          final String bbox,
+                          final String cql,
+                          final Integer start,
+                          final Integer limit,
+                          final String sortColumns,
+                          final String sortDirections,
+                          final String visibleColumns,
+                          final String separator,
+                          final String asdownload,
+                          final String cursor,
+                          final String count,
+                          final Double tolerance,
+                          final Integer zoom,
+                          final Integer precision,
+                          final boolean spatialIndex,
+                          final Request request,
+                          final ResponseEncoding encoding,
+                          AsynchronousResponse asynchronousResponse) {
+        try {
+            // Checked up front, since the precision is ignored for tables without geometry
+            checkPrecision(format, precision);
+        } catch (IllegalArgumentException e) {
+            AdmissionControl.respond(asynchronousResponse, Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Invalid request: " + e.getMessage() + "\"}").build());
+            return;
+        }
+        AdmissionControl.getInstance().submit(new Callable<Response>() {
+            public Response call() {
+                return prepareTable(format, tableName, bbox, cql, start, limit, sortColumns, sortDirections,
+                                    visibleColumns, separator, asdownload, cursor, count, tolerance, zoom, precision,
+                                    spatialIndex, request, encoding);
+            }
+        }, asynchronousResponse);
+    }
+
+    /**
+     * Checks that the coordinates can be rounded to the given precision in the given format: TWKB encodes the
+     * precision itself, the other formats round the coordinates with a {@link CoordinatePrecisionReducer}.
+     *
+     * @param format    the output format
+     * @param precision the number of decimals, or null if the coordinates are not rounded
+     * @throws IllegalArgumentException if the precision is out of range for the format
+     */
+    private static void checkPrecision(OutputFormat format, Integer precision) {
+        if (precision == null) {
+            return;
+        }
+        int min = format == OutputFormat.TWKB ? TwkbWriter.MIN_PRECISION : 0;
+        int max = format == OutputFormat.TWKB ? TwkbWriter.MAX_PRECISION : CoordinatePrecisionReducer.MAX_DECIMALS;
+        if (precision < min || precision > max) {
+            throw new IllegalArgumentException("The precision must be between " + min + " and " + max + " decimals");
+        }
+    }
+
+    /**
+     * Prepares the response of {@link #getTable}, once it is admitted by the {@link AdmissionControl}. It is
+     * executed on the thread that also writes the response.
+     */
+    private Response prepareTable(OutputFormat format,
+                                  String tableName,
+                                  String bbox,
+                                  String cql,
+                                  Integer start,
+                                  Integer limit,
+                                  String sortColumns,
+                                  String sortDirections,
+                                  String visibleColumns,
+                                  String separator,
+                                  String asdownload,
+                                  String cursor,
+                                  String count,
+                                  Double tolerance,
+                                  Integer zoom,
+                                  Integer precision,
+                                  boolean spatialIndex,
+                                  Request request,
+                                  ResponseEncoding encoding) {
         StandardFeatureReader featureReader = null;
         try {
-            List<Order> orderings = getOrderings(tableName, sortColumns, sortDirections);
-            featureReader = DbaseFacade.getInstance().getReader(tableName, bbox, cql, start, limit, orderings);
+            TableMetadata metadata = DbaseFacade.getInstance().getTableMetadata(tableName);
+            if (metadata == null) {
+                return Response.status(Response.Status.NOT_FOUND).entity(tableNotExistsMessage(tableName)).build();
+            }
+            // Only the formats for which the request is passed are cached
+            ResultCache resultCache = request == null ? null : ResultCacheManager.getInstance().getCache(tableName);
+            String cacheKey = null;
+            if (resultCache != null) {
+                cacheKey = getResultCacheKey(format, bbox, cql, start, limit, sortColumns, sortDirections,
+                                             visibleColumns, separator, cursor, count, tolerance, zoom, precision);
+                ResultCache.CachedResult cached = resultCache.get(cacheKey);
+                if (cached != null) {
+                    EntityTag tag = encoding.tag(cached.getEtag());
+                    Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+                    if (notModified != null) {
+                        return notModified.build();
+                    }
+                    return toResponse(new CachedResultOutput(cached.getGzipped(), encoding.isGzip()),
+                                      buildContentDisposition(tableName, asdownload, format), tag, encoding);
+                }
+            }
+            List<String> visible = new ArrayList<String>();
+            if (visibleColumns != null) {
+                visible.add(visibleColumns);
+            }
+            List<List<String>> columnNamesToShow = getColumnNames(metadata, visible);
+            List<String> columnsToShow = columnNamesToShow.size() > 0 ? columnNamesToShow.get(0) : null;
+            FeatureQuery query = new FeatureQuery();
+            // Only the visible columns are selected from the database
+            query.setProperties(columnsToShow);
+            query.setBbox(bbox);
+            query.setCql(cql);
+            query.setStart(start);
+            query.setLimit(limit);
+            query.setCountMode(count != null ? CountMode.fromString(count)
+                    : FeatureServerConfiguration.getInstance().getTableConfiguration(tableName).getCountMode());
+            query.setSimplificationTolerance(tolerance != null ? tolerance
+                    : zoom != null ? FeatureServerConfiguration.getInstance().getTileConfiguration().getResolution(zoom)
+                    : null);
+            // TWKB rounds the coordinates itself
+            query.setCoordinatePrecision(format == OutputFormat.TWKB ? null : precision);
+            if (cursor != null) {
+                query.setCursor(getCursor(metadata, cursor, sortColumns, sortDirections));
+            } else {
+                query.setOrderings(getOrderings(metadata, sortColumns, sortDirections));
+            }
+            featureReader = DbaseFacade.getInstance().getReader(tableName, query);
             if (featureReader == null) {
                 Response.ResponseBuilder builder =
                     Response.status(Response.Status.NOT_FOUND)
                             .entity(tableNotExistsMessage(tableName));
                 return builder.build();
             }
-            List<String> visible = new ArrayList<String>();
-            if (visibleColumns != null) {
-                visible.add(visibleColumns);
-            }
-            List<List<String>> columnNamesToShow = getColumnNames(tableName, visible);
             String contentDisposition = buildContentDisposition(tableName, asdownload, format);
-            String msg;
+            FeatureStreamingOutput entity;
             switch (format) {
                 case CSV:
-                    msg = getTablesInCsv(featureReader, columnNamesToShow.size() > 0 ? columnNamesToShow.get(0) : null, separator);
+                    entity = getTablesInCsv(featureReader, columnsToShow, separator);
+                    break;
+                case FGB:
+                    entity = new FlatGeobufStreamingOutput(featureReader, tableName, columnsToShow, spatialIndex);
+                    break;
+                case ARROW:
+                    entity = new ArrowStreamingOutput(featureReader, columnsToShow);
+                    break;
+                case GEOJSON_SEQ:
+                    entity = new JsonSequenceStreamingOutput(featureReader, jts, true, columnsToShow);
+                    break;
+                case NDJSON:
+                    entity = new JsonSequenceStreamingOutput(featureReader, jts, false, columnsToShow);
+                    break;
+                case TWKB:
+                    entity = new TwkbStreamingOutput(featureReader, columnsToShow, precision);
                     break;
                 default:
-                    msg = getTablesInJson(featureReader);
+                    entity = new JsonStreamingOutput(featureReader, jts, columnsToShow);
+            }
+            // The streaming output closes the reader once the response is written.
+            featureReader = null;
+            if (resultCache != null) {
+                String etag = ResultCache.newEtag();
+                return toResponse(new CachingStreamingOutput(entity, resultCache, cacheKey, etag, encoding.isGzip()),
+                                  contentDisposition, encoding.tag(etag), encoding);
             }
-            return toResponse(msg, contentDisposition);
+            return toResponse(encoding.isGzip() ? new GzipStreamingOutput(entity) : entity, contentDisposition, null,
+                              encoding);
 
+        } catch (IllegalArgumentException e) {
+            Response.ResponseBuilder builder =
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("{\"error\": \"Invalid request: " + e.getMessage() + "\"}");
+            return builder.build();
         } catch (ConfigurationException e) {
             LOGGER.warn("Invalid Featureserver configuration: " + e.getMessage());
             Response.ResponseBuilder builder =
                     Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                             .entity("{\"error\": \"Invalid Featureserver configuration: " + e.getMessage() + "\"}");
             return builder.build();
+        } catch (TableNotReadyException e) {
+            return tableNotReadyResponse(e);
+        } catch (ServerBusyException e) {
+            return AdmissionControl.serverBusyResponse(e);
         } catch (DatabaseException e) {
             LOGGER.warn("Database access problem: " + e.getMessage());
             Response.ResponseBuilder builder =
@@ -227,57 +652,50 @@ public class DefaultTableService implements TableService {
 
     private String buildContentDisposition(String tableName, String asdownload, OutputFormat output) {
         if (asdownload != null && asdownload.equalsIgnoreCase("true")){
-            String extension = OutputFormat.JSON.equals(output) ? "js" : "csv";
-            return String.format("attachment; filename=%s.%s", tableName , extension);
+            return String.format("attachment; filename=%s.%s", tableName , output.extension);
         }
         return null;
     }
 
-    private Response toResponse(String msg, String disposition) {
-        Response.ResponseBuilder builder= Response.ok(msg);
+    private Response toResponse(StreamingOutput entity, String disposition, EntityTag tag, ResponseEncoding encoding) {
+        encoding.apply();
+        Response.ResponseBuilder builder= Response.ok(entity);
         if (disposition != null && !disposition.isEmpty()){
             builder.header("Content-disposition", disposition);
         }
+        if (tag != null) {
+            builder.tag(tag);
+        }
         return builder.build();
     }
 
-    public String getTablesInCsv(StandardFeatureReader dataSource, List<String> visible, String separator) {
+    /**
+     * Builds the key of a response in the result cache from the parameters that determine its content. The bbox and
+     * cql expression are normalized, so equivalent requests share the cached response.
+     */
+    private String getResultCacheKey(OutputFormat format, String bbox, String cql, Integer start, Integer limit,
+                                     String sortColumns, String sortDirections, String visibleColumns,
+                                     String separator, String cursor, String count, Double tolerance, Integer zoom,
+                                     Integer precision) {
+        StringBuilder key = new StringBuilder(format.name());
+        key.append('\n').append(ResultCounter.normalizeBbox(bbox));
+        key.append('\n').append(ResultCounter.normalizeCql(cql));
+        key.append('\n').append(start).append('\n').append(limit);
+        key.append('\n').append(sortColumns).append('\n').append(sortDirections);
+        key.append('\n').append(visibleColumns);
+        key.append('\n').append(format == OutputFormat.CSV ? separator : null);
+        key.append('\n').append(cursor).append('\n').append(count);
+        key.append('\n').append(tolerance).append('\n').append(zoom).append('\n').append(precision);
+        return key.toString();
+    }
+
+    public FeatureStreamingOutput getTablesInCsv(StandardFeatureReader dataSource, List<String> visible, String separator) {
         if (separator == null || separator.isEmpty())
             separator = DEFAULT_SEPARATOR;
         char seperatorChar = separator.charAt(0);
-        CsvSerializationTransformation<Object> csv =
-                new CsvSerializationTransformation<Object>(dataSource.getEntityClass(), seperatorChar, visible);
-        OpenTransformerChain<String> myChain = TransformerChainFactory.<Object, String>newChain().add(dataSource)
-                .last(new DefaultTransformer<Object, String>(csv));
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(csv.getHeader());
-        sb.append("\n");
-        for (String item : myChain) {
-            sb.append(item);
-            sb.append("\n");
-        }
-        return sb.toString();
+        return new CsvStreamingOutput(dataSource, seperatorChar, visible);
     }
 
-    public String getTablesInJson(StandardFeatureReader featureReader) {
-        Transformer<Object, Feature> featureCreator = new DefaultTransformer<Object, Feature>(new ObjectToFeatureTransformation());
-        OpenTransformerChain<Feature> myChain = TransformerChainFactory.<Object, Feature>newChain().add(featureReader).last(featureCreator);
-        List<Feature> allFeatures = new ArrayList<Feature>();
-        for (Feature f : myChain) {
-            allFeatures.add(f);
-        }
-        Map<String, Object> outputMap = new HashMap<String, Object>();
-        outputMap.put("total", featureReader.getTotalCount());
-        outputMap.put("items", allFeatures);
-        try {
-            return jts.transform(outputMap);
-        } catch (TransformationException e) {
-            return null;
-        }
-    }
-
-
     /**
      * Helpermethod that expects the name of a table a list of columnnames and corresponding sortDirections. The
      * method will return a list of Hibernate-Order objects that can be used to sort the outcome of the query.
@@ -289,14 +707,13 @@ public class DefaultTableService implements TableService {
      * <li>Sorting is not permitted on geometry fields. such sortings are ignored.
      * </ul>
      *
-     * @param tableName      the name of the table for which the sortobjects are desired. If the tableName is invalid
-     *                       null is returned.
+     * @param metadata       the metadata of the table for which the sortobjects are desired.
      * @param sortFields     a '|' seperated list of strings each denoting a columnname in tableName.
      * @param sortDirections a '|' seperated list of strings each denoting either 'asc' or 'desc'. If set to null,
      *                       all sortFields are considered asc. If specified, the number of elements must be equal to sortFields.
      * @return a list of hibernate order objects
      */
-    private List<Order> getOrderings(String tableName,
+    private List<Order> getOrderings(TableMetadata metadata,
                                      String sortFields,
                                      String sortDirections) {
         if (sortFields != null) {
@@ -306,9 +723,12 @@ public class DefaultTableService implements TableService {
                 fieldInfo.add(sortDirections);
             }
             try {
-                List<List<String>> columnInfo = getColumnNames(tableName, fieldInfo);
+                List<List<String>> columnInfo = getColumnNames(metadata, fieldInfo);
                 List<Order> result = new ArrayList<Order>();
                 for (int i = 0; i < columnInfo.get(0).size(); i++) {
+                    if (!metadata.isSortable(columnInfo.get(0).get(i))) {
+                        continue;
+                    }
                     boolean asc = sortDirections == null || "asc".equalsIgnoreCase(columnInfo.get(1).get(i));
                     result.add(asc ? Order.asc(columnInfo.get(0).get(i)) : Order.desc(columnInfo.get(0).get(i)));
                 }
@@ -321,6 +741,57 @@ public class DefaultTableService implements TableService {
     }
 
 
+    /**
+     * Helpermethod that builds the keyset cursor for a request. An empty token starts keyset pagination at the first
+     * page, using the given sort columns followed by the id of the table as sort keys. A non-empty token is a
+     * cursor returned by a previous request; it carries its own sort keys, so the sort parameters are then ignored.
+     *
+     * @param metadata       the metadata of the table the cursor applies to
+     * @param token          the cursor token, or an empty string for the first page
+     * @param sortFields     a ';' seperated list of columnnames, see {@link #getOrderings(TableMetadata, String, String)}
+     * @param sortDirections a ';' seperated list of sort directions, see {@link #getOrderings(TableMetadata, String, String)}
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is invalid, or if the table has no id to complete the sort keys
+     */
+    private KeysetCursor getCursor(TableMetadata metadata, String token, String sortFields, String sortDirections) {
+        if (token.length() > 0) {
+            KeysetCursor cursor = KeysetCursor.fromToken(token);
+            for (String property : cursor.getProperties()) {
+                if (!metadata.isSortable(property)) {
+                    throw new IllegalArgumentException("Cursor does not match table " + metadata.getTableName());
+                }
+            }
+            return cursor.withNotNull(metadata.getNotNullColumns());
+        }
+        String idName = metadata.getIdName();
+        if (idName == null) {
+            throw new IllegalArgumentException("Table " + metadata.getTableName()
+                                               + " has no id, cursor pagination is not possible");
+        }
+        List<String> properties = new ArrayList<String>();
+        List<Boolean> ascending = new ArrayList<Boolean>();
+        if (sortFields != null) {
+            List<String> fieldInfo = new ArrayList<String>();
+            fieldInfo.add(sortFields);
+            if (sortDirections != null) {
+                fieldInfo.add(sortDirections);
+            }
+            List<List<String>> columnInfo = getColumnNames(metadata, fieldInfo);
+            for (int i = 0; i < columnInfo.get(0).size(); i++) {
+                String column = columnInfo.get(0).get(i);
+                if (!column.equals(idName) && metadata.isSortable(column)) {
+                    properties.add(column);
+                    ascending.add(sortDirections == null || "asc".equalsIgnoreCase(columnInfo.get(1).get(i)));
+                }
+            }
+        }
+        // The id follows the direction of the other keys if they are all descending, so the cursor can be compared
+        // as a row value
+        properties.add(idName);
+        ascending.add(!ascending.isEmpty() && !ascending.contains(Boolean.TRUE) ? Boolean.FALSE : Boolean.TRUE);
+        return new KeysetCursor(properties, ascending).withNotNull(metadata.getNotNullColumns());
+    }
+
     /**
      * <p>Expects a list of ';' separated list of strings, containing at least one element. The first element in the list
      * is a ';' separated list of columnNames. The subsequent elements of the given list are also ';' separated lists of
@@ -343,16 +814,16 @@ public class DefaultTableService implements TableService {
      * ["firstColumn", "secondColumn", anotherColumn"], ["84", "12", "7"], ["abc", "cde", "ghi"]
      * </blockquote>
      *
-     * @param tableName          the name of a table currently served by featureserver. If the tableName
-     *                           does not correspond with an existing table served by featureserver, an empty list is returned
-     *                           since clearly none of the strings correspond with a columnname in an unexisting table.
+     * @param metadata           the metadata of a table currently served by featureserver. If null, an empty list
+     *                           is returned since clearly none of the strings correspond with a columnname in an
+     *                           unexisting table.
      * @param commaSeparatedList a list of ';' separated list of columnnames. If null or empty, an empty list will
      *                           be returned. If the split version of the items in the list are of different sizes, an exception is thrown since
      *                           co-indexing is needed.
      * @return a list containing splits of all strings on ';', removing unexisting columns and coindexed.
      */
-    private List<List<String>> getColumnNames(String tableName, List<String> commaSeparatedList) {
-        if (tableName == null || commaSeparatedList == null || tableName.length() == 0 || commaSeparatedList.size() == 0) {
+    private List<List<String>> getColumnNames(TableMetadata metadata, List<String> commaSeparatedList) {
+        if (metadata == null || commaSeparatedList == null || commaSeparatedList.size() == 0) {
             return new ArrayList<List<String>>();
         } else {
             String[] columnNames = commaSeparatedList.get(0).split(";");
@@ -370,10 +841,8 @@ public class DefaultTableService implements TableService {
             for (int i = 0; i < coIndexedSplit.size() + 1; i++) {
                 result.add(new ArrayList<String>());
             }
-            EntityClassReader reader = EntityClassReader.getClassReaderFor(
-                    AutoMapper.getClass(null, FeatureServerConfiguration.getInstance().getDbaseSchema(), tableName));
             for (int i = 0; i < columnNames.length; i++) {
-                if (reader.exists(columnNames[i], true)) {
+                if (metadata.hasColumn(columnNames[i])) {
                     result.get(0).add(columnNames[i]);
                     for (int j = 0; j < coIndexedSplit.size(); j++) {
                         result.get(j + 1).add(coIndexedSplit.get(j)[i]);
@@ -384,61 +853,94 @@ public class DefaultTableService implements TableService {
         }
     }
 
-    public Response getPropertyValuesCSV(String tableName,
-                                         String propertyName,
-                                         String separator) {
-        return getPropertyValues(OutputFormat.CSV, tableName, propertyName, separator);
+    public void getPropertyValuesCSV(String tableName,
+                                     String propertyName,
+                                     String separator,
+                                     String prefix,
+                                     Integer limit,
+                                     AsynchronousResponse asynchronousResponse) {
+        getPropertyValues(OutputFormat.CSV, tableName, propertyName, separator, prefix, limit, asynchronousResponse);
+    }
+
+    public void getPropertyValuesJSON(String tableName, String propertyName, String prefix, Integer limit,
+                                      AsynchronousResponse asynchronousResponse) {
+        getPropertyValues(OutputFormat.JSON, tableName, propertyName, null, prefix, limit, asynchronousResponse);
     }
 
-    public Response getPropertyValuesJSON(String tableName, String propertyName) {
-        return getPropertyValues(OutputFormat.JSON, tableName, propertyName, null);
+    private void getPropertyValues(final OutputFormat format,
+                                   final String tableName,
+                                   final String propertyName,
+                                   final String separator,
+                                   final String prefix,
+                                   final Integer limit,
+                                   AsynchronousResponse asynchronousResponse) {
+        AdmissionControl.getInstance().submit(new Callable<Response>() {
+            public Response call() {
+                return preparePropertyValues(format, tableName, propertyName, separator, prefix, limit);
+            }
+        }, asynchronousResponse);
     }
 
-    private Response getPropertyValues(OutputFormat format,
-                                       String tableName,
-                                       String propertyName,
-                                       String separator) {
+    private Response preparePropertyValues(OutputFormat format,
+                                           String tableName,
+                                           String propertyName,
+                                           String separator,
+                                           String prefix,
+                                           Integer limit) {
 
-        final String schema = FeatureServerConfiguration.getInstance().getDbaseSchema();
-        Class<?> entityClass = AutoMapper.getClass(null, schema, tableName);
-        if (entityClass == null) {
+        TableMetadata metadata;
+        try {
+            metadata = DbaseFacade.getInstance().getTableMetadata(tableName);
+        } catch (TableNotReadyException e) {
+            return tableNotReadyResponse(e);
+        }
+        if (metadata == null) {
             Response.ResponseBuilder builder = Response.status(Response.Status.NOT_FOUND);
             builder.entity(tableNotExistsMessage(tableName));
             return builder.build();
         }
-
-        Class<?> propertyType;
-        try {
-            propertyType = getPropertyType(entityClass, propertyName);
-        } catch (NoSuchFieldException e) {
+        if (!metadata.hasColumn(propertyName)) {
             Response.ResponseBuilder builder= Response.status(Response.Status.NOT_FOUND);
             builder.entity(propertyNotExistsMessage(tableName, propertyName));
             return builder.build();
         }
-        if (!canDoDistinct(propertyType)) {
+        if (!metadata.isDistinctAllowed(propertyName)) {
             Response.ResponseBuilder builder= Response.status(Response.Status.PRECONDITION_FAILED);
             builder.entity(propertyDistinctNotSupportedMessage(tableName, propertyName));
             return builder.build();
         }
-        List<?> values = DbaseFacade.getInstance().getDistinctValues(entityClass, propertyName, propertyType);
-        Response.ResponseBuilder builder= Response.ok(toFormat(values, format, tableName, propertyName, separator));
+        if (prefix != null && !String.class.isAssignableFrom(metadata.getType(propertyName))) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Invalid request: prefix is only supported on string properties\"}").build();
+        }
+        if (limit != null && limit < 0) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Invalid request: limit can not be negative\"}").build();
+        }
+        DistinctValues values = DbaseFacade.getInstance().getDistinctValues(tableName, propertyName, prefix, limit);
+        Response.ResponseBuilder builder= Response.ok(toFormat(values, limit != null, format, tableName, propertyName,
+                                                               separator));
         return builder.build();
 
     }
 
-    private String toFormat(List<?> values, OutputFormat outputFormat, String tableName, String propertyName, String separator) {
+    private String toFormat(DistinctValues values, boolean limited, OutputFormat outputFormat, String tableName,
+                            String propertyName, String separator) {
         if (OutputFormat.JSON.equals(outputFormat)) {
-            return toJSONOutput(values,tableName, propertyName);
+            return toJSONOutput(values, limited, tableName, propertyName);
         } else {
-            return toCSVOutput(values, separator);
+            return toCSVOutput(values.getValues(), separator);
         }
     }
 
-    private String toJSONOutput(List<?> values, String tableName, String propertyName) {
-        Map<String, Object> map = new HashMap<String, Object>(3);
+    private String toJSONOutput(DistinctValues values, boolean limited, String tableName, String propertyName) {
+        Map<String, Object> map = new HashMap<String, Object>(4);
         map.put("table", tableName);
         map.put("property", propertyName);
-        map.put("distinct-values", values);
+        map.put("distinct-values", values.getValues());
+        if (limited) {
+            map.put("truncated", values.isTruncated());
+        }
         try {
             return jts.transform(map);
         } catch (TransformationException e) {
@@ -455,27 +957,26 @@ public class DefaultTableService implements TableService {
         for (Object o : values){
             stb.append(o).append(separatorChar);
         }
-        stb.deleteCharAt(stb.length() -1);
+        if (stb.length() > 0) {
+            stb.deleteCharAt(stb.length() -1);
+        }
         return stb.toString();
     }
 
-    private boolean canDoDistinct(Class<?> propertyType) {
-        return String.class.isAssignableFrom(propertyType) ||
-                Integer.class.isAssignableFrom(propertyType) ||
-                Byte.class.isAssignableFrom(propertyType) ||
-                Boolean.class.isAssignableFrom(propertyType);
-
-    }
-
-    private Class<?> getPropertyType(Class<?> entityClass, String propertyName) throws NoSuchFieldException {
-        Field field = entityClass.getDeclaredField(propertyName);
-        return field.getType();
-    }
-
     private String tableNotExistsMessage(String tableName) {
         return "{\"error\": \"Table " + tableName + " does not exist\"}";
     }
 
+    private Response tableNotReadyResponse(TableNotReadyException e) {
+        Response.ResponseBuilder builder = Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity("{\"error\": \"" + e.getMessage() + "\"}");
+        // A changed table is only served again after a restart, so there is no point in retrying soon
+        if (!(e instanceof TableChangedException)) {
+            builder.header("Retry-After", String.valueOf(TABLE_NOT_READY_RETRY_AFTER));
+        }
+        return builder.build();
+    }
+
 
     private String propertyNotExistsMessage(String tableName, String propertyName) {
         return "{\"error\": \"Table " + tableName + " does not have property " + propertyName + "\"}";
@@ -0,0 +1,250 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.Feature;
+import org.geolatte.common.reflection.ObjectToFeatureTransformation;
+import org.geolatte.common.transformer.DefaultTransformer;
+import org.geolatte.common.transformer.OpenTransformerChain;
+import org.geolatte.common.transformer.TransformerChainFactory;
+import org.geolatte.featureserver.cache.TileCache;
+import org.geolatte.featureserver.cache.TileCacheManager;
+import org.geolatte.featureserver.cache.TileKey;
+import org.geolatte.featureserver.config.ConfigurationException;
+import org.geolatte.featureserver.config.FeatureServerConfiguration;
+import org.geolatte.featureserver.config.TileConfiguration;
+import org.geolatte.featureserver.dataformats.mvt.VectorTileEncoder;
+import org.geolatte.featureserver.dbase.CountMode;
+import org.geolatte.featureserver.dbase.DatabaseException;
+import org.geolatte.featureserver.dbase.DbaseFacade;
+import org.geolatte.featureserver.dbase.FeatureQuery;
+import org.geolatte.featureserver.dbase.ServerBusyException;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+import org.geolatte.featureserver.dbase.TableChangedException;
+import org.geolatte.featureserver.dbase.TableMetadata;
+import org.geolatte.featureserver.dbase.TableNotReadyException;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Base implementation of the TileService interface. Tiles are read with a {@link StandardFeatureReader}, using the
+ * tile (and its buffer) as bbox filter, and encoded with a {@link VectorTileEncoder}. For tables with a tile cache,
+ * encoded tiles are cached, so repeated requests for a tile do not reach the database. Tiles that are read from the
+ * database are subject to the {@link AdmissionControl}, like the other table requests.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+// It is used by reflection.
+public class DefaultTileService implements TileService {
+
+    private static final Logger LOGGER = LogManager.getLogger(DefaultTileService.class);
+
+    /**
+     * The number of seconds after which a request for a table that is still being mapped can be retried.
+     */
+    private static final int TABLE_NOT_READY_RETRY_AFTER = 5;
+
+    public void getTileMVT(String tableName, int z, int x, int y, String cql, String visibleColumns,
+                           AsynchronousResponse asynchronousResponse) {
+        Response response = getTile(tableName, z, x, y, cql, visibleColumns, asynchronousResponse);
+        if (response != null) {
+            AdmissionControl.respond(asynchronousResponse, response);
+        }
+    }
+
+    /**
+     * Answers a tile request from the cache, or submits it to the {@link AdmissionControl} to read it from the
+     * database.
+     *
+     * @return the response of the request, or null if it was submitted
+     */
+    private Response getTile(final String tableName, int z, int x, int y, String cql, String visibleColumns,
+                             AsynchronousResponse asynchronousResponse) {
+        try {
+            TableMetadata metadata = DbaseFacade.getInstance().getTableMetadata(tableName);
+            if (metadata == null) {
+                return Response.status(Response.Status.NOT_FOUND).entity(tableNotExistsMessage(tableName)).build();
+            }
+            if (metadata.getGeometryName() == null) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("{\"error\": \"Table " + tableName + " has no geometry\"}").build();
+            }
+            TileConfiguration tiles = FeatureServerConfiguration.getInstance().getTileConfiguration();
+            Envelope tileEnvelope = tiles.getTileEnvelope(z, x, y);
+            final CacheControl cacheControl = new CacheControl();
+            cacheControl.setMaxAge(tiles.getMaxAge());
+            final TileCache cache = TileCacheManager.getInstance().getCache(tableName);
+            final TileKey key = cache == null ? null : new TileKey(z, x, y, getVariant(cql, visibleColumns));
+            if (cache != null) {
+                byte[] cached = cache.get(key);
+                if (cached != null) {
+                    return Response.ok(cached, MEDIA_TYPE_MVT).cacheControl(cacheControl).build();
+                }
+            }
+            final VectorTileEncoder encoder = new VectorTileEncoder(tableName, tileEnvelope, tiles.getExtent(),
+                                                                    tiles.getBuffer());
+            final List<String> attributes = getAttributeNames(metadata, visibleColumns);
+
+            final FeatureQuery query = new FeatureQuery();
+            query.setBbox(toBbox(encoder.getClipEnvelope()));
+            query.setCql(cql);
+            query.setCountMode(CountMode.NONE);
+            // Detail below the size of a tile unit is lost anyway when the geometries are encoded
+            query.setSimplificationTolerance(tiles.getResolution(z));
+            if (visibleColumns != null) {
+                List<String> properties = new ArrayList<String>(attributes);
+                properties.add(metadata.getGeometryName());
+                if (metadata.getIdName() != null) {
+                    properties.add(metadata.getIdName());
+                }
+                query.setProperties(properties);
+            }
+            // Cached tiles are served without admission, only the tiles read from the database wait for a thread
+            AdmissionControl.getInstance().submit(new Callable<Response>() {
+                public Response call() {
+                    try {
+                        return readTile(tableName, query, encoder, attributes, cache, key, cacheControl);
+                    } catch (DatabaseException e) {
+                        return databaseErrorResponse(e);
+                    }
+                }
+            }, asynchronousResponse);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Invalid request: " + e.getMessage() + "\"}").build();
+        } catch (ConfigurationException e) {
+            LOGGER.warn("Invalid Featureserver configuration: " + e.getMessage());
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"Invalid Featureserver configuration: " + e.getMessage() + "\"}").build();
+        } catch (DatabaseException e) {
+            return databaseErrorResponse(e);
+        }
+    }
+
+    /**
+     * @return the response of a tile request that failed on the database, before or after it was admitted
+     */
+    private Response databaseErrorResponse(DatabaseException e) {
+        if (e instanceof ServerBusyException) {
+            return AdmissionControl.serverBusyResponse((ServerBusyException) e);
+        }
+        if (e instanceof TableChangedException) {
+            // Only served again after a restart, so without Retry-After
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        }
+        if (e instanceof TableNotReadyException) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", String.valueOf(TABLE_NOT_READY_RETRY_AFTER))
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        }
+        LOGGER.warn("Database access problem: " + e.getMessage());
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity("{\"error\": \"Database access problem: " + e.getMessage() + "\"}").build();
+    }
+
+    /**
+     * Reads the features of a tile from the database and encodes them, once the request is admitted by the
+     * {@link AdmissionControl}.
+     */
+    private Response readTile(String tableName, FeatureQuery query, VectorTileEncoder encoder, List<String> attributes,
+                              TileCache cache, TileKey key, CacheControl cacheControl) {
+        StandardFeatureReader featureReader = DbaseFacade.getInstance().getReader(tableName, query);
+        if (featureReader == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity(tableNotExistsMessage(tableName)).build();
+        }
+        try {
+            OpenTransformerChain<Feature> features = TransformerChainFactory.<Object, Feature>newChain()
+                    .add(featureReader)
+                    .last(new DefaultTransformer<Object, Feature>(new ObjectToFeatureTransformation()));
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            for (Feature feature : features) {
+                values.clear();
+                for (String attribute : attributes) {
+                    values.put(attribute, feature.getProperty(attribute));
+                }
+                encoder.addFeature(feature.getGeometry(), feature.hasId() ? feature.getId() : null, values);
+            }
+        } finally {
+            featureReader.close();
+        }
+        byte[] tile = encoder.encode();
+        if (cache != null) {
+            cache.put(key, tile);
+        }
+        return Response.ok(tile, MEDIA_TYPE_MVT).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * @return the names of the properties that are included as attributes: the existing columns in visibleColumns,
+     *         or all properties apart from the id and geometry if visibleColumns is null.
+     */
+    private List<String> getAttributeNames(TableMetadata metadata, String visibleColumns) {
+        List<String> result = new ArrayList<String>();
+        if (visibleColumns == null) {
+            for (String column : metadata.getColumns()) {
+                if (!column.equals(metadata.getGeometryName()) && !column.equals(metadata.getIdName())) {
+                    result.add(column);
+                }
+            }
+            return result;
+        }
+        for (String column : visibleColumns.split(";")) {
+            if (metadata.hasColumn(column) && !column.equals(metadata.getGeometryName())
+                    && !column.equals(metadata.getIdName()) && !result.contains(column)) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the parameters, other than the tile coordinates, that determine the content of a tile, or null if
+     *         there are none
+     */
+    private String getVariant(String cql, String visibleColumns) {
+        if (cql == null && visibleColumns == null) {
+            return null;
+        }
+        return "cql=" + cql + "&visibleColumns=" + visibleColumns;
+    }
+
+    private String toBbox(Envelope envelope) {
+        return envelope.getMinX() + "," + envelope.getMinY() + "," + envelope.getMaxX() + "," + envelope.getMaxY();
+    }
+
+    private String tableNotExistsMessage(String tableName) {
+        return "{\"error\": \"Table " + tableName + " does not exist\"}";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.featureserver.config.ConfigurationException;
+import org.geolatte.featureserver.dbase.DatabaseException;
+import org.geolatte.featureserver.dbase.DbaseFacade;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Ties the lifecycle of the database facade to the web application: it is started when the application is deployed,
+ * before the first request, and stopped when it is undeployed. If the facade can not be started, the application is
+ * deployed anyway; requests fail with a database error and retry the start, and /rest/status reports the failure.
+ * On undeploy, the {@link AdmissionControl} stops executing requests as well.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureServerContextListener implements ServletContextListener {
+
+    private static final Logger LOGGER = LogManager.getLogger(FeatureServerContextListener.class);
+
+    public void contextInitialized(ServletContextEvent event) {
+        try {
+            DbaseFacade.start();
+        } catch (DatabaseException e) {
+            LOGGER.error("The database facade could not be started", e);
+        } catch (ConfigurationException e) {
+            LOGGER.error("The database facade could not be started", e);
+        }
+    }
+
+    public void contextDestroyed(ServletContextEvent event) {
+        AdmissionControl.getInstance().shutdown();
+        DbaseFacade.stop();
+    }
+}
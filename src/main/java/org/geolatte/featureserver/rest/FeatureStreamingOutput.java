@@ -0,0 +1,167 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.geolatte.common.Feature;
+import org.geolatte.common.reflection.EntityClassReader;
+import org.geolatte.common.reflection.ObjectToFeatureTransformation;
+import org.geolatte.common.transformer.DefaultTransformer;
+import org.geolatte.common.transformer.TransformerChainFactory;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for response entities that write the features of a {@link StandardFeatureReader} directly to the
+ * response stream while they are scrolled from the database.
+ * <p>
+ * The reader is owned by this object once it is handed over: it is closed when writing finishes, whether or not
+ * that was successful, or by {@link #close()} if the output is never written.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public abstract class FeatureStreamingOutput implements StreamingOutput, Closeable {
+
+    /**
+     * Size of the character buffer used by text based outputs.
+     */
+    protected static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
+    protected final StandardFeatureReader featureReader;
+
+    /**
+     * @param featureReader the reader providing the features to write. It is closed after writing.
+     */
+    protected FeatureStreamingOutput(StandardFeatureReader featureReader) {
+        this.featureReader = featureReader;
+    }
+
+    public final void write(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            writeFeatures(output);
+        } finally {
+            featureReader.close();
+        }
+    }
+
+    /**
+     * Closes the reader without writing the features, for an output that will not be written.
+     */
+    public void close() {
+        featureReader.close();
+    }
+
+    /**
+     * Writes all features of the reader to the given stream.
+     *
+     * @param output the response stream
+     * @throws IOException if writing to the stream fails
+     * @throws WebApplicationException if a feature can not be serialized
+     */
+    protected abstract void writeFeatures(OutputStream output) throws IOException, WebApplicationException;
+
+    /**
+     * @param output the response stream
+     * @return a buffered UTF-8 writer on the given stream
+     * @throws IOException if the writer can not be created
+     */
+    protected Writer newWriter(OutputStream output) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(output, "UTF-8"), WRITER_BUFFER_SIZE);
+    }
+
+    /**
+     * @return the elements of the reader as features
+     */
+    protected Iterable<Feature> features() {
+        return TransformerChainFactory.<Object, Feature>newChain()
+                .add(featureReader)
+                .last(new DefaultTransformer<Object, Feature>(new ObjectToFeatureTransformation()));
+    }
+
+    /**
+     * Determines the columns of a binary output format, in which the geometry has a column of its own.
+     *
+     * @param visibleColumns the columns requested by the client, or null for all columns
+     * @param withGeometry   whether the geometry is included if visibleColumns is null
+     * @return the requested columns, or the id, the other properties and, if requested, the geometry if
+     *         visibleColumns is null
+     */
+    protected List<String> getColumns(List<String> visibleColumns, boolean withGeometry) {
+        if (visibleColumns != null) {
+            return visibleColumns;
+        }
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(featureReader.getEntityClass());
+        List<String> columns = new ArrayList<String>();
+        if (reader.getIdName() != null) {
+            columns.add(reader.getIdName());
+        }
+        for (String property : reader.getProperties()) {
+            columns.add(property);
+        }
+        if (withGeometry && reader.getGeometryName() != null) {
+            columns.add(reader.getGeometryName());
+        }
+        return columns;
+    }
+
+    /**
+     * @param columns the names of the columns
+     * @return the java types of the columns
+     */
+    protected List<Class<?>> getColumnTypes(List<String> columns) {
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(featureReader.getEntityClass());
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for (String column : columns) {
+            types.add(reader.getPropertyType(column));
+        }
+        return types;
+    }
+
+    /**
+     * Fills the given array with the values of the columns of a feature.
+     *
+     * @param feature the feature
+     * @param columns the names of the columns, see {@link #getColumns(List, boolean)}
+     * @param values  the array to fill, with the size of columns
+     * @return values
+     */
+    protected Object[] getValues(Feature feature, List<String> columns, Object[] values) {
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(featureReader.getEntityClass());
+        for (int i = 0; i < values.length; i++) {
+            String column = columns.get(i);
+            if (column.equals(reader.getIdName())) {
+                values[i] = feature.getId();
+            } else if (column.equals(reader.getGeometryName())) {
+                values[i] = feature.getGeometry();
+            } else {
+                values[i] = feature.getProperty(column);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import com.vividsolutions.jts.geom.Geometry;
+import org.geolatte.common.Feature;
+import org.geolatte.common.reflection.EntityClassReader;
+import org.geolatte.featureserver.dataformats.flatbuffers.FlatBufferBuilder;
+import org.geolatte.featureserver.dataformats.flatgeobuf.FlatGeobufWriter;
+import org.geolatte.featureserver.dataformats.flatgeobuf.PackedRTree;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the features of a {@link StandardFeatureReader} as a FlatGeobuf file directly to the response stream.
+ * <p>
+ * Without spatial index, features are written as they are scrolled from the database. With the index, the number of
+ * features and their bounding boxes must be known before the first feature is written, and the features must be
+ * reordered along the Hilbert curve. The encoded features are therefore spooled to a temporary file first; only
+ * their bounding boxes and sizes are kept in memory.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FlatGeobufStreamingOutput extends FeatureStreamingOutput {
+
+    private final String tableName;
+    private final List<String> visibleColumns;
+    private final boolean spatialIndex;
+
+    /**
+     * @param featureReader  the reader providing the features to write. It is closed after writing.
+     * @param tableName      the name of the table, used as name of the dataset
+     * @param visibleColumns the columns to write, in order. If null, all columns are written.
+     * @param spatialIndex   whether the file includes a packed Hilbert R-tree
+     */
+    public FlatGeobufStreamingOutput(StandardFeatureReader featureReader, String tableName,
+                                     List<String> visibleColumns, boolean spatialIndex) {
+        super(featureReader);
+        this.tableName = tableName;
+        this.visibleColumns = visibleColumns;
+        this.spatialIndex = spatialIndex;
+    }
+
+    @Override
+    protected void writeFeatures(OutputStream output) throws IOException {
+        EntityClassReader reader = EntityClassReader.getClassReaderFor(featureReader.getEntityClass());
+        String geometryName = reader.getGeometryName();
+        // The geometry is not a column in FlatGeobuf
+        List<String> columns = new ArrayList<String>(getColumns(visibleColumns, false));
+        columns.remove(geometryName);
+        FlatGeobufWriter writer = new FlatGeobufWriter(tableName, columns, getColumnTypes(columns),
+                geometryName == null ? null : reader.getPropertyType(geometryName), StandardFeatureReader.LAMBERT_72);
+
+        Iterable<Feature> features = features();
+        OutputStream out = new BufferedOutputStream(output, WRITER_BUFFER_SIZE);
+        Object[] values = new Object[columns.size()];
+        if (!spatialIndex) {
+            writer.writeHeader(out, 0, null, 0);
+            byte[] buffer = new byte[4096];
+            for (Feature feature : features) {
+                FlatBufferBuilder encoded = writer.encodeFeature(feature.getGeometry(),
+                                                                 getValues(feature, columns, values));
+                buffer = write(encoded, buffer, out);
+            }
+        } else {
+            writeIndexed(writer, features, columns, values, out);
+        }
+        out.flush();
+    }
+
+    private void writeIndexed(FlatGeobufWriter writer, Iterable<Feature> features, List<String> columns,
+                              Object[] values, OutputStream out) throws IOException {
+        PackedRTree tree = new PackedRTree(PackedRTree.DEFAULT_NODE_SIZE);
+        File spool = File.createTempFile("featureserver", ".fgb");
+        try {
+            OutputStream spoolOut = new BufferedOutputStream(new FileOutputStream(spool), WRITER_BUFFER_SIZE);
+            long[] positions = new long[1024];
+            long position = 0;
+            byte[] buffer = new byte[4096];
+            try {
+                for (Feature feature : features) {
+                    Geometry geometry = feature.getGeometry();
+                    FlatBufferBuilder encoded = writer.encodeFeature(geometry,
+                                                                     getValues(feature, columns, values));
+                    int number = tree.add(geometry == null ? null : geometry.getEnvelopeInternal(), encoded.size());
+                    if (number == positions.length) {
+                        long[] larger = new long[positions.length * 2];
+                        System.arraycopy(positions, 0, larger, 0, positions.length);
+                        positions = larger;
+                    }
+                    positions[number] = position;
+                    position += encoded.size();
+                    buffer = write(encoded, buffer, spoolOut);
+                }
+            } finally {
+                spoolOut.close();
+            }
+            tree.sort();
+            int count = tree.getFeatureCount();
+            writer.writeHeader(out, count, tree.getExtent(), count > 0 ? PackedRTree.DEFAULT_NODE_SIZE : 0);
+            tree.write(out);
+            RandomAccessFile spooled = new RandomAccessFile(spool, "r");
+            try {
+                for (int i = 0; i < count; i++) {
+                    int feature = tree.getFeature(i);
+                    int size = (int) ((feature + 1 < count ? positions[feature + 1] : position) - positions[feature]);
+                    if (buffer.length < size) {
+                        buffer = new byte[size];
+                    }
+                    spooled.seek(positions[feature]);
+                    spooled.readFully(buffer, 0, size);
+                    out.write(buffer, 0, size);
+                }
+            } finally {
+                spooled.close();
+            }
+        } finally {
+            if (!spool.delete()) {
+                spool.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Writes an encoded feature, using the given buffer if it is large enough.
+     *
+     * @return the buffer, or a larger one if it was too small
+     */
+    private byte[] write(FlatBufferBuilder encoded, byte[] buffer, OutputStream out) throws IOException {
+        int size = encoded.size();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+        encoded.copyTo(buffer, 0);
+        out.write(buffer, 0, size);
+        return buffer;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the response of another output gzipped, for responses that are compressed by the service itself, see
+ * {@link ResponseEncoding}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class GzipStreamingOutput implements StreamingOutput, Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final StreamingOutput delegate;
+
+    /**
+     * @param delegate the output that writes the response
+     */
+    public GzipStreamingOutput(StreamingOutput delegate) {
+        this.delegate = delegate;
+    }
+
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        writeGzipped(delegate, output);
+    }
+
+    /**
+     * Releases the resources of the delegate, if it holds any, without writing the response.
+     */
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    /**
+     * Writes the response of the given output, gzipped, to the given stream. The stream is flushed, not closed.
+     *
+     * @param delegate the output that writes the response
+     * @param output   the stream to write the gzipped response to
+     */
+    static void writeGzipped(StreamingOutput delegate, OutputStream output) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(output, BUFFER_SIZE);
+        // The delegate may close the stream it writes to, the gzip stream is finished here
+        delegate.write(new FilterOutputStream(gzip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        gzip.finish();
+        output.flush();
+    }
+}
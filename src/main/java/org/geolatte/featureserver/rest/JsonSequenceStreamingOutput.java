@@ -0,0 +1,104 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.Feature;
+import org.geolatte.common.dataformats.json.jackson.JsonSerializationTransformation;
+import org.geolatte.common.transformer.TransformationException;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the features of a {@link StandardFeatureReader} as a sequence of JSON texts, one feature per line, so
+ * clients can process each feature as soon as its line is complete. Features are serialized the same way as the
+ * items of the JSON output, so with only the requested columns and the id. There is no enclosing object, so there is
+ * no total either.
+ * <p>
+ * Two variants are supported: newline delimited JSON, where every line is a feature, and GeoJSON text sequences
+ * (RFC 8142), where every feature is additionally preceded by the record separator character.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class JsonSequenceStreamingOutput extends FeatureStreamingOutput {
+
+    /**
+     * The number of features after which the written data is pushed to the client.
+     */
+    public static final int FLUSH_INTERVAL = 100;
+
+    private static final char RECORD_SEPARATOR = 0x1E;
+    private static final Logger LOGGER = LogManager.getLogger(JsonSequenceStreamingOutput.class);
+
+    private final JsonSerializationTransformation jts;
+    private final boolean recordSeparator;
+    // null if all columns are written
+    private final Set<String> columns;
+
+    /**
+     * @param featureReader   the reader providing the features to write. It is closed after writing.
+     * @param jts             the transformation used to serialize the individual features
+     * @param recordSeparator true for a GeoJSON text sequence, false for newline delimited JSON
+     * @param visibleColumns  the columns requested by the client, or null for all columns
+     */
+    public JsonSequenceStreamingOutput(StandardFeatureReader featureReader, JsonSerializationTransformation jts,
+                                       boolean recordSeparator, List<String> visibleColumns) {
+        super(featureReader);
+        this.jts = jts;
+        this.recordSeparator = recordSeparator;
+        this.columns = visibleColumns == null ? null : new LinkedHashSet<String>(visibleColumns);
+    }
+
+    @Override
+    protected void writeFeatures(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            Writer writer = newWriter(output);
+            int count = 0;
+            for (Feature f : features()) {
+                if (recordSeparator) {
+                    writer.write(RECORD_SEPARATOR);
+                }
+                // The serialized feature contains no line breaks
+                writer.write(jts.transform(columns == null ? f : new ProjectedFeature(f, columns)));
+                writer.write('\n');
+                if (++count % FLUSH_INTERVAL == 0) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+        } catch (TransformationException e) {
+            // Part of the response may already be sent, all we can do is abort it.
+            LOGGER.error("Error serializing feature to JSON", e);
+            throw new WebApplicationException(e);
+        }
+    }
+}
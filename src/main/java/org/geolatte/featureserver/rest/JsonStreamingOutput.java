@@ -0,0 +1,110 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.geolatte.common.Feature;
+import org.geolatte.common.dataformats.json.jackson.JsonSerializationTransformation;
+import org.geolatte.common.reflection.ObjectToFeatureTransformation;
+import org.geolatte.common.transformer.*;
+import org.geolatte.featureserver.dbase.KeysetCursor;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.*;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the features of a {@link StandardFeatureReader} as JSON directly to the response stream. The output has the
+ * same layout as before ({"total": ..., "items": [...]}), but features are serialized one at a time as they are
+ * scrolled from the database, so memory use no longer depends on the size of the result. With keyset pagination, the
+ * cursor of the next page is written last, in the "next" field, since it is only known after the last feature. If the
+ * client requested specific columns, the features only have those properties and their id.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class JsonStreamingOutput extends FeatureStreamingOutput {
+
+    private static final Logger LOGGER = LogManager.getLogger(JsonStreamingOutput.class);
+
+    private final JsonSerializationTransformation jts;
+    // null if all columns are written
+    private final Set<String> columns;
+
+    /**
+     * @param featureReader  the reader providing the features to write. It is closed after writing.
+     * @param jts            the transformation used to serialize the individual features
+     * @param visibleColumns the columns requested by the client, or null for all columns
+     */
+    public JsonStreamingOutput(StandardFeatureReader featureReader, JsonSerializationTransformation jts,
+                               List<String> visibleColumns) {
+        super(featureReader);
+        this.jts = jts;
+        this.columns = visibleColumns == null ? null : new LinkedHashSet<String>(visibleColumns);
+    }
+
+    @Override
+    protected void writeFeatures(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            Writer writer = newWriter(output);
+            Transformer<Object, Feature> featureCreator =
+                    new DefaultTransformer<Object, Feature>(new ObjectToFeatureTransformation());
+            OpenTransformerChain<Feature> myChain =
+                    TransformerChainFactory.<Object, Feature>newChain().add(featureReader).last(featureCreator);
+            // The total is known before the first row is scrolled, so it can be written up front.
+            writer.write('{');
+            if (featureReader.isTotalCountKnown()) {
+                writer.write("\"total\":");
+                writer.write(String.valueOf(featureReader.getTotalCount()));
+                if (featureReader.isTotalCountEstimated()) {
+                    writer.write(",\"totalEstimated\":true");
+                }
+                writer.write(',');
+            }
+            writer.write("\"items\":[");
+            boolean first = true;
+            for (Feature f : myChain) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writer.write(jts.transform(columns == null ? f : new ProjectedFeature(f, columns)));
+                first = false;
+            }
+            writer.write(']');
+            if (featureReader.isKeysetPaged()) {
+                KeysetCursor next = featureReader.getNextCursor();
+                writer.write(",\"next\":");
+                writer.write(next == null ? "null" : "\"" + next.toToken() + "\"");
+            }
+            writer.write('}');
+            writer.flush();
+        } catch (TransformationException e) {
+            // Part of the response may already be sent, all we can do is abort it.
+            LOGGER.error("Error serializing feature to JSON", e);
+            throw new WebApplicationException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import com.vividsolutions.jts.geom.Geometry;
+import org.geolatte.common.Feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A view on a feature that only exposes the requested columns and the id, so that the properties that were not
+ * selected from the database are left out of the output instead of being written as null.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class ProjectedFeature implements Feature {
+
+    private final Feature feature;
+    private final Set<String> columns;
+
+    /**
+     * @param feature the feature
+     * @param columns the names of the requested columns. The geometry is only exposed if it is among them.
+     */
+    ProjectedFeature(Feature feature, Set<String> columns) {
+        this.feature = feature;
+        this.columns = columns;
+    }
+
+    public boolean hasProperty(String propertyName, boolean trueForSpecialProperties) {
+        if (propertyName == null) {
+            return false;
+        }
+        if (propertyName.equals(feature.getIdName())) {
+            return trueForSpecialProperties && feature.hasId();
+        }
+        if (propertyName.equals(feature.getGeometryName())) {
+            return trueForSpecialProperties && hasGeometry();
+        }
+        return columns.contains(propertyName) && feature.hasProperty(propertyName, false);
+    }
+
+    public Collection<String> getProperties() {
+        Collection<String> properties = new ArrayList<String>();
+        for (String property : feature.getProperties()) {
+            if (columns.contains(property)) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    public Object getProperty(String propertyName) {
+        return hasProperty(propertyName, true) ? feature.getProperty(propertyName) : null;
+    }
+
+    public Object getId() {
+        return feature.getId();
+    }
+
+    public Geometry getGeometry() {
+        return hasGeometry() ? feature.getGeometry() : null;
+    }
+
+    public String getGeometryName() {
+        return hasGeometry() ? feature.getGeometryName() : null;
+    }
+
+    public boolean hasId() {
+        return feature.hasId();
+    }
+
+    public boolean hasGeometry() {
+        return feature.hasGeometry() && columns.contains(feature.getGeometryName());
+    }
+
+    public String getIdName() {
+        return feature.getIdName();
+    }
+}
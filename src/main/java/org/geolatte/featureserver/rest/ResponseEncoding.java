@@ -0,0 +1,130 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import java.util.List;
+
+/**
+ * The content encoding of a response that is compressed by the service itself rather than by the GZIP annotation,
+ * so that responses from the result cache can be sent as they are stored: gzipped.
+ * <p>
+ * RESTEasy compresses every response that has a gzip Content-Encoding header among its JAX-RS headers, so that
+ * header is set on the servlet response directly.
+ * </p>
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+class ResponseEncoding {
+
+    private static final String GZIP = "gzip";
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+
+    /**
+     * The encoding of responses that are compressed by the container, with the GZIP annotation.
+     */
+    static final ResponseEncoding CONTAINER = new ResponseEncoding(null, null);
+
+    private final boolean gzip;
+    private final HttpServletResponse servletResponse;
+
+    /**
+     * @param headers         the headers of the request, for its Accept-Encoding header. May be null.
+     * @param servletResponse the servlet response. May be null, in which case the response is not compressed.
+     */
+    ResponseEncoding(HttpHeaders headers, HttpServletResponse servletResponse) {
+        this.servletResponse = servletResponse;
+        this.gzip = servletResponse != null && headers != null
+                && acceptsGzip(headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * @return true if the response body must be gzipped
+     */
+    boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Sets the Content-Encoding and Vary headers of a successful response.
+     */
+    void apply() {
+        if (servletResponse != null) {
+            servletResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                servletResponse.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            }
+        }
+    }
+
+    /**
+     * Gives the entity tag of a response in this encoding. The gzipped and the identity body of a response are
+     * different representations, so they get different strong entity tags: the gzipped one has a suffix.
+     *
+     * @param etag the entity tag of the response, as kept in the result cache
+     * @return the entity tag of the response in this encoding
+     */
+    EntityTag tag(String etag) {
+        return new EntityTag(gzip ? etag + GZIP_ETAG_SUFFIX : etag);
+    }
+
+    /**
+     * @param acceptEncoding the values of the Accept-Encoding header, may be null
+     * @return true if gzip is an acceptable encoding
+     */
+    static boolean acceptsGzip(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String value : acceptEncoding) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if ((name.equalsIgnoreCase(GZIP) || name.equalsIgnoreCase("x-gzip") || name.equals("*"))
+                        && !isRefused(parts)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the parameters of a content coding contain q=0
+     */
+    private static boolean isRefused(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
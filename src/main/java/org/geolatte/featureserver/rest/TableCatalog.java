@@ -0,0 +1,84 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import javax.ws.rs.core.EntityTag;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The serialized list of tables and their properties, as returned by {@link TableService#getAllTables(javax.ws.rs.core.Request)}.
+ * The list only changes when the mapping of the tables changes, so it is built once per mapping version and served
+ * as is. Its ETag is derived from the content, so it is the same on every server with the same mapping.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+final class TableCatalog {
+
+    private final long mappingVersion;
+    private final byte[] json;
+    private final EntityTag etag;
+
+    /**
+     * @param mappingVersion the version of the mapping the catalog was built from
+     * @param json           the serialized catalog
+     */
+    TableCatalog(long mappingVersion, String json) {
+        this.mappingVersion = mappingVersion;
+        try {
+            this.json = json.getBytes("UTF-8");
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(this.json);
+            StringBuilder tag = new StringBuilder();
+            for (byte b : digest) {
+                tag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            this.etag = new EntityTag(tag.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the version of the mapping the catalog was built from, see {@link org.geolatte.featureserver.dbase.DbaseFacade#getMappingVersion()}
+     */
+    long getMappingVersion() {
+        return mappingVersion;
+    }
+
+    /**
+     * @return the catalog as UTF-8 encoded JSON. The array is shared, it must not be modified.
+     */
+    byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return the strong entity tag of the catalog
+     */
+    EntityTag getEtag() {
+        return etag;
+    }
+}
@@ -22,9 +22,15 @@
 package org.geolatte.featureserver.rest;
 
 import org.jboss.resteasy.annotations.GZIP;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 /**
@@ -46,15 +52,42 @@ public interface TableService {
     public final static String DEFAULT_SEPARATOR = "|";
     public final static MediaType MEDIA_TYPE_TEXT_CSV_TYPE = new MediaType("text", "csv");
     public final static String    MEDIA_TYPE_TEXT_CSV      = "text/csv";
+    public final static String MEDIA_TYPE_FLATGEOBUF = "application/flatgeobuf";
+    public final static String MEDIA_TYPE_ARROW_STREAM = "application/vnd.apache.arrow.stream";
+    public final static String MEDIA_TYPE_GEOJSON_SEQ = "application/geo+json-seq";
+    public final static String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+    public final static String MEDIA_TYPE_FEATURE_STREAM = "application/vnd.geolatte.feature-stream";
 
     /**
-     * Gets the names and properties of all tables served in JSON format.
+     * Gets the names and properties of all tables served in JSON format. The response carries an ETag; if the
+     * request's If-None-Match matches it, 304 Not Modified is returned instead.
      *
+     * @param request the request, used to evaluate the preconditions
      * @return the names and properties of all tables served.
      */
     @GET
     @Path("/tables")
-    public String getAllTables();
+    public Response getAllTables(@Context Request request);
+
+    /**
+     * Gets the state of the featureserver and the mapping status of the tables in JSON format. While the database
+     * facade is starting, or if it could not be started, 503 Service Unavailable is returned with the state
+     * ("starting", "stopped" or "failed"). Otherwise, the state is "ready", and the status gives the way the tables
+     * are mapped at startup ("eager", "background" or "lazy"), whether all tables are mapped, and which tables are
+     * ready and which are still pending. Requests for a pending table are answered with 503 Service Unavailable
+     * while the tables are mapped in the background. Tables of which the columns changed since they were mapped,
+     * and that keep their mapping until the next restart, are listed as changed. Those of which a mapped column was
+     * dropped or altered are listed as incompatible too; requests for them are answered with 503 Service Unavailable
+     * until the featureserver is restarted. If the number of active table requests is limited (see the Admission
+     * section of the configuration), activeRequests and queuedRequests give the number of requests that are active
+     * and that wait to be admitted.
+     *
+     * @return the state of the featureserver and the mapping status of the tables
+     */
+    @GET
+    @Path("/status")
+    @Produces("application/json")
+    public Response getStatus();
 
     /**
      * Gets the table content in CSV format.
@@ -80,22 +113,31 @@ public interface TableService {
      * In case a string of length > 1 is specified, only the first character is used.
      * @param asdownload if this parameter equals "true", then the content-disposition of the response will be set as an
      *                   attachment.
-     * @return the contents of the requested table
+     * @param request the request, for its If-None-Match header. If the table has a result cache, responses carry an
+     * entity tag and a request for a cached response with its entity tag is answered with 304 Not Modified.
+     * @param headers the request headers, for its Accept-Encoding header. The response is gzipped for clients that
+     * accept it; cached responses are then sent as they are stored.
+     * @param response the servlet response, on which the Content-Encoding is set
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
      */
     @GET
     @Produces(MEDIA_TYPE_TEXT_CSV)
-    @GZIP
     @Path("/tables/{name}")
-    public Response getTableCSV(@PathParam("name") String tableName,
-                                @QueryParam("bbox") String bbox,
-                                @QueryParam("cql") String cql,
-                                @QueryParam("start") Integer start,
-                                @QueryParam("limit") Integer limit,
-                                @QueryParam("sortColumns") String sortColumns,
-                                @QueryParam("sortDirections") String sortDirections,
-                                @QueryParam("visibleColumns") String visibleColumns,
-                                @DefaultValue(DEFAULT_SEPARATOR) @QueryParam("separator") String separator,
-                                @QueryParam("asdownload") String asdownload);
+    public void getTableCSV(@PathParam("name") String tableName,
+                            @QueryParam("bbox") String bbox,
+                            @QueryParam("cql") String cql,
+                            @QueryParam("start") Integer start,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("sortColumns") String sortColumns,
+                            @QueryParam("sortDirections") String sortDirections,
+                            @QueryParam("visibleColumns") String visibleColumns,
+                            @DefaultValue(DEFAULT_SEPARATOR) @QueryParam("separator") String separator,
+                            @QueryParam("asdownload") String asdownload,
+                            @Context Request request,
+                            @Context HttpHeaders headers,
+                            @Context HttpServletResponse response,
+                            @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
 
     /**
      * Gets the table content in JSON format.
@@ -106,7 +148,8 @@ public interface TableService {
      * -box filter.
      * @param start for pagination, the number of the item
      * @param limit the maximum number of elements to return
-     * @return the contents of the requested table
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
      * @param sortColumns the names of the fields on which the results should be sorted. May be null or empty, in which case it is
      * ignored. Entries in the list that do not correspond to an existing columnname are ignored.
      * The entries in the sortFields list are seperated by ';'. Unless overriden (see sortDirections), all sortings are
@@ -114,57 +157,289 @@ public interface TableService {
      * @param sortDirections the direction (asc/desc) of the sorting. This parameter may be left out, in which case
      * all sortings (if any) are considered asc. If specified, however, the list must have an equal amount of elements
      * as sortFields, each of which must either be 'asc' or 'desc'. The elements are coindexed with those of sortFields
-     * @param visibleColumns a ';' separated list of the columns that must be shown. If set to null, all columns will be shown/served.
-     * If specified, the list is considered to be exhaustive: all columns you wish to see must be specified. In addition, the
-     * list of columns also implies an ordering. Columns in this list that do not exist are simply ignored.
+     * @param visibleColumns a ';' separated list of the columns that must be loaded. If set to null, all columns will be loaded.
+     * If specified, only these columns are selected from the database (the geometry only if it is in the list); the
+     * returned features only have these properties and their id. Columns in this list that do not exist are simply
+     * ignored.
      * In case a string of length > 1 is specified, only the first character is used.
      * @param asdownload if this parameter equals "true", then the content-disposition of the response will be sett as an attachment.
+     * @param cursor if present, keyset pagination is used instead of start: an empty value requests the first page,
+     * the value of the "next" field of a previous response requests the page after it. The results are ordered on the
+     * sortColumns followed by the id of the table, so every page costs the same regardless of its position. When
+     * continuing from a cursor, the sort parameters are taken from the cursor and the start parameter is ignored.
+     * @param count how the total is computed: "exact", "estimated" (from the table statistics, only for unfiltered
+     * requests, the response then contains "totalEstimated": true) or "none" (the total is left out of the response).
+     * If not specified, the default of the table in the configuration is used.
+     * @param tolerance if specified, geometries are simplified with this distance tolerance (in the units of the
+     * coordinate system of the table) before they are returned. Topology is preserved.
+     * @param zoom alternative for tolerance: geometries are simplified to the size of a tile coordinate unit at this
+     * zoom level of the tile grid (see the Tiles part of the configuration), so they carry the same detail as in the
+     * vector tiles of that level. Ignored if tolerance is specified.
+     * @param precision if specified, the coordinates of the geometries are rounded to this number of decimals
+     * (0 to 15), which makes the response considerably smaller. Other values are refused with 400 Bad Request, also
+     * for tables without geometry.
+     * @param request the request, for its If-None-Match header, see
+     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * @param headers the request headers, for its Accept-Encoding header, see getTableCSV.
+     * @param response the servlet response, on which the Content-Encoding is set
+     */
+    @GET
+    @Path("/tables/{name}")
+    public void getTableJSON(@PathParam("name") String tableName,
+                             @QueryParam("bbox") String bbox,
+                             @QueryParam("cql") String cql,
+                             @QueryParam("start") Integer start,
+                             @QueryParam("limit") Integer limit,
+                             @QueryParam("sortColumns") String sortColumns,
+                             @QueryParam("sortDirections") String sortDirections,
+                             @QueryParam("visibleColumns") String visibleColumns,
+                             @QueryParam("asdownload") String asdownload,
+                             @QueryParam("cursor") String cursor,
+                             @QueryParam("count") String count,
+                             @QueryParam("tolerance") Double tolerance,
+                             @QueryParam("zoom") Integer zoom,
+                             @QueryParam("precision") Integer precision,
+                             @Context Request request,
+                             @Context HttpHeaders headers,
+                             @Context HttpServletResponse response,
+                             @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
+
+
+    /**
+     * Gets the table content as a GeoJSON text sequence (RFC 8142): one feature per line, each preceded by the
+     * record separator character. Features are written as they are read from the database, so clients can process
+     * them incrementally. The response has no total.
+     *
+     * @param tableName the name of the table to retrieve
+     * @param bbox a boundingbox filter for the elements in the table. May be null if not required
+     * @param cql a cql expression to execute on the elements to retrieve, this is executed in addition to the bounding
+     * -box filter.
+     * @param start for pagination, the number of the item
+     * @param limit the maximum number of elements to return
+     * @param sortColumns the names of the fields on which the results should be sorted, see
+     * {@link #getTableJSON(String, String, String, Integer, Integer, String, String, String, String, String, String, Double, Integer, Integer, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * @param sortDirections the direction (asc/desc) of the sorting, see sortColumns.
+     * @param visibleColumns a ';' separated list of the columns that must be loaded, see getTableJSON.
+     * @param asdownload if this parameter equals "true", then the content-disposition of the response will be set as
+     * an attachment.
+     * @param tolerance the simplification tolerance, see getTableJSON.
+     * @param zoom the zoom level to simplify for, see getTableJSON.
+     * @param precision the number of decimals of the coordinates, see getTableJSON.
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
      */
     @GET
+    @Produces(MEDIA_TYPE_GEOJSON_SEQ)
     @GZIP
     @Path("/tables/{name}")
-    public Response getTableJSON(@PathParam("name") String tableName,
-                                 @QueryParam("bbox") String bbox,
-                                 @QueryParam("cql") String cql,
-                                 @QueryParam("start") Integer start,
-                                 @QueryParam("limit") Integer limit,
-                                 @QueryParam("sortColumns") String sortColumns,
-                                 @QueryParam("sortDirections") String sortDirections,
-                                 @QueryParam("visibleColumns") String visibleColumns,
-                                 @QueryParam("asdownload") String asdownload);
+    public void getTableGeoJSONSeq(@PathParam("name") String tableName,
+                                   @QueryParam("bbox") String bbox,
+                                   @QueryParam("cql") String cql,
+                                   @QueryParam("start") Integer start,
+                                   @QueryParam("limit") Integer limit,
+                                   @QueryParam("sortColumns") String sortColumns,
+                                   @QueryParam("sortDirections") String sortDirections,
+                                   @QueryParam("visibleColumns") String visibleColumns,
+                                   @QueryParam("asdownload") String asdownload,
+                                   @QueryParam("tolerance") Double tolerance,
+                                   @QueryParam("zoom") Integer zoom,
+                                   @QueryParam("precision") Integer precision,
+                                   @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
 
+    /**
+     * Gets the table content as newline delimited JSON: one feature per line. Identical to
+     * {@link #getTableGeoJSONSeq(String, String, String, Integer, Integer, String, String, String, String, Double, Integer, Integer, AsynchronousResponse)}
+     * except that lines are not preceded by a record separator.
+     * @param asynchronousResponse the suspended response, set once the request is executed
+     */
+    @GET
+    @Produces(MEDIA_TYPE_NDJSON)
+    @GZIP
+    @Path("/tables/{name}")
+    public void getTableNDJSON(@PathParam("name") String tableName,
+                               @QueryParam("bbox") String bbox,
+                               @QueryParam("cql") String cql,
+                               @QueryParam("start") Integer start,
+                               @QueryParam("limit") Integer limit,
+                               @QueryParam("sortColumns") String sortColumns,
+                               @QueryParam("sortDirections") String sortDirections,
+                               @QueryParam("visibleColumns") String visibleColumns,
+                               @QueryParam("asdownload") String asdownload,
+                               @QueryParam("tolerance") Double tolerance,
+                               @QueryParam("zoom") Integer zoom,
+                               @QueryParam("precision") Integer precision,
+                               @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
 
     /**
-     * Gets the values of the given property in the given table in CSV format. Returns distinct values. Is only
-     * applicable on integer or string valued properties.
+     * Gets the table content as a FlatGeobuf file. The extension in the path lets GIS clients recognize the format
+     * without content negotiation.
+     * <p>
+     * HTTP range requests are not supported: the Range header is ignored and the whole file is always returned. The
+     * use case of reading only the features of an area directly from the server is therefore only partly met; see the
+     * index parameter.
+     *
+     * @param tableName the name of the table to retrieve
+     * @param bbox a boundingbox filter for the elements in the table. May be null if not required
+     * @param cql a cql expression to execute on the elements to retrieve, this is executed in addition to the bounding
+     * -box filter.
+     * @param start for pagination, the number of the item
+     * @param limit the maximum number of elements to return
+     * @param sortColumns the names of the fields on which the results should be sorted, see
+     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * Ignored if a spatial index is requested, since the features are then ordered along the index.
+     * @param sortDirections the direction (asc/desc) of the sorting, see sortColumns.
+     * @param visibleColumns a ';' separated list of the columns that must be included. If set to null, all columns
+     * are included. Columns in this list that do not exist are simply ignored.
+     * @param asdownload if this parameter equals "true", then the content-disposition of the response will be set as
+     * an attachment.
+     * @param index if "true", the file includes a packed Hilbert R-tree. The index is only of use on a downloaded
+     * copy of the file: this endpoint streams the file and does not serve range requests, so clients that want to read
+     * the features of an area without reading the whole file must store it first (eg. as a static file behind a web
+     * server that supports ranges). The file then only starts once all features are read from the database.
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table. The file is never gzipped, since the byte offsets of the index refer to the uncompressed file.
+     */
+    @GET
+    @Produces(MEDIA_TYPE_FLATGEOBUF)
+    @Path("/tables/{name}.fgb")
+    public void getTableFGB(@PathParam("name") String tableName,
+                            @QueryParam("bbox") String bbox,
+                            @QueryParam("cql") String cql,
+                            @QueryParam("start") Integer start,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("sortColumns") String sortColumns,
+                            @QueryParam("sortDirections") String sortDirections,
+                            @QueryParam("visibleColumns") String visibleColumns,
+                            @QueryParam("asdownload") String asdownload,
+                            @QueryParam("index") String index,
+                            @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
+
+    /**
+     * Gets the table content as an Apache Arrow IPC stream, for analytics clients that load it into a dataframe.
+     * Columns are typed after the properties of the table; the geometry is a WKB column with the geoarrow.wkb
+     * extension type. Rows are sent in record batches as they are read.
+     *
+     * @param tableName the name of the table to retrieve
+     * @param bbox a boundingbox filter for the elements in the table. May be null if not required
+     * @param cql a cql expression to execute on the elements to retrieve, this is executed in addition to the bounding
+     * -box filter.
+     * @param start for pagination, the number of the item
+     * @param limit the maximum number of elements to return
+     * @param sortColumns the names of the fields on which the results should be sorted, see
+     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * @param sortDirections the direction (asc/desc) of the sorting, see sortColumns.
+     * @param visibleColumns a ';' separated list of the columns that must be included, in order. If set to null, all
+     * columns are included, the geometry last. Columns in this list that do not exist are simply ignored.
+     * @param asdownload if this parameter equals "true", then the content-disposition of the response will be set as
+     * an attachment.
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
+     */
+    @GET
+    @Produces(MEDIA_TYPE_ARROW_STREAM)
+    @GZIP
+    @Path("/tables/{name}.arrows")
+    public void getTableArrow(@PathParam("name") String tableName,
+                              @QueryParam("bbox") String bbox,
+                              @QueryParam("cql") String cql,
+                              @QueryParam("start") Integer start,
+                              @QueryParam("limit") Integer limit,
+                              @QueryParam("sortColumns") String sortColumns,
+                              @QueryParam("sortDirections") String sortDirections,
+                              @QueryParam("visibleColumns") String visibleColumns,
+                              @QueryParam("asdownload") String asdownload,
+                              @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
+
+    /**
+     * Gets the table content as a compact binary feature stream, for java clients that would otherwise spend most of
+     * their time serializing and parsing JSON. Geometries are encoded as TWKB, the other values in a fixed binary
+     * form; features are sent as they are read. The stream can be decoded with
+     * {@link org.geolatte.featureserver.dataformats.twkb.FeatureStreamReader}.
+     *
+     * @param tableName the name of the table to retrieve
+     * @param bbox a boundingbox filter for the elements in the table. May be null if not required
+     * @param cql a cql expression to execute on the elements to retrieve, this is executed in addition to the bounding
+     * -box filter.
+     * @param start for pagination, the number of the item
+     * @param limit the maximum number of elements to return
+     * @param sortColumns the names of the fields on which the results should be sorted, see
+     * {@link #getTableCSV(String, String, String, Integer, Integer, String, String, String, String, String, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * @param sortDirections the direction (asc/desc) of the sorting, see sortColumns.
+     * @param visibleColumns a ';' separated list of the columns that must be included, in order. If set to null, all
+     * columns are included, the geometry last. Columns in this list that do not exist are simply ignored.
+     * @param asdownload if this parameter equals "true", then the content-disposition of the response will be set as
+     * an attachment.
+     * @param tolerance the simplification tolerance, see
+     * {@link #getTableJSON(String, String, String, Integer, Integer, String, String, String, String, String, String, Double, Integer, Integer, Request, HttpHeaders, HttpServletResponse, AsynchronousResponse)}.
+     * @param zoom the zoom level to simplify for, see getTableJSON.
+     * @param precision the number of decimals of the coordinates, between -8 and 7; other values are refused with 400
+     * Bad Request. If null, coordinates are rounded to 3 decimals.
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
+     */
+    @GET
+    @Produces(MEDIA_TYPE_FEATURE_STREAM)
+    @GZIP
+    @Path("/tables/{name}.twkb")
+    public void getTableTWKB(@PathParam("name") String tableName,
+                             @QueryParam("bbox") String bbox,
+                             @QueryParam("cql") String cql,
+                             @QueryParam("start") Integer start,
+                             @QueryParam("limit") Integer limit,
+                             @QueryParam("sortColumns") String sortColumns,
+                             @QueryParam("sortDirections") String sortDirections,
+                             @QueryParam("visibleColumns") String visibleColumns,
+                             @QueryParam("asdownload") String asdownload,
+                             @QueryParam("tolerance") Double tolerance,
+                             @QueryParam("zoom") Integer zoom,
+                             @QueryParam("precision") Integer precision,
+                             @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
+
+    /**
+     * Gets the values of the given property in the given table in CSV format. Returns distinct values, in ascending
+     * order. Is only applicable on integer or string valued properties.
      *
      * @param tableName    the name of the table to retrieve
      * @param propertyName the name of the property to retrieve values from
      * @param separator    the separator character to use with CSV-output. Is ignored in case output format is not CSV.
      *                     In case a string of length > 1 is specified, only the first character is used.
+     * @param prefix       if specified, only the values that start with this prefix are returned. Only applicable on
+     *                     string valued properties.
+     * @param limit        if specified, the maximum number of values to return
      *
-     * @return the contents of the requested table
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
      */
     @GET
     @Produces(MEDIA_TYPE_TEXT_CSV)
     @Path("/tables/{name}/{property}")
-    public Response getPropertyValuesCSV(@PathParam("name") String tableName,
-                                         @PathParam("property") String propertyName,
-                                         @DefaultValue(DEFAULT_SEPARATOR) @QueryParam("separator") String separator);
+    public void getPropertyValuesCSV(@PathParam("name") String tableName,
+                                     @PathParam("property") String propertyName,
+                                     @DefaultValue(DEFAULT_SEPARATOR) @QueryParam("separator") String separator,
+                                     @QueryParam("prefix") String prefix,
+                                     @QueryParam("limit") Integer limit,
+                                     @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
 
     /**
-     * Gets the values of the given property in the given table in JSON format. Returns distinct values. Is only
-     * applicable on integer or string valued properties.
+     * Gets the values of the given property in the given table in JSON format. Returns distinct values, in ascending
+     * order. Is only applicable on integer or string valued properties. If a limit is given, the "truncated" field
+     * of the response tells whether there are more values.
      *
      * @param tableName the name of the table to retrieve
      * @param propertyName the name of the property to retrieve values from
-     * In case a string of length > 1 is specified, only the first character is used.
+     * @param prefix       if specified, only the values that start with this prefix are returned. Only applicable on
+     *                     string valued properties.
+     * @param limit        if specified, the maximum number of values to return
      * 
-     * @return the contents of the requested table
+     * @param asynchronousResponse the suspended response, set once the request is executed, with the contents of the
+     * requested table
      */
     @GET
     @Path("/tables/{name}/{property}")
-    public Response getPropertyValuesJSON(@PathParam("name") String tableName,
-                                          @PathParam("property") String propertyName);
+    public void getPropertyValuesJSON(@PathParam("name") String tableName,
+                                      @PathParam("property") String propertyName,
+                                      @QueryParam("prefix") String prefix,
+                                      @QueryParam("limit") Integer limit,
+                                      @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
 
 }
@@ -0,0 +1,69 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.jboss.resteasy.annotations.GZIP;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+
+import javax.ws.rs.*;
+
+/**
+ * Rest interface that serves the content of the tables as Mapbox vector tiles. Tiles are cut from the grid defined
+ * in the Tiles section of the configuration, in the coordinate system of the tables.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+@Path("/rest")
+public interface TileService {
+
+    public final static String MEDIA_TYPE_MVT = "application/vnd.mapbox-vector-tile";
+
+    /**
+     * Gets a tile of the given table as a Mapbox vector tile. The tile contains a single layer, named after the
+     * table, with the features whose geometry intersects the tile. Geometries are clipped to the tile and simplified
+     * to its resolution. The properties of the features become the attributes of the tile features and the id of the
+     * table, if it is an integer, their id.
+     *
+     * @param tableName      the name of the table
+     * @param z              the zoom level of the tile
+     * @param x              the column of the tile, counted from the left
+     * @param y              the row of the tile, counted from the top
+     * @param cql            a cql expression to execute on the elements to retrieve, in addition to the tile filter.
+     * @param visibleColumns a ';' separated list of the columns that are included as attributes. If set to null, all
+     *                       columns are included. Columns in this list that do not exist are simply ignored.
+     * @param asynchronousResponse the suspended response, set with the tile once it is read. Tiles without features
+     *                             are empty.
+     */
+    @GET
+    @Produces(MEDIA_TYPE_MVT)
+    @GZIP
+    @Path("/tables/{name}/tiles/{z}/{x}/{y}.mvt")
+    public void getTileMVT(@PathParam("name") String tableName,
+                           @PathParam("z") int z,
+                           @PathParam("x") int x,
+                           @PathParam("y") int y,
+                           @QueryParam("cql") String cql,
+                           @QueryParam("visibleColumns") String visibleColumns,
+                           @Suspend(AdmissionControl.SUSPEND_TIMEOUT) AsynchronousResponse asynchronousResponse);
+}
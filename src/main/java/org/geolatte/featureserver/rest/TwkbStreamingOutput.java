@@ -0,0 +1,76 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.geolatte.common.Feature;
+import org.geolatte.featureserver.dataformats.twkb.FeatureStreamWriter;
+import org.geolatte.featureserver.dataformats.twkb.TwkbWriter;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the features of a {@link StandardFeatureReader} as a binary feature stream with TWKB geometries directly to
+ * the response stream. See {@link FeatureStreamWriter} for the layout.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TwkbStreamingOutput extends FeatureStreamingOutput {
+
+    private final List<String> visibleColumns;
+    private final int precision;
+
+    /**
+     * @param featureReader  the reader providing the features to write. It is closed after writing.
+     * @param visibleColumns the columns to write, in order. If null, all columns are written, the geometry last.
+     * @param precision      the number of decimals of the coordinates, or null for
+     *                       {@link FeatureStreamWriter#DEFAULT_PRECISION}
+     * @throws IllegalArgumentException if the precision can not be expressed in TWKB
+     */
+    public TwkbStreamingOutput(StandardFeatureReader featureReader, List<String> visibleColumns, Integer precision) {
+        super(featureReader);
+        this.visibleColumns = visibleColumns;
+        this.precision = precision != null ? precision : FeatureStreamWriter.DEFAULT_PRECISION;
+        if (this.precision < TwkbWriter.MIN_PRECISION || this.precision > TwkbWriter.MAX_PRECISION) {
+            throw new IllegalArgumentException("The precision must be between " + TwkbWriter.MIN_PRECISION
+                    + " and " + TwkbWriter.MAX_PRECISION + " decimals");
+        }
+    }
+
+    @Override
+    protected void writeFeatures(OutputStream output) throws IOException {
+        List<String> columns = getColumns(visibleColumns, true);
+        OutputStream out = new BufferedOutputStream(output, WRITER_BUFFER_SIZE);
+        FeatureStreamWriter writer = new FeatureStreamWriter(out, columns, getColumnTypes(columns),
+                                                             StandardFeatureReader.LAMBERT_72, precision);
+        writer.writeHeader();
+        Object[] values = new Object[columns.size()];
+        for (Feature feature : features()) {
+            writer.writeFeature(getValues(feature, columns, values));
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the eviction and expiry behaviour of {@link ExpiringLruCache}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ExpiringLruCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<String, Integer>(2, 0);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("c", 3);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("c"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        final long[] clock = new long[]{1000L};
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<String, Integer>(10, 100) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        cache.put("default", 1);
+        cache.put("long", 2, 1000);
+        cache.put("forever", 3, 0);
+        clock[0] += 100;
+        Assert.assertNull(cache.get("default"));
+        Assert.assertEquals(Integer.valueOf(2), cache.get("long"));
+        clock[0] += 1000;
+        Assert.assertNull(cache.get("long"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("forever"));
+    }
+
+    @Test
+    public void testHitsAndMissesAreCounted() {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<String, Integer>(10, 0);
+        cache.get("a");
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+}
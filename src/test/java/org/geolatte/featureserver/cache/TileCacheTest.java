@@ -0,0 +1,150 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.cache;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Tests the memory and disk tiers of {@link TileCache}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TileCacheTest {
+
+    private static final TileCache.TileEnvelopes UNIT_GRID = new TileCache.TileEnvelopes() {
+        public Envelope getEnvelope(TileKey key) {
+            return new Envelope(key.getX(), key.getX() + 1, key.getY(), key.getY() + 1);
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = File.createTempFile("tilecache", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    @Test
+    public void testTileKeyPath() {
+        TileKey plain = new TileKey(3, 4, 5, null);
+        TileKey variant = new TileKey(3, 4, 5, "cql=a = 1");
+        Assert.assertEquals("3/4/5.mvt", plain.getPath());
+        Assert.assertFalse(plain.equals(variant));
+        Assert.assertEquals(plain, TileKey.fromPath("3", "4", "5.mvt"));
+        String[] parts = variant.getPath().split("/");
+        Assert.assertEquals(variant, TileKey.fromPath(parts[0], parts[1], parts[2]));
+        Assert.assertNull(TileKey.fromPath("3", "4", "tile123.tmp"));
+    }
+
+    @Test
+    public void testDiskTierEvictsLeastRecentlyUsed() {
+        DiskTileStore store = new DiskTileStore(directory, 10, 0);
+        TileKey a = new TileKey(1, 0, 0, null);
+        TileKey b = new TileKey(1, 1, 0, null);
+        TileKey c = new TileKey(1, 0, 1, null);
+        store.put(a, new byte[4]);
+        store.put(b, new byte[4]);
+        Assert.assertNotNull(store.get(a));
+        store.put(c, new byte[4]);
+        Assert.assertNull(store.get(b));
+        Assert.assertFalse(new File(directory, b.getPath()).exists());
+        Assert.assertNotNull(store.get(a));
+        Assert.assertNotNull(store.get(c));
+        Assert.assertEquals(8, store.getTotalBytes());
+        // Too large to be stored at all
+        store.put(b, new byte[11]);
+        Assert.assertNull(store.get(b));
+    }
+
+    @Test
+    public void testDiskTierSurvivesRestart() {
+        TileKey key = new TileKey(2, 1, 3, "visibleColumns=name");
+        new DiskTileStore(directory, 100, 0).put(key, new byte[]{1, 2, 3});
+        DiskTileStore reloaded = new DiskTileStore(directory, 100, 0);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, reloaded.get(key).data);
+        Assert.assertEquals(3, reloaded.getTotalBytes());
+    }
+
+    @Test
+    public void testDiskTierExpiry() {
+        final long[] clock = new long[]{1000L};
+        DiskTileStore store = new DiskTileStore(directory, 100, 50) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        TileKey key = new TileKey(0, 0, 0, null);
+        store.put(key, new byte[]{1});
+        clock[0] += 49;
+        Assert.assertNotNull(store.get(key));
+        clock[0] += 1;
+        Assert.assertNull(store.get(key));
+        Assert.assertFalse(new File(directory, key.getPath()).exists());
+    }
+
+    @Test
+    public void testTilesArePromotedFromDisk() {
+        TileKey key = new TileKey(0, 0, 0, null);
+        new TileCache(0, directory, 100, 0).put(key, new byte[]{7});
+        TileCache cache = new TileCache(10, directory, 100, 0);
+        Assert.assertEquals(0, cache.getMemoryTileCount());
+        Assert.assertArrayEquals(new byte[]{7}, cache.get(key));
+        Assert.assertEquals(1, cache.getMemoryTileCount());
+    }
+
+    @Test
+    public void testPurgeByArea() {
+        TileCache cache = new TileCache(10, directory, 100, 0);
+        cache.put(new TileKey(5, 0, 0, null), new byte[]{1});
+        cache.put(new TileKey(5, 0, 0, "cql=x > 1"), new byte[]{2});
+        cache.put(new TileKey(5, 5, 5, null), new byte[]{3});
+        Assert.assertEquals(2, cache.purge(new Envelope(0.5, 0.6, 0.5, 0.6), UNIT_GRID));
+        Assert.assertNull(cache.get(new TileKey(5, 0, 0, null)));
+        Assert.assertNull(cache.get(new TileKey(5, 0, 0, "cql=x > 1")));
+        Assert.assertNotNull(cache.get(new TileKey(5, 5, 5, null)));
+        Assert.assertEquals(1, cache.purge(null, UNIT_GRID));
+        Assert.assertEquals(0, cache.getDiskTileCount());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            delete(children[i]);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.config;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the tile grid of {@link TileConfiguration}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TileConfigurationTest {
+
+    @Test
+    public void testResolutionMatchesTileUnit() {
+        TileConfiguration tiles = new TileConfiguration();
+        // Tiles of 1 meter at zoom level 18 in the default Lambert 72 grid
+        Assert.assertEquals(1.0 / TileConfiguration.DEFAULT_EXTENT, tiles.getResolution(18), 0);
+        Assert.assertEquals(TileConfiguration.DEFAULT_SIZE / TileConfiguration.DEFAULT_EXTENT,
+                            tiles.getResolution(0), 0);
+        for (int z = 0; z <= tiles.getMaxZoom(); z++) {
+            Envelope envelope = tiles.getTileEnvelope(z, 0, 0);
+            Assert.assertEquals(envelope.getWidth() / tiles.getExtent(), tiles.getResolution(z), 1e-12);
+        }
+    }
+
+    @Test
+    public void testResolutionFollowsGrid() {
+        TileConfiguration tiles = new TileConfiguration();
+        tiles.setSize(1024);
+        tiles.setExtent(256);
+        Assert.assertEquals(4, tiles.getResolution(0), 0);
+        Assert.assertEquals(0.5, tiles.getResolution(3), 0);
+        // Beyond the maximum zoom level, for simplification of the table endpoints
+        Assert.assertEquals(1.0 / (1 << 20), tiles.getResolution(TileConfiguration.DEFAULT_MAX_ZOOM + 2), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeZoomRejected() {
+        new TileConfiguration().getResolution(-1);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.arrow;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the message framing of {@link ArrowStreamWriter}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ArrowStreamWriterTest {
+
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+
+    @Test
+    public void testStreamLayout() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        types.add(Integer.class);
+        types.add(String.class);
+        types.add(Geometry.class);
+        ArrowStreamWriter writer = new ArrowStreamWriter(out, Arrays.asList("id", "name", "geom"), types, 31370, 2);
+        writer.writeSchema();
+        Geometry point = new GeometryFactory().createPoint(new Coordinate(1, 2));
+        writer.addRow(new Object[]{1, "a", point});
+        writer.addRow(new Object[]{2, null, point});
+        writer.addRow(new Object[]{3, "c", null});
+        writer.finish();
+
+        ByteBuffer stream = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(HEADER_SCHEMA, readMessage(stream));
+        // Batch size 2: a full batch and the remaining row
+        Assert.assertEquals(HEADER_RECORD_BATCH, readMessage(stream));
+        Assert.assertEquals(HEADER_RECORD_BATCH, readMessage(stream));
+        Assert.assertEquals(-1, stream.getInt());
+        Assert.assertEquals(0, stream.getInt());
+        Assert.assertFalse(stream.hasRemaining());
+    }
+
+    /**
+     * Reads an encapsulated message and skips its body.
+     *
+     * @return the type of the message header
+     */
+    private static byte readMessage(ByteBuffer stream) {
+        Assert.assertEquals(-1, stream.getInt());
+        int length = stream.getInt();
+        Assert.assertEquals(0, length % 8);
+        int message = stream.position();
+        int table = message + stream.getInt(message);
+        int vtable = table - stream.getInt(table);
+        byte headerType = stream.get(table + stream.getShort(vtable + 4 + 2));
+        long bodyLength = stream.getLong(table + stream.getShort(vtable + 4 + 2 * 3));
+        Assert.assertEquals(0, bodyLength % 8);
+        stream.position((int) (message + length + bodyLength));
+        return headerType;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.flatbuffers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link FlatBufferBuilder} by reading the built messages according to the FlatBuffers binary format.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FlatBufferBuilderTest {
+
+    @Test
+    public void testTableWithScalarsAndString() throws Exception {
+        FlatBufferBuilder builder = new FlatBufferBuilder(64);
+        int name = builder.createString("featureserver");
+        builder.startTable(4);
+        builder.addOffset(0, name);
+        builder.addLong(2, 1234567890123L);
+        builder.addByte(3, (byte) 7);
+        builder.finish(builder.endTable(), false);
+        byte[] message = builder.toByteArray();
+
+        int table = readInt(message, 0);
+        Assert.assertEquals("featureserver", readString(message, field(message, table, 0)));
+        Assert.assertEquals(0, fieldPosition(message, table, 1));
+        Assert.assertEquals(1234567890123L, readLong(message, table + fieldPosition(message, table, 2)));
+        Assert.assertEquals(7, message[table + fieldPosition(message, table, 3)]);
+        Assert.assertEquals(0, (table + fieldPosition(message, table, 2)) % 8);
+    }
+
+    @Test
+    public void testSizePrefixAndVectors() throws Exception {
+        FlatBufferBuilder builder = new FlatBufferBuilder(64);
+        int values = builder.createDoubleVector(new double[]{1.5, -2.25, 3}, 3);
+        builder.startTable(1);
+        builder.addOffset(0, values);
+        builder.finish(builder.endTable(), true);
+        byte[] message = builder.toByteArray();
+
+        Assert.assertEquals(message.length - 4, readInt(message, 0));
+        int table = 4 + readInt(message, 4);
+        int vector = field(message, table, 0);
+        Assert.assertEquals(3, readInt(message, vector));
+        Assert.assertEquals(0, (vector + 4) % 8);
+        Assert.assertEquals(-2.25, Double.longBitsToDouble(readLong(message, vector + 12)), 0);
+    }
+
+    /**
+     * @return the position of the object referred to by the given offset field
+     */
+    private static int field(byte[] message, int table, int field) {
+        int position = table + fieldPosition(message, table, field);
+        return position + readInt(message, position);
+    }
+
+    private static int fieldPosition(byte[] message, int table, int field) {
+        int vtable = table - readInt(message, table);
+        int vtableSize = readShort(message, vtable);
+        if (4 + 2 * field >= vtableSize) {
+            return 0;
+        }
+        return readShort(message, vtable + 4 + 2 * field);
+    }
+
+    private static String readString(byte[] message, int position) throws Exception {
+        return new String(message, position + 4, readInt(message, position), "UTF-8");
+    }
+
+    private static int readShort(byte[] message, int position) {
+        return (message[position] & 0xFF) | (message[position + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] message, int position) {
+        return readShort(message, position) | readShort(message, position + 2) << 16;
+    }
+
+    private static long readLong(byte[] message, int position) {
+        return (readInt(message, position) & 0xFFFFFFFFL) | ((long) readInt(message, position + 4)) << 32;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.flatgeobuf;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests the layout of the index written by {@link PackedRTree}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class PackedRTreeTest {
+
+    @Test
+    public void testLayout() throws Exception {
+        PackedRTree tree = new PackedRTree(PackedRTree.DEFAULT_NODE_SIZE);
+        for (int i = 0; i < 20; i++) {
+            tree.add(new Envelope(i, i + 1, 0, 1), 100);
+        }
+        tree.add(null, 10);
+        tree.sort();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tree.write(out);
+        // 21 leaves, 2 nodes grouping them and the root
+        Assert.assertEquals(24 * PackedRTree.NODE_ITEM_SIZE, out.size());
+        Assert.assertEquals(tree.size(), out.size());
+
+        ByteBuffer nodes = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        // The root covers all features and refers to the first node of the level below
+        Assert.assertEquals(0, nodes.getDouble(0), 0);
+        Assert.assertEquals(20, nodes.getDouble(16), 0);
+        Assert.assertEquals(1, nodes.getLong(32));
+        // The feature without geometry is last
+        Assert.assertEquals(20, tree.getFeature(20));
+        // Leaves refer to the byte offsets of the features, in sorted order
+        long offset = 0;
+        for (int i = 0; i < 21; i++) {
+            Assert.assertEquals(offset, nodes.getLong((3 + i) * PackedRTree.NODE_ITEM_SIZE + 32));
+            offset += tree.getFeature(i) == 20 ? 10 : 100;
+        }
+    }
+
+    @Test
+    public void testEmptyTreeIsNotWritten() throws Exception {
+        PackedRTree tree = new PackedRTree(PackedRTree.DEFAULT_NODE_SIZE);
+        tree.sort();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tree.write(out);
+        Assert.assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.mvt;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the geometry encoding of {@link VectorTileEncoder}. The tile covers (0, 0) - (4096, 4096) with an extent of
+ * 4096, so one unit in the coordinate system is one tile unit, with the y axis flipped.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class VectorTileEncoderTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private VectorTileEncoder newEncoder() {
+        return new VectorTileEncoder("test", new Envelope(0, 4096, 0, 4096), 4096, 64);
+    }
+
+    @Test
+    public void testTileWithoutFeaturesIsEmpty() {
+        VectorTileEncoder encoder = newEncoder();
+        Assert.assertFalse(encoder.addFeature(factory.createPoint(new Coordinate(-1000, 100)), null, null));
+        Assert.assertEquals(0, encoder.encode().length);
+    }
+
+    @Test
+    public void testPoint() {
+        VectorTileEncoder encoder = newEncoder();
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("name", "a");
+        Assert.assertTrue(encoder.addFeature(factory.createPoint(new Coordinate(1, 4095)), 7L, attributes));
+        List<Long> geometry = firstFeatureGeometry(encoder.encode());
+        // MoveTo(1), +1, +1
+        Assert.assertEquals(listOf(9, 2, 2), geometry);
+    }
+
+    @Test
+    public void testExteriorRingHasPositiveArea() {
+        VectorTileEncoder encoder = newEncoder();
+        // Counter clockwise in the coordinate system, so clockwise once y is flipped
+        Coordinate[] ring = new Coordinate[]{new Coordinate(10, 10), new Coordinate(20, 10), new Coordinate(20, 20),
+                new Coordinate(10, 20), new Coordinate(10, 10)};
+        encoder.addFeature(factory.createPolygon(factory.createLinearRing(ring), null), null, null);
+        List<Long> geometry = firstFeatureGeometry(encoder.encode());
+        Assert.assertEquals(15L, geometry.get(geometry.size() - 1).longValue());
+        Assert.assertTrue(signedArea(geometry) > 0);
+    }
+
+    @Test
+    public void testLinesAreClippedToBuffer() {
+        VectorTileEncoder encoder = newEncoder();
+        encoder.addFeature(factory.createLineString(new Coordinate[]{new Coordinate(-100000, 2048),
+                new Coordinate(100000, 2048)}), null, null);
+        List<Long> geometry = firstFeatureGeometry(encoder.encode());
+        int[] x = decodeX(geometry);
+        Assert.assertEquals(2, x.length);
+        Assert.assertEquals(-64, Math.min(x[0], x[1]));
+        Assert.assertEquals(4096 + 64, Math.max(x[0], x[1]));
+    }
+
+    @Test
+    public void testCollapsedLineIsIgnored() {
+        VectorTileEncoder encoder = newEncoder();
+        Assert.assertFalse(encoder.addFeature(factory.createLineString(new Coordinate[]{new Coordinate(10, 10),
+                new Coordinate(10.2, 10.1)}), null, null));
+    }
+
+    private static List<Long> listOf(long... values) {
+        List<Long> result = new ArrayList<Long>();
+        for (long value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * @return the x coordinates of a single part geometry
+     */
+    private static int[] decodeX(List<Long> geometry) {
+        List<Integer> xs = new ArrayList<Integer>();
+        int x = 0;
+        int i = 0;
+        while (i < geometry.size()) {
+            long command = geometry.get(i++);
+            long count = command >> 3;
+            if ((command & 7) == 7) {
+                continue;
+            }
+            for (int j = 0; j < count; j++) {
+                x += unZigZag(geometry.get(i));
+                i += 2;
+                xs.add(x);
+            }
+        }
+        int[] result = new int[xs.size()];
+        for (int j = 0; j < result.length; j++) {
+            result[j] = xs.get(j);
+        }
+        return result;
+    }
+
+    private static long signedArea(List<Long> geometry) {
+        List<long[]> vertices = new ArrayList<long[]>();
+        long x = 0;
+        long y = 0;
+        int i = 0;
+        while (i < geometry.size()) {
+            long command = geometry.get(i++);
+            if ((command & 7) == 7) {
+                break;
+            }
+            for (int j = 0; j < command >> 3; j++) {
+                x += unZigZag(geometry.get(i++));
+                y += unZigZag(geometry.get(i++));
+                vertices.add(new long[]{x, y});
+            }
+        }
+        long area = 0;
+        for (int j = 0; j < vertices.size(); j++) {
+            long[] a = vertices.get(j);
+            long[] b = vertices.get((j + 1) % vertices.size());
+            area += a[0] * b[1] - b[0] * a[1];
+        }
+        return area;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Decodes the geometry commands of the first feature of the first layer.
+     */
+    private static List<Long> firstFeatureGeometry(byte[] tile) {
+        byte[] layer = field(tile, 3);
+        byte[] feature = field(layer, 2);
+        byte[] geometry = field(feature, 4);
+        List<Long> result = new ArrayList<Long>();
+        int[] position = new int[]{0};
+        while (position[0] < geometry.length) {
+            result.add(readVarint(geometry, position));
+        }
+        return result;
+    }
+
+    /**
+     * @return the content of the first length-delimited field with the given number
+     */
+    private static byte[] field(byte[] message, int number) {
+        int[] position = new int[]{0};
+        while (position[0] < message.length) {
+            long tag = readVarint(message, position);
+            int wireType = (int) (tag & 7);
+            if (wireType == 0) {
+                readVarint(message, position);
+            } else if (wireType == 1) {
+                position[0] += 8;
+            } else if (wireType == 2) {
+                int length = (int) readVarint(message, position);
+                if (tag >> 3 == number) {
+                    byte[] result = new byte[length];
+                    System.arraycopy(message, position[0], result, 0, length);
+                    return result;
+                }
+                position[0] += length;
+            } else {
+                Assert.fail("Unexpected wire type " + wireType);
+            }
+        }
+        Assert.fail("Field " + number + " not found");
+        return null;
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = bytes[position[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.*;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.geolatte.common.Feature;
+import org.geolatte.common.dataformats.json.jackson.JsonSerializationTransformation;
+import org.geolatte.common.reflection.ObjectToFeatureTransformation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the binary feature stream with the JSON output, for both the server side (encoding) and the client side
+ * (decoding). Not a unit test: run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=org.geolatte.featureserver.dataformats.twkb.FeatureStreamBenchmark
+ *     -Dexec.classpathScope=test [-Dexec.args="features vertices"]
+ * </pre>
+ * The JSON side uses the same serializer as the JSON endpoint and parses the result into maps, without building
+ * geometries, so its decoding time is a lower bound.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureStreamBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int featureCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int vertexCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        List<BenchmarkEntity> entities = createEntities(featureCount, vertexCount);
+        List<Feature> features = new ArrayList<Feature>();
+        ObjectToFeatureTransformation toFeature = new ObjectToFeatureTransformation();
+        for (BenchmarkEntity entity : entities) {
+            features.add(toFeature.transform(entity));
+        }
+        List<String> columns = Arrays.asList("id", "name", "value", "geometry");
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        types.add(Integer.class);
+        types.add(String.class);
+        types.add(Double.class);
+        types.add(Geometry.class);
+
+        JsonSerializationTransformation jts = new JsonSerializationTransformation();
+        ObjectMapper mapper = new ObjectMapper();
+        System.out.println(featureCount + " polygons of " + vertexCount + " vertices, best of " + ROUNDS + " rounds");
+        long[] best = new long[]{Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        int jsonSize = 0;
+        int binarySize = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            StringBuilder json = new StringBuilder("{\"items\":[");
+            for (int i = 0; i < features.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(jts.transform(features.get(i)));
+            }
+            json.append("]}");
+            byte[] jsonBytes = json.toString().getBytes("UTF-8");
+            long jsonEncoded = System.nanoTime();
+            Map<?, ?> parsed = mapper.readValue(new ByteArrayInputStream(jsonBytes), Map.class);
+            long jsonDecoded = System.nanoTime();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FeatureStreamWriter writer = new FeatureStreamWriter(out, columns, types, 31370,
+                                                                 FeatureStreamWriter.DEFAULT_PRECISION);
+            writer.writeHeader();
+            Object[] values = new Object[columns.size()];
+            for (BenchmarkEntity entity : entities) {
+                values[0] = entity.getId();
+                values[1] = entity.getName();
+                values[2] = entity.getValue();
+                values[3] = entity.getGeometry();
+                writer.writeFeature(values);
+            }
+            writer.finish();
+            byte[] binaryBytes = out.toByteArray();
+            long binaryEncoded = System.nanoTime();
+            FeatureStreamReader reader = new FeatureStreamReader(new ByteArrayInputStream(binaryBytes));
+            int decoded = 0;
+            while (reader.read() != null) {
+                decoded++;
+            }
+            long binaryDecoded = System.nanoTime();
+
+            if (decoded != featureCount || ((List<?>) parsed.get("items")).size() != featureCount) {
+                throw new IllegalStateException("Not all features were decoded");
+            }
+            if (round >= WARMUP_ROUNDS) {
+                best[0] = Math.min(best[0], jsonEncoded - start);
+                best[1] = Math.min(best[1], jsonDecoded - jsonEncoded);
+                best[2] = Math.min(best[2], binaryEncoded - jsonDecoded);
+                best[3] = Math.min(best[3], binaryDecoded - binaryEncoded);
+            }
+            jsonSize = jsonBytes.length;
+            binarySize = binaryBytes.length;
+        }
+        System.out.println(String.format("JSON:   %10d bytes, encode %6d ms, decode %6d ms",
+                                         jsonSize, best[0] / 1000000, best[1] / 1000000));
+        System.out.println(String.format("Binary: %10d bytes, encode %6d ms, decode %6d ms",
+                                         binarySize, best[2] / 1000000, best[3] / 1000000));
+    }
+
+    private static List<BenchmarkEntity> createEntities(int featureCount, int vertexCount) {
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 31370);
+        Random random = new Random(31370);
+        List<BenchmarkEntity> entities = new ArrayList<BenchmarkEntity>();
+        for (int i = 0; i < featureCount; i++) {
+            // Irregular polygons of about 100 meters across, somewhere in Belgium
+            double centerX = 20000 + random.nextDouble() * 240000;
+            double centerY = 150000 + random.nextDouble() * 100000;
+            Coordinate[] coordinates = new Coordinate[vertexCount + 1];
+            for (int v = 0; v < vertexCount; v++) {
+                double angle = 2 * Math.PI * v / vertexCount;
+                double radius = 25 + random.nextDouble() * 25;
+                coordinates[v] = new Coordinate(centerX + radius * Math.cos(angle), centerY + radius * Math.sin(angle));
+            }
+            coordinates[vertexCount] = coordinates[0];
+            Polygon polygon = factory.createPolygon(factory.createLinearRing(coordinates), null);
+            entities.add(new BenchmarkEntity(i, "feature " + i, random.nextDouble() * 1000, polygon));
+        }
+        return entities;
+    }
+
+    /**
+     * A mapped entity as the automapper would generate it.
+     */
+    public static class BenchmarkEntity {
+
+        private final Integer id;
+        private final String name;
+        private final Double value;
+        private final Geometry geometry;
+
+        public BenchmarkEntity(Integer id, String name, Double value, Geometry geometry) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+            this.geometry = geometry;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Double getValue() {
+            return value;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+    }
+}
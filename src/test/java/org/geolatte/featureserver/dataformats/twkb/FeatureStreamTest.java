@@ -0,0 +1,124 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests {@link FeatureStreamWriter} and {@link FeatureStreamReader}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class FeatureStreamTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<String> names = Arrays.asList("id", "count", "ratio", "weight", "valid", "date", "name", "amount",
+                                           "c8", "geom");
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        types.add(Long.class);
+        types.add(Integer.class);
+        types.add(Float.class);
+        types.add(Double.class);
+        types.add(Boolean.class);
+        types.add(Date.class);
+        types.add(String.class);
+        types.add(BigDecimal.class);
+        types.add(Short.class);
+        types.add(Geometry.class);
+        Geometry point = new GeometryFactory().createPoint(new Coordinate(153012.125, 212345.5));
+        Object[] full = new Object[]{-5L, 42, 1.5f, -2.25, true, new Date(1300000000000L), "\u00e9t\u00e9",
+                new BigDecimal("12.50"), (short) 7, point};
+        Object[] empty = new Object[names.size()];
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FeatureStreamWriter writer = new FeatureStreamWriter(out, names, types, 31370, 3);
+        writer.writeHeader();
+        writer.writeFeature(full);
+        writer.writeFeature(empty);
+        writer.finish();
+
+        FeatureStreamReader reader = new FeatureStreamReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(31370, reader.getSrid());
+        Assert.assertEquals(names, reader.getColumnNames());
+        Assert.assertEquals(ColumnType.STRING, reader.getColumnTypes().get(7));
+        Object[] values = reader.read();
+        Assert.assertEquals(-5L, values[0]);
+        Assert.assertEquals(42, values[1]);
+        Assert.assertEquals(1.5f, values[2]);
+        Assert.assertEquals(-2.25, values[3]);
+        Assert.assertEquals(Boolean.TRUE, values[4]);
+        Assert.assertEquals(new Date(1300000000000L), values[5]);
+        Assert.assertEquals("\u00e9t\u00e9", values[6]);
+        Assert.assertEquals("12.50", values[7]);
+        Assert.assertEquals(7, values[8]);
+        Assert.assertTrue(point.equalsExact((Geometry) values[9]));
+        Assert.assertEquals(31370, ((Geometry) values[9]).getSRID());
+        Assert.assertArrayEquals(empty, reader.read());
+        Assert.assertNull(reader.read());
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testNoColumns() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FeatureStreamWriter writer = new FeatureStreamWriter(out, new ArrayList<String>(),
+                                                             new ArrayList<Class<?>>(), 31370, 3);
+        writer.writeHeader();
+        writer.writeFeature(new Object[0]);
+        writer.finish();
+        FeatureStreamReader reader = new FeatureStreamReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(0, reader.read().length);
+        Assert.assertNull(reader.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FeatureStreamWriter writer = new FeatureStreamWriter(out, Arrays.asList("name"),
+                                                             Arrays.<Class<?>>asList(String.class), 31370, 3);
+        writer.writeHeader();
+        writer.writeFeature(new Object[]{"abc"});
+        byte[] data = out.toByteArray();
+        FeatureStreamReader reader = new FeatureStreamReader(new ByteArrayInputStream(data, 0, data.length - 1));
+        reader.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAFeatureStream() throws Exception {
+        new FeatureStreamReader(new ByteArrayInputStream("{\"items\":[]}".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dataformats.twkb;
+
+import com.vividsolutions.jts.geom.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link TwkbWriter} and {@link TwkbReader}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TwkbTest {
+
+    private final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 31370);
+
+    @Test
+    public void testPointEncoding() {
+        // The encoding PostGIS produces for ST_AsTWKB('POINT(1 2)')
+        byte[] encoded = new TwkbWriter(0).write(factory.createPoint(new Coordinate(1, 2)));
+        Assert.assertArrayEquals(new byte[]{0x01, 0x00, 0x02, 0x04}, encoded);
+    }
+
+    @Test
+    public void testDeltaEncoding() {
+        LineString line = factory.createLineString(new Coordinate[]{new Coordinate(10, 10), new Coordinate(11, 9)});
+        byte[] encoded = new TwkbWriter(0).write(line);
+        // Two points: (10, 10) and the delta (1, -1), zigzag encoded
+        Assert.assertArrayEquals(new byte[]{0x02, 0x00, 0x02, 20, 20, 2, 1}, encoded);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Polygon withHole = factory.createPolygon(
+                ring(0, 0, 100, 100),
+                new LinearRing[]{ring(10, 10, 20, 20)});
+        assertRoundTrip(factory.createPoint(new Coordinate(153012.125, 212345.5)), 3);
+        assertRoundTrip(withHole, 3);
+        assertRoundTrip(factory.createMultiPolygon(new Polygon[]{withHole,
+                factory.createPolygon(ring(-50, -50, -40, -40), null)}), 2);
+        assertRoundTrip(factory.createMultiLineString(new LineString[]{
+                factory.createLineString(new Coordinate[]{new Coordinate(0, 0), new Coordinate(1.5, 2.25)}),
+                factory.createLineString(new Coordinate[]{new Coordinate(3, 3), new Coordinate(-4, 5)})}), 2);
+        assertRoundTrip(factory.createMultiPoint(new Coordinate[]{new Coordinate(1, 2), new Coordinate(3, 4)}), 0);
+        assertRoundTrip(factory.createGeometryCollection(new Geometry[]{
+                factory.createPoint(new Coordinate(1, 2)), withHole}), 1);
+        assertRoundTrip(factory.createPoint((Coordinate) null), 3);
+        assertRoundTrip(factory.createPolygon(null, null), 3);
+    }
+
+    @Test
+    public void testPrecision() {
+        Point point = factory.createPoint(new Coordinate(153012.12345, 212345.6789));
+        Geometry decoded = new TwkbReader(factory).read(new TwkbWriter(2).write(point));
+        Assert.assertEquals(153012.12, decoded.getCoordinate().x, 1e-9);
+        Assert.assertEquals(212345.68, decoded.getCoordinate().y, 1e-9);
+        decoded = new TwkbReader(factory).read(new TwkbWriter(-2).write(point));
+        Assert.assertEquals(153000, decoded.getCoordinate().x, 1e-9);
+        Assert.assertEquals(212300, decoded.getCoordinate().y, 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPrecision() {
+        new TwkbWriter(8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedData() {
+        new TwkbReader(factory).read(new byte[]{0x01, 0x00, 0x02});
+    }
+
+    private void assertRoundTrip(Geometry geometry, int precision) {
+        Geometry decoded = new TwkbReader(factory).read(new TwkbWriter(precision).write(geometry));
+        Assert.assertEquals(geometry.getGeometryType(), decoded.getGeometryType());
+        Assert.assertTrue(geometry.equalsExact(decoded, 1e-9));
+        Assert.assertEquals(31370, decoded.getSRID());
+    }
+
+    private LinearRing ring(double minX, double minY, double maxX, double maxY) {
+        return factory.createLinearRing(new Coordinate[]{
+                new Coordinate(minX, minY), new Coordinate(maxX, minY), new Coordinate(maxX, maxY),
+                new Coordinate(minX, maxY), new Coordinate(minX, minY)});
+    }
+}
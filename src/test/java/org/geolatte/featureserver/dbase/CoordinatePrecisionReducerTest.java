@@ -0,0 +1,99 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the rounding of coordinates by {@link CoordinatePrecisionReducer}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CoordinatePrecisionReducerTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testRoundsInPlace() {
+        LineString line = factory.createLineString(new Coordinate[]{
+                new Coordinate(153056.123456, 212345.987654), new Coordinate(153100.5049, 212399.0001)});
+        ResidentTableTest.TestFeature feature = new ResidentTableTest.TestFeature(1, null, null, line);
+        new CoordinatePrecisionReducer(ResidentTableTest.TestFeature.class, 2).apply(feature);
+        Assert.assertSame(line, feature.getGeometry());
+        assertCoordinate(153056.12, 212345.99, line.getCoordinateN(0));
+        assertCoordinate(153100.50, 212399.00, line.getCoordinateN(1));
+    }
+
+    @Test
+    public void testNegativeValues() {
+        Assert.assertEquals(-123.5, round(-123.456, 1), 0);
+        Assert.assertEquals(-123.0, round(-123.456, 0), 0);
+        Assert.assertEquals(-0.01, round(-0.0051, 2), 0);
+    }
+
+    @Test
+    public void testTiesRoundToEven() {
+        // These values are exact in binary, so the ties are real
+        Assert.assertEquals(0.0, round(0.5, 0), 0);
+        Assert.assertEquals(2.0, round(1.5, 0), 0);
+        Assert.assertEquals(2.0, round(2.5, 0), 0);
+        Assert.assertEquals(-2.0, round(-2.5, 0), 0);
+        Assert.assertEquals(0.2, round(0.25, 1), 0);
+        Assert.assertEquals(0.8, round(0.75, 1), 0);
+        Assert.assertEquals(-0.2, round(-0.25, 1), 0);
+    }
+
+    @Test
+    public void testPrecisionBounds() {
+        Assert.assertEquals(153056.0, round(153056.4999, 0), 0);
+        // At the maximum precision, a Lambert 72 coordinate is kept as it is
+        Assert.assertEquals(153056.123456789, round(153056.123456789, CoordinatePrecisionReducer.MAX_DECIMALS),
+                            1e-9);
+        for (int decimals : new int[]{-1, CoordinatePrecisionReducer.MAX_DECIMALS + 1}) {
+            try {
+                new CoordinatePrecisionReducer(ResidentTableTest.TestFeature.class, decimals);
+                Assert.fail("A precision of " + decimals + " decimals should be refused");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private double round(double value, int decimals) {
+        Geometry point = factory.createPoint(new Coordinate(value, value));
+        new CoordinatePrecisionReducer(ResidentTableTest.TestFeature.class, decimals)
+                .apply(new ResidentTableTest.TestFeature(1, null, null, point));
+        Assert.assertEquals(point.getCoordinate().x, point.getCoordinate().y, 0);
+        return point.getCoordinate().x;
+    }
+
+    private void assertCoordinate(double x, double y, Coordinate coordinate) {
+        Assert.assertEquals(x, coordinate.x, 1e-9);
+        Assert.assertEquals(y, coordinate.y, 1e-9);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.geolatte.common.cql.hibernate.CqlHibernate;
+import org.hibernate.criterion.DetachedCriteria;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares parsing cql expressions to criteria on every request with the deserialization of the cached criteria
+ * by {@link CqlCriteriaCache}. Not a unit test: run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=org.geolatte.featureserver.dbase.CqlCriteriaBenchmark
+ *     -Dexec.classpathScope=test [-Dexec.args="iterations"]
+ * </pre>
+ * The expressions range from a single comparison to the longer filters that map clients send; the cache only pays
+ * off if deserializing is faster than parsing for all of them.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CqlCriteriaBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final List<String> EXPRESSIONS = Arrays.asList(
+            "name = 'Gent'",
+            "value > 5 AND value <= 100",
+            "name LIKE 'Ant%' OR (value BETWEEN 1 AND 10 AND id <> 3)",
+            "id IN (1, 2, 3, 5, 8, 13, 21, 34) AND NOT (name = 'Leuven' OR name = 'Brussel') AND value IS NOT NULL",
+            "value >= 0 AND value < 1000 AND (name LIKE 'A%' OR name LIKE 'B%' OR name LIKE 'G%') AND id > 0");
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Class entityClass = ResidentTableTest.TestFeature.class;
+        CqlCriteriaCache cache = new CqlCriteriaCache(EXPRESSIONS.size());
+        System.out.println(iterations + " conversions per expression, best of " + ROUNDS + " rounds");
+        for (String cql : EXPRESSIONS) {
+            // Fills the cache, so the loop below only measures hits
+            cache.toCriteria(cql, entityClass);
+            long bestParse = Long.MAX_VALUE;
+            long bestCached = Long.MAX_VALUE;
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                long start = System.nanoTime();
+                DetachedCriteria parsed = null;
+                for (int i = 0; i < iterations; i++) {
+                    parsed = CqlHibernate.toCriteria(cql, entityClass);
+                }
+                long parseEnd = System.nanoTime();
+                DetachedCriteria cached = null;
+                for (int i = 0; i < iterations; i++) {
+                    cached = cache.toCriteria(cql, entityClass);
+                }
+                long cachedEnd = System.nanoTime();
+
+                if (!parsed.toString().equals(cached.toString())) {
+                    throw new IllegalStateException("Cached criteria differ from parsed ones for " + cql);
+                }
+                if (round >= WARMUP_ROUNDS) {
+                    bestParse = Math.min(bestParse, parseEnd - start);
+                    bestCached = Math.min(bestCached, cachedEnd - parseEnd);
+                }
+            }
+            System.out.println(String.format("parse %8.2f us, cached %8.2f us: %s",
+                                             bestParse / 1000.0 / iterations, bestCached / 1000.0 / iterations, cql));
+        }
+        if (cache.getMisses() != EXPRESSIONS.size()) {
+            throw new IllegalStateException("Expressions were parsed by the cache after the first time");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.criterion.DetachedCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+/**
+ * Tests the caching of parsed cql expressions by {@link CqlCriteriaCache}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CqlCriteriaCacheTest {
+
+    @Test
+    public void testParsedOnceAndNeverShared() throws ParseException {
+        CqlCriteriaCache cache = new CqlCriteriaCache(10);
+        DetachedCriteria first = cache.toCriteria("name = 'Gent'", ResidentTableTest.TestFeature.class);
+        DetachedCriteria second = cache.toCriteria("name = 'Gent'", ResidentTableTest.TestFeature.class);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(first.toString(), second.toString());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testParseErrorsAreCached() {
+        CqlCriteriaCache cache = new CqlCriteriaCache(10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.toCriteria("name = = ", ResidentTableTest.TestFeature.class);
+                Assert.fail("Invalid cql expression should not be parsed");
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests the restriction of cached {@link DistinctValues} to a prefix and a limit.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class DistinctValuesTest {
+
+    private final DistinctValues all =
+            new DistinctValues(Arrays.asList("Aalst", "Antwerpen", "Brugge", "Brussel", "Gent"), false);
+
+    @Test
+    public void testPrefix() {
+        DistinctValues restricted = all.restrict("Br", null);
+        Assert.assertEquals(Arrays.asList("Brugge", "Brussel"), restricted.getValues());
+        Assert.assertFalse(restricted.isTruncated());
+    }
+
+    @Test
+    public void testLimit() {
+        DistinctValues restricted = all.restrict(null, 2);
+        Assert.assertEquals(Arrays.asList("Aalst", "Antwerpen"), restricted.getValues());
+        Assert.assertTrue(restricted.isTruncated());
+        Assert.assertFalse(all.restrict("A", 2).isTruncated());
+    }
+
+    @Test
+    public void testNoMatch() {
+        Assert.assertTrue(all.restrict("Z", 10).getValues().isEmpty());
+    }
+}
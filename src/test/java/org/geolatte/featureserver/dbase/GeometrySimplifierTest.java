@@ -0,0 +1,134 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the simplification of the geometries of entities by {@link GeometrySimplifier}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class GeometrySimplifierTest {
+
+    private final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 31370);
+
+    @Test
+    public void testReplacesGeometryOfEntity() {
+        Polygon original = createJaggedSquare();
+        ResidentTableTest.TestFeature feature = new ResidentTableTest.TestFeature(1, "Gent", 3.0, original);
+        new GeometrySimplifier(ResidentTableTest.TestFeature.class, 1).apply(feature);
+        Geometry simplified = feature.getGeometry();
+        Assert.assertNotSame(original, simplified);
+        // Only the corners of the square remain
+        Assert.assertEquals(5, simplified.getNumPoints());
+        Assert.assertTrue(simplified.isValid());
+        Assert.assertEquals(31370, simplified.getSRID());
+        Assert.assertEquals(new Envelope(0, 100, 0, 100), simplified.getEnvelopeInternal());
+        // The field is replaced, the original geometry is left as it was
+        Assert.assertEquals(41, original.getNumPoints());
+        Assert.assertEquals("Gent", feature.getName());
+    }
+
+    @Test
+    public void testDetailAboveToleranceIsKept() {
+        Polygon original = createJaggedSquare();
+        ResidentTableTest.TestFeature feature = new ResidentTableTest.TestFeature(1, null, null, original);
+        new GeometrySimplifier(ResidentTableTest.TestFeature.class, 0.01).apply(feature);
+        Assert.assertEquals(41, feature.getGeometry().getNumPoints());
+    }
+
+    @Test
+    public void testPointsAndMissingGeometriesAreLeftAlone() {
+        GeometrySimplifier simplifier = new GeometrySimplifier(ResidentTableTest.TestFeature.class, 100);
+        Point point = factory.createPoint(new Coordinate(1, 1));
+        ResidentTableTest.TestFeature feature = new ResidentTableTest.TestFeature(1, null, null, point);
+        simplifier.apply(feature);
+        Assert.assertSame(point, feature.getGeometry());
+        feature = new ResidentTableTest.TestFeature(2, null, null, null);
+        simplifier.apply(feature);
+        Assert.assertNull(feature.getGeometry());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new GeometrySimplifier(ResidentTableTest.TestFeature.class, -1);
+            Assert.fail("A negative tolerance should be refused");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new GeometrySimplifier(NoGeometry.class, 1);
+            Assert.fail("An entity class without geometry should be refused");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @return a square of 100 by 100, with 9 vertices on each side that deviate 0.1 from it
+     */
+    private Polygon createJaggedSquare() {
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        double[][] corners = {{0, 0}, {100, 0}, {100, 100}, {0, 100}};
+        for (int side = 0; side < 4; side++) {
+            double[] from = corners[side];
+            double[] to = corners[(side + 1) % 4];
+            for (int i = 0; i < 10; i++) {
+                double offset = i == 0 ? 0 : (i % 2 == 0 ? 0.1 : -0.1);
+                // The offset is perpendicular to the side
+                double x = from[0] + (to[0] - from[0]) * i / 10 + (to[1] - from[1]) / 100 * offset;
+                double y = from[1] + (to[1] - from[1]) * i / 10 - (to[0] - from[0]) / 100 * offset;
+                coordinates.add(new Coordinate(x, y));
+            }
+        }
+        coordinates.add(new Coordinate(0, 0));
+        return factory.createPolygon(factory.createLinearRing(coordinates.toArray(new Coordinate[coordinates.size()])),
+                                     null);
+    }
+
+    public static class NoGeometry {
+
+        private Integer id;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the token encoding of {@link KeysetCursor} and the sql of the predicate it generates.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class KeysetCursorTest {
+
+    private static SessionFactory factory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        factory = RecordingConnectionProvider.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        factory.close();
+    }
+
+    @Test
+    public void testFirstPageHasNoCriterion() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.FALSE, Boolean.TRUE));
+        Assert.assertTrue(cursor.isFirstPage());
+        Assert.assertNull(cursor.toCriterion());
+        Assert.assertEquals(2, cursor.getOrderings().size());
+    }
+
+    @Test
+    public void testTokenRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.FALSE, Boolean.TRUE));
+        KeysetCursor decoded = KeysetCursor.fromToken(cursor.toToken());
+        Assert.assertEquals(cursor.getProperties(), decoded.getProperties());
+        Assert.assertTrue(decoded.isFirstPage());
+        Assert.assertEquals(cursor.toToken(), decoded.toToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedTokenIsRejected() {
+        KeysetCursor.fromToken("not a token");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedTokenIsRejected() {
+        String token = new KeysetCursor(Arrays.asList("id"), Arrays.asList(Boolean.TRUE)).toToken();
+        KeysetCursor.fromToken(token.substring(0, token.length() - 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDirectionsMustMatchProperties() {
+        new KeysetCursor(Arrays.asList("name", "id"), new ArrayList<Boolean>(Arrays.asList(Boolean.TRUE)));
+    }
+
+    @Test
+    public void testRowValueComparisonWhenDirectionsMatch() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.TRUE, Boolean.TRUE))
+                .withNotNull(Arrays.asList("name", "id")).after(feature(3, "Gent"));
+        Assert.assertEquals("(this_.name, this_.id) > (?, ?)", where(cursor));
+    }
+
+    @Test
+    public void testNullableKeysComeLastInAscendingOrder() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.TRUE, Boolean.TRUE))
+                .withNotNull(Arrays.asList("id")).after(feature(3, "Gent"));
+        String where = where(cursor);
+        Assert.assertTrue(where, where.startsWith("((this_.name, this_.id) > (?, ?) or "));
+        Assert.assertTrue(where, where.contains("this_.name is null"));
+        Assert.assertFalse(where, where.contains("this_.id is null"));
+    }
+
+    @Test
+    public void testRowValueComparisonWhenDescending() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.FALSE, Boolean.FALSE))
+                .withNotNull(Arrays.asList("id")).after(feature(3, "Gent"));
+        Assert.assertEquals("(this_.name, this_.id) < (?, ?)", where(cursor));
+    }
+
+    @Test
+    public void testExpandedFormWhenDirectionsDiffer() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.FALSE, Boolean.TRUE))
+                .withNotNull(Arrays.asList("id")).after(feature(3, "Gent"));
+        String where = where(cursor);
+        Assert.assertFalse(where, where.contains(") < ("));
+        Assert.assertTrue(where, where.contains("this_.name<?"));
+        Assert.assertTrue(where, where.contains("this_.id>?"));
+        Assert.assertFalse(where, where.contains("is null"));
+    }
+
+    @Test
+    public void testExpandedFormForNullPosition() {
+        KeysetCursor cursor = new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.TRUE, Boolean.TRUE))
+                .withNotNull(Arrays.asList("id")).after(feature(3, null));
+        String where = where(cursor);
+        Assert.assertFalse(where, where.contains(") > ("));
+        Assert.assertTrue(where, where.contains("this_.name is null"));
+        Assert.assertTrue(where, where.contains("this_.id>?"));
+    }
+
+    private ResidentTableTest.TestFeature feature(int id, String name) {
+        return new ResidentTableTest.TestFeature(id, name, null, null);
+    }
+
+    /**
+     * @return the where clause of a query on the test table with the predicate of the given cursor
+     */
+    private String where(KeysetCursor cursor) {
+        RecordingConnectionProvider.clear();
+        Session session = factory.openSession();
+        try {
+            Criteria criteria = session.createCriteria(ResidentTableTest.TestFeature.class);
+            criteria.add(cursor.toCriterion());
+            criteria.list();
+            Assert.fail("Recorded statements are not executed");
+        } catch (HibernateException e) {
+            // expected
+        } finally {
+            session.close();
+        }
+        List<String> statements = RecordingConnectionProvider.getStatements();
+        String sql = statements.get(statements.size() - 1);
+        return sql.substring(sql.indexOf(" where ") + " where ".length());
+    }
+}
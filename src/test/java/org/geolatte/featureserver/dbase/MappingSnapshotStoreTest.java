@@ -0,0 +1,179 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link MappingSnapshotStore}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class MappingSnapshotStoreTest {
+
+    private static final String[] COLUMN_LABELS = {"TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "TYPE_NAME",
+                                                   "COLUMN_SIZE", "NULLABLE", "ORDINAL_POSITION"};
+    private static final String[] PRIMARY_KEY_LABELS = {"TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "KEY_SEQ"};
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mapping", ".snapshot");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * @return database metadata of which getColumns returns the given rows, and getPrimaryKeys nothing
+     */
+    private static DatabaseMetaData metaData(Object[]... rows) {
+        return metaData(new ArrayList<Object[]>(), rows);
+    }
+
+    /**
+     * @return database metadata of which getColumns returns the given rows, and getPrimaryKeys the given keys
+     */
+    private static DatabaseMetaData metaData(List<Object[]> keys, Object[]... rows) {
+        final MetadataSnapshot.RecordedResult columns =
+                new MetadataSnapshot.RecordedResult(COLUMN_LABELS, new ArrayList<Object[]>(Arrays.asList(rows)));
+        final MetadataSnapshot.RecordedResult primaryKeys =
+                new MetadataSnapshot.RecordedResult(PRIMARY_KEY_LABELS, keys);
+        return (DatabaseMetaData) Proxy.newProxyInstance(getClassLoader(), new Class[]{DatabaseMetaData.class},
+                                                         new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getColumns".equals(method.getName())) {
+                    return columns.replay();
+                }
+                if ("getPrimaryKeys".equals(method.getName())) {
+                    return primaryKeys.replay();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static ClassLoader getClassLoader() {
+        return MappingSnapshotStoreTest.class.getClassLoader();
+    }
+
+    private static Object[] column(String table, String column, String type, int position) {
+        return new Object[]{"public", table, column, type, 10, 1, position};
+    }
+
+    private static Object[] primaryKey(String table, String column, int sequence) {
+        return new Object[]{"public", table, column, sequence};
+    }
+
+    @Test
+    public void testFingerprintIgnoresColumnOrder() throws SQLException {
+        String first = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "id", "int4", 1), column("roads", "name", "varchar", 2)), "url", "public");
+        String second = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "name", "varchar", 2), column("roads", "id", "int4", 1)), "url", "public");
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testFingerprintChangesWithSchema() throws SQLException {
+        String original = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "id", "int4", 1), column("roads", "name", "varchar", 2)), "url", "public");
+        String changedType = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "id", "int8", 1), column("roads", "name", "varchar", 2)), "url", "public");
+        String addedColumn = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "id", "int4", 1), column("roads", "name", "varchar", 2),
+                         column("roads", "lanes", "int4", 3)), "url", "public");
+        String otherDatabase = MappingSnapshotStore.fingerprint(
+                metaData(column("roads", "id", "int4", 1), column("roads", "name", "varchar", 2)), "other", "public");
+        assertFalse(original.equals(changedType));
+        assertFalse(original.equals(addedColumn));
+        assertFalse(original.equals(otherDatabase));
+    }
+
+    @Test
+    public void testFingerprintChangesWithPrimaryKey() throws SQLException {
+        Object[] id = column("roads", "id", "int4", 1);
+        Object[] code = column("roads", "code", "int4", 2);
+        String withoutKey = MappingSnapshotStore.fingerprint(metaData(id, code), "url", "public");
+        String idKey = MappingSnapshotStore.fingerprint(
+                metaData(Arrays.<Object[]>asList(primaryKey("roads", "id", 1)), id, code), "url", "public");
+        String codeKey = MappingSnapshotStore.fingerprint(
+                metaData(Arrays.<Object[]>asList(primaryKey("roads", "code", 1)), id, code), "url", "public");
+        String compositeKey = MappingSnapshotStore.fingerprint(
+                metaData(Arrays.<Object[]>asList(primaryKey("roads", "code", 2), primaryKey("roads", "id", 1)),
+                         id, code), "url", "public");
+        assertFalse(withoutKey.equals(idKey));
+        assertFalse(idKey.equals(codeKey));
+        assertFalse(idKey.equals(compositeKey));
+        assertFalse(codeKey.equals(compositeKey));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        MappingSnapshotStore store = new MappingSnapshotStore(file);
+        List<String> tables = Arrays.asList("roads", "rivers");
+        assertTrue(store.save(new MappingSnapshotStore.Snapshot("abc", tables, new MetadataSnapshot())));
+        MappingSnapshotStore.Snapshot loaded = new MappingSnapshotStore(file).load("abc");
+        assertNotNull(loaded);
+        assertEquals(tables, loaded.getTables());
+        assertNotNull(loaded.getMetadata());
+        assertFalse(loaded.getMetadata().contains("roads"));
+    }
+
+    @Test
+    public void testOtherFingerprintNotLoaded() {
+        MappingSnapshotStore store = new MappingSnapshotStore(file);
+        store.save(new MappingSnapshotStore.Snapshot("abc", Arrays.asList("roads"), new MetadataSnapshot()));
+        assertNull(store.load("def"));
+    }
+
+    @Test
+    public void testMissingOrCorruptFileNotLoaded() throws IOException {
+        MappingSnapshotStore store = new MappingSnapshotStore(file);
+        assertNull(store.load("abc"));
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[]{1, 2, 3});
+        output.close();
+        assertNull(store.load("abc"));
+    }
+}
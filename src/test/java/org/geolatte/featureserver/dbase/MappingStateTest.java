@@ -0,0 +1,102 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the closing of the session factory of a retired {@link MappingState}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class MappingStateTest {
+
+    private int closed;
+    private MappingState state;
+
+    @Before
+    public void setUp() {
+        closed = 0;
+        SessionFactory sessionFactory = (SessionFactory) Proxy.newProxyInstance(
+                MappingStateTest.class.getClassLoader(), new Class[]{SessionFactory.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("close".equals(method.getName())) {
+                    closed++;
+                } else if ("toString".equals(method.getName())) {
+                    return "session factory";
+                }
+                return null;
+            }
+        });
+        state = new MappingState(sessionFactory, new HashMap<String, TableMetadata>());
+    }
+
+    @Test
+    public void testNotClosedWhileInUse() {
+        assertTrue(state.acquire());
+        assertTrue(state.acquire());
+        state.retire();
+        assertEquals(0, closed);
+        state.release();
+        assertEquals(0, closed);
+        state.release();
+        assertEquals(1, closed);
+        assertEquals(-1, state.getUsers());
+    }
+
+    @Test
+    public void testClosedWhenRetiredUnused() {
+        assertTrue(state.acquire());
+        state.release();
+        assertEquals(0, closed);
+        state.retire();
+        assertEquals(1, closed);
+    }
+
+    @Test
+    public void testNoAcquireAfterClose() {
+        state.retire();
+        assertFalse(state.acquire());
+        assertEquals(1, closed);
+    }
+
+    @Test
+    public void testAcquireWhileRetiredButInUse() {
+        assertTrue(state.acquire());
+        state.retire();
+        // Still open, so it can still be used
+        assertTrue(state.acquire());
+        state.release();
+        state.release();
+        assertEquals(1, closed);
+    }
+}
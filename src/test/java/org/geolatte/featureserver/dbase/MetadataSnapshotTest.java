@@ -0,0 +1,119 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the replay of recorded metadata by the {@link MetadataSnapshot}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class MetadataSnapshotTest {
+
+    private static MetadataSnapshot.RecordedResult columns() {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[]{"id", 4, "int4", "NO"});
+        rows.add(new Object[]{"name", 12, "varchar", null});
+        return new MetadataSnapshot.RecordedResult(new String[]{"COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "IS_NULLABLE"},
+                                                   rows);
+    }
+
+    @Test
+    public void testReplayByLabelAndIndex() throws SQLException {
+        ResultSet resultSet = columns().replay();
+        assertTrue(resultSet.next());
+        assertEquals("id", resultSet.getString("COLUMN_NAME"));
+        assertEquals(4, resultSet.getInt("data_type"));
+        assertEquals("int4", resultSet.getString(3));
+        assertTrue(resultSet.next());
+        assertEquals(12, resultSet.getShort(2));
+        assertNull(resultSet.getString("IS_NULLABLE"));
+        assertTrue(resultSet.wasNull());
+        assertFalse(resultSet.next());
+        resultSet.close();
+    }
+
+    @Test
+    public void testReplayIsRepeatable() throws SQLException {
+        MetadataSnapshot.RecordedResult recorded = columns();
+        ResultSet first = recorded.replay();
+        while (first.next()) {
+            first.getString(1);
+        }
+        ResultSet second = recorded.replay();
+        assertTrue(second.next());
+        assertEquals("id", second.getString(1));
+    }
+
+    @Test
+    public void testMetaData() throws SQLException {
+        ResultSet resultSet = columns().replay();
+        assertEquals(4, resultSet.getMetaData().getColumnCount());
+        assertEquals("TYPE_NAME", resultSet.getMetaData().getColumnName(3));
+        assertEquals(2, resultSet.findColumn("DATA_TYPE"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUnknownColumn() throws SQLException {
+        ResultSet resultSet = columns().replay();
+        resultSet.next();
+        resultSet.getString("UNKNOWN");
+    }
+
+    @Test
+    public void testContainsColumns() {
+        String mapped = "id:int4:10:0:1\nname:varchar:50:1:2\n";
+        // Added, moved, resized and nullable columns do not break the mapping
+        assertTrue(MetadataSnapshot.containsColumns(mapped, mapped));
+        assertTrue(MetadataSnapshot.containsColumns("code:int4:10:1:1\nid:int4:10:1:2\nname:varchar:200:1:3\n",
+                                                    mapped));
+        // Dropped, renamed and retyped columns do
+        assertFalse(MetadataSnapshot.containsColumns("id:int4:10:0:1\n", mapped));
+        assertFalse(MetadataSnapshot.containsColumns("id:int4:10:0:1\nlabel:varchar:50:1:2\n", mapped));
+        assertFalse(MetadataSnapshot.containsColumns("id:int8:19:0:1\nname:varchar:50:1:2\n", mapped));
+        // Column names may contain colons
+        assertTrue(MetadataSnapshot.containsColumns("a:b:text:0:1:1\n", "a:b:text:10:0:1\n"));
+        assertFalse(MetadataSnapshot.containsColumns("a:text:0:1:1\n", "a:b:text:10:0:1\n"));
+        // A changed primary key does
+        String keyed = mapped + "PRIMARY KEY:id\n";
+        assertTrue(MetadataSnapshot.containsColumns(keyed, keyed));
+        assertFalse(MetadataSnapshot.containsColumns(mapped + "PRIMARY KEY:id,name\n", keyed));
+        assertFalse(MetadataSnapshot.containsColumns(mapped, keyed));
+    }
+
+    @Test
+    public void testColumnPatternNormalized() {
+        assertEquals(MetadataSnapshot.key("getColumns", null, "public", "roads", null),
+                     MetadataSnapshot.key("getColumns", null, "public", "roads", "%"));
+        assertFalse(MetadataSnapshot.key("getColumns", null, "public", "roads", null)
+                            .equals(MetadataSnapshot.key("getColumns", null, "public", "rivers", null)));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.connection.ConnectionProvider;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A connection provider whose connections record the sql of every statement that is prepared and calls made to
+ * them, and then fail. It allows tests to check the sql that Hibernate generates without a database.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class RecordingConnectionProvider implements ConnectionProvider {
+
+    private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<String>());
+    private static final List<String> CALLS = Collections.synchronizedList(new ArrayList<String>());
+
+    private static final String MAPPING = "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE hibernate-mapping PUBLIC \"-//Hibernate/Hibernate Mapping DTD 3.0//EN\" "
+            + "\"http://hibernate.sourceforge.net/hibernate-mapping-3.0.dtd\">\n"
+            + "<hibernate-mapping>\n"
+            + "  <class name=\"" + ResidentTableTest.TestFeature.class.getName() + "\" table=\"test_feature\">\n"
+            + "    <id name=\"id\" column=\"id\" type=\"integer\"/>\n"
+            + "    <property name=\"name\" column=\"name\" type=\"string\"/>\n"
+            + "    <property name=\"value\" column=\"value\" type=\"double\"/>\n"
+            + "    <property name=\"geometry\" column=\"geometry\" type=\"org.hibernatespatial.GeometryUserType\"/>\n"
+            + "  </class>\n"
+            + "</hibernate-mapping>";
+
+    /**
+     * @return a session factory for {@link ResidentTableTest.TestFeature}, mapped to table test_feature, that uses
+     *         recording connections
+     */
+    public static SessionFactory buildSessionFactory() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.dialect", "org.hibernatespatial.postgis.PostgisDialect");
+        configuration.setProperty("hibernate.connection.provider_class", RecordingConnectionProvider.class.getName());
+        configuration.setProperty("hibernate.current_session_context_class", "thread");
+        configuration.setProperty("hibernate.cache.use_second_level_cache", "false");
+        configuration.addXML(MAPPING);
+        return configuration.buildSessionFactory();
+    }
+
+    /**
+     * @return the sql of the statements prepared since the last call to {@link #clear()}
+     */
+    public static List<String> getStatements() {
+        synchronized (STATEMENTS) {
+            return new ArrayList<String>(STATEMENTS);
+        }
+    }
+
+    /**
+     * @return the connection methods called, with their arguments, since the last call to {@link #clear()}
+     */
+    public static List<String> getCalls() {
+        synchronized (CALLS) {
+            return new ArrayList<String>(CALLS);
+        }
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+        CALLS.clear();
+    }
+
+    public void configure(Properties props) throws HibernateException {
+    }
+
+    public Connection getConnection() throws SQLException {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                                                   new RecordingHandler());
+    }
+
+    public void closeConnection(Connection conn) throws SQLException {
+    }
+
+    public void close() throws HibernateException {
+    }
+
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    private static class RecordingHandler implements InvocationHandler {
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("prepare")) {
+                STATEMENTS.add((String) args[0]);
+                throw new SQLException("Statements are recorded, not executed");
+            }
+            if (name.equals("getMetaData")) {
+                throw new SQLException("No database metadata");
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            CALLS.add(args == null || args.length == 0 ? name : name + "(" + args[0] + ")");
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) {
+                return Boolean.FALSE;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            return null;
+        }
+    }
+}
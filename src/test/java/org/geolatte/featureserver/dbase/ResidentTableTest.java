@@ -0,0 +1,191 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.hibernate.criterion.Order;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the in-memory queries of {@link ResidentTable} and the cql subset of {@link SimpleCqlFilter}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResidentTableTest {
+
+    private ResidentTable table;
+
+    @Before
+    public void setUp() {
+        GeometryFactory factory = new GeometryFactory();
+        List<Object> elements = new ArrayList<Object>();
+        elements.add(new TestFeature(1, "Antwerpen", 10.5, factory.createPoint(new Coordinate(1, 1))));
+        elements.add(new TestFeature(2, "Brussel", null, factory.createPoint(new Coordinate(5, 5))));
+        elements.add(new TestFeature(3, "Gent", 3.0, factory.createPoint(new Coordinate(2, 2))));
+        elements.add(new TestFeature(4, "Leuven", 7.25, null));
+        table = new ResidentTable(TestFeature.class, elements);
+    }
+
+    @Test
+    public void testBbox() {
+        Assert.assertEquals(Arrays.asList(1, 3), ids(query("0,0,3,3", null)));
+        Assert.assertEquals(4, ids(query(null, null)).size());
+    }
+
+    @Test
+    public void testCql() {
+        Assert.assertEquals(Arrays.asList(1, 4), ids(query(null, "value > 5")));
+        Assert.assertEquals(Arrays.asList(3), ids(query("0,0,3,3", "value BETWEEN 1 AND 5")));
+        Assert.assertEquals(Arrays.asList(2, 3), ids(query(null, "name = 'Brussel' OR name LIKE 'G_n%'")));
+        Assert.assertEquals(Arrays.asList(2), ids(query(null, "value IS NULL")));
+        Assert.assertEquals(Arrays.asList(1, 3), ids(query(null, "id IN (1, 3) AND NOT (name = 'Leuven')")));
+    }
+
+    @Test
+    public void testNullsFollowSqlSemantics() {
+        // Neither value > 5 nor NOT value > 5 holds for a null value
+        Assert.assertEquals(Arrays.asList(3), ids(query(null, "NOT value > 5")));
+        Assert.assertEquals(Arrays.asList(1, 3, 4), ids(query(null, "value > 5 OR value <= 5")));
+    }
+
+    @Test
+    public void testUnsupportedQueriesFallBack() {
+        Assert.assertNull(table.createReader(newQuery(null, "INTERSECTS(geometry, POINT(1 1))")));
+        Assert.assertNull(table.createReader(newQuery(null, "name > 'B'")));
+        Assert.assertNull(table.createReader(newQuery(null, "unknown = 1")));
+        Assert.assertNull(table.createReader(newQuery(null, "value = 'text'")));
+        FeatureQuery query = newQuery(null, null);
+        query.setCursor(new KeysetCursor(Arrays.asList("id"), Arrays.asList(Boolean.TRUE)));
+        Assert.assertNull(table.createReader(query));
+        // The ordering of strings depends on the collation of the database
+        query = newQuery(null, null);
+        query.setOrderings(Arrays.asList(Order.asc("name")));
+        Assert.assertNull(table.createReader(query));
+    }
+
+    @Test
+    public void testSortingAndPagination() {
+        FeatureQuery query = newQuery(null, null);
+        query.setOrderings(Arrays.asList(Order.desc("value")));
+        query.setStart(1);
+        query.setLimit(2);
+        StandardFeatureReader reader = table.createReader(query);
+        // Nulls come first in descending order
+        Assert.assertEquals(Arrays.asList(1, 4), ids(reader));
+        Assert.assertEquals(4, reader.getTotalCount());
+    }
+
+    @Test
+    public void testProjectionDoesNotModifyTable() {
+        FeatureQuery query = newQuery(null, "id = 1");
+        query.setProperties(Arrays.asList("id", "geometry"));
+        query.setCoordinatePrecision(0);
+        query.setCountMode(CountMode.NONE);
+        StandardFeatureReader reader = table.createReader(query);
+        TestFeature feature = (TestFeature) reader.output().iterator().next();
+        Assert.assertNull(feature.getName());
+        Assert.assertEquals(-1, reader.getTotalCount());
+        TestFeature original = (TestFeature) table.createReader(newQuery(null, "id = 1")).output().iterator().next();
+        Assert.assertEquals("Antwerpen", original.getName());
+        Assert.assertNotSame(original.getGeometry(), feature.getGeometry());
+    }
+
+    private StandardFeatureReader query(String bbox, String cql) {
+        StandardFeatureReader reader = table.createReader(newQuery(bbox, cql));
+        Assert.assertNotNull(reader);
+        return reader;
+    }
+
+    private FeatureQuery newQuery(String bbox, String cql) {
+        FeatureQuery query = new FeatureQuery();
+        query.setBbox(bbox);
+        query.setCql(cql);
+        return query;
+    }
+
+    private List<Integer> ids(StandardFeatureReader reader) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Object element : reader.output()) {
+            ids.add(((TestFeature) element).getId());
+        }
+        return ids;
+    }
+
+    public static class TestFeature {
+
+        private Integer id;
+        private String name;
+        private Double value;
+        private Geometry geometry;
+
+        public TestFeature() {
+        }
+
+        TestFeature(Integer id, String name, Double value, Geometry geometry) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+            this.geometry = geometry;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Double getValue() {
+            return value;
+        }
+
+        public void setValue(Double value) {
+            this.value = value;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+
+        public void setGeometry(Geometry geometry) {
+            this.geometry = geometry;
+        }
+    }
+}
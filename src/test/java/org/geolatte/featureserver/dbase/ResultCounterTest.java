@@ -0,0 +1,98 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests the counts of {@link ResultCounter}, using the connections of the {@link RecordingConnectionProvider}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResultCounterTest {
+
+    private static SessionFactory factory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        factory = RecordingConnectionProvider.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        factory.close();
+    }
+
+    @Before
+    public void setUp() {
+        RecordingConnectionProvider.clear();
+    }
+
+    @Test
+    public void testFailedEstimateFallsBackToExactCount() {
+        Session session = factory.getCurrentSession();
+        session.beginTransaction();
+        try {
+            Criteria criteria = session.createCriteria(ResidentTableTest.TestFeature.class);
+            ResultCounter.UNCACHED.count(session, criteria, ResidentTableTest.TestFeature.class, new FeatureQuery(),
+                                         CountMode.ESTIMATED);
+            Assert.fail("The recording connection can not count");
+        } catch (HibernateException e) {
+            // expected, the exact count fails as well
+        } finally {
+            session.getTransaction().rollback();
+        }
+        List<String> statements = RecordingConnectionProvider.getStatements();
+        Assert.assertEquals(statements.toString(), 2, statements.size());
+        Assert.assertTrue(statements.get(0), statements.get(0).contains("cast(quote_ident(?) as regclass)"));
+        Assert.assertTrue(statements.get(1), statements.get(1).toLowerCase().contains("count(*)"));
+        // The failed estimate is rolled back, so it does not abort the transaction of the count
+        List<String> calls = RecordingConnectionProvider.getCalls();
+        Assert.assertTrue(calls.toString(), calls.contains("setSavepoint"));
+        Assert.assertTrue(calls.toString(), calls.contains("rollback(null)"));
+    }
+
+    @Test
+    public void testSplitTableName() {
+        assertSplit(null, "roads", "roads");
+        assertSplit("public", "roads", "public.roads");
+        assertSplit("Public", "Roads", "\"Public\".\"Roads\"");
+        assertSplit("gis", "road.segments \"v2\"", "gis.\"road.segments \"\"v2\"\"\"");
+    }
+
+    private void assertSplit(String schema, String table, String tableName) {
+        String[] name = ResultCounter.splitTableName(tableName);
+        Assert.assertEquals(schema, name[0]);
+        Assert.assertEquals(table, name[1]);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the concurrency guarantees of the {@link ServiceLifecycle} by starting, using and stopping services from many
+ * threads at once.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ServiceLifecycleTest {
+
+    private static final int THREADS = 64;
+    private static final int ROUNDS = 50;
+
+    /**
+     * Counts the services it creates and destroys. The given number of first creations fail.
+     */
+    private static class CountingFactory implements ServiceLifecycle.Factory<Object> {
+
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger destroyed = new AtomicInteger();
+        private final AtomicInteger failures;
+        private final long creationTime;
+
+        CountingFactory(int failures, long creationTime) {
+            this.failures = new AtomicInteger(failures);
+            this.creationTime = creationTime;
+        }
+
+        public Object create() throws Exception {
+            created.incrementAndGet();
+            Thread.sleep(creationTime);
+            if (failures.getAndDecrement() > 0) {
+                throw new DatabaseException("Creation failed");
+            }
+            return new Object();
+        }
+
+        public void destroy(Object service) {
+            destroyed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Calls get() from all threads at the same time.
+     *
+     * @return the services returned, or null for the calls that failed
+     */
+    private static List<Object> getConcurrently(final ServiceLifecycle<Object> lifecycle) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        startSignal.await();
+                        try {
+                            return lifecycle.get();
+                        } catch (DatabaseException e) {
+                            return null;
+                        }
+                    }
+                }));
+            }
+            startSignal.countDown();
+            List<Object> result = new ArrayList<Object>();
+            for (Future<Object> future : futures) {
+                try {
+                    result.add(future.get(30, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    throw new AssertionError(e.getCause());
+                } catch (java.util.concurrent.TimeoutException e) {
+                    throw new AssertionError("Deadlock: get() did not return");
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCreatedOnceUnderConcurrentFirstCalls() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) {
+            CountingFactory factory = new CountingFactory(0, 5);
+            ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", factory);
+            assertEquals(ServiceLifecycle.State.NEW, lifecycle.getState());
+            List<Object> services = getConcurrently(lifecycle);
+            assertEquals(1, factory.created.get());
+            assertNotNull(services.get(0));
+            for (Object service : services) {
+                assertSame(services.get(0), service);
+            }
+            assertTrue(lifecycle.isReady());
+        }
+    }
+
+    @Test
+    public void testFailureIsReportedAndRetried() throws InterruptedException {
+        CountingFactory factory = new CountingFactory(1, 20);
+        ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", factory);
+        List<Object> services = getConcurrently(lifecycle);
+        // Every call fails or gets the same service, and there are at most two creations: the failed one and the
+        // retry by a thread that arrived after the failure
+        Object service = null;
+        for (Object current : services) {
+            if (current != null) {
+                assertTrue(service == null || service == current);
+                service = current;
+            }
+        }
+        assertTrue(factory.created.get() <= 2);
+        if (service == null) {
+            assertEquals(ServiceLifecycle.State.FAILED, lifecycle.getState());
+        }
+        Object retried = lifecycle.get();
+        assertNotNull(retried);
+        assertEquals(2, factory.created.get());
+        assertEquals(ServiceLifecycle.State.READY, lifecycle.getState());
+    }
+
+    @Test
+    public void testFailedState() {
+        CountingFactory factory = new CountingFactory(1, 0);
+        ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", factory);
+        try {
+            lifecycle.start();
+            fail("The creation should fail");
+        } catch (DatabaseException e) {
+            // expected
+        }
+        assertEquals(ServiceLifecycle.State.FAILED, lifecycle.getState());
+        assertNotNull(lifecycle.start());
+        assertEquals(ServiceLifecycle.State.READY, lifecycle.getState());
+    }
+
+    @Test
+    public void testConcurrentStopDestroysOnce() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) {
+            CountingFactory factory = new CountingFactory(0, 0);
+            final ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", factory);
+            lifecycle.start();
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            final CountDownLatch startSignal = new CountDownLatch(1);
+            for (int i = 0; i < THREADS; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            startSignal.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        lifecycle.stop();
+                    }
+                });
+            }
+            startSignal.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals(1, factory.destroyed.get());
+            assertEquals(ServiceLifecycle.State.STOPPED, lifecycle.getState());
+        }
+    }
+
+    @Test
+    public void testStopDuringCreation() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) {
+            CountingFactory factory = new CountingFactory(0, 2);
+            final ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", factory);
+            Thread starter = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        lifecycle.start();
+                    } catch (DatabaseException e) {
+                        // stopped before it was created
+                    }
+                }
+            });
+            starter.start();
+            Thread.sleep(round % 4);
+            lifecycle.stop();
+            starter.join(30000);
+            assertFalse(starter.isAlive());
+            // Whatever the interleaving, a created service is destroyed exactly once
+            assertEquals(factory.created.get(), factory.destroyed.get());
+            assertEquals(ServiceLifecycle.State.STOPPED, lifecycle.getState());
+        }
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testGetAfterStop() {
+        ServiceLifecycle<Object> lifecycle = new ServiceLifecycle<Object>("test", new CountingFactory(0, 0));
+        lifecycle.start();
+        lifecycle.stop();
+        lifecycle.get();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tests the sql generated by {@link StandardFeatureReader}, using the connections of the
+ * {@link RecordingConnectionProvider}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class StandardFeatureReaderTest {
+
+    private static final Pattern COLUMN_ALIAS = Pattern.compile("\\by\\d+_");
+
+    private static SessionFactory factory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        factory = RecordingConnectionProvider.buildSessionFactory();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        factory.close();
+    }
+
+    @Before
+    public void setUp() {
+        RecordingConnectionProvider.clear();
+    }
+
+    @Test
+    public void testProjectionWithBboxCqlAndCursor() {
+        FeatureQuery query = new FeatureQuery();
+        query.setBbox("0,0,10,10");
+        query.setCql("name = 'Gent'");
+        query.setCursor(new KeysetCursor(Arrays.asList("name", "id"), Arrays.asList(Boolean.TRUE, Boolean.TRUE))
+                                .after(new ResidentTableTest.TestFeature(3, "Gent", 3.0, null)));
+        query.setProperties(Arrays.asList("name", "geometry"));
+        query.setCountMode(CountMode.NONE);
+        query.setLimit(10);
+
+        String sql = select(query).toLowerCase();
+        String where = sql.substring(sql.indexOf(" where "), sql.indexOf(" order by "));
+        // The select list is aliased, the restrictions must use the columns themselves
+        Assert.assertTrue(sql, COLUMN_ALIAS.matcher(sql.substring(0, sql.indexOf(" from "))).find());
+        Assert.assertFalse(sql, COLUMN_ALIAS.matcher(where).find());
+        Assert.assertTrue(sql, where.contains("this_.name=?"));
+        Assert.assertTrue(sql, where.contains("this_.geometry"));
+        Assert.assertTrue(sql, where.contains("this_.id"));
+    }
+
+    @Test
+    public void testConnectionIsReadOnlyAndReset() {
+        FeatureQuery query = new FeatureQuery();
+        query.setCountMode(CountMode.NONE);
+        select(query);
+        List<String> calls = RecordingConnectionProvider.getCalls();
+        int readOnly = calls.indexOf("setReadOnly(true)");
+        Assert.assertTrue(calls.toString(), readOnly >= 0);
+        Assert.assertTrue(calls.toString(), calls.indexOf("setReadOnly(false)") > readOnly);
+        for (String statement : RecordingConnectionProvider.getStatements()) {
+            Assert.assertFalse(statement, statement.toLowerCase().contains("read only"));
+        }
+    }
+
+    @Test
+    public void testProjectedReaderConnectionIsReadOnlyAndReset() {
+        FeatureQuery query = new FeatureQuery();
+        query.setCountMode(CountMode.NONE);
+        query.setProperties(Arrays.asList("name"));
+        select(query);
+        List<String> calls = RecordingConnectionProvider.getCalls();
+        int readOnly = calls.indexOf("setReadOnly(true)");
+        Assert.assertTrue(calls.toString(), readOnly >= 0);
+        Assert.assertTrue(calls.toString(), calls.indexOf("setReadOnly(false)") > readOnly);
+    }
+
+    /**
+     * @return the sql of the select statement the reader for the given query executes
+     */
+    private String select(FeatureQuery query) {
+        try {
+            new StandardFeatureReader(factory, ResidentTableTest.TestFeature.class, query, ResultCounter.UNCACHED)
+                    .close();
+            Assert.fail("Recorded statements are not executed");
+        } catch (DatabaseException e) {
+            // expected
+        }
+        List<String> statements = RecordingConnectionProvider.getStatements();
+        Assert.assertFalse(statements.isEmpty());
+        return statements.get(statements.size() - 1);
+    }
+}
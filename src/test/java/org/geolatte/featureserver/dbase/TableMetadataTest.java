@@ -0,0 +1,63 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.dbase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the column lookups of {@link TableMetadata}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class TableMetadataTest {
+
+    private final TableMetadata metadata = new TableMetadata("test", ResidentTableTest.TestFeature.class);
+
+    @Test
+    public void testColumns() {
+        Assert.assertEquals("test", metadata.getTableName());
+        Assert.assertEquals("geometry", metadata.getGeometryName());
+        Assert.assertTrue(metadata.getColumns().contains("name"));
+        Assert.assertTrue(metadata.getColumns().contains("value"));
+        Assert.assertTrue(metadata.hasColumn("geometry"));
+        Assert.assertFalse(metadata.hasColumn("unknown"));
+        Assert.assertEquals(Double.class, metadata.getType("value"));
+        Assert.assertNull(metadata.getType("unknown"));
+    }
+
+    @Test
+    public void testAllowedUses() {
+        Assert.assertTrue(metadata.isSortable("name"));
+        Assert.assertFalse(metadata.isSortable("geometry"));
+        Assert.assertFalse(metadata.isSortable("unknown"));
+        Assert.assertTrue(metadata.isDistinctAllowed("name"));
+        Assert.assertFalse(metadata.isDistinctAllowed("value"));
+        Assert.assertFalse(metadata.isDistinctAllowed("geometry"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testColumnsAreImmutable() {
+        metadata.getColumns().add("other");
+    }
+}
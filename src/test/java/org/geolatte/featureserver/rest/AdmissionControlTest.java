@@ -0,0 +1,253 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that the {@link AdmissionControl} executes requests on its own threads, sets their response from the thread
+ * that prepared it, and refuses requests that can not be admitted.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class AdmissionControlTest {
+
+    /**
+     * Records the threads on which the response is prepared and written.
+     */
+    private static class RecordingRequest implements Callable<Response> {
+
+        private volatile Thread preparedOn;
+        private volatile Thread writtenOn;
+
+        public Response call() {
+            preparedOn = Thread.currentThread();
+            return Response.ok(new StreamingOutput() {
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    writtenOn = Thread.currentThread();
+                    output.write("{}".getBytes("UTF-8"));
+                }
+            }).build();
+        }
+    }
+
+    /**
+     * A request that blocks its thread until it is released.
+     */
+    private static class BlockingRequest implements Callable<Response> {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        public Response call() throws InterruptedException {
+            started.countDown();
+            release.await();
+            return Response.ok().build();
+        }
+
+        /**
+         * Submits the request, and waits until it is active.
+         */
+        RecordingResponse submit(AdmissionControl admission) throws InterruptedException {
+            RecordingResponse response = new RecordingResponse();
+            admission.submit(this, response);
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            return response;
+        }
+    }
+
+    /**
+     * A suspended response that writes the entity of the response that is set, like the dispatcher does.
+     */
+    private static class RecordingResponse implements AsynchronousResponse {
+
+        private final CountDownLatch set = new CountDownLatch(1);
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private volatile Response response;
+
+        public void setResponse(Response response) {
+            try {
+                if (response.getEntity() instanceof StreamingOutput) {
+                    ((StreamingOutput) response.getEntity()).write(body);
+                }
+            } catch (IOException e) {
+                throw new WebApplicationException(e);
+            } finally {
+                this.response = response;
+                set.countDown();
+            }
+        }
+
+        Response await() throws InterruptedException {
+            Assert.assertTrue("No response was set", set.await(10, TimeUnit.SECONDS));
+            return response;
+        }
+    }
+
+    @Test
+    public void testPreparedAndWrittenOnTheSameAdmissionThread() throws Exception {
+        AdmissionControl admission = new AdmissionControl(2, 10, 10000);
+        RecordingRequest request = new RecordingRequest();
+        RecordingResponse response = new RecordingResponse();
+        admission.submit(request, response);
+        Assert.assertEquals(200, response.await().getStatus());
+        Assert.assertEquals("{}", response.body.toString("UTF-8"));
+        Assert.assertNotNull(request.preparedOn);
+        Assert.assertNotSame(Thread.currentThread(), request.preparedOn);
+        Assert.assertSame(request.preparedOn, request.writtenOn);
+        admission.shutdown();
+    }
+
+    @Test
+    public void testWithoutLimitEveryRequestIsAdmitted() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0, 0, 0);
+        BlockingRequest first = new BlockingRequest();
+        BlockingRequest second = new BlockingRequest();
+        try {
+            first.submit(admission);
+            second.submit(admission);
+            Assert.assertEquals(2, admission.getActiveCount());
+        } finally {
+            first.release.countDown();
+            second.release.countDown();
+        }
+        admission.shutdown();
+    }
+
+    @Test
+    public void testUnwrittenOutputIsClosed() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 10, 10000);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final StreamingOutput output = new ClosingOutput(closed);
+        admission.submit(new Callable<Response>() {
+            public Response call() {
+                return Response.ok(output).build();
+            }
+        }, new AsynchronousResponse() {
+            public void setResponse(Response response) {
+                throw new IllegalStateException("The client went away");
+            }
+        });
+        Assert.assertTrue("The unwritten output should be closed", closed.await(10, TimeUnit.SECONDS));
+        admission.shutdown();
+    }
+
+    @Test
+    public void testWrittenOutputIsNotClosedAgain() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        RecordingResponse response = new RecordingResponse();
+        AdmissionControl.respond(response, Response.ok(new ClosingOutput(closed)).build());
+        Assert.assertEquals(200, response.await().getStatus());
+        Assert.assertEquals(1, closed.getCount());
+    }
+
+    @Test
+    public void testFailureIsAnswered() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 10, 10000);
+        RecordingResponse response = new RecordingResponse();
+        admission.submit(new Callable<Response>() {
+            public Response call() {
+                throw new IllegalArgumentException("invalid");
+            }
+        }, response);
+        Assert.assertEquals(500, response.await().getStatus());
+        // The thread is available for the next request
+        RecordingResponse next = new RecordingResponse();
+        admission.submit(new RecordingRequest(), next);
+        Assert.assertEquals(200, next.await().getStatus());
+        admission.shutdown();
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 10, 100);
+        BlockingRequest blocking = new BlockingRequest();
+        try {
+            RecordingResponse active = blocking.submit(admission);
+            RecordingRequest waiting = new RecordingRequest();
+            RecordingResponse refused = new RecordingResponse();
+            long start = System.currentTimeMillis();
+            admission.submit(waiting, refused);
+            Assert.assertEquals(503, refused.await().getStatus());
+            Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+            Assert.assertNotNull(refused.await().getMetadata().getFirst("Retry-After"));
+            Assert.assertEquals(0, admission.getQueuedCount());
+            blocking.release.countDown();
+            Assert.assertEquals(200, active.await().getStatus());
+            Assert.assertNull(waiting.preparedOn);
+        } finally {
+            blocking.release.countDown();
+        }
+        admission.shutdown();
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 0, 10000);
+        BlockingRequest blocking = new BlockingRequest();
+        try {
+            blocking.submit(admission);
+            RecordingResponse refused = new RecordingResponse();
+            admission.submit(new RecordingRequest(), refused);
+            // Refused right away, on the calling thread
+            Assert.assertNotNull(refused.response);
+            Assert.assertEquals(503, refused.response.getStatus());
+        } finally {
+            blocking.release.countDown();
+        }
+        admission.shutdown();
+    }
+
+    /**
+     * A closeable output, like a {@link FeatureStreamingOutput}.
+     */
+    private static class ClosingOutput implements StreamingOutput, Closeable {
+
+        private final CountDownLatch closed;
+
+        ClosingOutput(CountDownLatch closed) {
+            this.closed = closed;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            output.write("[]".getBytes("UTF-8"));
+        }
+
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
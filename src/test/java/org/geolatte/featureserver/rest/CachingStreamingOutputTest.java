@@ -0,0 +1,141 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.geolatte.featureserver.cache.ResultCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests that {@link CachingStreamingOutput} caches what it writes and {@link CachedResultOutput} writes it back.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class CachingStreamingOutputTest {
+
+    @Test
+    public void testResponseIsCachedAndRestored() throws Exception {
+        ResultCache cache = new ResultCache(10, 1024, 0);
+        byte[] body = "{\"total\":1,\"items\":[{\"id\":1}]}".getBytes("UTF-8");
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        new CachingStreamingOutput(constant(body), cache, "key", "etag", false).write(response);
+        Assert.assertArrayEquals(body, response.toByteArray());
+
+        ResultCache.CachedResult cached = cache.get("key");
+        Assert.assertNotNull(cached);
+        Assert.assertEquals("etag", cached.getEtag());
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        new CachedResultOutput(cached.getGzipped(), false).write(restored);
+        Assert.assertArrayEquals(body, restored.toByteArray());
+    }
+
+    @Test
+    public void testGzippedResponseIsCompressedOnceAndSentAsStored() throws Exception {
+        ResultCache cache = new ResultCache(10, 1024, 0);
+        byte[] body = "{\"total\":1,\"items\":[{\"id\":1}]}".getBytes("UTF-8");
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        new CachingStreamingOutput(constant(body), cache, "key", "etag", true).write(response);
+        Assert.assertArrayEquals(body, gunzip(response.toByteArray()));
+
+        // The cached copy is the response that was sent
+        ResultCache.CachedResult cached = cache.get("key");
+        Assert.assertArrayEquals(response.toByteArray(), cached.getGzipped());
+        ByteArrayOutputStream hit = new ByteArrayOutputStream();
+        new CachedResultOutput(cached.getGzipped(), true).write(hit);
+        Assert.assertArrayEquals(cached.getGzipped(), hit.toByteArray());
+    }
+
+    @Test
+    public void testAcceptEncoding() {
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("gzip, deflate")));
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("deflate;q=1.0, GZIP;q=0.5")));
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("*")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(Arrays.asList("gzip;q=0")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(Arrays.asList("identity")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(null));
+    }
+
+    @Test
+    public void testLargeResponseIsNotCached() throws Exception {
+        ResultCache cache = new ResultCache(10, 1024, 0);
+        // Random bytes do not compress
+        byte[] body = new byte[10000];
+        new Random(1).nextBytes(body);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        new CachingStreamingOutput(constant(body), cache, "key", "etag", false).write(response);
+        Assert.assertArrayEquals(body, response.toByteArray());
+        Assert.assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testFailedResponseIsNotCached() throws Exception {
+        ResultCache cache = new ResultCache(10, 1024, 0);
+        StreamingOutput failing = new StreamingOutput() {
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                output.write('{');
+                throw new WebApplicationException();
+            }
+        };
+        try {
+            new CachingStreamingOutput(failing, cache, "key", "etag", false).write(new ByteArrayOutputStream());
+            Assert.fail("The failure should be propagated");
+        } catch (WebApplicationException e) {
+            Assert.assertNull(cache.get("key"));
+        }
+    }
+
+    @Test
+    public void testEtagsAreUnique() {
+        Assert.assertFalse(ResultCache.newEtag().equals(ResultCache.newEtag()));
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            result.write(buffer, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    private static StreamingOutput constant(final byte[] body) {
+        return new StreamingOutput() {
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                output.write(body);
+            }
+        };
+    }
+}
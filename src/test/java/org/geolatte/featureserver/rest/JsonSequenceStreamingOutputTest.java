@@ -0,0 +1,202 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.geolatte.common.dataformats.json.jackson.JsonSerializationTransformation;
+import org.geolatte.featureserver.dbase.FeatureQuery;
+import org.geolatte.featureserver.dbase.StandardFeatureReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the framing of the GeoJSON text sequence and newline delimited JSON outputs of
+ * {@link JsonSequenceStreamingOutput}.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class JsonSequenceStreamingOutputTest {
+
+    private static final char RECORD_SEPARATOR = 0x1E;
+
+    // Line breaks and record separators in the values must be escaped, or they would break the framing
+    private static final String[] NAMES = {"Antwerpen", "Brussel\nBruxelles", "Gent\r\n",
+                                           "Leu" + RECORD_SEPARATOR + "ven"};
+
+    @Test
+    public void testRecordSeparatorPrecedesEveryFeature() throws Exception {
+        String body = write(true);
+        List<String> lines = splitLines(body);
+        Assert.assertEquals(NAMES.length, lines.size());
+        for (String line : lines) {
+            Assert.assertEquals(RECORD_SEPARATOR, line.charAt(0));
+            Assert.assertEquals(1, count(line, RECORD_SEPARATOR));
+            assertCompleteFeature(line.substring(1));
+        }
+    }
+
+    @Test
+    public void testNewlineDelimitedFeatures() throws Exception {
+        String body = write(false);
+        List<String> lines = splitLines(body);
+        Assert.assertEquals(NAMES.length, lines.size());
+        for (String line : lines) {
+            Assert.assertEquals(0, count(line, RECORD_SEPARATOR));
+            assertCompleteFeature(line);
+        }
+    }
+
+    @Test
+    public void testEmptyReaderWritesNothing() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ListReader reader = new ListReader(new ArrayList<Object>());
+        new JsonSequenceStreamingOutput(reader, new JsonSerializationTransformation(), true, null).write(output);
+        Assert.assertEquals(0, output.size());
+        Assert.assertTrue(reader.closed);
+    }
+
+    /**
+     * @return the body written for the test features, after checking that the reader was closed
+     */
+    private String write(boolean recordSeparator) throws Exception {
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 31370);
+        List<Object> elements = new ArrayList<Object>();
+        for (int i = 0; i < NAMES.length; i++) {
+            elements.add(new SequenceFeature(i + 1, NAMES[i], factory.createPoint(new Coordinate(i, i))));
+        }
+        ListReader reader = new ListReader(elements);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JsonSequenceStreamingOutput(reader, new JsonSerializationTransformation(), recordSeparator, null)
+                .write(output);
+        Assert.assertTrue(reader.closed);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * @return the lines of the body, after checking that every line, including the last, ends with a line feed
+     */
+    private static List<String> splitLines(String body) {
+        Assert.assertTrue(body.endsWith("\n"));
+        Assert.assertEquals(-1, body.indexOf('\r'));
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int end = body.indexOf('\n'); end >= 0; end = body.indexOf('\n', start)) {
+            lines.add(body.substring(start, end));
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Checks that a line is exactly one JSON object: it parses, and nothing precedes or follows it.
+     */
+    private static void assertCompleteFeature(String line) throws Exception {
+        Assert.assertTrue(line.startsWith("{"));
+        Assert.assertTrue(line.endsWith("}"));
+        Map<?, ?> parsed = new ObjectMapper().readValue(line, Map.class);
+        Assert.assertFalse(parsed.isEmpty());
+    }
+
+    private static int count(String line, char c) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A reader that returns the elements of a list instead of reading them from the database.
+     */
+    private static class ListReader extends StandardFeatureReader {
+
+        private final List<Object> elements;
+        private boolean closed;
+
+        ListReader(List<Object> elements) {
+            super(SequenceFeature.class, new FeatureQuery());
+            this.elements = elements;
+        }
+
+        @Override
+        protected Iterable<Object> output() {
+            return elements;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    public static class SequenceFeature {
+
+        private Integer id;
+        private String name;
+        private Geometry geometry;
+
+        public SequenceFeature() {
+        }
+
+        SequenceFeature(Integer id, String name, Geometry geometry) {
+            this.id = id;
+            this.name = name;
+            this.geometry = geometry;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+
+        public void setGeometry(Geometry geometry) {
+            this.geometry = geometry;
+        }
+    }
+}
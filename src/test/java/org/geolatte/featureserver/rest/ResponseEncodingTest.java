@@ -0,0 +1,89 @@
+/*
+ * This file is part of the GeoLatte project.
+ *
+ *     GeoLatte is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     GeoLatte is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with GeoLatte.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (C) 2010 - 2011 and Ownership of code is shared by:
+ * Qmino bvba - Esperantolaan 4 - 3001 Heverlee  (http://www.qmino.com)
+ * Geovise bvba - Generaal Eisenhowerlei 9 - 2140 Antwerpen (http://www.geovise.com)
+ */
+
+package org.geolatte.featureserver.rest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.HttpHeaders;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+ * Tests the negotiation of the gzip encoding by {@link ResponseEncoding}, and the entity tags of both encodings.
+ *
+ * @author <a href="http://www.qmino.com">Qmino bvba</a>
+ * @since SDK1.5
+ */
+public class ResponseEncodingTest {
+
+    /**
+     * @return an encoding negotiated for a request with the given Accept-Encoding header
+     */
+    private static ResponseEncoding negotiate(final String acceptEncoding) {
+        HttpHeaders headers = (HttpHeaders) Proxy.newProxyInstance(getClassLoader(), new Class[]{HttpHeaders.class},
+                                                                   new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getRequestHeader".equals(method.getName()) && HttpHeaders.ACCEPT_ENCODING.equals(args[0])) {
+                    return acceptEncoding == null ? null : Arrays.asList(acceptEncoding);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                getClassLoader(), new Class[]{HttpServletResponse.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+            }
+        });
+        return new ResponseEncoding(headers, response);
+    }
+
+    private static ClassLoader getClassLoader() {
+        return ResponseEncodingTest.class.getClassLoader();
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("gzip, deflate")));
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("deflate", "x-gzip;q=0.5")));
+        Assert.assertTrue(ResponseEncoding.acceptsGzip(Arrays.asList("*")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(Arrays.asList("gzip;q=0")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(Arrays.asList("deflate")));
+        Assert.assertFalse(ResponseEncoding.acceptsGzip(null));
+    }
+
+    @Test
+    public void testGzippedBodyHasItsOwnEntityTag() {
+        ResponseEncoding gzip = negotiate("gzip");
+        ResponseEncoding identity = negotiate(null);
+        Assert.assertTrue(gzip.isGzip());
+        Assert.assertFalse(identity.isGzip());
+        Assert.assertEquals("abc", identity.tag("abc").getValue());
+        Assert.assertEquals("abc-gz", gzip.tag("abc").getValue());
+        Assert.assertFalse(gzip.tag("abc").isWeak());
+        Assert.assertEquals("abc", ResponseEncoding.CONTAINER.tag("abc").getValue());
+    }
+}